@@ -15,6 +15,8 @@
  */
 package nl.tranquilizedquality.itest;
 
+import nl.tranquilizedquality.itest.cargo.ContainerLease;
+import nl.tranquilizedquality.itest.cargo.ContainerRegistry;
 import nl.tranquilizedquality.itest.cargo.ContainerUtil;
 import nl.tranquilizedquality.itest.domain.SQLScripts;
 
@@ -57,6 +59,12 @@ public abstract class AbstractDefaultDeploymentTest extends AbstractTransactiona
      */
     protected static ConfigurableApplicationContext CONTEXT;
 
+    /**
+     * The lease on the container that is shared with other test classes using
+     * the same configuration.
+     */
+    protected static ContainerLease CONTAINER_LEASE;
+
     /**
      * The host to test.
      */
@@ -73,10 +81,50 @@ public abstract class AbstractDefaultDeploymentTest extends AbstractTransactiona
     }
 
     /**
-     * Stops the container utility..
+     * Starts up the container utility defined in the configuration classes.
+     * The container is leased from the {@link ContainerRegistry} so it is
+     * shared with the other test classes that use the same configuration. This
+     * needs to be called in a static method that is annotated with
+     * &#64;BeforeClass.
+     *
+     * @param configurationClasses
+     *            The configuration classes that define the container utility
+     *            bean called containerUtil.
+     */
+    public static void startupContainer(final Class<?>... configurationClasses) {
+        if (isRunningOnLocalHost()) {
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info("Starting up the container utility...");
+            }
+
+            CONTAINER_LEASE = ContainerRegistry.getInstance().lease(configurationClasses);
+
+            CONTEXT = CONTAINER_LEASE.getContext();
+            CONTAINER_UTIL = CONTAINER_LEASE.getContainerUtil();
+
+            /*
+             * The port can be allocated dynamically so use the port the
+             * container is actually running on.
+             */
+            host = "localhost:" + CONTAINER_UTIL.getContainerPort();
+        }
+    }
+
+    /**
+     * Stops the container utility. A leased container is released instead so
+     * the registry can decide when to stop it.
      */
     @AfterClass
     public static void stop() {
+        if (CONTAINER_LEASE != null) {
+            CONTAINER_LEASE.release();
+
+            CONTAINER_LEASE = null;
+            CONTAINER_UTIL = null;
+            CONTEXT = null;
+            return;
+        }
+
         if (isRunningOnLocalHost()) {
             if (LOGGER.isInfoEnabled()) {
                 LOGGER.info("Stopping the container utility...");
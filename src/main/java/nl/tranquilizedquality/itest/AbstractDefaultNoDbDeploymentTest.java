@@ -16,6 +16,8 @@
 package nl.tranquilizedquality.itest;
 
 import static org.junit.Assert.fail;
+import nl.tranquilizedquality.itest.cargo.ContainerLease;
+import nl.tranquilizedquality.itest.cargo.ContainerRegistry;
 import nl.tranquilizedquality.itest.cargo.ContainerUtil;
 
 import org.apache.commons.lang.StringUtils;
@@ -24,7 +26,6 @@ import org.apache.commons.logging.LogFactory;
 import org.junit.AfterClass;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ConfigurableApplicationContext;
-import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 
 /**
  * This is the base class of a simple integration test. Extending from this
@@ -61,6 +62,12 @@ public abstract class AbstractDefaultNoDbDeploymentTest {
      */
     protected static ConfigurableApplicationContext CONTEXT;
 
+    /**
+     * The lease on the container that is shared with other test classes using
+     * the same configuration.
+     */
+    protected static ContainerLease CONTAINER_LEASE;
+
     /**
      * Determines if the tests are being run on localhost or not.
      *
@@ -74,7 +81,9 @@ public abstract class AbstractDefaultNoDbDeploymentTest {
     /**
      * Starts up the container utility. This needs to be called in a static
      * method that is annotated with @BeforeClass so the container will be
-     * started only once.
+     * started only once. The container is leased from the
+     * {@link ContainerRegistry} so it is shared with the other test classes
+     * that use the same configuration.
      */
     public static void startupContainer() {
 
@@ -87,10 +96,16 @@ public abstract class AbstractDefaultNoDbDeploymentTest {
             }
 
             try {
-                CONTEXT = new AnnotationConfigApplicationContext(CONFIGURATION_CLASSES);
+                CONTAINER_LEASE = ContainerRegistry.getInstance().lease(CONFIGURATION_CLASSES);
+
+                CONTEXT = CONTAINER_LEASE.getContext();
+                CONTAINER_UTIL = CONTAINER_LEASE.getContainerUtil();
 
-                CONTAINER_UTIL = (ContainerUtil) CONTEXT.getBean("containerUtil");
-                CONTAINER_UTIL.start();
+                /*
+                 * The port can be allocated dynamically so use the port the
+                 * container is actually running on.
+                 */
+                host = "localhost:" + CONTAINER_UTIL.getContainerPort();
             } catch (final BeansException e) {
 
                 final String msg = "Failed to start up the container utility! - " + e.getMessage();
@@ -103,10 +118,21 @@ public abstract class AbstractDefaultNoDbDeploymentTest {
     }
 
     /**
-     * Stops the container utility and closed the application context.
+     * Stops the container utility and closed the application context. A
+     * leased container is released instead so the registry can decide when to
+     * stop it.
      */
     @AfterClass
     public static void stop() {
+        if (CONTAINER_LEASE != null) {
+            CONTAINER_LEASE.release();
+
+            CONTAINER_LEASE = null;
+            CONTAINER_UTIL = null;
+            CONTEXT = null;
+            return;
+        }
+
         if (CONTAINER_UTIL != null) {
             if (LOGGER.isInfoEnabled()) {
                 LOGGER.info("Stopping the container utility...");
@@ -0,0 +1,557 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import nl.tranquilizedquality.itest.cargo.exception.ConfigurationException;
+import nl.tranquilizedquality.itest.cargo.exception.DeployException;
+import nl.tranquilizedquality.itest.cargo.metrics.StartupMetrics;
+import nl.tranquilizedquality.itest.cargo.readiness.ReadinessProbe;
+import nl.tranquilizedquality.itest.cargo.workspace.PortAllocator;
+import nl.tranquilizedquality.itest.domain.DeployableLocationConfiguration;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.cargo.container.ContainerType;
+import org.codehaus.cargo.container.EmbeddedLocalContainer;
+import org.codehaus.cargo.container.configuration.ConfigurationType;
+import org.codehaus.cargo.container.configuration.LocalConfiguration;
+import org.codehaus.cargo.container.deployable.Deployable;
+import org.codehaus.cargo.container.deployable.DeployableType;
+import org.codehaus.cargo.container.deployable.WAR;
+import org.codehaus.cargo.container.deployer.Deployer;
+import org.codehaus.cargo.container.property.ServletPropertySet;
+import org.codehaus.cargo.generic.DefaultContainerFactory;
+import org.codehaus.cargo.generic.configuration.ConfigurationFactory;
+import org.codehaus.cargo.generic.configuration.DefaultConfigurationFactory;
+import org.codehaus.cargo.generic.deployable.DefaultDeployableFactory;
+import org.codehaus.cargo.generic.deployer.DefaultDeployerFactory;
+import org.codehaus.cargo.util.log.FileLogger;
+import org.codehaus.cargo.util.log.LogLevel;
+import org.codehaus.cargo.util.log.Logger;
+import org.springframework.beans.factory.annotation.Required;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Base class for container utilities that run the container inside the JVM
+ * of the tests by using a Cargo embedded container. Nothing is downloaded or
+ * extracted and no second JVM is started, so a container with only web
+ * applications starts in a fraction of the time of an installed container.
+ *
+ * The classes of the container need to be on the test class path, i.e. the
+ * Jetty or Tomcat artifacts need to be added as test dependencies. System
+ * properties are set on the JVM of the tests while the container is running.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public abstract class AbstractEmbeddedContainerUtil implements ContainerUtil {
+
+    /** Logger for this class */
+    private static final Log LOGGER = LogFactory.getLog(AbstractEmbeddedContainerUtil.class);
+
+    /** The name of the container. */
+    private final String containerName;
+
+    /** The Cargo identifier of the container i.e. jetty6x. */
+    protected String containerId;
+
+    /** The running container. */
+    protected EmbeddedLocalContainer embeddedLocalContainer;
+
+    /**
+     * The port where the container will run on. A port of 0 means a free port
+     * is allocated when the container is prepared.
+     */
+    protected Integer containerPort;
+
+    /** Determines if a free port is allocated instead of the configured one. */
+    private boolean dynamicPorts;
+
+    /** The port that was allocated for the container or null if there is none. */
+    private Integer allocatedPort;
+
+    /**
+     * The configured port of the container. The port of the container is
+     * resolved from it every time the container is prepared.
+     */
+    private Integer configuredContainerPort;
+
+    /**
+     * The path where the Cargo log files will be written to.
+     */
+    @Value("target/")
+    protected String cargoLogFilePath;
+
+    /** The system properties that are set while the container is running. */
+    protected Map<String, String> systemProperties;
+
+    /** The values of the system properties before the container started. */
+    private final Map<String, String> previousSystemProperties = new HashMap<String, String>();
+
+    /** The deployable locations that will be used in the integration tests. */
+    protected Map<String, String> deployableLocations;
+
+    /**
+     * The deployable location configurations that will be used in the
+     * integration tests.
+     */
+    protected List<DeployableLocationConfiguration> deployableLocationConfigurations;
+
+    /** The time the startup of a container may take before cargo times out. */
+    protected Long deployTimeOut;
+
+    /**
+     * Determines if the start waits until the deployed web applications
+     * answer HTTP requests.
+     */
+    private boolean readinessProbe = true;
+
+    /** The directory where Cargo creates the configuration of the container. */
+    private File configurationHome;
+
+    /** Determines if the container is configured already. */
+    private boolean prepared;
+
+    /** The time spent in the phases of the last startup. */
+    protected StartupMetrics startupMetrics;
+
+    /**
+     * Constructor taking the Cargo identifier and the name of the container.
+     *
+     * @param containerId
+     *            The Cargo identifier of the container i.e. jetty6x.
+     * @param containerName
+     *            The name of the container used in log messages.
+     */
+    protected AbstractEmbeddedContainerUtil(final String containerId, final String containerName) {
+        this.containerId = containerId;
+        this.containerName = containerName;
+        this.deployTimeOut = 300000L;
+
+        systemProperties = new HashMap<String, String>();
+        deployableLocations = new LinkedHashMap<String, String>();
+        deployableLocationConfigurations = new ArrayList<DeployableLocationConfiguration>();
+    }
+
+    /**
+     * Sets up the configuration needed for the deployable to be able to run
+     * correctly. The configuration directory of the container is available
+     * through {@link #getConfDirectory()}.
+     */
+    protected abstract void setupConfiguration();
+
+    /**
+     * Determines the deployable type of a deployable.
+     *
+     * @param type
+     *            A string representation of the deployable type.
+     * @return Returns the {@link DeployableType}.
+     * @throws DeployException
+     *             Is thrown when the container doesn't support the type.
+     */
+    protected DeployableType determineDeployableType(final String type) {
+        if (type == null || "WAR".equals(type)) {
+            return DeployableType.WAR;
+        }
+
+        throw new DeployException(containerName + " doesn't support " + type + " files!");
+    }
+
+    @Override
+    public synchronized void prepare() {
+        if (prepared) {
+            return;
+        }
+
+        startupMetrics = new StartupMetrics(containerName);
+
+        containerPort = configuredContainerPort;
+        if (dynamicPorts || containerPort == null || containerPort.intValue() == 0) {
+            try {
+                allocatedPort = PortAllocator.getInstance(new File(AbstractInstalledContainerUtil.getTemporaryDirectory()))
+                        .allocate();
+            } catch (final IOException e) {
+                throw new ConfigurationException("Failed to allocate a port for " + containerName + "!", e);
+            }
+            containerPort = allocatedPort;
+        }
+
+        configurationHome = new File(AbstractInstalledContainerUtil.getTemporaryDirectory(), "cargo-itest-embedded-"
+                + containerId + "-" + System.nanoTime());
+        try {
+            FileUtils.forceMkdir(configurationHome);
+        } catch (final IOException e) {
+            throw new ConfigurationException("Failed to create the directory: " + configurationHome.getPath(), e);
+        }
+
+        final long configurationStart = System.nanoTime();
+        setupConfiguration();
+        startupMetrics.record(StartupMetrics.CONFIGURATION, configurationStart);
+
+        prepared = true;
+    }
+
+    @Override
+    public synchronized void start() {
+        prepare();
+
+        final long configurationStart = System.nanoTime();
+
+        final ConfigurationFactory configurationFactory = new DefaultConfigurationFactory();
+        final LocalConfiguration configuration = (LocalConfiguration) configurationFactory.createConfiguration(containerId,
+                ContainerType.EMBEDDED, ConfigurationType.STANDALONE, configurationHome.getAbsolutePath());
+        configuration.setProperty(ServletPropertySet.PORT, containerPort.toString());
+
+        embeddedLocalContainer = (EmbeddedLocalContainer) new DefaultContainerFactory().createContainer(containerId,
+                ContainerType.EMBEDDED, configuration);
+
+        for (final Entry<String, String> entry : deployableLocations.entrySet()) {
+            configuration.addDeployable(createDeployable(entry.getKey(), entry.getValue(), null));
+        }
+        for (final DeployableLocationConfiguration config : deployableLocationConfigurations) {
+            configuration.addDeployable(createDeployable(config.getPath(), config.getType(), config.getContextName()));
+        }
+
+        final Logger fileLogger = new FileLogger(new File(cargoLogFilePath + "cargo.log"), true);
+        fileLogger.setLevel(LogLevel.DEBUG);
+        embeddedLocalContainer.setLogger(fileLogger);
+        if (deployTimeOut != null) {
+            embeddedLocalContainer.setTimeout(deployTimeOut);
+        }
+
+        applySystemProperties();
+        startupMetrics.record(StartupMetrics.CARGO_CONFIGURATION, configurationStart);
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Starting embedded " + containerName + " ...");
+        }
+
+        final long launchStart = System.nanoTime();
+        embeddedLocalContainer.start();
+        startupMetrics.record(StartupMetrics.LAUNCH, launchStart);
+
+        final List<URL> urls = ReadinessProbe.createContextUrls(getBaseUrl(), deployableLocations,
+                deployableLocationConfigurations);
+        if (readinessProbe && !urls.isEmpty()) {
+            final long probeStart = System.nanoTime();
+            final ReadinessProbe probe = new ReadinessProbe(urls, deployTimeOut);
+            probe.setNotFoundAccepted(ReadinessProbe.createContextRootUrls(getBaseUrl(), deployableLocations,
+                    deployableLocationConfigurations));
+            probe.await();
+            startupMetrics.record(StartupMetrics.READINESS, probeStart);
+        }
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Started embedded " + containerName + " in " + startupMetrics.getTotal(TimeUnit.MILLISECONDS)
+                    + " ms");
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (embeddedLocalContainer != null) {
+            embeddedLocalContainer.stop();
+            embeddedLocalContainer = null;
+        }
+        prepared = false;
+
+        restoreSystemProperties();
+
+        if (allocatedPort != null) {
+            PortAllocator.getInstance(new File(AbstractInstalledContainerUtil.getTemporaryDirectory())).release(
+                    allocatedPort);
+            allocatedPort = null;
+        }
+
+        if (configurationHome != null) {
+            try {
+                FileUtils.deleteDirectory(configurationHome);
+            } catch (final IOException e) {
+                if (LOGGER.isErrorEnabled()) {
+                    LOGGER.error("Failed to delete the directory: " + configurationHome.getPath() + ".", e);
+                }
+            }
+            configurationHome = null;
+        }
+    }
+
+    @Override
+    public Future<Void> startAsync() {
+        return ContainerTasks.startAsync(this, containerName);
+    }
+
+    @Override
+    public Future<Void> stopAsync() {
+        return ContainerTasks.stopAsync(this);
+    }
+
+    @Override
+    public void redeploy(final DeployableLocationConfiguration configuration) {
+        final Deployable deployable = createDeployable(configuration.getPath(), configuration.getType(),
+                configuration.getContextName());
+
+        try {
+            createDeployer().redeploy(deployable);
+        } catch (final RuntimeException e) {
+            throw new DeployException("Failed to redeploy " + configuration.getPath() + "!", e);
+        }
+
+        removeDeployableLocationConfiguration(configuration);
+        deployableLocationConfigurations.add(configuration);
+    }
+
+    @Override
+    public void undeploy(final DeployableLocationConfiguration configuration) {
+        final Deployable deployable = createDeployable(configuration.getPath(), configuration.getType(),
+                configuration.getContextName());
+
+        try {
+            createDeployer().undeploy(deployable);
+        } catch (final RuntimeException e) {
+            throw new DeployException("Failed to undeploy " + configuration.getPath() + "!", e);
+        }
+
+        removeDeployableLocationConfiguration(configuration);
+    }
+
+    /**
+     * Creates a deployer for the running container.
+     *
+     * @return Returns a {@link Deployer}.
+     */
+    private Deployer createDeployer() {
+        if (embeddedLocalContainer == null) {
+            throw new DeployException("The container is not started yet!");
+        }
+
+        return new DefaultDeployerFactory().createDeployer(embeddedLocalContainer);
+    }
+
+    /**
+     * Creates a Cargo deployable.
+     *
+     * @param path
+     *            The path to the deployable.
+     * @param type
+     *            A string representation of the deployable type.
+     * @param contextName
+     *            The context of a web application or null to use the name of
+     *            the file.
+     * @return Returns the {@link Deployable}.
+     */
+    private Deployable createDeployable(final String path, final String type, final String contextName) {
+        final Deployable deployable = new DefaultDeployableFactory().createDeployable(containerId, path,
+                determineDeployableType(type));
+
+        if (deployable instanceof WAR && StringUtils.isNotEmpty(contextName)) {
+            ((WAR) deployable).setContext(contextName);
+        }
+
+        return deployable;
+    }
+
+    /**
+     * Removes the deployable location configuration with the same path or
+     * context name.
+     *
+     * @param configuration
+     *            The configuration to remove.
+     */
+    private void removeDeployableLocationConfiguration(final DeployableLocationConfiguration configuration) {
+        final List<DeployableLocationConfiguration> configurations = new ArrayList<DeployableLocationConfiguration>();
+
+        for (final DeployableLocationConfiguration existing : deployableLocationConfigurations) {
+            final boolean samePath = StringUtils.equals(existing.getPath(), configuration.getPath());
+            final boolean sameContext = StringUtils.isNotEmpty(existing.getContextName())
+                    && StringUtils.equals(existing.getContextName(), configuration.getContextName());
+
+            if (!samePath && !sameContext) {
+                configurations.add(existing);
+            }
+        }
+
+        deployableLocationConfigurations = configurations;
+    }
+
+    /**
+     * Sets the system properties on the JVM and remembers their previous
+     * values.
+     */
+    private void applySystemProperties() {
+        previousSystemProperties.clear();
+
+        for (final Entry<String, String> property : systemProperties.entrySet()) {
+            previousSystemProperties.put(property.getKey(), System.getProperty(property.getKey()));
+            System.setProperty(property.getKey(), property.getValue());
+        }
+    }
+
+    /**
+     * Restores the system properties that were changed when the container was
+     * started.
+     */
+    private void restoreSystemProperties() {
+        for (final Entry<String, String> property : previousSystemProperties.entrySet()) {
+            if (property.getValue() == null) {
+                System.clearProperty(property.getKey());
+            } else {
+                System.setProperty(property.getKey(), property.getValue());
+            }
+        }
+        previousSystemProperties.clear();
+    }
+
+    @Override
+    public void addDeployableLocation(final String location, final String type) {
+        this.deployableLocations.put(location, type);
+    }
+
+    @Override
+    public Integer getContainerPort() {
+        return containerPort;
+    }
+
+    @Override
+    public String getBaseUrl() {
+        return "http://localhost:" + containerPort + "/";
+    }
+
+    @Override
+    public StartupMetrics getStartupMetrics() {
+        return startupMetrics;
+    }
+
+    /**
+     * The embedded container uses the class path of the tests so there is no
+     * directory for shared libraries.
+     *
+     * @return Returns null.
+     */
+    @Override
+    public String getSharedLibDirectory() {
+        return null;
+    }
+
+    @Override
+    public String getConfDirectory() {
+        if (configurationHome == null) {
+            return null;
+        }
+
+        return configurationHome.getAbsolutePath() + "/";
+    }
+
+    /**
+     * @param containerId
+     *            the containerId to set
+     */
+    public void setContainerId(final String containerId) {
+        this.containerId = containerId;
+    }
+
+    /**
+     * @param containerPort
+     *            the containerPort to set
+     */
+    @Required
+    public void setContainerPort(final Integer containerPort) {
+        this.configuredContainerPort = containerPort;
+        this.containerPort = containerPort;
+    }
+
+    /**
+     * @param dynamicPorts
+     *            the dynamicPorts to set
+     */
+    public void setDynamicPorts(final boolean dynamicPorts) {
+        this.dynamicPorts = dynamicPorts;
+    }
+
+    /**
+     * @param cargoLogFilePath
+     *            the cargoLogFilePath to set
+     */
+    public void setCargoLogFilePath(final String cargoLogFilePath) {
+        this.cargoLogFilePath = cargoLogFilePath;
+    }
+
+    /**
+     * @param systemProperties
+     *            the systemProperties to set
+     */
+    public void setSystemProperties(final Map<String, String> systemProperties) {
+        this.systemProperties = systemProperties;
+    }
+
+    /**
+     * @param deployableLocations
+     *            the deployableLocations to set
+     */
+    public void setDeployableLocations(final Map<String, String> deployableLocations) {
+        this.deployableLocations = deployableLocations;
+    }
+
+    /**
+     * @param deployableLocationConfigurations
+     *            the deployableLocationConfigurations to set
+     */
+    public void setDeployableLocationConfigurations(final List<DeployableLocationConfiguration> deployableLocationConfigurations) {
+        this.deployableLocationConfigurations = deployableLocationConfigurations;
+    }
+
+    /**
+     * Retrieves the deployable location configurations.
+     *
+     * @return Returns an unmodifiable list containing the deployable location
+     *         configurations.
+     */
+    public List<DeployableLocationConfiguration> getDeployableLocationConfigurations() {
+        return Collections.unmodifiableList(deployableLocationConfigurations);
+    }
+
+    /**
+     * @param deployTimeOut
+     *            the deployTimeOut to set
+     */
+    public void setDeployTimeOut(final Long deployTimeOut) {
+        this.deployTimeOut = deployTimeOut;
+    }
+
+    /**
+     * @param readinessProbe
+     *            the readinessProbe to set
+     */
+    public void setReadinessProbe(final boolean readinessProbe) {
+        this.readinessProbe = readinessProbe;
+    }
+
+}
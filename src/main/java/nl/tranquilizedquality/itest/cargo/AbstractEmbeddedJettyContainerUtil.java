@@ -0,0 +1,37 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo;
+
+/**
+ * Utility class that runs Jetty embedded in the JVM of the tests. By default
+ * it runs Jetty 6 (jetty6x), the same version as the installed {@link AbstractJettyContainerUtil}. Other
+ * versions can be used by setting the Cargo identifier i.e. jetty7x, as long as
+ * the matching Jetty artifacts are on the test class path.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public abstract class AbstractEmbeddedJettyContainerUtil extends AbstractEmbeddedContainerUtil {
+
+    /**
+     * Default constructor.
+     */
+    public AbstractEmbeddedJettyContainerUtil() {
+        super("jetty6x", "Jetty");
+    }
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo;
+
+/**
+ * Utility class that runs Tomcat embedded in the JVM of the tests. By default
+ * it runs Tomcat 5 (tomcat5x), the only Tomcat version Cargo can embed. The
+ * Tomcat 5.5 embed artifacts need to be on the test class path.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public abstract class AbstractEmbeddedTomcatContainerUtil extends AbstractEmbeddedContainerUtil {
+
+    /**
+     * Default constructor.
+     */
+    public AbstractEmbeddedTomcatContainerUtil() {
+        super("tomcat5x", "Tomcat");
+    }
+
+}
@@ -17,16 +17,27 @@ package nl.tranquilizedquality.itest.cargo;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import nl.tranquilizedquality.itest.cargo.deploy.DeployableStager;
 import nl.tranquilizedquality.itest.cargo.exception.ConfigurationException;
 import nl.tranquilizedquality.itest.cargo.exception.DeployException;
+import nl.tranquilizedquality.itest.cargo.metrics.StartupMetrics;
 import nl.tranquilizedquality.itest.domain.DeployableLocationConfiguration;
 
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.codehaus.cargo.container.ContainerType;
@@ -35,6 +46,7 @@ import org.codehaus.cargo.container.configuration.ConfigurationType;
 import org.codehaus.cargo.container.configuration.LocalConfiguration;
 import org.codehaus.cargo.container.deployable.Deployable;
 import org.codehaus.cargo.container.deployable.DeployableType;
+import org.codehaus.cargo.container.glassfish.GlassFishPropertySet;
 import org.codehaus.cargo.container.property.GeneralPropertySet;
 import org.codehaus.cargo.container.property.ServletPropertySet;
 import org.codehaus.cargo.generic.DefaultContainerFactory;
@@ -58,9 +70,22 @@ public abstract class AbstractGlassfishContainerUtil extends AbstractInstalledCo
     /** Logger for this class */
     private static final Log LOGGER = LogFactory.getLog(AbstractGlassfishContainerUtil.class);
 
+    /**
+     * The Cargo properties of the Glassfish ports besides the HTTP port. The
+     * domain is created with these ports so they are allocated as well when
+     * dynamic ports are used.
+     */
+    private static final List<String> PORT_PROPERTIES = Arrays.asList(GlassFishPropertySet.ADMIN_PORT,
+            GlassFishPropertySet.JMS_PORT, GlassFishPropertySet.IIOP_PORT, GlassFishPropertySet.HTTPS_PORT,
+            GlassFishPropertySet.IIOPS_PORT, GlassFishPropertySet.IIOP_MUTUAL_AUTH_PORT,
+            GlassFishPropertySet.JMX_ADMIN_PORT);
+
     /** The name of the Glassfish configuration to use. */
     protected String configurationName;
 
+    /** The allocated ports by their Cargo property. */
+    private final Map<String, Integer> ports = new LinkedHashMap<String, Integer>();
+
     /**
      * Default constructor that will detect which OS is used to make sure the
      * Glassfish will be downloaded in the correct location.
@@ -71,6 +96,18 @@ public abstract class AbstractGlassfishContainerUtil extends AbstractInstalledCo
         setupContainerHome();
     }
 
+    @Override
+    protected void allocatePorts() {
+        super.allocatePorts();
+
+        ports.clear();
+        if (isDynamicPorts()) {
+            for (final String property : PORT_PROPERTIES) {
+                ports.put(property, allocatePort(null));
+            }
+        }
+    }
+
     /**
      * Installs the container and the application configuration. It also sets
      * some system properties so the container can startup properly. Finally it
@@ -84,7 +121,9 @@ public abstract class AbstractGlassfishContainerUtil extends AbstractInstalledCo
          */
         super.setupContainer();
 
+        final long configurationStart = System.nanoTime();
         setupConfiguration();
+        startupMetrics.record(StartupMetrics.CONFIGURATION, configurationStart);
     }
 
     /**
@@ -92,6 +131,8 @@ public abstract class AbstractGlassfishContainerUtil extends AbstractInstalledCo
      */
     @Override
     protected void deploy() {
+        final long configurationStart = System.nanoTime();
+
         // create configuration factory
         final ConfigurationFactory configurationFactory = new DefaultConfigurationFactory();
 
@@ -101,17 +142,11 @@ public abstract class AbstractGlassfishContainerUtil extends AbstractInstalledCo
                         + "cargo-conf/");
 
         // setup configuration
-        final StringBuilder args = new StringBuilder();
-        for (final String arg : jvmArguments) {
-            args.append(arg);
-            args.append(" ");
-
-            if (LOGGER.isInfoEnabled()) {
-                LOGGER.info("Added JVM argument: " + arg);
-            }
-        }
-        configuration.setProperty(GeneralPropertySet.JVMARGS, args.toString());
+        configuration.setProperty(GeneralPropertySet.JVMARGS, getJvmArgumentLine());
         configuration.setProperty(ServletPropertySet.PORT, containerPort.toString());
+        for (final Entry<String, Integer> port : ports.entrySet()) {
+            configuration.setProperty(port.getKey(), port.getValue().toString());
+        }
 
         /*
          * Iterate over all available deployable locations.
@@ -128,7 +163,7 @@ public abstract class AbstractGlassfishContainerUtil extends AbstractInstalledCo
             /*
              * Determine the deployable type.
              */
-            deployableType = determineDeployableType(value);
+            deployableType = determineDeployableType(key, value);
 
             /*
              * Add the deployable.
@@ -149,22 +184,22 @@ public abstract class AbstractGlassfishContainerUtil extends AbstractInstalledCo
              */
             DeployableType deployableType = null;
             if (contextName != null && contextName.length() > 0) {
-                deployableType = determineDeployableType(type);
+                deployableType = determineDeployableType(path, type);
 
                 if (DeployableType.WAR.equals(deployableType)) {
                     final File srcFile = new File(path);
                     final File destFile = new File("target/" + contextName + ".war");
 
                     try {
-                        FileUtils.copyFile(srcFile, destFile);
+                        DeployableStager.stage(srcFile, destFile);
                     } catch (final IOException e) {
-                        throw new DeployException("Failed to copy WAR file: " + path, e);
+                        throw new DeployException("Failed to stage WAR file: " + path, e);
                     }
 
                     path = destFile.getPath();
                 }
             } else {
-                deployableType = determineDeployableType(type);
+                deployableType = determineDeployableType(path, type);
             }
 
             /*
@@ -196,8 +231,10 @@ public abstract class AbstractGlassfishContainerUtil extends AbstractInstalledCo
             LOGGER.info("Starting Glassfish [" + configurationName + "]...");
         }
 
+        startupMetrics.record(StartupMetrics.CARGO_CONFIGURATION, configurationStart);
+
         // startup installedLocalContainer
-        installedLocalContainer.start();
+        startInstalledContainer();
 
         // Here you are assured the container is started.
         if (LOGGER.isInfoEnabled()) {
@@ -206,16 +243,15 @@ public abstract class AbstractGlassfishContainerUtil extends AbstractInstalledCo
     }
 
     /**
-     * Complete the Glassfish configuration.
+     * Complete the Glassfish configuration. The Java home is appended to the
+     * environment script and the asadmin script is made executable. The
+     * environment script has no placeholders, the ports are configured by
+     * Cargo.
      *
      * @throws IOException
-     *
+     *             Is thrown when the environment script couldn't be updated.
      */
     private void completeGlassfishConfiguration() throws IOException {
-
-        // FIXME: Complete setting also the port to the value
-        // ${cargo.server.port}
-
         // We need to append the java home value to the env script.
         final String operatingSystem = System.getProperty("os.name");
         File destFile = null;
@@ -223,57 +259,114 @@ public abstract class AbstractGlassfishContainerUtil extends AbstractInstalledCo
 
             destFile = new File(containerHome + "/config/asenv.bat");
 
-            final List readLines = FileUtils.readLines(destFile);
-            readLines.add("set AS_JAVA=" + System.getProperty("java.home"));
-            FileUtils.writeLines(destFile, readLines);
+            appendLine(destFile, "set AS_JAVA=" + System.getProperty("java.home"));
 
         } else {
             destFile = new File(containerHome + "/config/asenv.conf");
 
-            final List readLines = FileUtils.readLines(destFile);
-            readLines.add("AS_JAVA=\"" + System.getProperty("java.home") + "\"");
-            FileUtils.writeLines(destFile, readLines);
+            appendLine(destFile, "AS_JAVA=\"" + System.getProperty("java.home") + "\"");
 
             // There is a problem in Linux executing the file... probably is a
             // bug in the glassfish plugin
+            final File executable = new File(containerHome + "/bin/asadmin");
+            if (executable.isFile()) {
+                makeExecutable(executable);
+            }
+
+        }
+    }
+
+    /**
+     * Makes a file executable for its owner if it isn't already. Only the
+     * execute bit is added and a file that is hard linked to the installation
+     * template is replaced by a copy first, so the template is never changed.
+     *
+     * @param file
+     *            The file to make executable.
+     * @throws IOException
+     *             Is thrown when the file couldn't be copied or its
+     *             permissions couldn't be changed.
+     */
+    private static void makeExecutable(final File file) throws IOException {
+        final Path path = file.toPath();
+        try {
+            final Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(path);
+            if (permissions.contains(PosixFilePermission.OWNER_EXECUTE)) {
+                return;
+            }
 
-            // We must use the Runtime call (not really portable) since the
-            // setExecutable method in the File class is only available from
-            // Java 6
-            // File executable = new File("/tmp/glassfish/bin/asadmin");
-            // executable.setExecutable(true);
-            Runtime.getRuntime().exec("chmod 754 " + "/tmp/glassfish/bin/asadmin");
+            detachFromTemplate(path);
 
+            permissions.add(PosixFilePermission.OWNER_EXECUTE);
+            Files.setPosixFilePermissions(path, permissions);
+        } catch (final UnsupportedOperationException e) {
+            if (!file.canExecute()) {
+                file.setExecutable(true);
+            }
         }
     }
 
     /**
-     * Determines the type of deployable.
+     * Replaces a file by a copy when it is hard linked to the installation
+     * template, so the template is never changed when the file is written.
      *
-     * @param type
-     *            A string representation of the deployable type.
-     * @return Returns a {@link DeployableType} that corresponds to the string
-     *         representation or if none could be found the default value (EAR)
-     *         will be returned.
+     * @param path
+     *            The file that is going to be changed.
+     * @throws IOException
+     *             Is thrown when the file couldn't be copied.
      */
-    private DeployableType determineDeployableType(final String type) {
-        DeployableType deployableType;
+    private static void detachFromTemplate(final Path path) throws IOException {
+        final Number links;
+        try {
+            links = (Number) Files.getAttribute(path, "unix:nlink");
+        } catch (final UnsupportedOperationException e) {
+            return;
+        }
 
-        /*
-         * Check what kind of deployable it is.
-         */
-        if ("EAR".equals(type)) {
-            deployableType = DeployableType.EAR;
-        } else if ("WAR".equals(type)) {
-            deployableType = DeployableType.WAR;
-        } else if ("EJB".equals(type)) {
-            deployableType = DeployableType.EJB;
-        } else {
-            // Default value is EAR file
-            deployableType = DeployableType.EAR;
+        if (links.intValue() > 1) {
+            final Path copy = Files.createTempFile(path.getParent(), "." + path.getFileName() + "-", ".part");
+            try {
+                Files.copy(path, copy, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                Files.move(copy, path, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(copy);
+            }
         }
+    }
+
+    /**
+     * Appends a line to a file without reading it. A line separator is added
+     * first when the file doesn't end with one. A file that is hard linked to
+     * the installation template is replaced by a copy first.
+     *
+     * @param file
+     *            The file to append to.
+     * @param line
+     *            The line to append.
+     * @throws IOException
+     *             Is thrown when the file couldn't be written.
+     */
+    private static void appendLine(final File file, final String line) throws IOException {
+        detachFromTemplate(file.toPath());
+
+        final StringBuilder text = new StringBuilder();
+
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            final long length = randomAccessFile.length();
+            if (length > 0) {
+                randomAccessFile.seek(length - 1);
+                if (randomAccessFile.read() != '\n') {
+                    text.append(IOUtils.LINE_SEPARATOR);
+                }
+            }
+            text.append(line).append(IOUtils.LINE_SEPARATOR);
 
-        return deployableType;
+            randomAccessFile.seek(length);
+            randomAccessFile.write(text.toString().getBytes(Charset.defaultCharset().name()));
+        } finally {
+            randomAccessFile.close();
+        }
     }
 
     /**
@@ -288,7 +381,8 @@ public abstract class AbstractGlassfishContainerUtil extends AbstractInstalledCo
      */
     private void addDeployable(final LocalConfiguration configuration, final String path, final DeployableType deployableType) {
         // retrieve deployable file
-        final Deployable deployable = new DefaultDeployableFactory().createDeployable(configurationName, path, deployableType);
+        final Deployable deployable = new DefaultDeployableFactory().createDeployable(configurationName,
+                prepareDeployable(path, deployableType), deployableType);
 
         // add deployable
         configuration.addDeployable(deployable);
@@ -330,6 +424,14 @@ public abstract class AbstractGlassfishContainerUtil extends AbstractInstalledCo
         return path;
     }
 
+    /**
+     * Skips the documentation and samples that are shipped with Glassfish.
+     */
+    @Override
+    protected List<String> getMinimalExcludes() {
+        return Arrays.asList("docs/**", "samples/**");
+    }
+
     @Override
     public String getSharedLibDirectory() {
         return getContainerDirectory("lib/");
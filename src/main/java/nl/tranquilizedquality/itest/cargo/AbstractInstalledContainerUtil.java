@@ -16,18 +16,45 @@
 package nl.tranquilizedquality.itest.cargo;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nl.tranquilizedquality.itest.cargo.deploy.DeployableFingerprints;
+import nl.tranquilizedquality.itest.cargo.deploy.DeployableTypeDetector;
+import nl.tranquilizedquality.itest.cargo.deploy.ExplodedDeployableSync;
 import nl.tranquilizedquality.itest.cargo.exception.ConfigurationException;
 import nl.tranquilizedquality.itest.cargo.exception.DeployException;
+import nl.tranquilizedquality.itest.cargo.install.ArtifactCache;
+import nl.tranquilizedquality.itest.cargo.install.ClassDataSharingCache;
+import nl.tranquilizedquality.itest.cargo.install.ContainerTemplates;
+import nl.tranquilizedquality.itest.cargo.install.EntryFilter;
+import nl.tranquilizedquality.itest.cargo.install.ParallelZipExtractor;
+import nl.tranquilizedquality.itest.cargo.install.StreamingZipInstaller;
+import nl.tranquilizedquality.itest.cargo.install.TemplateRenderer;
+import nl.tranquilizedquality.itest.cargo.jvm.JvmProfile;
+import nl.tranquilizedquality.itest.cargo.metrics.StartupMetrics;
+import nl.tranquilizedquality.itest.cargo.readiness.ProcessJvmLauncher;
+import nl.tranquilizedquality.itest.cargo.readiness.ProcessJvmLauncherFactory;
+import nl.tranquilizedquality.itest.cargo.readiness.ReadinessProbe;
+import nl.tranquilizedquality.itest.cargo.workspace.DirectoryReaper;
+import nl.tranquilizedquality.itest.cargo.workspace.PortAllocator;
+import nl.tranquilizedquality.itest.cargo.workspace.WorkspaceManager;
+import nl.tranquilizedquality.itest.cargo.workspace.WorkspaceManager.Workspace;
 import nl.tranquilizedquality.itest.domain.DeployableLocationConfiguration;
 
 import org.apache.ant.compress.taskdefs.Unzip;
@@ -36,7 +63,16 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.codehaus.cargo.container.InstalledLocalContainer;
+import org.codehaus.cargo.container.deployable.Deployable;
+import org.codehaus.cargo.container.deployable.DeployableType;
+import org.codehaus.cargo.container.deployable.WAR;
+import org.codehaus.cargo.container.deployer.Deployer;
+import org.codehaus.cargo.container.deployer.DeployableMonitor;
+import org.codehaus.cargo.container.deployer.URLDeployableMonitor;
 import org.codehaus.cargo.container.installer.ZipURLInstaller;
+import org.codehaus.cargo.container.spi.AbstractInstalledLocalContainer;
+import org.codehaus.cargo.generic.deployable.DefaultDeployableFactory;
+import org.codehaus.cargo.generic.deployer.DefaultDeployerFactory;
 import org.springframework.beans.factory.annotation.Required;
 import org.springframework.beans.factory.annotation.Value;
 
@@ -54,6 +90,15 @@ public abstract class AbstractInstalledContainerUtil implements ContainerUtil {
     /** Logger for this class */
     private static final Log LOGGER = LogFactory.getLog(AbstractInstalledContainerUtil.class);
 
+    /** The last time stamp that was used for a container root folder. */
+    private static final AtomicLong LAST_TIME_STAMP = new AtomicLong();
+
+    /** Makes sure an exploded directory is synced by one container at a time. */
+    private static final Object EXPLODE_LOCK = new Object();
+
+    /** The name of the file in the exploded directory containing the fingerprints of the synced archives. */
+    private static final String EXPLODED_FINGERPRINTS = "fingerprints.properties";
+
     /** The name of the container. */
     private String containerName;
 
@@ -76,10 +121,28 @@ public abstract class AbstractInstalledContainerUtil implements ContainerUtil {
     /**
      * The port where the container will run on. Use the property
      * ${cargo.server.port} to set the port dynamically and set the system
-     * properties with this value.
+     * properties with this value. A port of 0 means a free port is allocated
+     * when the container is set up.
      */
     protected Integer containerPort;
 
+    /**
+     * The configured port of the container. The port of the container is
+     * resolved from it every time the container is prepared.
+     */
+    private Integer configuredContainerPort;
+
+    /**
+     * Determines if free ports are allocated for all ports of the container
+     * instead of using the configured ones so containers can run side by side.
+     * JOnAS only gets a free HTTP port, its other ports are read from its
+     * existing configuration.
+     */
+    private boolean dynamicPorts;
+
+    /** The ports that were allocated for the container. */
+    private final List<Integer> allocatedPorts = new ArrayList<Integer>();
+
     /**
      * The path where the Cargo LOGGER files will be written to.
      */
@@ -113,15 +176,194 @@ public abstract class AbstractInstalledContainerUtil implements ContainerUtil {
      */
     private boolean cleanUpAfterContainerStopped = true;
 
+    /**
+     * Determines if the container directory should be deleted in the
+     * background so the next container can be started right away.
+     */
+    private boolean asynchronousCleanUp = true;
+
+    /**
+     * The maximum size in bytes of the container directories that are kept
+     * in the temporary directory after their container was stopped.
+     */
+    private Long workspaceQuota;
+
+    /** The lock on the root folder of the running container. */
+    private Workspace workspace;
+
+    /** Determines if the container is installed and configured already. */
+    private boolean prepared;
+
+    /** The time spent in the phases of the last startup. */
+    protected StartupMetrics startupMetrics;
+
+    /**
+     * Determines if the start waits until the deployed web applications
+     * answer HTTP requests instead of relying on the start wait of Cargo.
+     */
+    private boolean readinessProbe = true;
+
+    /** The maximum delay in milliseconds between two readiness polls. */
+    private Long readinessMaxDelay;
+
     /** The root folder where the container will be extracted and started. */
     private String containerRootFolderName;
 
+    /**
+     * Determines if downloaded container archives should be stored in and
+     * retrieved from the local artifact cache.
+     */
+    private boolean useArtifactCache = true;
+
+    /** The directory where downloaded container archives are cached. */
+    private String artifactCacheDirectory;
+
+    /** The maximum size in bytes of the artifact cache. */
+    private Long artifactCacheMaxSize;
+
+    /**
+     * The SHA-256 checksum of the container file. When it is set the
+     * downloaded container file will be verified against it.
+     */
+    protected String containerFileChecksum;
+
+    /**
+     * Determines if the container distribution should be extracted once into a
+     * template directory and cloned with hard links for every run.
+     */
+    private boolean useContainerTemplates;
+
+    /**
+     * The directory where the container templates are stored. It should be on
+     * the same file system as the container home so hard links can be used.
+     */
+    private String containerTemplatesDirectory;
+
+    /** The maximum size in bytes of all container templates together. */
+    private Long containerTemplatesMaxSize;
+
+    /**
+     * The names of the directories that are modified by the container and
+     * therefore will be copied instead of linked when a template is cloned.
+     */
+    private List<String> mutableDirectories;
+
+    /**
+     * Determines if the built-in parallel extractor should be used instead of
+     * the Ant unzip task to extract the container archives.
+     */
+    private boolean parallelExtraction;
+
+    /**
+     * The number of threads the parallel extractor may use. When it isn't set
+     * one thread per available processor is used.
+     */
+    private Integer extractionThreads;
+
+    /**
+     * Determines if remote container archives should be extracted while they
+     * are being downloaded instead of downloading them completely first.
+     */
+    private boolean streamingInstall;
+
+    /**
+     * The glob patterns of the archive entries that should be extracted. When
+     * it is empty all entries are extracted.
+     */
+    private List<String> extractionIncludes;
+
+    /** The glob patterns of the archive entries that should be skipped. */
+    private List<String> extractionExcludes;
+
+    /**
+     * Determines if the parts of the container distribution that aren't
+     * needed to run the tests, like documentation and examples, should be
+     * skipped during extraction.
+     */
+    private boolean minimalInstall;
+
+    /**
+     * Determines if WAR files are deployed as exploded directories. The
+     * directories are kept between runs and only the changed entries are
+     * extracted again.
+     */
+    private boolean explodedDeployment;
+
+    /** The directory where the exploded WAR files are kept. */
+    private String explodedDirectory;
+
+    /** The fingerprints of the deployables in the running container. */
+    private final DeployableFingerprints deployedFingerprints = new DeployableFingerprints();
+
+    /**
+     * Determines if the container JVM should boot with a class data sharing
+     * archive. The first run records the archive and later runs of the same
+     * container and deployables reuse it.
+     */
+    private boolean fastBoot;
+
+    /**
+     * The JVM profile that is merged with the JVM arguments. When it is null
+     * only the JVM arguments are used.
+     */
+    private JvmProfile jvmProfile;
+
+    /**
+     * The number of containers that run at the same time on this machine. It
+     * is used to size the heap of the JVM profile.
+     */
+    private int parallelContainers;
+
+    /** The directory where the class data sharing archives are stored. */
+    private String classDataSharingCacheDirectory;
+
+    /** The maximum size in bytes of the class data sharing archives. */
+    private Long classDataSharingCacheMaxSize;
+
+    /** The key of the class data sharing archive of the current run. */
+    private String classDataSharingKey;
+
+    /** The class data sharing archive the current run boots with. */
+    private File classDataSharingArchive;
+
+    /** The file the current run records its class data sharing archive in. */
+    private File classDataSharingRecording;
+
+    /** The launcher of the container JVM when it is launched by this utility. */
+    private ProcessJvmLauncher containerProcess;
+
+    /**
+     * The maximum number of milliseconds a graceful stop of the container may
+     * take before its process is killed.
+     */
+    private long shutdownTimeOut;
+
+    /** Determines if the container process was killed by the last stop. */
+    private boolean containerKilled;
+
+    /** The number of milliseconds the last stop of the container took. */
+    private Long shutdownDuration;
+
     /**
      * Default constructor.
      */
     public AbstractInstalledContainerUtil() {
         configResourcesPath = "src/test/resources/";
         deployTimeOut = 300000L;
+        shutdownTimeOut = 60000L;
+        artifactCacheDirectory = System.getProperty("user.home") + "/.cargo-itest/cache/";
+        artifactCacheMaxSize = 2L * 1024L * 1024L * 1024L;
+        classDataSharingCacheDirectory = System.getProperty("user.home") + "/.cargo-itest/cds/";
+        classDataSharingCacheMaxSize = 1024L * 1024L * 1024L;
+        workspaceQuota = 5L * 1024L * 1024L * 1024L;
+        containerTemplatesDirectory = getTemporaryDirectory() + "cargo-itest-templates/";
+        containerTemplatesMaxSize = 2L * 1024L * 1024L * 1024L;
+        mutableDirectories = new ArrayList<String>(Arrays.asList("conf", "config", "work", "deploy", "log", "logs", "temp",
+                "tmp", "data", "webapps", "apps", "autoload", "cargo-conf"));
+        extractionIncludes = new ArrayList<String>();
+        extractionExcludes = new ArrayList<String>();
+        explodedDirectory = "target/exploded/";
+        parallelContainers = Integer.getInteger(JvmProfile.PARALLEL_CONTAINERS_PROPERTY, 1);
 
         systemProperties = new HashMap<String, String>();
         deployableLocations = new LinkedHashMap<String, String>();
@@ -133,6 +375,38 @@ public abstract class AbstractInstalledContainerUtil implements ContainerUtil {
      */
     private void cleanUpContainer() {
 
+        /*
+         * Release the root folder through the workspace manager so it stays
+         * locked until it is deleted completely.
+         */
+        if (workspace != null) {
+            final Workspace released = workspace;
+            workspace = null;
+
+            if (asynchronousCleanUp) {
+                getWorkspaceManager().discard(released, DirectoryReaper.getInstance());
+                return;
+            }
+
+            try {
+                getWorkspaceManager().delete(released);
+            } catch (final IOException exceptionOnDelete) {
+                if (LOGGER.isErrorEnabled()) {
+                    LOGGER.error("Failed to delete the directory: " + containerHome + ".", exceptionOnDelete);
+                }
+            }
+            return;
+        }
+
+        /*
+         * Hand the container directory over to the reaper which renames it
+         * aside and deletes it in the background.
+         */
+        if (asynchronousCleanUp) {
+            DirectoryReaper.getInstance().reap(new File(containerRootFolderName));
+            return;
+        }
+
         /*
          * Delete container directory.
          */
@@ -145,6 +419,65 @@ public abstract class AbstractInstalledContainerUtil implements ContainerUtil {
         }
     }
 
+    /**
+     * Retrieves the workspace manager that keeps track of the container root
+     * folders in the temporary directory.
+     *
+     * @return Returns the {@link WorkspaceManager}.
+     */
+    private WorkspaceManager getWorkspaceManager() {
+        return WorkspaceManager.getInstance(new File(getTemporaryDirectory()), workspaceQuota);
+    }
+
+    /**
+     * Allocates free ports for the ports of the container that need to be
+     * allocated. Subclasses that use additional ports override this method to
+     * allocate them as well.
+     */
+    protected void allocatePorts() {
+        containerPort = allocatePort(configuredContainerPort);
+    }
+
+    /**
+     * Allocates a free port when dynamic ports are used or when the port isn't
+     * configured. The configured port should be passed instead of a previously
+     * resolved one since the allocated ports are released when the container
+     * is stopped.
+     *
+     * @param port
+     *            The configured port.
+     * @return Returns the configured port or the allocated free port.
+     */
+    protected Integer allocatePort(final Integer port) {
+        if (!dynamicPorts && port != null && port.intValue() != 0) {
+            return port;
+        }
+
+        try {
+            final int allocated = PortAllocator.getInstance(new File(getTemporaryDirectory())).allocate();
+            allocatedPorts.add(allocated);
+
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info("Allocated port " + allocated + " for " + containerName);
+            }
+
+            return allocated;
+        } catch (final IOException e) {
+            throw new ConfigurationException("Failed to allocate a port for " + containerName + "!", e);
+        }
+    }
+
+    /**
+     * Releases the ports that were allocated for the container.
+     */
+    private void releasePorts() {
+        final PortAllocator allocator = PortAllocator.getInstance(new File(getTemporaryDirectory()));
+        for (final Integer port : allocatedPorts) {
+            allocator.release(port);
+        }
+        allocatedPorts.clear();
+    }
+
     /**
      * Sets up the container home directory so the container can be extracted
      * and started there.
@@ -155,19 +488,22 @@ public abstract class AbstractInstalledContainerUtil implements ContainerUtil {
          * unique storage location for the container to start up in. This way
          * clashing of containers will be kept to the minimum.
          */
-        final String operatingSystem = System.getProperty("os.name");
         final StringBuilder builder = new StringBuilder();
-        if (operatingSystem != null && operatingSystem.startsWith("Windows")) {
-            builder.append("C:/WINDOWS/Temp/");
-        } else {
-            builder.append("/tmp/");
-        }
+        builder.append(getTemporaryDirectory());
 
         /*
          * Get the time in millis so concurrent builds using the cargo-itest
-         * utility can be executed without clashing with eachother.
+         * utility can be executed without clashing with eachother. Containers
+         * that are created in the same millisecond by this JVM get the next
+         * free time stamp.
          */
-        final Long timeStamp = Calendar.getInstance().getTimeInMillis();
+        final long now = Calendar.getInstance().getTimeInMillis();
+        long last;
+        long timeStamp;
+        do {
+            last = LAST_TIME_STAMP.get();
+            timeStamp = Math.max(now, last + 1);
+        } while (!LAST_TIME_STAMP.compareAndSet(last, timeStamp));
         builder.append(timeStamp);
         builder.append("/");
         containerRootFolderName = builder.toString();
@@ -180,6 +516,21 @@ public abstract class AbstractInstalledContainerUtil implements ContainerUtil {
         }
     }
 
+    /**
+     * Determines the temporary directory of the operating system where the
+     * containers will be extracted and started.
+     *
+     * @return Returns the path to the temporary directory ending with a slash.
+     */
+    protected static String getTemporaryDirectory() {
+        final String operatingSystem = System.getProperty("os.name");
+        if (operatingSystem != null && operatingSystem.startsWith("Windows")) {
+            return "C:/WINDOWS/Temp/";
+        }
+
+        return "/tmp/";
+    }
+
     /**
      * Sets up the configuration needed for the deployable to be able to run
      * correctly.
@@ -196,6 +547,21 @@ public abstract class AbstractInstalledContainerUtil implements ContainerUtil {
             LOGGER.info("Cleaning up " + containerName + "...");
         }
 
+        /*
+         * Reserve the ports before anything uses them.
+         */
+        allocatePorts();
+
+        /*
+         * Lock the root folder so it won't be removed by the workspace sweep of
+         * other builds while the container is running.
+         */
+        try {
+            workspace = getWorkspaceManager().acquire(new File(containerRootFolderName));
+        } catch (final IOException e) {
+            throw new ConfigurationException("Failed to create the directory: " + containerRootFolderName, e);
+        }
+
         // In windows the renaming causes problem when:
         // - The zip file has not the same name of the installed directory.
         // - The ZipURLInstaller fails.
@@ -225,8 +591,25 @@ public abstract class AbstractInstalledContainerUtil implements ContainerUtil {
          * Download and configure the container.
          */
         final String installDir = StringUtils.substringBeforeLast(StringUtils.chomp(containerHome, "/"), "/");
-        if (StringUtils.contains(this.remoteLocation, "http")) {
+        if (StringUtils.contains(this.remoteLocation, "http") && isStreamingInstall(containerFile, containerFileChecksum)) {
+
+            final long start = System.nanoTime();
+            streamArchive(containerFile, containerFileChecksum, new File(containerHome));
+            startupMetrics.record(StartupMetrics.STREAMING_INSTALL, start);
+
+        } else if (StringUtils.contains(this.remoteLocation, "http") && useArtifactCache) {
 
+            final long start = System.nanoTime();
+            final File archive = retrieveArchive(containerFile, containerFileChecksum);
+            startupMetrics.record(StartupMetrics.DOWNLOAD, start);
+
+            final long extractStart = System.nanoTime();
+            installArchive(archive, new File(containerHome));
+            startupMetrics.record(StartupMetrics.EXTRACT, extractStart);
+
+        } else if (StringUtils.contains(this.remoteLocation, "http")) {
+
+            final long start = System.nanoTime();
             try {
                 final URL remoteLocationUrl = new URL(this.remoteLocation + containerFile);
                 final ZipURLInstaller installer = new ZipURLInstaller(remoteLocationUrl, installDir, installDir);
@@ -234,6 +617,7 @@ public abstract class AbstractInstalledContainerUtil implements ContainerUtil {
             } catch (final MalformedURLException e) {
                 throw new DeployException("Failed to download container!", e);
             }
+            startupMetrics.record(StartupMetrics.DOWNLOAD, start);
 
             /*
              * Rename the install directory to the container home directory so
@@ -249,7 +633,9 @@ public abstract class AbstractInstalledContainerUtil implements ContainerUtil {
                 LOGGER.info("To: " + destenationDir.getPath());
             }
 
+            final long renameStart = System.nanoTime();
             final boolean renamed = installedDir.renameTo(destenationDir);
+            startupMetrics.record(StartupMetrics.RENAME, renameStart);
 
             if (!renamed) {
                 final String msg = "Failed to rename container install directory to home directory name!";
@@ -262,10 +648,9 @@ public abstract class AbstractInstalledContainerUtil implements ContainerUtil {
 
         } else {
 
-            final Unzip unzipper = new Unzip();
-            unzipper.setSrc(new File(this.remoteLocation + containerFile));
-            unzipper.setDest(new File(containerHome));
-            unzipper.execute();
+            final long start = System.nanoTime();
+            installArchive(new File(this.remoteLocation + containerFile), new File(containerHome));
+            startupMetrics.record(StartupMetrics.EXTRACT, start);
         }
 
         /*
@@ -276,110 +661,1141 @@ public abstract class AbstractInstalledContainerUtil implements ContainerUtil {
     }
 
     /**
-     * Deploys the application to the correct
+     * Creates the artifact cache where downloaded archives are stored.
+     *
+     * @return Returns an {@link ArtifactCache}.
      */
-    protected abstract void deploy();
-
-    @Override
-    public void start() {
-        setupContainer();
-
-        deploy();
+    private ArtifactCache createArtifactCache() {
+        return new ArtifactCache(new File(artifactCacheDirectory), artifactCacheMaxSize);
     }
 
-    @Override
-    public void stop() {
-        installedLocalContainer.stop();
+    /**
+     * Determines if a remote archive should be installed by streaming it
+     * straight into its destination. This is only done when streaming is
+     * enabled, no template is needed and the archive isn't cached already.
+     * Without artifact cache a filtered installation is always streamed.
+     *
+     * @param fileName
+     *            The name of the archive in the remote location.
+     * @param expectedChecksum
+     *            The SHA-256 the archive should have or null if it shouldn't
+     *            be verified.
+     * @return Returns true if the archive should be streamed.
+     */
+    protected boolean isStreamingInstall(final String fileName, final String expectedChecksum) {
+        if (useContainerTemplates) {
+            return false;
+        }
 
-        if (cleanUpAfterContainerStopped) {
-            cleanUpContainer();
+        /*
+         * The Cargo installer can't filter entries so without a cache the
+         * filtered archive is streamed instead.
+         */
+        if (!useArtifactCache) {
+            return streamingInstall || createEntryFilter() != null;
         }
-    }
 
-    /**
-     * @param configResourcesPath
-     *            the configResourcesPath to set
-     */
-    public void setConfigResourcesPath(final String configResourcesPath) {
-        this.configResourcesPath = configResourcesPath;
+        if (streamingInstall) {
+            try {
+                return createArtifactCache().lookup(new URL(this.remoteLocation + fileName), expectedChecksum) == null;
+            } catch (final MalformedURLException e) {
+                throw new DeployException("Failed to download container!", e);
+            }
+        }
+
+        return false;
     }
 
     /**
-     * @return the configResourcesPath
+     * Downloads a remote archive and extracts it into the destination while
+     * it is being downloaded. When the artifact cache is enabled the archive
+     * is published in the cache as well so next runs won't need the network.
+     *
+     * @param fileName
+     *            The name of the archive in the remote location.
+     * @param expectedChecksum
+     *            The SHA-256 the archive should have or null if it shouldn't
+     *            be verified.
+     * @param destination
+     *            The directory where the archive will be extracted to.
      */
-    public String getConfigResourcesPath() {
-        return configResourcesPath;
+    protected void streamArchive(final String fileName, final String expectedChecksum, final File destination) {
+        final ArtifactCache artifactCache = createArtifactCache();
+
+        try {
+            final URL url = new URL(this.remoteLocation + fileName);
+            final StreamingZipInstaller installer = new StreamingZipInstaller(url);
+            installer.setEntryFilter(createEntryFilter());
+
+            File spoolFile = null;
+            if (useArtifactCache) {
+                spoolFile = artifactCache.createDownloadFile(url);
+                installer.setSpoolFile(spoolFile);
+            }
+
+            try {
+                final String checksum = installer.install(destination);
+
+                if (spoolFile != null) {
+                    artifactCache.publish(url, spoolFile, checksum, expectedChecksum);
+                } else if (expectedChecksum != null && !expectedChecksum.equalsIgnoreCase(checksum)) {
+                    throw new IOException("Checksum mismatch for " + url + ": expected " + expectedChecksum + " but was "
+                            + checksum);
+                }
+            } finally {
+                if (spoolFile != null) {
+                    spoolFile.delete();
+                }
+            }
+        } catch (final MalformedURLException e) {
+            throw new DeployException("Failed to download container!", e);
+        } catch (final IOException e) {
+            throw new DeployException("Failed to install " + fileName + " from " + remoteLocation + "!", e);
+        }
     }
 
     /**
-     * @param deployableLocations
-     *            the deployableLocations to set
+     * Retrieves an archive from the remote location. The archive is taken from
+     * the local artifact cache when it was downloaded before so no network I/O
+     * is needed.
+     *
+     * @param fileName
+     *            The name of the archive in the remote location.
+     * @param expectedChecksum
+     *            The SHA-256 the archive should have or null if it shouldn't
+     *            be verified.
+     * @return Returns the local copy of the archive.
      */
-    public void setDeployableLocations(final Map<String, String> deployableLocations) {
-        this.deployableLocations = deployableLocations;
+    protected File retrieveArchive(final String fileName, final String expectedChecksum) {
+        try {
+            final URL url = new URL(this.remoteLocation + fileName);
+            return createArtifactCache().retrieve(url, expectedChecksum);
+        } catch (final MalformedURLException e) {
+            throw new DeployException("Failed to download container!", e);
+        } catch (final IOException e) {
+            throw new DeployException("Failed to download " + fileName + " from " + remoteLocation + "!", e);
+        }
     }
 
     /**
-     * @param locations
-     *            the deployable configuration locations that will be set.
+     * Installs the container distribution into the container home. When
+     * container templates are enabled the distribution is extracted only once
+     * and the container home is cloned from the template.
+     *
+     * @param archive
+     *            The archive containing the container distribution.
+     * @param destination
+     *            The container home.
      */
-    public void setDeployableLocationConfigurations(final List<DeployableLocationConfiguration> deployableLocationConfigurations) {
-        this.deployableLocationConfigurations = deployableLocationConfigurations;
-    }
+    protected void installArchive(final File archive, final File destination) {
+        if (!useContainerTemplates) {
+            extractArchive(archive, destination);
+            return;
+        }
 
-    @Override
-    public void addDeployableLocation(final String location, final String type) {
-        this.deployableLocations.put(type, location);
-    }
+        final ContainerTemplates templates = new ContainerTemplates(new File(containerTemplatesDirectory), mutableDirectories,
+                containerTemplatesMaxSize);
+        final String fingerprint = archive.getAbsolutePath() + "|" + archive.length() + "|" + archive.lastModified() + "|"
+                + createEntryFilter();
+        final String key = StringUtils.substringBeforeLast(archive.getName(), ".") + "-"
+                + StringUtils.left(ArtifactCache.digest(fingerprint), 16);
 
-    @Override
-    public Integer getContainerPort() {
-        return containerPort;
+        try {
+            File template = templates.lookup(key);
+            if (template == null) {
+                if (LOGGER.isInfoEnabled()) {
+                    LOGGER.info("Creating container template " + key + "...");
+                }
+
+                final File staging = templates.createStagingDirectory(key);
+                extractArchive(archive, staging);
+                template = templates.publish(key, staging);
+            }
+
+            templates.cloneTo(template, destination);
+        } catch (final IOException e) {
+            throw new ConfigurationException("Failed to install " + archive.getName() + " from its template!", e);
+        }
     }
 
     /**
-     * @param systemProperties
-     *            the systemProperties to set
+     * Extracts a local archive into the specified directory.
+     *
+     * @param archive
+     *            The archive to extract.
+     * @param destination
+     *            The directory where the archive will be extracted to.
      */
-    public void setSystemProperties(final Map<String, String> systemProperties) {
-        this.systemProperties = systemProperties;
+    protected void extractArchive(final File archive, final File destination) {
+        extractArchive(archive, destination, createEntryFilter());
     }
 
     /**
-     * Retrieves the JVM arguments
+     * Extracts a local archive into the specified directory using the
+     * specified filter.
      *
-     * @return Returns a unmodifiable list containing the current JVM arguments.
+     * @param archive
+     *            The archive to extract.
+     * @param destination
+     *            The directory where the archive will be extracted to.
+     * @param entryFilter
+     *            The filter that decides which entries will be extracted or
+     *            null if all entries should be extracted.
      */
-    public List<String> getJvmArguments() {
-        return Collections.unmodifiableList(jvmArguments);
+    protected void extractArchive(final File archive, final File destination, final EntryFilter entryFilter) {
+        /*
+         * The Ant unzip task isn't used when filtering since the extractor
+         * skips the entries while it reads the central directory.
+         */
+        if (parallelExtraction || entryFilter != null) {
+            ParallelZipExtractor extractor = new ParallelZipExtractor();
+            if (extractionThreads != null) {
+                extractor = new ParallelZipExtractor(extractionThreads);
+            } else if (!parallelExtraction) {
+                extractor = new ParallelZipExtractor(1);
+            }
+            extractor.setEntryFilter(entryFilter);
+
+            try {
+                extractor.extract(archive, destination);
+            } catch (final IOException e) {
+                throw new ConfigurationException("Failed to extract " + archive.getPath() + "!", e);
+            }
+            return;
+        }
+
+        final Unzip unzipper = new Unzip();
+        unzipper.setSrc(archive);
+        unzipper.setDest(destination);
+        unzipper.execute();
     }
 
     /**
-     * @param jvmArguments
-     *            the jvmArguments to set
+     * Creates the filter that decides which entries of the container archives
+     * will be extracted. The minimal excludes of the container are added when
+     * a minimal install was requested.
+     *
+     * @return Returns an {@link EntryFilter} or null if all entries should be
+     *         extracted.
      */
-    @Required
-    public void setJvmArguments(final List<String> jvmArguments) {
-        this.jvmArguments = new ArrayList<String>(jvmArguments);
-    }
+    protected EntryFilter createEntryFilter() {
+        final List<String> excludes = new ArrayList<String>(extractionExcludes);
+        if (minimalInstall) {
+            excludes.addAll(getMinimalExcludes());
+        }
 
-    @Required
-    public void setCargoLogFilePath(final String cargoLogFilePath) {
-        this.cargoLogFilePath = cargoLogFilePath;
+        if (extractionIncludes.isEmpty() && excludes.isEmpty()) {
+            return null;
+        }
+
+        return new EntryFilter(extractionIncludes, excludes);
     }
 
     /**
-     * @param containerPort
-     *            the containerPort to set
+     * Retrieves the glob patterns of the parts of the container distribution
+     * that aren't needed to run integration tests. Containers can override
+     * this to skip things like documentation, examples and unused server
+     * profiles when a minimal install is requested.
+     *
+     * @return Returns a list of glob patterns relative to the container home.
      */
-    @Required
-    public void setContainerPort(final Integer containerPort) {
-        this.containerPort = containerPort;
+    protected List<String> getMinimalExcludes() {
+        return Collections.emptyList();
     }
 
     /**
-     * @param remoteLocation
-     *            the remoteLocation to set
+     * Deploys the application to the correct
+     */
+    protected abstract void deploy();
+
+    /**
+     * Starts the Cargo container and records the time it took. The container
+     * JVM is launched by a {@link ProcessJvmLauncherFactory} so its process
+     * can be monitored and killed. When the readiness probe is used the start
+     * only returns when the deployed web applications answer.
+     */
+    protected void startInstalledContainer() {
+        containerProcess = null;
+        if (!(installedLocalContainer instanceof AbstractInstalledLocalContainer)) {
+            final long start = System.nanoTime();
+            installedLocalContainer.start();
+            startupMetrics.record(StartupMetrics.LAUNCH, start);
+            return;
+        }
+
+        final ProcessJvmLauncherFactory launcherFactory = new ProcessJvmLauncherFactory();
+        ((AbstractInstalledLocalContainer) installedLocalContainer).setJvmLauncherFactory(launcherFactory);
+
+        final List<URL> urls = getReadinessUrls();
+        if (!readinessProbe || urls.isEmpty()) {
+            final long start = System.nanoTime();
+            installedLocalContainer.start();
+            startupMetrics.record(StartupMetrics.LAUNCH, start);
+            containerProcess = launcherFactory.getServerLauncher();
+            return;
+        }
+
+        /*
+         * Launch the JVM without the start wait of Cargo since the probe
+         * waits for the applications themselves.
+         */
+        final long timeout = installedLocalContainer.getTimeout();
+        installedLocalContainer.setTimeout(0L);
+
+        final long start = System.nanoTime();
+        try {
+            installedLocalContainer.start();
+        } finally {
+            installedLocalContainer.setTimeout(timeout);
+        }
+        startupMetrics.record(StartupMetrics.LAUNCH, start);
+        containerProcess = launcherFactory.getServerLauncher();
+
+        final ReadinessProbe probe = new ReadinessProbe(urls, timeout);
+        probe.setNotFoundAccepted(ReadinessProbe.createContextRootUrls(getBaseUrl(), deployableLocations,
+                deployableLocationConfigurations));
+        probe.setProcess(containerProcess);
+        if (readinessMaxDelay != null) {
+            probe.setMaxDelay(readinessMaxDelay);
+        }
+
+        final long probeStart = System.nanoTime();
+        probe.await();
+        startupMetrics.record(StartupMetrics.READINESS, probeStart);
+    }
+
+    /**
+     * Stops the Cargo container gracefully within the shutdown time out. When
+     * the stop takes longer or fails the container process and the processes
+     * it started are killed so the clean up can continue.
+     */
+    protected void stopInstalledContainer() {
+        containerKilled = false;
+        final long start = System.nanoTime();
+        final Future<?> stopping = ContainerTasks.submit(new Runnable() {
+            @Override
+            public void run() {
+                installedLocalContainer.stop();
+            }
+        });
+
+        try {
+            stopping.get(shutdownTimeOut, TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn(containerName + " did not stop within " + shutdownTimeOut + " ms, killing it...");
+            }
+            stopping.cancel(true);
+            killContainer();
+        } catch (final ExecutionException e) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Failed to stop " + containerName + ", killing it...", e.getCause());
+            }
+            killContainer();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopping.cancel(true);
+            killContainer();
+        }
+
+        shutdownDuration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Stopped " + containerName + " in " + shutdownDuration + " ms");
+        }
+    }
+
+    /**
+     * Kills the container process and the processes it started.
+     */
+    private void killContainer() {
+        if (containerProcess == null) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("The process of " + containerName + " is unknown so it can't be killed.");
+            }
+            return;
+        }
+
+        containerProcess.destroyTree();
+        containerKilled = true;
+    }
+
+    /**
+     * Determines the URLs of the deployed web applications that need to
+     * answer before the container is ready.
+     *
+     * @return Returns a list containing the URLs.
+     */
+    protected List<URL> getReadinessUrls() {
+        return ReadinessProbe.createContextUrls(getBaseUrl(), deployableLocations, deployableLocationConfigurations);
+    }
+
+    /**
+     * Creates the renderer of configuration templates. It replaces
+     * placeholders like ${cargo.server.port} by the system properties of the
+     * container, which also contain the allocated ports.
+     *
+     * @return Returns a {@link TemplateRenderer}.
+     */
+    protected TemplateRenderer createTemplateRenderer() {
+        final Map<String, String> values = new HashMap<String, String>(systemProperties);
+        if (containerPort != null) {
+            values.put("cargo.server.port", containerPort.toString());
+        }
+
+        return new TemplateRenderer(values);
+    }
+
+    /**
+     * Determines the JVM arguments of the container. These are the configured
+     * JVM arguments merged with the JVM profile followed by the class data
+     * sharing option when fast boot is used.
+     *
+     * @return Returns a list containing the JVM arguments.
+     */
+    protected List<String> getContainerJvmArguments() {
+        final List<String> arguments;
+        if (jvmProfile == null) {
+            arguments = new ArrayList<String>(jvmArguments);
+        } else {
+            final long heapSize = jvmProfile.getHeapSize(JvmProfile.getAvailableMemory(), parallelContainers);
+            arguments = JvmProfile.merge(jvmProfile.getArguments(heapSize), jvmArguments);
+        }
+
+        if (classDataSharingArchive != null) {
+            arguments.add("-XX:SharedArchiveFile=" + classDataSharingArchive.getAbsolutePath());
+        } else if (classDataSharingRecording != null) {
+            arguments.add("-XX:ArchiveClassesAtExit=" + classDataSharingRecording.getAbsolutePath());
+        }
+
+        return arguments;
+    }
+
+    /**
+     * Creates the JVM argument line that is passed to the Cargo configuration
+     * of the container.
+     *
+     * @return Returns the JVM arguments separated by spaces.
+     */
+    protected String getJvmArgumentLine() {
+        final StringBuilder args = new StringBuilder();
+        for (final String arg : getContainerJvmArguments()) {
+            args.append(arg);
+            args.append(" ");
+
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info("Added JVM argument: " + arg);
+            }
+        }
+
+        return args.toString();
+    }
+
+    /**
+     * Looks up the class data sharing archive of the container and its
+     * deployables. When there is none yet the container JVM records one that
+     * is published when the container is stopped.
+     */
+    private void setupFastBoot() {
+        classDataSharingKey = null;
+        classDataSharingArchive = null;
+        classDataSharingRecording = null;
+
+        if (!fastBoot) {
+            return;
+        }
+
+        if (!ClassDataSharingCache.isSupported()) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Fast boot needs Java 13 or newer, starting " + containerName + " without it.");
+            }
+            return;
+        }
+
+        final List<File> deployables = new ArrayList<File>();
+        for (final String location : deployableLocations.keySet()) {
+            deployables.add(new File(location));
+        }
+        for (final DeployableLocationConfiguration configuration : deployableLocationConfigurations) {
+            deployables.add(new File(configuration.getPath()));
+        }
+
+        final ClassDataSharingCache cache = createClassDataSharingCache();
+        final String key = ClassDataSharingCache.createKey(containerName + "|" + containerFile + "|"
+                + containerFileChecksum, deployables);
+        classDataSharingArchive = cache.lookup(key);
+
+        if (classDataSharingArchive == null) {
+            try {
+                classDataSharingRecording = cache.createRecordingFile(key);
+            } catch (final IOException e) {
+                if (LOGGER.isWarnEnabled()) {
+                    LOGGER.warn("Failed to create the class data sharing cache, starting " + containerName
+                            + " without fast boot.", e);
+                }
+                return;
+            }
+        }
+        classDataSharingKey = key;
+
+        if (LOGGER.isInfoEnabled()) {
+            if (classDataSharingArchive != null) {
+                LOGGER.info("Fast boot: using class data sharing archive " + classDataSharingArchive.getPath());
+            } else {
+                LOGGER.info("Fast boot: recording class data sharing archive " + classDataSharingRecording.getPath());
+            }
+        }
+    }
+
+    /**
+     * Records the time it took to launch the container so launching with and
+     * without the class data sharing archive can be compared.
+     */
+    private void recordFastBoot() {
+        if (classDataSharingKey == null) {
+            return;
+        }
+
+        final long millis = startupMetrics.getDuration(StartupMetrics.LAUNCH, TimeUnit.MILLISECONDS)
+                + startupMetrics.getDuration(StartupMetrics.READINESS, TimeUnit.MILLISECONDS);
+        createClassDataSharingCache().recordLaunch(classDataSharingKey, classDataSharingArchive != null, millis);
+    }
+
+    /**
+     * Publishes the class data sharing archive the container JVM recorded
+     * when it exited.
+     */
+    private void publishFastBoot() {
+        if (classDataSharingKey == null || classDataSharingRecording == null) {
+            return;
+        }
+
+        /*
+         * The archive is written while the JVM exits so wait for it when the
+         * process is known. A killed JVM leaves an incomplete archive behind.
+         */
+        if (containerKilled) {
+            classDataSharingRecording.delete();
+        } else if (containerProcess != null && !containerProcess.waitFor(shutdownTimeOut)) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("The JVM of " + containerName + " did not exit, discarding the class data sharing archive.");
+            }
+            classDataSharingRecording.delete();
+        } else {
+            createClassDataSharingCache().publish(classDataSharingKey, classDataSharingRecording);
+        }
+
+        classDataSharingKey = null;
+        classDataSharingRecording = null;
+    }
+
+    /**
+     * Creates the cache of the class data sharing archives. It has its own
+     * directory and quota so it doesn't compete with the artifact cache.
+     *
+     * @return Returns the {@link ClassDataSharingCache}.
+     */
+    private ClassDataSharingCache createClassDataSharingCache() {
+        return new ClassDataSharingCache(new File(classDataSharingCacheDirectory), classDataSharingCacheMaxSize);
+    }
+
+    /**
+     * Writes the startup metrics as a JSON report to the Cargo log directory.
+     */
+    private void writeStartupReport() {
+        /*
+         * Name the report after the container, or its root folder when it has
+         * no name, and let the file system make the name unique.
+         */
+        final String name;
+        if (StringUtils.isNotBlank(containerName)) {
+            name = containerName;
+        } else if (containerRootFolderName != null) {
+            name = new File(containerRootFolderName).getName();
+        } else {
+            name = "container";
+        }
+
+        final File report;
+        try {
+            final File directory = new File(cargoLogFilePath);
+            FileUtils.forceMkdir(directory);
+            report = File.createTempFile("startup-metrics-" + name + "-" + System.currentTimeMillis() + "-", ".json",
+                    directory);
+        } catch (final IOException e) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Failed to create the startup metrics report in " + cargoLogFilePath, e);
+            }
+            return;
+        }
+
+        try {
+            startupMetrics.writeReport(report);
+        } catch (final IOException e) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Failed to write the startup metrics to " + report.getPath(), e);
+            }
+            return;
+        }
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Started " + containerName + " in " + startupMetrics.getTotal(TimeUnit.MILLISECONDS) + " ms "
+                    + startupMetrics.getPhases().keySet() + ", report: " + report.getPath());
+        }
+    }
+
+    @Override
+    public synchronized void prepare() {
+        if (!prepared) {
+            startupMetrics = new StartupMetrics(containerName);
+            checkDeployables();
+            setupContainer();
+            prepared = true;
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        prepare();
+
+        setupFastBoot();
+
+        deploy();
+
+        recordDeployables();
+
+        recordFastBoot();
+
+        writeStartupReport();
+    }
+
+    @Override
+    public Future<Void> startAsync() {
+        return ContainerTasks.startAsync(this, containerName);
+    }
+
+    @Override
+    public Future<Void> stopAsync() {
+        return ContainerTasks.stopAsync(this);
+    }
+
+    @Override
+    public void redeploy(final DeployableLocationConfiguration configuration) {
+        final File file = new File(configuration.getPath());
+        if (isDeployed(configuration) && isUnchanged(file)) {
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info("Skipping redeploy of " + configuration.getPath() + " since it is unchanged.");
+            }
+            return;
+        }
+
+        final Deployable deployable = createDeployable(configuration);
+        final Deployer deployer = createDeployer();
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Redeploying " + configuration.getPath() + "...");
+        }
+
+        final long start = System.currentTimeMillis();
+        try {
+            final DeployableMonitor monitor = createDeployableMonitor(deployable);
+            if (monitor == null) {
+                deployer.redeploy(deployable);
+            } else {
+                deployer.redeploy(deployable, monitor);
+            }
+        } catch (final RuntimeException e) {
+            throw new DeployException("Failed to redeploy " + configuration.getPath() + "!", e);
+        }
+
+        /*
+         * Keep track of the deployable so it is deployed again on the next
+         * start.
+         */
+        removeDeployableLocationConfiguration(configuration);
+        deployableLocationConfigurations.add(configuration);
+        recordDeployable(file);
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Redeployed " + configuration.getPath() + " in " + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+
+    @Override
+    public void undeploy(final DeployableLocationConfiguration configuration) {
+        final Deployable deployable = createDeployable(configuration);
+        final Deployer deployer = createDeployer();
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Undeploying " + configuration.getPath() + "...");
+        }
+
+        try {
+            final DeployableMonitor monitor = createDeployableMonitor(deployable);
+            if (monitor == null) {
+                deployer.undeploy(deployable);
+            } else {
+                deployer.undeploy(deployable, monitor);
+            }
+        } catch (final RuntimeException e) {
+            throw new DeployException("Failed to undeploy " + configuration.getPath() + "!", e);
+        }
+
+        removeDeployableLocationConfiguration(configuration);
+        try {
+            deployedFingerprints.remove(new File(configuration.getPath()));
+        } catch (final IOException e) {
+            throw new DeployException("Failed to forget the fingerprint of " + configuration.getPath() + "!", e);
+        }
+    }
+
+    /**
+     * Determines if a deployable location configuration is deployed with the
+     * same path and context name.
+     *
+     * @param configuration
+     *            The deployable location configuration.
+     * @return Returns true if it is deployed.
+     */
+    private boolean isDeployed(final DeployableLocationConfiguration configuration) {
+        for (final DeployableLocationConfiguration existing : deployableLocationConfigurations) {
+            if (StringUtils.equals(existing.getPath(), configuration.getPath())
+                    && StringUtils.equals(existing.getContextName(), configuration.getContextName())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Determines if a deployable is unchanged since it was deployed in the
+     * running container.
+     *
+     * @param file
+     *            The deployable.
+     * @return Returns true if it is unchanged.
+     */
+    private boolean isUnchanged(final File file) {
+        try {
+            return deployedFingerprints.isUnchanged(file);
+        } catch (final IOException e) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Failed to determine the fingerprint of " + file.getPath(), e);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Records the fingerprint of a deployable that was deployed in the
+     * running container.
+     *
+     * @param file
+     *            The deployable.
+     */
+    private void recordDeployable(final File file) {
+        try {
+            deployedFingerprints.record(file);
+        } catch (final IOException e) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Failed to record the fingerprint of " + file.getPath(), e);
+            }
+        }
+    }
+
+    /**
+     * Records the fingerprints of all deployables of the started container.
+     */
+    private void recordDeployables() {
+        for (final String location : deployableLocations.keySet()) {
+            recordDeployable(new File(location));
+        }
+        for (final DeployableLocationConfiguration configuration : deployableLocationConfigurations) {
+            recordDeployable(new File(configuration.getPath()));
+        }
+    }
+
+    /**
+     * Creates a deployer for the running container.
+     *
+     * @return Returns a {@link Deployer}.
+     */
+    protected Deployer createDeployer() {
+        if (installedLocalContainer == null) {
+            throw new DeployException("The container is not started yet!");
+        }
+
+        return new DefaultDeployerFactory().createDeployer(installedLocalContainer);
+    }
+
+    /**
+     * Determines the type of a deployable. The type is detected from the
+     * deployment descriptors in the archive and checked against the
+     * configured type so a mistyped deployable fails before the container is
+     * started.
+     *
+     * @param path
+     *            The path of the deployable.
+     * @param type
+     *            A string representation of the configured deployable type,
+     *            i.e. EAR, WAR or EJB, or null if it isn't configured.
+     * @return Returns the {@link DeployableType}. When neither the archive nor
+     *         the configuration tell the type the default type of the
+     *         container is returned.
+     * @throws DeployException
+     *             Is thrown when the deployable doesn't exist, when the type
+     *             is unknown or when the archive doesn't match the type.
+     */
+    protected DeployableType determineDeployableType(final String path, final String type) {
+        DeployableType configuredType = null;
+        if ("EAR".equalsIgnoreCase(type)) {
+            configuredType = DeployableType.EAR;
+        } else if ("WAR".equalsIgnoreCase(type)) {
+            configuredType = DeployableType.WAR;
+        } else if ("EJB".equalsIgnoreCase(type)) {
+            configuredType = DeployableType.EJB;
+        } else if (StringUtils.isNotBlank(type)) {
+            throw new DeployException("Unknown deployable type " + type + " of " + path + ", use EAR, WAR or EJB!");
+        }
+
+        final DeployableType detectedType;
+        try {
+            detectedType = DeployableTypeDetector.detect(new File(path));
+        } catch (final IOException e) {
+            throw new DeployException("Failed to determine the deployable type of " + path + "!", e);
+        }
+
+        if (configuredType != null && detectedType != null && !configuredType.equals(detectedType)) {
+            throw new DeployException(path + " is configured as " + type + " but is a "
+                    + StringUtils.upperCase(detectedType.getType()) + " file!");
+        }
+
+        if (detectedType != null) {
+            return detectedType;
+        } else if (configuredType != null) {
+            return configuredType;
+        }
+
+        return getDefaultDeployableType();
+    }
+
+    /**
+     * Determines the type of deployable that is used when it can't be
+     * determined otherwise.
+     *
+     * @return Returns the default {@link DeployableType}.
+     */
+    protected DeployableType getDefaultDeployableType() {
+        return DeployableType.EAR;
+    }
+
+    /**
+     * Checks the type of all deployables so mistyped or missing deployables
+     * are reported before the container is installed.
+     */
+    private void checkDeployables() {
+        for (final Map.Entry<String, String> entry : deployableLocations.entrySet()) {
+            determineDeployableType(entry.getKey(), entry.getValue());
+        }
+        for (final DeployableLocationConfiguration configuration : deployableLocationConfigurations) {
+            determineDeployableType(configuration.getPath(), configuration.getType());
+        }
+    }
+
+    /**
+     * Prepares a deployable before it is handed to Cargo. When exploded
+     * deployment is used a WAR file is synced to its exploded directory.
+     *
+     * @param path
+     *            The path of the deployable.
+     * @param deployableType
+     *            The type of the deployable.
+     * @return Returns the path that should be deployed.
+     */
+    protected String prepareDeployable(final String path, final DeployableType deployableType) {
+        final File archive = new File(path);
+        if (!explodedDeployment || !DeployableType.WAR.equals(deployableType) || !archive.isFile()) {
+            return path;
+        }
+
+        final File directory = new File(explodedDirectory, archive.getName());
+        synchronized (EXPLODE_LOCK) {
+            try {
+                final DeployableFingerprints synced = new DeployableFingerprints(new File(explodedDirectory,
+                        EXPLODED_FINGERPRINTS));
+
+                /*
+                 * An unchanged archive doesn't even need to be opened.
+                 */
+                if (directory.isDirectory() && synced.isUnchanged(archive)) {
+                    if (LOGGER.isInfoEnabled()) {
+                        LOGGER.info("Exploded " + path + " is up to date.");
+                    }
+                } else {
+                    new ExplodedDeployableSync(archive, directory).sync();
+                    synced.record(archive);
+                }
+            } catch (final IOException e) {
+                throw new DeployException("Failed to explode " + path + " to " + directory.getPath() + "!", e);
+            }
+        }
+
+        return directory.getAbsolutePath();
+    }
+
+    /**
+     * Creates the Cargo deployable for a deployable location configuration.
+     * The context of a WAR is set to the context name when there is one.
+     *
+     * @param configuration
+     *            The deployable location configuration.
+     * @return Returns the {@link Deployable}.
+     */
+    protected Deployable createDeployable(final DeployableLocationConfiguration configuration) {
+        final DeployableType deployableType = determineDeployableType(configuration.getPath(), configuration.getType());
+
+        final Deployable deployable = new DefaultDeployableFactory().createDeployable(installedLocalContainer.getId(),
+                prepareDeployable(configuration.getPath(), deployableType), deployableType);
+
+        final String contextName = configuration.getContextName();
+        if (deployable instanceof WAR && contextName != null && contextName.length() > 0) {
+            ((WAR) deployable).setContext(contextName);
+        }
+
+        return deployable;
+    }
+
+    /**
+     * Creates a monitor that checks if a deployable is reachable. Only web
+     * applications can be monitored since they have a context to check.
+     *
+     * @param deployable
+     *            The deployable to monitor.
+     * @return Returns a {@link DeployableMonitor} or null if the deployable
+     *         can't be monitored.
+     */
+    protected DeployableMonitor createDeployableMonitor(final Deployable deployable) {
+        if (!(deployable instanceof WAR)) {
+            return null;
+        }
+
+        try {
+            final URL url = new URL(getBaseUrl() + ((WAR) deployable).getContext() + "/");
+            return new URLDeployableMonitor(url, deployTimeOut);
+        } catch (final MalformedURLException e) {
+            throw new DeployException("Failed to create the URL of " + deployable.getFile() + "!", e);
+        }
+    }
+
+    /**
+     * Removes the deployable location configuration with the same path or
+     * context name.
+     *
+     * @param configuration
+     *            The configuration to remove.
+     */
+    private void removeDeployableLocationConfiguration(final DeployableLocationConfiguration configuration) {
+        final List<DeployableLocationConfiguration> configurations = new ArrayList<DeployableLocationConfiguration>(
+                deployableLocationConfigurations);
+
+        final Iterator<DeployableLocationConfiguration> iterator = configurations.iterator();
+        while (iterator.hasNext()) {
+            final DeployableLocationConfiguration existing = iterator.next();
+            final boolean samePath = StringUtils.equals(existing.getPath(), configuration.getPath());
+            final boolean sameContext = StringUtils.isNotEmpty(existing.getContextName())
+                    && StringUtils.equals(existing.getContextName(), configuration.getContextName());
+
+            if (samePath || sameContext) {
+                iterator.remove();
+            }
+        }
+
+        deployableLocationConfigurations = configurations;
+    }
+
+    @Override
+    public synchronized void stop() {
+        /*
+         * A prepared container that was never started only needs to be
+         * cleaned up.
+         */
+        try {
+            if (installedLocalContainer != null) {
+                stopInstalledContainer();
+            }
+            prepared = false;
+
+            try {
+                deployedFingerprints.clear();
+            } catch (final IOException e) {
+                if (LOGGER.isWarnEnabled()) {
+                    LOGGER.warn("Failed to clear the fingerprints of " + containerName + ".", e);
+                }
+            }
+
+            publishFastBoot();
+            containerProcess = null;
+        } finally {
+            /*
+             * The ports and the workspace are always released so a failed
+             * stop doesn't leak them.
+             */
+            releasePorts();
+
+            if (cleanUpAfterContainerStopped) {
+                cleanUpContainer();
+            } else if (workspace != null) {
+                getWorkspaceManager().retain(workspace);
+                workspace = null;
+            }
+        }
+    }
+
+    /**
+     * @param configResourcesPath
+     *            the configResourcesPath to set
+     */
+    public void setConfigResourcesPath(final String configResourcesPath) {
+        this.configResourcesPath = configResourcesPath;
+    }
+
+    /**
+     * @return the configResourcesPath
+     */
+    public String getConfigResourcesPath() {
+        return configResourcesPath;
+    }
+
+    /**
+     * @param deployableLocations
+     *            the deployableLocations to set
+     */
+    public void setDeployableLocations(final Map<String, String> deployableLocations) {
+        this.deployableLocations = deployableLocations;
+    }
+
+    /**
+     * Retrieves the deployable locations.
+     *
+     * @return Returns an unmodifiable map containing the deployable locations
+     *         and their type.
+     */
+    public Map<String, String> getDeployableLocations() {
+        return Collections.unmodifiableMap(deployableLocations);
+    }
+
+    /**
+     * Retrieves the deployable location configurations.
+     *
+     * @return Returns an unmodifiable list containing the deployable location
+     *         configurations.
+     */
+    public List<DeployableLocationConfiguration> getDeployableLocationConfigurations() {
+        return Collections.unmodifiableList(deployableLocationConfigurations);
+    }
+
+    /**
+     * @param locations
+     *            the deployable configuration locations that will be set.
+     */
+    public void setDeployableLocationConfigurations(final List<DeployableLocationConfiguration> deployableLocationConfigurations) {
+        this.deployableLocationConfigurations = deployableLocationConfigurations;
+    }
+
+    @Override
+    public void addDeployableLocation(final String location, final String type) {
+        this.deployableLocations.put(location, type);
+    }
+
+    @Override
+    public Integer getContainerPort() {
+        return containerPort;
+    }
+
+    @Override
+    public StartupMetrics getStartupMetrics() {
+        return startupMetrics;
+    }
+
+    @Override
+    public String getBaseUrl() {
+        return "http://localhost:" + containerPort + "/";
+    }
+
+    /**
+     * @param systemProperties
+     *            the systemProperties to set
+     */
+    public void setSystemProperties(final Map<String, String> systemProperties) {
+        this.systemProperties = systemProperties;
+    }
+
+    /**
+     * Retrieves the JVM arguments
+     *
+     * @return Returns a unmodifiable list containing the current JVM arguments.
+     */
+    public List<String> getJvmArguments() {
+        return Collections.unmodifiableList(jvmArguments);
+    }
+
+    /**
+     * @param jvmArguments
+     *            the jvmArguments to set
+     */
+    public void setJvmArguments(final List<String> jvmArguments) {
+        this.jvmArguments = new ArrayList<String>(jvmArguments);
+    }
+
+    @Required
+    public void setCargoLogFilePath(final String cargoLogFilePath) {
+        this.cargoLogFilePath = cargoLogFilePath;
+    }
+
+    /**
+     * @param containerPort
+     *            the containerPort to set
+     */
+    @Required
+    public void setContainerPort(final Integer containerPort) {
+        this.configuredContainerPort = containerPort;
+        this.containerPort = containerPort;
+    }
+
+    /**
+     * @param readinessProbe
+     *            the readinessProbe to set
+     */
+    public void setReadinessProbe(final boolean readinessProbe) {
+        this.readinessProbe = readinessProbe;
+    }
+
+    /**
+     * @param readinessMaxDelay
+     *            the readinessMaxDelay to set
+     */
+    public void setReadinessMaxDelay(final Long readinessMaxDelay) {
+        this.readinessMaxDelay = readinessMaxDelay;
+    }
+
+    /**
+     * @return the dynamicPorts
+     */
+    public boolean isDynamicPorts() {
+        return dynamicPorts;
+    }
+
+    /**
+     * @param dynamicPorts
+     *            the dynamicPorts to set
+     */
+    public void setDynamicPorts(final boolean dynamicPorts) {
+        this.dynamicPorts = dynamicPorts;
+    }
+
+    /**
+     * @param remoteLocation
+     *            the remoteLocation to set
      */
     @Required
     public void setRemoteLocation(final String remoteLocation) {
@@ -399,6 +1815,224 @@ public abstract class AbstractInstalledContainerUtil implements ContainerUtil {
         this.cleanUpAfterContainerStopped = cleanUpAfterContainerStopped;
     }
 
+    /**
+     * @param asynchronousCleanUp
+     *            the asynchronousCleanUp to set
+     */
+    public void setAsynchronousCleanUp(final boolean asynchronousCleanUp) {
+        this.asynchronousCleanUp = asynchronousCleanUp;
+    }
+
+    /**
+     * @param workspaceQuota
+     *            the maximum size in bytes of the container directories that
+     *            are kept after their container was stopped
+     */
+    public void setWorkspaceQuota(final Long workspaceQuota) {
+        this.workspaceQuota = workspaceQuota;
+    }
+
+    /**
+     * @param useArtifactCache
+     *            the useArtifactCache to set
+     */
+    public void setUseArtifactCache(final boolean useArtifactCache) {
+        this.useArtifactCache = useArtifactCache;
+    }
+
+    /**
+     * @return the useArtifactCache
+     */
+    public boolean isUseArtifactCache() {
+        return useArtifactCache;
+    }
+
+    /**
+     * @param artifactCacheDirectory
+     *            the artifactCacheDirectory to set
+     */
+    public void setArtifactCacheDirectory(final String artifactCacheDirectory) {
+        this.artifactCacheDirectory = artifactCacheDirectory;
+    }
+
+    /**
+     * @param artifactCacheMaxSize
+     *            the maximum size in bytes of the artifact cache
+     */
+    public void setArtifactCacheMaxSize(final Long artifactCacheMaxSize) {
+        this.artifactCacheMaxSize = artifactCacheMaxSize;
+    }
+
+    /**
+     * @param useContainerTemplates
+     *            the useContainerTemplates to set
+     */
+    public void setUseContainerTemplates(final boolean useContainerTemplates) {
+        this.useContainerTemplates = useContainerTemplates;
+    }
+
+    /**
+     * @param containerTemplatesDirectory
+     *            the containerTemplatesDirectory to set
+     */
+    public void setContainerTemplatesDirectory(final String containerTemplatesDirectory) {
+        this.containerTemplatesDirectory = containerTemplatesDirectory;
+    }
+
+    /**
+     * @param containerTemplatesMaxSize
+     *            the containerTemplatesMaxSize to set
+     */
+    public void setContainerTemplatesMaxSize(final Long containerTemplatesMaxSize) {
+        this.containerTemplatesMaxSize = containerTemplatesMaxSize;
+    }
+
+    /**
+     * @param mutableDirectories
+     *            the names of the directories that will be copied instead of
+     *            linked when a template is cloned
+     */
+    public void setMutableDirectories(final List<String> mutableDirectories) {
+        this.mutableDirectories = new ArrayList<String>(mutableDirectories);
+    }
+
+    /**
+     * @param parallelExtraction
+     *            the parallelExtraction to set
+     */
+    public void setParallelExtraction(final boolean parallelExtraction) {
+        this.parallelExtraction = parallelExtraction;
+    }
+
+    /**
+     * @param extractionThreads
+     *            the extractionThreads to set
+     */
+    public void setExtractionThreads(final Integer extractionThreads) {
+        this.extractionThreads = extractionThreads;
+    }
+
+    /**
+     * @param streamingInstall
+     *            the streamingInstall to set
+     */
+    public void setStreamingInstall(final boolean streamingInstall) {
+        this.streamingInstall = streamingInstall;
+    }
+
+    /**
+     * @param extractionIncludes
+     *            the glob patterns of the archive entries that should be
+     *            extracted
+     */
+    public void setExtractionIncludes(final List<String> extractionIncludes) {
+        this.extractionIncludes = new ArrayList<String>(extractionIncludes);
+    }
+
+    /**
+     * @param extractionExcludes
+     *            the glob patterns of the archive entries that should be
+     *            skipped
+     */
+    public void setExtractionExcludes(final List<String> extractionExcludes) {
+        this.extractionExcludes = new ArrayList<String>(extractionExcludes);
+    }
+
+    /**
+     * @param minimalInstall
+     *            the minimalInstall to set
+     */
+    public void setMinimalInstall(final boolean minimalInstall) {
+        this.minimalInstall = minimalInstall;
+    }
+
+    /**
+     * Sets the JVM profile that is merged with the JVM arguments.
+     *
+     * @param jvmProfile
+     *            The name of the profile i.e. fast-boot, throughput or
+     *            low-memory.
+     */
+    public void setJvmProfile(final String jvmProfile) {
+        if (StringUtils.isBlank(jvmProfile)) {
+            this.jvmProfile = null;
+        } else {
+            this.jvmProfile = JvmProfile.fromName(jvmProfile);
+        }
+    }
+
+    /**
+     * @param parallelContainers
+     *            the parallelContainers to set
+     */
+    public void setParallelContainers(final int parallelContainers) {
+        this.parallelContainers = parallelContainers;
+    }
+
+    /**
+     * @param shutdownTimeOut
+     *            the shutdownTimeOut to set
+     */
+    public void setShutdownTimeOut(final long shutdownTimeOut) {
+        this.shutdownTimeOut = shutdownTimeOut;
+    }
+
+    /**
+     * @return the number of milliseconds the last stop of the container took
+     *         or null if it wasn't stopped yet
+     */
+    public Long getShutdownDuration() {
+        return shutdownDuration;
+    }
+
+    /**
+     * @param explodedDeployment
+     *            the explodedDeployment to set
+     */
+    public void setExplodedDeployment(final boolean explodedDeployment) {
+        this.explodedDeployment = explodedDeployment;
+    }
+
+    /**
+     * @param explodedDirectory
+     *            the explodedDirectory to set
+     */
+    public void setExplodedDirectory(final String explodedDirectory) {
+        this.explodedDirectory = explodedDirectory;
+    }
+
+    /**
+     * @param fastBoot
+     *            the fastBoot to set
+     */
+    public void setFastBoot(final boolean fastBoot) {
+        this.fastBoot = fastBoot;
+    }
+
+    /**
+     * @param classDataSharingCacheDirectory
+     *            the classDataSharingCacheDirectory to set
+     */
+    public void setClassDataSharingCacheDirectory(final String classDataSharingCacheDirectory) {
+        this.classDataSharingCacheDirectory = classDataSharingCacheDirectory;
+    }
+
+    /**
+     * @param classDataSharingCacheMaxSize
+     *            the maximum size in bytes of the class data sharing archives
+     */
+    public void setClassDataSharingCacheMaxSize(final Long classDataSharingCacheMaxSize) {
+        this.classDataSharingCacheMaxSize = classDataSharingCacheMaxSize;
+    }
+
+    /**
+     * @param containerFileChecksum
+     *            the SHA-256 checksum of the container file
+     */
+    public void setContainerFileChecksum(final String containerFileChecksum) {
+        this.containerFileChecksum = containerFileChecksum;
+    }
+
     /**
      * @param deployTimeOut
      *            the deployTimeOut to set
@@ -20,17 +20,34 @@ import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import nl.tranquilizedquality.itest.cargo.deploy.DeployableStager;
 import nl.tranquilizedquality.itest.cargo.exception.ConfigurationException;
 import nl.tranquilizedquality.itest.cargo.exception.DeployException;
+import nl.tranquilizedquality.itest.cargo.install.ResourceIndex;
+import nl.tranquilizedquality.itest.cargo.install.TemplateRenderer;
+import nl.tranquilizedquality.itest.cargo.metrics.StartupMetrics;
 import nl.tranquilizedquality.itest.domain.DeployableLocationConfiguration;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.codehaus.cargo.container.ContainerType;
@@ -39,7 +56,6 @@ import org.codehaus.cargo.container.configuration.ConfigurationType;
 import org.codehaus.cargo.container.configuration.LocalConfiguration;
 import org.codehaus.cargo.container.deployable.Deployable;
 import org.codehaus.cargo.container.deployable.DeployableType;
-import org.codehaus.cargo.container.installer.ZipURLInstaller;
 import org.codehaus.cargo.container.property.GeneralPropertySet;
 import org.codehaus.cargo.container.property.ServletPropertySet;
 import org.codehaus.cargo.generic.DefaultContainerFactory;
@@ -86,6 +102,21 @@ public abstract class AbstractJBossContainerUtil extends AbstractInstalledContai
      */
     private static final String DATA_SOURCE_FILES_SUFFIX = "-ds.xml";
 
+    /** The directory of JBoss where data source files are deployed. */
+    private static final String DEPLOY_DIRECTORY = "deploy/";
+
+    /** The configuration directory of JBoss. */
+    private static final String CONF_DIRECTORY = "conf/";
+
+    /** The shared library directory of JBoss. */
+    private static final String LIB_DIRECTORY = "lib/";
+
+    /**
+     * The rules that route the auto detected configuration files to the JBoss
+     * directories. The first matching rule is applied.
+     */
+    private static final Map<String, String> RESOURCE_RULES = createResourceRules();
+
     /**
      * The port where the JNP service will run on. This service is used to be
      * able to stop JBoss in a graceful way. Use the property ${cargo.jnp.port}
@@ -94,6 +125,9 @@ public abstract class AbstractJBossContainerUtil extends AbstractInstalledContai
      */
     private Integer jnpPort;
 
+    /** The configured JNP port the JNP port is resolved from. */
+    private Integer configuredJnpPort;
+
     /** The ZIP file containing the JBoss configuration. */
     private String containerConfigurationFile;
 
@@ -118,6 +152,13 @@ public abstract class AbstractJBossContainerUtil extends AbstractInstalledContai
         setupContainerHome();
     }
 
+    @Override
+    protected void allocatePorts() {
+        super.allocatePorts();
+
+        jnpPort = allocatePort(configuredJnpPort);
+    }
+
     /**
      * Installs the container and the application configuration. It also sets
      * some system properties so the container can startup properly. Finally it
@@ -126,11 +167,6 @@ public abstract class AbstractJBossContainerUtil extends AbstractInstalledContai
      */
     @Override
     protected void setupContainer() {
-        /*
-         * Execute default setup behavior.
-         */
-        super.setupContainer();
-
         /*
          * Provide configuration information.
          */
@@ -140,18 +176,48 @@ public abstract class AbstractJBossContainerUtil extends AbstractInstalledContai
         }
 
         /*
-         * Download and configure the JBoss configuration.
+         * Start downloading the JBoss configuration while the container itself
+         * is being downloaded and installed.
          */
-        if (LOGGER.isInfoEnabled()) {
-            LOGGER.info("Installing [" + configurationName + "] configuration...");
-        }
+        final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "cargo-itest-jboss-configuration");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
         try {
-            final URL remoteLocation = new URL(this.remoteLocation + containerConfigurationFile);
-            final String installDir = containerHome + "server/";
-            final ZipURLInstaller installer = new ZipURLInstaller(remoteLocation, installDir, installDir);
-            installer.install();
-        } catch (final MalformedURLException e) {
-            throw new DeployException("Failed to download container!", e);
+            final Future<File> configurationArchive = executor.submit(new Callable<File>() {
+                @Override
+                public File call() throws IOException {
+                    return downloadConfigurationArchive();
+                }
+            });
+
+            /*
+             * Execute default setup behavior.
+             */
+            try {
+                super.setupContainer();
+            } catch (final RuntimeException e) {
+                configurationArchive.cancel(true);
+                throw e;
+            }
+
+            /*
+             * Install the JBoss configuration as soon as the server directory
+             * is available.
+             */
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info("Installing [" + configurationName + "] configuration...");
+            }
+            final long installStart = System.nanoTime();
+            installConfigurationArchive(waitForDownload(configurationArchive));
+            startupMetrics.record(StartupMetrics.CONFIGURATION_INSTALL, installStart);
+        } finally {
+            executor.shutdownNow();
         }
 
         /*
@@ -165,24 +231,136 @@ public abstract class AbstractJBossContainerUtil extends AbstractInstalledContai
          * source files etc.
          */
         if (autoDetect) {
-            copyResourceFileToConfDir(LOG4J_XML);
+            copyConfigurationResources();
+        }
+
+        /*
+         * Do custom configuration.
+         */
+        final long configurationStart = System.nanoTime();
+        setupConfiguration();
+        startupMetrics.record(StartupMetrics.CONFIGURATION, configurationStart);
+    }
+
+    /**
+     * Downloads the configuration archive. Remote archives are retrieved
+     * through the artifact cache when it is enabled, otherwise they are
+     * downloaded into a temporary file.
+     *
+     * @return Returns the local configuration archive.
+     * @throws IOException
+     *             Is thrown when the archive couldn't be downloaded.
+     */
+    private File downloadConfigurationArchive() throws IOException {
+        if (!StringUtils.contains(this.remoteLocation, "http")) {
+            return new File(this.remoteLocation + containerConfigurationFile);
+        } else if (!isTemporaryDownload()) {
+            return retrieveArchive(containerConfigurationFile, null);
+        }
+
+        final File download = File.createTempFile("cargo-itest-", "-" + containerConfigurationFile);
+        try {
+            FileUtils.copyURLToFile(new URL(this.remoteLocation + containerConfigurationFile), download);
+        } catch (final MalformedURLException e) {
+            throw new DeployException("Failed to download container!", e);
+        }
+        download.deleteOnExit();
+
+        return download;
+    }
 
-            final List<String> dataSourceFiles = findConfigurationFiles(DATA_SOURCE_FILES_SUFFIX);
-            for (final String fileName : dataSourceFiles) {
-                final String deployDirectory = getContainerDirectory("deploy/");
-                copyResourceFile(fileName, deployDirectory);
+    /**
+     * Waits until the configuration archive is downloaded.
+     *
+     * @param download
+     *            The pending download.
+     * @return Returns the local configuration archive.
+     */
+    private File waitForDownload(final Future<File> download) {
+        try {
+            return download.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DeployException("Interrupted while downloading " + containerConfigurationFile + "!", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
+            throw new DeployException("Failed to download " + containerConfigurationFile + " from " + remoteLocation + "!",
+                    e.getCause());
+        }
+    }
 
-            final List<String> propertiesFiles = findConfigurationFiles(PROPERTIES_FILES_SUFFIX);
-            for (final String fileName : propertiesFiles) {
-                copyResourceFileToConfDir(fileName);
+    /**
+     * Extracts the configuration archive into the server directory of the
+     * container. Just like the Cargo installer it is extracted into a
+     * directory named after the archive.
+     *
+     * @param archive
+     *            The local configuration archive.
+     */
+    private void installConfigurationArchive(final File archive) {
+        final String configurationDirectory = StringUtils.substringBeforeLast(containerConfigurationFile, ".");
+        final File destination = new File(containerHome + "server/" + configurationDirectory);
+
+        try {
+            extractArchive(archive, destination, null);
+        } finally {
+            if (isTemporaryDownload()) {
+                archive.delete();
             }
         }
+    }
+
+    /**
+     * Determines if the configuration archive is downloaded into a temporary
+     * file that needs to be removed after it is installed.
+     *
+     * @return Returns true if the archive isn't stored in the artifact cache.
+     */
+    private boolean isTemporaryDownload() {
+        return StringUtils.contains(this.remoteLocation, "http") && !isUseArtifactCache();
+    }
+
+    /**
+     * Creates the rules that route the auto detected configuration files.
+     *
+     * @return Returns the glob patterns and their JBoss directories.
+     */
+    private static Map<String, String> createResourceRules() {
+        final Map<String, String> rules = new LinkedHashMap<String, String>();
+        rules.put(LOG4J_XML, CONF_DIRECTORY);
+        rules.put("*" + DATA_SOURCE_FILES_SUFFIX, DEPLOY_DIRECTORY);
+        rules.put("*" + PROPERTIES_FILES_SUFFIX, CONF_DIRECTORY);
+        rules.put("*.jar", LIB_DIRECTORY);
+
+        return Collections.unmodifiableMap(rules);
+    }
+
+    /**
+     * Copies the configuration files from the configuration resource directory
+     * to the JBoss directories in a single batch. The directory is only read
+     * again when files were added or removed since the last start. The
+     * placeholders in the text files are replaced by the system properties
+     * like the allocated ports.
+     */
+    private void copyConfigurationResources() {
+        final ResourceIndex index = ResourceIndex.scan(new File(configResourcesPath), RESOURCE_RULES);
 
         /*
-         * Do custom configuration.
+         * Only directories that receive files need to exist.
          */
-        setupConfiguration();
+        final Map<String, File> destinations = new HashMap<String, File>();
+        for (final String target : Arrays.asList(DEPLOY_DIRECTORY, CONF_DIRECTORY, LIB_DIRECTORY)) {
+            if (!index.getResources(target).isEmpty()) {
+                destinations.put(target, new File(getContainerDirectory(target)));
+            }
+        }
+
+        final int copied = index.copy(destinations, createTemplateRenderer());
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Copied " + copied + " configuration files from " + configResourcesPath);
+        }
     }
 
     /**
@@ -193,20 +371,11 @@ public abstract class AbstractJBossContainerUtil extends AbstractInstalledContai
      * @return Returns a list of file names that end with the specified suffix.
      */
     protected List<String> findConfigurationFiles(final String suffix) {
-        final List<String> files = new ArrayList<String>();
-
-        final File directory = new File(configResourcesPath);
-        final File[] listFiles = directory.listFiles();
-
-        for (final File file : listFiles) {
-            final String name = file.getName();
-
-            if (org.springframework.util.StringUtils.endsWithIgnoreCase(name, suffix)) {
-                files.add(name);
+        final List<String> files = ResourceIndex.scan(new File(configResourcesPath), RESOURCE_RULES).findBySuffix(suffix);
 
-                if (LOGGER.isInfoEnabled()) {
-                    LOGGER.info("Added configuration file called: " + name);
-                }
+        if (LOGGER.isInfoEnabled()) {
+            for (final String name : files) {
+                LOGGER.info("Added configuration file called: " + name);
             }
         }
 
@@ -224,6 +393,16 @@ public abstract class AbstractJBossContainerUtil extends AbstractInstalledContai
         copyResourceFile(fileName, getConfDirectory());
     }
 
+    /**
+     * Copies the specified resource file to a directory of JBoss. The
+     * placeholders in text files are replaced by the system properties like
+     * the allocated ports.
+     *
+     * @param fileName
+     *            The file name that needs to be copied.
+     * @param destinationDirectory
+     *            The directory to copy the file to.
+     */
     protected void copyResourceFile(final String fileName, final String destinationDirectory) {
         final String originalFile = configResourcesPath + fileName;
         final File srcFile = new File(originalFile);
@@ -232,7 +411,13 @@ public abstract class AbstractJBossContainerUtil extends AbstractInstalledContai
         final File destFile = new File(newFile);
 
         try {
-            FileUtils.copyFile(srcFile, destFile);
+            if (TemplateRenderer.isTemplate(fileName)) {
+                createTemplateRenderer().render(srcFile, destFile);
+            } else {
+                // Replace a hard link to a template file instead of writing through it.
+                Files.deleteIfExists(destFile.toPath());
+                FileUtils.copyFile(srcFile, destFile);
+            }
 
             if (LOGGER.isInfoEnabled()) {
                 LOGGER.info("Copied file " + fileName + " to " + destFile.getAbsolutePath());
@@ -246,6 +431,8 @@ public abstract class AbstractJBossContainerUtil extends AbstractInstalledContai
 
     @Override
     protected void deploy() {
+        final long configurationStart = System.nanoTime();
+
         // create configuration factory
         final ConfigurationFactory configurationFactory = new DefaultConfigurationFactory();
 
@@ -255,18 +442,12 @@ public abstract class AbstractJBossContainerUtil extends AbstractInstalledContai
                         + "server/" + configurationName);
 
         // setup configuration
-        final StringBuilder args = new StringBuilder();
-        for (final String arg : jvmArguments) {
-            args.append(arg);
-            args.append(" ");
-
-            if (LOGGER.isInfoEnabled()) {
-                LOGGER.info("Added JVM argument: " + arg);
-            }
-        }
-        configuration.setProperty(GeneralPropertySet.JVMARGS, args.toString());
+        configuration.setProperty(GeneralPropertySet.JVMARGS, getJvmArgumentLine());
         configuration.setProperty(ServletPropertySet.PORT, containerPort.toString());
 
+        // Cargo stops JBoss through the JNP service on the RMI port.
+        configuration.setProperty(GeneralPropertySet.RMI_PORT, jnpPort.toString());
+
         /*
          * Iterate over all available deployable locations.
          */
@@ -282,7 +463,7 @@ public abstract class AbstractJBossContainerUtil extends AbstractInstalledContai
             /*
              * Determine the deployable type.
              */
-            deployableType = determineDeployableType(value);
+            deployableType = determineDeployableType(key, value);
 
             /*
              * Add the deployable.
@@ -303,22 +484,22 @@ public abstract class AbstractJBossContainerUtil extends AbstractInstalledContai
              */
             DeployableType deployableType = null;
             if (contextName != null && contextName.length() > 0) {
-                deployableType = determineDeployableType(type);
+                deployableType = determineDeployableType(path, type);
 
                 if (DeployableType.WAR.equals(deployableType)) {
                     final File srcFile = new File(path);
                     final File destFile = new File("target/" + contextName + ".war");
 
                     try {
-                        FileUtils.copyFile(srcFile, destFile);
+                        DeployableStager.stage(srcFile, destFile);
                     } catch (final IOException e) {
-                        throw new DeployException("Failed to copy WAR file: " + path, e);
+                        throw new DeployException("Failed to stage WAR file: " + path, e);
                     }
 
                     path = destFile.getPath();
                 }
             } else {
-                deployableType = determineDeployableType(type);
+                deployableType = determineDeployableType(path, type);
             }
 
             /*
@@ -349,8 +530,10 @@ public abstract class AbstractJBossContainerUtil extends AbstractInstalledContai
             LOGGER.info("Starting JBoss [" + configurationName + "]...");
         }
 
+        startupMetrics.record(StartupMetrics.CARGO_CONFIGURATION, configurationStart);
+
         // startup installedLocalContainer
-        installedLocalContainer.start();
+        startInstalledContainer();
 
         // Here you are assured the container is started.
         if (LOGGER.isInfoEnabled()) {
@@ -358,35 +541,6 @@ public abstract class AbstractJBossContainerUtil extends AbstractInstalledContai
         }
     }
 
-    /**
-     * Determines the type of deployable.
-     *
-     * @param type
-     *            A string representation of the deployable type.
-     * @return Returns a {@link DeployableType} that corresponds to the string
-     *         representation or if none could be found the default value (EAR)
-     *         will be returned.
-     */
-    private DeployableType determineDeployableType(final String type) {
-        DeployableType deployableType;
-
-        /*
-         * Check what kind of deployable it is.
-         */
-        if ("EAR".equals(type)) {
-            deployableType = DeployableType.EAR;
-        } else if ("WAR".equals(type)) {
-            deployableType = DeployableType.WAR;
-        } else if ("EJB".equals(type)) {
-            deployableType = DeployableType.EJB;
-        } else {
-            // Default value is EAR file
-            deployableType = DeployableType.EAR;
-        }
-
-        return deployableType;
-    }
-
     /**
      * Adds a deployable to the {@link LocalConfiguration}.
      *
@@ -399,7 +553,8 @@ public abstract class AbstractJBossContainerUtil extends AbstractInstalledContai
      */
     private void addDeployable(final LocalConfiguration configuration, final String path, final DeployableType deployableType) {
         // retrieve deployable file
-        final Deployable deployable = new DefaultDeployableFactory().createDeployable(configurationName, path, deployableType);
+        final Deployable deployable = new DefaultDeployableFactory().createDeployable(configurationName,
+                prepareDeployable(path, deployableType), deployableType);
 
         // add deployable
         configuration.addDeployable(deployable);
@@ -429,6 +584,7 @@ public abstract class AbstractJBossContainerUtil extends AbstractInstalledContai
      */
     @Required
     public void setJnpPort(final Integer jnpPort) {
+        this.configuredJnpPort = jnpPort;
         this.jnpPort = jnpPort;
     }
 
@@ -462,6 +618,29 @@ public abstract class AbstractJBossContainerUtil extends AbstractInstalledContai
         return path;
     }
 
+    /**
+     * Skips the documentation and the server profiles of the distribution
+     * that aren't the configuration used by the tests. The client libraries
+     * are kept since they are needed to shut down JBoss.
+     */
+    @Override
+    protected List<String> getMinimalExcludes() {
+        final List<String> excludes = new ArrayList<String>();
+        excludes.add("docs/**");
+
+        /*
+         * The configuration is installed from its own ZIP file so the server
+         * profiles of the distribution itself aren't used.
+         */
+        for (final String profile : Arrays.asList("all", "default", "minimal", "production", "standard", "web")) {
+            if (!profile.equals(configurationName)) {
+                excludes.add("server/" + profile + "/**");
+            }
+        }
+
+        return excludes;
+    }
+
     @Override
     public String getSharedLibDirectory() {
         return getContainerDirectory("lib/");
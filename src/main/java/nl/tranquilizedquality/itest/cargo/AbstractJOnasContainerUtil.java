@@ -17,15 +17,18 @@ package nl.tranquilizedquality.itest.cargo;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import nl.tranquilizedquality.itest.cargo.deploy.DeployableStager;
 import nl.tranquilizedquality.itest.cargo.exception.ConfigurationException;
 import nl.tranquilizedquality.itest.cargo.exception.DeployException;
+import nl.tranquilizedquality.itest.cargo.metrics.StartupMetrics;
 import nl.tranquilizedquality.itest.domain.DeployableLocationConfiguration;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.codehaus.cargo.container.ContainerType;
@@ -48,6 +51,11 @@ import org.springframework.beans.factory.annotation.Required;
 /**
  * Implementation of a {@link ContainerUtil} for the JOnas application server.
  *
+ * JOnAS runs with an existing configuration which Cargo doesn't rewrite, so
+ * only the HTTP port is allocated when dynamic ports are used. The RMI and
+ * other ports are read from the configuration files in the conf directory,
+ * which means two JOnAS instances can't run side by side.
+ *
  * @author Salomo Petrus (sape)
  * @since 22 apr 2009
  *
@@ -81,7 +89,9 @@ public abstract class AbstractJOnasContainerUtil extends AbstractInstalledContai
          */
         super.setupContainer();
 
+        final long configurationStart = System.nanoTime();
         setupConfiguration();
+        startupMetrics.record(StartupMetrics.CONFIGURATION, configurationStart);
     }
 
     /**
@@ -89,6 +99,8 @@ public abstract class AbstractJOnasContainerUtil extends AbstractInstalledContai
      */
     @Override
     protected void deploy() {
+        final long configurationStart = System.nanoTime();
+
         // create configuration factory
         final ConfigurationFactory configurationFactory = new DefaultConfigurationFactory();
 
@@ -96,17 +108,13 @@ public abstract class AbstractJOnasContainerUtil extends AbstractInstalledContai
         final LocalConfiguration configuration = (LocalConfiguration) configurationFactory.createConfiguration("jonas4x",
                 ContainerType.INSTALLED, ConfigurationType.EXISTING, containerHome);
 
-        // setup configuration
-        final StringBuilder args = new StringBuilder();
-        for (final String arg : jvmArguments) {
-            args.append(arg);
-            args.append(" ");
-
-            if (LOGGER.isInfoEnabled()) {
-                LOGGER.info("Added JVM argument: " + arg);
-            }
+        if (isDynamicPorts() && LOGGER.isWarnEnabled()) {
+            LOGGER.warn("Only the HTTP port of JOnas is allocated dynamically, "
+                    + "the other ports are taken from its existing configuration.");
         }
-        configuration.setProperty(GeneralPropertySet.JVMARGS, args.toString());
+
+        // setup configuration
+        configuration.setProperty(GeneralPropertySet.JVMARGS, getJvmArgumentLine());
         configuration.setProperty(ServletPropertySet.PORT, containerPort.toString());
 
         /*
@@ -124,7 +132,7 @@ public abstract class AbstractJOnasContainerUtil extends AbstractInstalledContai
             /*
              * Determine the deployable type.
              */
-            deployableType = determineDeployableType(value);
+            deployableType = determineDeployableType(key, value);
 
             /*
              * Add the deployable.
@@ -145,22 +153,22 @@ public abstract class AbstractJOnasContainerUtil extends AbstractInstalledContai
              */
             DeployableType deployableType = null;
             if (contextName != null && contextName.length() > 0) {
-                deployableType = determineDeployableType(type);
+                deployableType = determineDeployableType(path, type);
 
                 if (DeployableType.WAR.equals(deployableType)) {
                     final File srcFile = new File(path);
                     final File destFile = new File("target/" + contextName + ".war");
 
                     try {
-                        FileUtils.copyFile(srcFile, destFile);
+                        DeployableStager.stage(srcFile, destFile);
                     } catch (final IOException e) {
-                        throw new DeployException("Failed to copy WAR file: " + path, e);
+                        throw new DeployException("Failed to stage WAR file: " + path, e);
                     }
 
                     path = destFile.getPath();
                 }
             } else {
-                deployableType = determineDeployableType(type);
+                deployableType = determineDeployableType(path, type);
             }
 
             /*
@@ -191,8 +199,10 @@ public abstract class AbstractJOnasContainerUtil extends AbstractInstalledContai
             LOGGER.info("Starting JOnas [" + configurationName + "]...");
         }
 
+        startupMetrics.record(StartupMetrics.CARGO_CONFIGURATION, configurationStart);
+
         // startup installedLocalContainer
-        installedLocalContainer.start();
+        startInstalledContainer();
 
         // Here you are assured the container is started.
         if (LOGGER.isInfoEnabled()) {
@@ -200,35 +210,6 @@ public abstract class AbstractJOnasContainerUtil extends AbstractInstalledContai
         }
     }
 
-    /**
-     * Determines the type of deployable.
-     *
-     * @param type
-     *            A string representation of the deployable type.
-     * @return Returns a {@link DeployableType} that corresponds to the string
-     *         representation or if none could be found the default value (EAR)
-     *         will be returned.
-     */
-    private DeployableType determineDeployableType(final String type) {
-        DeployableType deployableType;
-
-        /*
-         * Check what kind of deployable it is.
-         */
-        if ("EAR".equals(type)) {
-            deployableType = DeployableType.EAR;
-        } else if ("WAR".equals(type)) {
-            deployableType = DeployableType.WAR;
-        } else if ("EJB".equals(type)) {
-            deployableType = DeployableType.EJB;
-        } else {
-            // Default value is EAR file
-            deployableType = DeployableType.EAR;
-        }
-
-        return deployableType;
-    }
-
     /**
      * Adds a deployable to the {@link LocalConfiguration}.
      *
@@ -241,7 +222,8 @@ public abstract class AbstractJOnasContainerUtil extends AbstractInstalledContai
      */
     private void addDeployable(final LocalConfiguration configuration, final String path, final DeployableType deployableType) {
         // retrieve deployable file
-        final Deployable deployable = new DefaultDeployableFactory().createDeployable(configurationName, path, deployableType);
+        final Deployable deployable = new DefaultDeployableFactory().createDeployable(configurationName,
+                prepareDeployable(path, deployableType), deployableType);
 
         // add deployable
         configuration.addDeployable(deployable);
@@ -283,6 +265,14 @@ public abstract class AbstractJOnasContainerUtil extends AbstractInstalledContai
         return path;
     }
 
+    /**
+     * Skips the documentation and examples that are shipped with JOnAS.
+     */
+    @Override
+    protected List<String> getMinimalExcludes() {
+        return Arrays.asList("doc/**", "examples/**");
+    }
+
     @Override
     public String getSharedLibDirectory() {
         return getContainerDirectory("lib/");
@@ -17,15 +17,19 @@ package nl.tranquilizedquality.itest.cargo;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import nl.tranquilizedquality.itest.cargo.deploy.DeployableStager;
 import nl.tranquilizedquality.itest.cargo.exception.ConfigurationException;
 import nl.tranquilizedquality.itest.cargo.exception.DeployException;
+import nl.tranquilizedquality.itest.cargo.metrics.StartupMetrics;
 import nl.tranquilizedquality.itest.domain.DeployableLocationConfiguration;
 
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.codehaus.cargo.container.ContainerType;
@@ -81,7 +85,9 @@ public abstract class AbstractJettyContainerUtil extends AbstractInstalledContai
          */
         super.setupContainer();
 
+        final long configurationStart = System.nanoTime();
         setupConfiguration();
+        startupMetrics.record(StartupMetrics.CONFIGURATION, configurationStart);
     }
 
     /**
@@ -89,6 +95,8 @@ public abstract class AbstractJettyContainerUtil extends AbstractInstalledContai
      */
     @Override
     protected void deploy() {
+        final long configurationStart = System.nanoTime();
+
         if (LOGGER.isInfoEnabled()) {
             LOGGER.info("Creating configuration..");
         }
@@ -102,16 +110,7 @@ public abstract class AbstractJettyContainerUtil extends AbstractInstalledContai
                         + "cargo-conf/");
 
         // setup configuration
-        final StringBuilder args = new StringBuilder();
-        for (final String arg : jvmArguments) {
-            args.append(arg);
-            args.append(" ");
-
-            if (LOGGER.isInfoEnabled()) {
-                LOGGER.info("Added JVM argument: " + arg);
-            }
-        }
-        configuration.setProperty(GeneralPropertySet.JVMARGS, args.toString());
+        configuration.setProperty(GeneralPropertySet.JVMARGS, getJvmArgumentLine());
         configuration.setProperty(ServletPropertySet.PORT, containerPort.toString());
 
         if (LOGGER.isInfoEnabled()) {
@@ -133,7 +132,7 @@ public abstract class AbstractJettyContainerUtil extends AbstractInstalledContai
             /*
              * Determine the deployable type.
              */
-            deployableType = determineDeployableType(value);
+            deployableType = determineDeployableType(key, value);
 
             /*
              * Add the deployable.
@@ -154,22 +153,22 @@ public abstract class AbstractJettyContainerUtil extends AbstractInstalledContai
              */
             DeployableType deployableType = null;
             if (contextName != null && contextName.length() > 0) {
-                deployableType = determineDeployableType(type);
+                deployableType = determineDeployableType(path, type);
 
                 if (DeployableType.WAR.equals(deployableType)) {
                     final File srcFile = new File(path);
                     final File destFile = new File("target/" + contextName + ".war");
 
                     try {
-                        FileUtils.copyFile(srcFile, destFile);
+                        DeployableStager.stage(srcFile, destFile);
                     } catch (final IOException e) {
-                        throw new DeployException("Failed to copy WAR file: " + path, e);
+                        throw new DeployException("Failed to stage WAR file: " + path, e);
                     }
 
                     path = destFile.getAbsolutePath();
                 }
             } else {
-                deployableType = determineDeployableType(type);
+                deployableType = determineDeployableType(path, type);
             }
 
             /*
@@ -204,8 +203,10 @@ public abstract class AbstractJettyContainerUtil extends AbstractInstalledContai
             LOGGER.info("Starting Jetty ...");
         }
 
+        startupMetrics.record(StartupMetrics.CARGO_CONFIGURATION, configurationStart);
+
         // startup installedLocalContainer
-        installedLocalContainer.start();
+        startInstalledContainer();
 
         // Here you are assured the container is started.
         if (LOGGER.isInfoEnabled()) {
@@ -214,34 +215,30 @@ public abstract class AbstractJettyContainerUtil extends AbstractInstalledContai
     }
 
     /**
-     * Determines the type of deployable.
+     * Determines the type of deployable. Jetty only supports WAR files.
      *
+     * @param path
+     *            The path of the deployable.
      * @param type
      *            A string representation of the deployable type.
-     * @return Returns a {@link DeployableType} that corresponds to the string
-     *         representation or if none could be found the default value (EAR)
-     *         will be returned.
+     * @return Returns {@link DeployableType#WAR}.
      */
-    private DeployableType determineDeployableType(final String type) {
-        DeployableType deployableType;
-
-        /*
-         * Check what kind of deployable it is.
-         */
-        if ("EAR".equals(type)) {
-            throw new DeployException("Jetty doesn't support EAR files!");
-        } else if ("WAR".equals(type)) {
-            deployableType = DeployableType.WAR;
-        } else if ("EJB".equals(type)) {
-            throw new DeployException("Jetty doesn't support EJB files!");
-        } else {
-            // Default value is WAR file
-            deployableType = DeployableType.WAR;
+    @Override
+    protected DeployableType determineDeployableType(final String path, final String type) {
+        final DeployableType deployableType = super.determineDeployableType(path, type);
+        if (!DeployableType.WAR.equals(deployableType)) {
+            throw new DeployException("Jetty doesn't support " + StringUtils.upperCase(deployableType.getType())
+                    + " files!");
         }
 
         return deployableType;
     }
 
+    @Override
+    protected DeployableType getDefaultDeployableType() {
+        return DeployableType.WAR;
+    }
+
     /**
      * Adds a deployable to the {@link LocalConfiguration}.
      *
@@ -254,7 +251,8 @@ public abstract class AbstractJettyContainerUtil extends AbstractInstalledContai
      */
     private void addDeployable(final LocalConfiguration configuration, final String path, final DeployableType deployableType) {
         // retrieve deployable file
-        final Deployable deployable = new DefaultDeployableFactory().createDeployable("jetty", path, deployableType);
+        final Deployable deployable = new DefaultDeployableFactory().createDeployable("jetty",
+                prepareDeployable(path, deployableType), deployableType);
 
         // add deployable
         configuration.addDeployable(deployable);
@@ -287,6 +285,15 @@ public abstract class AbstractJettyContainerUtil extends AbstractInstalledContai
         return path;
     }
 
+    /**
+     * Skips the javadoc, examples and project website that are shipped with
+     * Jetty.
+     */
+    @Override
+    protected List<String> getMinimalExcludes() {
+        return Arrays.asList("javadoc/**", "examples/**", "project-website/**");
+    }
+
     @Override
     public String getSharedLibDirectory() {
         return getContainerDirectory("lib/");
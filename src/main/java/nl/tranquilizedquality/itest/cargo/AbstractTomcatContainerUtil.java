@@ -17,16 +17,20 @@ package nl.tranquilizedquality.itest.cargo;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import nl.tranquilizedquality.itest.cargo.deploy.DeployableStager;
 import nl.tranquilizedquality.itest.cargo.exception.ConfigurationException;
 import nl.tranquilizedquality.itest.cargo.exception.DeployException;
+import nl.tranquilizedquality.itest.cargo.metrics.StartupMetrics;
 import nl.tranquilizedquality.itest.domain.DeployableLocationConfiguration;
 
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.codehaus.cargo.container.ContainerType;
@@ -80,6 +84,12 @@ public abstract class AbstractTomcatContainerUtil extends AbstractInstalledConta
      */
     protected Integer rmiPort;
 
+    /** The configured AJP port the AJP port is resolved from. */
+    private Integer configuredAjpPort;
+
+    /** The configured RMI port the RMI port is resolved from. */
+    private Integer configuredRmiPort;
+
     protected String tomcatVersion;
 
     /**
@@ -92,6 +102,14 @@ public abstract class AbstractTomcatContainerUtil extends AbstractInstalledConta
         setupContainerHome();
     }
 
+    @Override
+    protected void allocatePorts() {
+        super.allocatePorts();
+
+        ajpPort = allocatePort(configuredAjpPort);
+        rmiPort = allocatePort(configuredRmiPort);
+    }
+
     /**
      * Installs the container and the application configuration. It also sets
      * some system properties so the container can startup properly. Finally it
@@ -107,7 +125,9 @@ public abstract class AbstractTomcatContainerUtil extends AbstractInstalledConta
         systemProperties.put(TomcatPropertySet.AJP_PORT, ajpPort.toString());
         systemProperties.put(GeneralPropertySet.RMI_PORT, rmiPort.toString());
 
+        final long configurationStart = System.nanoTime();
         setupConfiguration();
+        startupMetrics.record(StartupMetrics.CONFIGURATION, configurationStart);
     }
 
     /**
@@ -115,6 +135,8 @@ public abstract class AbstractTomcatContainerUtil extends AbstractInstalledConta
      */
     @Override
     protected void deploy() {
+        final long configurationStart = System.nanoTime();
+
         // create configuration factory
         final ConfigurationFactory configurationFactory = new DefaultConfigurationFactory();
 
@@ -123,15 +145,6 @@ public abstract class AbstractTomcatContainerUtil extends AbstractInstalledConta
                 ContainerType.INSTALLED, ConfigurationType.EXISTING, containerHome);
 
         // setup configuration
-        final StringBuilder args = new StringBuilder();
-        for (final String arg : jvmArguments) {
-            args.append(arg);
-            args.append(" ");
-
-            if (LOGGER.isInfoEnabled()) {
-                LOGGER.info("Added JVM argument: " + arg);
-            }
-        }
 
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("== CONFIGURATION PROPERTIES ==");
@@ -140,7 +153,7 @@ public abstract class AbstractTomcatContainerUtil extends AbstractInstalledConta
             LOGGER.debug("RMI PORT       : " + rmiPort);
         }
 
-        configuration.setProperty(GeneralPropertySet.JVMARGS, args.toString());
+        configuration.setProperty(GeneralPropertySet.JVMARGS, getJvmArgumentLine());
         configuration.setProperty(ServletPropertySet.PORT, containerPort.toString());
         configuration.setProperty(TomcatPropertySet.AJP_PORT, ajpPort.toString());
         configuration.setProperty(GeneralPropertySet.RMI_PORT, rmiPort.toString());
@@ -160,7 +173,7 @@ public abstract class AbstractTomcatContainerUtil extends AbstractInstalledConta
             /*
              * Determine the deployable type.
              */
-            deployableType = determineDeployableType(value);
+            deployableType = determineDeployableType(key, value);
 
             /*
              * Add the deployable.
@@ -181,20 +194,20 @@ public abstract class AbstractTomcatContainerUtil extends AbstractInstalledConta
              */
             DeployableType deployableType = null;
             if (contextName != null && contextName.length() > 0) {
-                deployableType = determineDeployableType(type);
+                deployableType = determineDeployableType(path, type);
                 if (DeployableType.WAR.equals(deployableType)) {
                     final File srcFile = new File(path);
                     final File destFile = new File("target/" + contextName + ".war");
                     try {
-                        FileUtils.copyFile(srcFile, destFile);
+                        DeployableStager.stage(srcFile, destFile);
                     } catch (final IOException e) {
-                        throw new DeployException("Failed to copy WAR file: " + path, e);
+                        throw new DeployException("Failed to stage WAR file: " + path, e);
                     }
 
                     path = destFile.getPath();
                 }
             } else {
-                deployableType = determineDeployableType(type);
+                deployableType = determineDeployableType(path, type);
             }
 
             /*
@@ -224,8 +237,10 @@ public abstract class AbstractTomcatContainerUtil extends AbstractInstalledConta
             LOGGER.info("Starting Tomcat ...");
         }
 
+        startupMetrics.record(StartupMetrics.CARGO_CONFIGURATION, configurationStart);
+
         // startup installedLocalContainer
-        installedLocalContainer.start();
+        startInstalledContainer();
 
         // Here you are assured the container is started.
         if (LOGGER.isInfoEnabled()) {
@@ -241,33 +256,30 @@ public abstract class AbstractTomcatContainerUtil extends AbstractInstalledConta
     }
 
     /**
-     * Determines the type of deployable.
+     * Determines the type of deployable. Tomcat only supports WAR files.
      *
+     * @param path
+     *            The path of the deployable.
      * @param type
      *            A string representation of the deployable type.
-     * @return Returns a {@link DeployableType} that corresponds to the string
-     *         representation or if none could be found the default value (EAR)
-     *         will be returned.
+     * @return Returns {@link DeployableType#WAR}.
      */
-    private DeployableType determineDeployableType(final String type) {
-        DeployableType deployableType;
-        /*
-         * Check what kind of deployable it is.
-         */
-        if ("EAR".equals(type)) {
-            throw new DeployException("Tomcat doesn't support EAR files!");
-        } else if ("WAR".equals(type)) {
-            deployableType = DeployableType.WAR;
-        } else if ("EJB".equals(type)) {
-            throw new DeployException("Tomcat doesn't support EJB files!");
-        } else {
-            // Default value is WAR file
-            deployableType = DeployableType.WAR;
+    @Override
+    protected DeployableType determineDeployableType(final String path, final String type) {
+        final DeployableType deployableType = super.determineDeployableType(path, type);
+        if (!DeployableType.WAR.equals(deployableType)) {
+            throw new DeployException("Tomcat doesn't support " + StringUtils.upperCase(deployableType.getType())
+                    + " files!");
         }
 
         return deployableType;
     }
 
+    @Override
+    protected DeployableType getDefaultDeployableType() {
+        return DeployableType.WAR;
+    }
+
     /**
      * Adds a deployable to the {@link LocalConfiguration}.
      *
@@ -280,7 +292,8 @@ public abstract class AbstractTomcatContainerUtil extends AbstractInstalledConta
      */
     private void addDeployable(final LocalConfiguration configuration, final String path, final DeployableType deployableType) {
         // retrieve deployable file
-        final Deployable deployable = new DefaultDeployableFactory().createDeployable("jetty", path, deployableType);
+        final Deployable deployable = new DefaultDeployableFactory().createDeployable("jetty",
+                prepareDeployable(path, deployableType), deployableType);
 
         // add deployable
         configuration.addDeployable(deployable);
@@ -313,6 +326,15 @@ public abstract class AbstractTomcatContainerUtil extends AbstractInstalledConta
         return path;
     }
 
+    /**
+     * Skips the documentation and example web applications that are shipped
+     * with Tomcat.
+     */
+    @Override
+    protected List<String> getMinimalExcludes() {
+        return Arrays.asList("webapps/docs/**", "webapps/examples/**");
+    }
+
     @Override
     public String getSharedLibDirectory() {
         return getContainerDirectory("lib/");
@@ -333,6 +355,7 @@ public abstract class AbstractTomcatContainerUtil extends AbstractInstalledConta
 
     @Required
     public void setAjpPort(final Integer ajpPort) {
+        this.configuredAjpPort = ajpPort;
         this.ajpPort = ajpPort;
     }
 
@@ -342,6 +365,7 @@ public abstract class AbstractTomcatContainerUtil extends AbstractInstalledConta
 
     @Required
     public void setRmiPort(final Integer rmiPort) {
+        this.configuredRmiPort = rmiPort;
         this.rmiPort = rmiPort;
     }
 
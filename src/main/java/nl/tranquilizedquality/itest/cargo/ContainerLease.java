@@ -0,0 +1,86 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo;
+
+import nl.tranquilizedquality.itest.cargo.ContainerRegistry.PooledContainer;
+
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * A lease on a running container that was handed out by the
+ * {@link ContainerRegistry}. It needs to be released when the test class is
+ * finished so the registry knows when the container isn't used anymore.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public final class ContainerLease {
+
+    /** The registry that handed out the lease. */
+    private final ContainerRegistry registry;
+
+    /** The leased container. */
+    private final PooledContainer container;
+
+    /** Determines if the lease was released already. */
+    private boolean released;
+
+    /**
+     * Constructor taking the registry and the leased container.
+     *
+     * @param registry
+     *            The registry that handed out the lease.
+     * @param container
+     *            The leased container.
+     */
+    ContainerLease(final ContainerRegistry registry, final PooledContainer container) {
+        this.registry = registry;
+        this.container = container;
+    }
+
+    /**
+     * Releases the lease. Releasing a lease more than once has no effect.
+     */
+    public synchronized void release() {
+        if (!released) {
+            released = true;
+            registry.release(this);
+        }
+    }
+
+    /**
+     * @return the running container utility
+     */
+    public ContainerUtil getContainerUtil() {
+        return container.getContainerUtil();
+    }
+
+    /**
+     * @return the application context containing the container utility
+     */
+    public ConfigurableApplicationContext getContext() {
+        return container.getContext();
+    }
+
+    /**
+     * @return the leased container
+     */
+    PooledContainer getContainer() {
+        return container;
+    }
+
+}
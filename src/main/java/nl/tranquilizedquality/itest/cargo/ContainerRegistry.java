@@ -0,0 +1,767 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import nl.tranquilizedquality.itest.domain.DeployableLocationConfiguration;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+/**
+ * JVM wide registry of running containers so multiple test classes that use
+ * the same configuration classes and deployables share one container instead
+ * of starting and stopping their own. A container is handed out on lease and
+ * is reference counted. When the last lease is released the container keeps
+ * running until it has been idle for the idle timeout, until another container
+ * needs to be started or until the JVM exits.
+ *
+ * The registry can be disabled with the system property
+ * <code>cargo.itest.pool=false</code> in which case every lease starts its own
+ * container and stops it on release. The idle timeout in milliseconds can be
+ * set with the system property <code>cargo.itest.pool.idleTimeout</code>.
+ *
+ * Containers can be prepared in the background as warm standby so the install
+ * and configuration is done while the current test class is running. The
+ * system property <code>cargo.itest.plan</code> can contain the order in
+ * which the test classes use their configuration, a comma separated list of
+ * items where each item consists of the configuration class names separated
+ * by a plus sign. When a container is leased the next item in the plan is
+ * prepared automatically.
+ *
+ * Containers are started and stopped outside the lock of the registry, so a
+ * container that boots doesn't block the release of other leases or the lease
+ * of a container that is running already. A key that is being started is
+ * reserved and other leases for the same key wait until it is running.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public final class ContainerRegistry {
+
+    /** Logger for this class */
+    private static final Log LOGGER = LogFactory.getLog(ContainerRegistry.class);
+
+    /** The system property that enables or disables the registry. */
+    public static final String POOL_PROPERTY = "cargo.itest.pool";
+
+    /** The system property containing the idle timeout in milliseconds. */
+    public static final String IDLE_TIMEOUT_PROPERTY = "cargo.itest.pool.idleTimeout";
+
+    /** The system property containing the plan of configurations. */
+    public static final String PLAN_PROPERTY = "cargo.itest.plan";
+
+    /** The default idle timeout in milliseconds. */
+    private static final long DEFAULT_IDLE_TIMEOUT = 30000L;
+
+    /** The shared instance. */
+    private static ContainerRegistry instance;
+
+    /** The running containers by their key. */
+    private final Map<String, PooledContainer> containers = new LinkedHashMap<String, PooledContainer>();
+
+    /** The keys of the containers that are being started. */
+    private final Set<String> starting = new HashSet<String>();
+
+    /** The keys of the containers by their configuration class names. */
+    private final Map<List<String>, String> keys = new HashMap<List<String>, String>();
+
+    /** The containers that are prepared as warm standby by their key. */
+    private final Map<String, Standby> standbys = new LinkedHashMap<String, Standby>();
+
+    /** The configuration class names in the order they will be used. */
+    private List<List<String>> plan = Collections.emptyList();
+
+    /** Determines if containers are shared between leases. */
+    private final boolean enabled;
+
+    /** The time in milliseconds an unused container keeps running. */
+    private final long idleTimeout;
+
+    /** Stops the containers that have been idle for too long. */
+    private final ScheduledExecutorService scheduler;
+
+    /** Prepares the warm standby containers. */
+    private final ExecutorService preparer;
+
+    /**
+     * Constructor taking the settings of the registry.
+     *
+     * @param enabled
+     *            Determines if containers are shared between leases.
+     * @param idleTimeout
+     *            The time in milliseconds an unused container keeps running.
+     */
+    ContainerRegistry(final boolean enabled, final long idleTimeout) {
+        this.enabled = enabled;
+        this.idleTimeout = idleTimeout;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "cargo-itest-container-registry");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.preparer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "cargo-itest-container-standby");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Retrieves the shared registry. It is created on first use and registers a
+     * shutdown hook that stops all running containers.
+     *
+     * @return Returns the {@link ContainerRegistry}.
+     */
+    public static synchronized ContainerRegistry getInstance() {
+        if (instance == null) {
+            final boolean enabled = Boolean.parseBoolean(System.getProperty(POOL_PROPERTY, Boolean.TRUE.toString()));
+            final long idleTimeout = Long.getLong(IDLE_TIMEOUT_PROPERTY, DEFAULT_IDLE_TIMEOUT);
+
+            final ContainerRegistry registry = new ContainerRegistry(enabled, idleTimeout);
+            registry.setPlan(System.getProperty(PLAN_PROPERTY));
+            Runtime.getRuntime().addShutdownHook(new Thread("cargo-itest-container-registry-shutdown") {
+                @Override
+                public void run() {
+                    registry.shutdown();
+                }
+            });
+            instance = registry;
+        }
+
+        return instance;
+    }
+
+    /**
+     * Leases a running container for the specified configuration classes. An
+     * already running container with the same configuration classes and
+     * deployables is reused, otherwise the idle containers are stopped and a
+     * new container is started.
+     *
+     * @param configurationClasses
+     *            The configuration classes that define the container utility
+     *            bean called containerUtil.
+     * @return Returns a {@link ContainerLease} that needs to be released when
+     *         the container isn't needed anymore.
+     */
+    public ContainerLease lease(final Class<?>... configurationClasses) {
+        final List<String> names = getNames(configurationClasses);
+
+        /*
+         * A running container is leased without creating its application
+         * context again.
+         */
+        synchronized (this) {
+            final String knownKey = keys.get(names);
+            if (knownKey != null) {
+                final PooledContainer running = awaitRunning(knownKey);
+                if (running != null) {
+                    return reuse(running, configurationClasses);
+                }
+            }
+        }
+
+        final ConfigurableApplicationContext context = new AnnotationConfigApplicationContext(configurationClasses);
+        final ContainerUtil containerUtil;
+        try {
+            containerUtil = (ContainerUtil) context.getBean("containerUtil");
+        } catch (final RuntimeException e) {
+            context.close();
+            throw e;
+        }
+
+        final String key = createKey(configurationClasses, containerUtil);
+        final List<PooledContainer> idle;
+        final Standby standby;
+        synchronized (this) {
+            keys.put(names, key);
+
+            final PooledContainer running = awaitRunning(key);
+            if (running != null) {
+                context.close();
+                return reuse(running, configurationClasses);
+            }
+
+            /*
+             * Reserve the key so other leases wait for this container instead
+             * of starting their own.
+             */
+            if (enabled) {
+                starting.add(key);
+            }
+            idle = removeIdleContainers();
+            standby = standbys.remove(key);
+        }
+
+        PooledContainer container = null;
+        boolean started = false;
+        try {
+            for (final PooledContainer idleContainer : idle) {
+                if (LOGGER.isInfoEnabled()) {
+                    LOGGER.info("Stopping idle container for " + idleContainer.key);
+                }
+                stop(idleContainer);
+            }
+
+            container = takeStandby(key, standby);
+            if (container == null) {
+                container = new PooledContainer(key, context, containerUtil);
+            } else {
+                context.close();
+            }
+            start(container);
+            started = true;
+        } finally {
+            synchronized (this) {
+                if (starting.remove(key) && started) {
+                    containers.put(key, container);
+                }
+                if (started) {
+                    container.references++;
+                    container.generation++;
+                }
+                notifyAll();
+            }
+        }
+
+        prepareNext(configurationClasses);
+
+        return new ContainerLease(this, container);
+    }
+
+    /**
+     * Waits while a container for the key is being started.
+     *
+     * @param key
+     *            The key of the container.
+     * @return Returns the running container or null if there is none.
+     */
+    private PooledContainer awaitRunning(final String key) {
+        while (starting.contains(key)) {
+            try {
+                wait();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the container for " + key, e);
+            }
+        }
+
+        return containers.get(key);
+    }
+
+    /**
+     * Leases a running container again.
+     *
+     * @param container
+     *            The running container.
+     * @param configurationClasses
+     *            The configuration classes that are leased.
+     * @return Returns a {@link ContainerLease} on the container.
+     */
+    private ContainerLease reuse(final PooledContainer container, final Class<?>[] configurationClasses) {
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Reusing running container for " + container.key);
+        }
+
+        container.references++;
+        container.generation++;
+
+        prepareNext(configurationClasses);
+
+        return new ContainerLease(this, container);
+    }
+
+    /**
+     * Prepares a container as warm standby on a background thread. The
+     * container is installed and configured but not started, so it doesn't
+     * need any ports yet. Nothing is prepared when a container with the same
+     * key is running or prepared already.
+     *
+     * @param configurationClasses
+     *            The configuration classes that define the container utility
+     *            bean called containerUtil.
+     * @return Returns a {@link Future} that completes when the container is
+     *         prepared.
+     */
+    public Future<?> prepare(final Class<?>... configurationClasses) {
+        final List<String> names = getNames(configurationClasses);
+        synchronized (this) {
+            final String knownKey = keys.get(names);
+            if (knownKey != null) {
+                final Future<?> existing = findPrepared(knownKey);
+                if (existing != null) {
+                    return existing;
+                }
+            }
+        }
+
+        final ConfigurableApplicationContext context = new AnnotationConfigApplicationContext(configurationClasses);
+        final ContainerUtil containerUtil;
+        try {
+            containerUtil = (ContainerUtil) context.getBean("containerUtil");
+        } catch (final RuntimeException e) {
+            context.close();
+            throw e;
+        }
+
+        final String key = createKey(configurationClasses, containerUtil);
+        synchronized (this) {
+            keys.put(names, key);
+
+            final Future<?> existing = findPrepared(key);
+            if (existing != null) {
+                context.close();
+                return existing;
+            }
+
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info("Preparing standby container for " + key);
+            }
+
+            final PooledContainer container = new PooledContainer(key, context, containerUtil);
+            final Future<?> future = preparer.submit(new Runnable() {
+                @Override
+                public void run() {
+                    containerUtil.prepare();
+                }
+            });
+            standbys.put(key, new Standby(container, future));
+
+            return future;
+        }
+    }
+
+    /**
+     * Finds a container that is prepared or running already.
+     *
+     * @param key
+     *            The key of the container.
+     * @return Returns a {@link Future} that completes when the container is
+     *         prepared or null if nothing is prepared for the key.
+     */
+    private Future<?> findPrepared(final String key) {
+        final Standby existing = standbys.get(key);
+        if (existing != null) {
+            return existing.future;
+        } else if (containers.containsKey(key) || starting.contains(key)) {
+            return preparer.submit(new Runnable() {
+                @Override
+                public void run() {
+                    // Already running so there is nothing to prepare.
+                }
+            });
+        }
+
+        return null;
+    }
+
+    /**
+     * Prepares the configuration that follows the specified configuration in
+     * the plan.
+     *
+     * @param configurationClasses
+     *            The configuration classes that are leased.
+     */
+    private void prepareNext(final Class<?>[] configurationClasses) {
+        final List<String> names = getNames(configurationClasses);
+        final int index = plan.indexOf(names);
+        if (index == -1 || index + 1 >= plan.size() || plan.get(index + 1).equals(names)) {
+            return;
+        }
+
+        final List<String> next = plan.get(index + 1);
+        try {
+            final Class<?>[] nextClasses = new Class<?>[next.size()];
+            for (int i = 0; i < nextClasses.length; i++) {
+                nextClasses[i] = Class.forName(next.get(i), true, Thread.currentThread().getContextClassLoader());
+            }
+
+            prepare(nextClasses);
+        } catch (final ClassNotFoundException e) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Failed to prepare the next configuration in the plan: " + next, e);
+            }
+        } catch (final RuntimeException e) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Failed to prepare the next configuration in the plan: " + next, e);
+            }
+        }
+    }
+
+    /**
+     * Waits until a container that was taken out of the standby list is
+     * prepared.
+     *
+     * @param key
+     *            The key of the container.
+     * @param standby
+     *            The standby container or null if there is none.
+     * @return Returns the prepared container or null if there is no usable
+     *         standby container.
+     */
+    private static PooledContainer takeStandby(final String key, final Standby standby) {
+        if (standby == null) {
+            return null;
+        }
+
+        try {
+            standby.future.get();
+
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info("Using standby container for " + key);
+            }
+            return standby.container;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop(standby.container);
+            return null;
+        } catch (final ExecutionException e) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Failed to prepare standby container for " + key, e.getCause());
+            }
+            stop(standby.container);
+            return null;
+        }
+    }
+
+    /**
+     * Releases a lease. The container keeps running for the idle timeout when
+     * this was the last lease.
+     *
+     * @param lease
+     *            The lease to release.
+     */
+    void release(final ContainerLease lease) {
+        final PooledContainer container = lease.getContainer();
+        synchronized (this) {
+            container.references--;
+
+            if (container.references > 0) {
+                return;
+            }
+
+            if (enabled) {
+                final long generation = container.generation;
+                scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        stopWhenIdle(container, generation);
+                    }
+                }, idleTimeout, TimeUnit.MILLISECONDS);
+                return;
+            }
+        }
+
+        stop(container);
+    }
+
+    /**
+     * Stops all running containers.
+     */
+    public synchronized void shutdown() {
+        for (final PooledContainer container : new ArrayList<PooledContainer>(containers.values())) {
+            if (container.references > 0 && LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Stopping container for " + container.key + " which still has " + container.references
+                        + " leases.");
+            }
+            remove(container);
+        }
+
+        /*
+         * Clean up the standby containers once they are prepared.
+         */
+        preparer.shutdown();
+        for (final Standby standby : new ArrayList<Standby>(standbys.values())) {
+            try {
+                standby.future.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (final ExecutionException e) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Standby container for " + standby.container.key + " failed.", e.getCause());
+                }
+            }
+            stop(standby.container);
+        }
+        standbys.clear();
+
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Sets the plan of configurations.
+     *
+     * @param plan
+     *            A comma separated list of items where each item consists of
+     *            configuration class names separated by a plus sign.
+     */
+    void setPlan(final String plan) {
+        final List<List<String>> items = new ArrayList<List<String>>();
+
+        if (StringUtils.isNotBlank(plan)) {
+            for (final String item : StringUtils.split(plan, ",")) {
+                final List<String> names = new ArrayList<String>();
+                for (final String name : StringUtils.split(item, "+")) {
+                    names.add(name.trim());
+                }
+                items.add(names);
+            }
+        }
+
+        this.plan = items;
+    }
+
+    /**
+     * Retrieves the names of the configuration classes.
+     *
+     * @param configurationClasses
+     *            The configuration classes.
+     * @return Returns a list of class names.
+     */
+    private static List<String> getNames(final Class<?>[] configurationClasses) {
+        final List<String> names = new ArrayList<String>();
+        for (final Class<?> configurationClass : configurationClasses) {
+            names.add(configurationClass.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Stops the container when it wasn't leased again since it became idle.
+     *
+     * @param container
+     *            The container to check.
+     * @param generation
+     *            The generation of the container when it became idle.
+     */
+    private void stopWhenIdle(final PooledContainer container, final long generation) {
+        synchronized (this) {
+            if (container.references != 0 || container.generation != generation
+                    || containers.get(container.key) != container) {
+                return;
+            }
+            containers.remove(container.key);
+        }
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Stopping container for " + container.key + " after being idle for " + idleTimeout + " ms");
+        }
+        stop(container);
+    }
+
+    /**
+     * Removes all containers that aren't leased from the registry so they can
+     * be stopped before the new container is started and it won't clash with
+     * them on ports or resources.
+     *
+     * @return Returns the removed containers.
+     */
+    private List<PooledContainer> removeIdleContainers() {
+        final List<PooledContainer> idle = new ArrayList<PooledContainer>();
+        for (final PooledContainer container : new ArrayList<PooledContainer>(containers.values())) {
+            if (container.references == 0) {
+                containers.remove(container.key);
+                idle.add(container);
+            }
+        }
+        return idle;
+    }
+
+    /**
+     * Removes a container from the registry and stops it.
+     *
+     * @param container
+     *            The container to remove.
+     */
+    private void remove(final PooledContainer container) {
+        containers.remove(container.key);
+        stop(container);
+    }
+
+    /**
+     * Starts a container and closes its application context when it fails.
+     *
+     * @param container
+     *            The container to start.
+     */
+    private static void start(final PooledContainer container) {
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Starting container for " + container.key);
+        }
+
+        try {
+            container.containerUtil.start();
+        } catch (final RuntimeException e) {
+            container.context.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Stops a container and closes its application context.
+     *
+     * @param container
+     *            The container to stop.
+     */
+    private static void stop(final PooledContainer container) {
+        try {
+            container.containerUtil.stop();
+        } catch (final RuntimeException e) {
+            if (LOGGER.isErrorEnabled()) {
+                LOGGER.error("Failed to stop container for " + container.key, e);
+            }
+        } finally {
+            container.context.close();
+        }
+    }
+
+    /**
+     * Creates the key of a container based on the configuration classes and
+     * the deployables of the container utility.
+     *
+     * @param configurationClasses
+     *            The configuration classes.
+     * @param containerUtil
+     *            The container utility.
+     * @return Returns the key.
+     */
+    private static String createKey(final Class<?>[] configurationClasses, final ContainerUtil containerUtil) {
+        final StringBuilder key = new StringBuilder();
+        key.append(getNames(configurationClasses));
+
+        if (containerUtil instanceof AbstractInstalledContainerUtil) {
+            final AbstractInstalledContainerUtil installedContainerUtil = (AbstractInstalledContainerUtil) containerUtil;
+
+            for (final Entry<String, String> entry : installedContainerUtil.getDeployableLocations().entrySet()) {
+                key.append(" ").append(entry.getValue()).append(":").append(entry.getKey());
+            }
+            for (final DeployableLocationConfiguration configuration : installedContainerUtil
+                    .getDeployableLocationConfigurations()) {
+                key.append(" ").append(configuration.getType()).append(":").append(configuration.getPath());
+                key.append("@").append(configuration.getContextName());
+            }
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * A container that is being prepared as warm standby.
+     */
+    private static final class Standby {
+
+        /** The container that is being prepared. */
+        private final PooledContainer container;
+
+        /** Completes when the container is prepared. */
+        private final Future<?> future;
+
+        /**
+         * Constructor taking all fields.
+         *
+         * @param container
+         *            The container that is being prepared.
+         * @param future
+         *            Completes when the container is prepared.
+         */
+        private Standby(final PooledContainer container, final Future<?> future) {
+            this.container = container;
+            this.future = future;
+        }
+
+    }
+
+    /**
+     * A container that is managed by the registry.
+     */
+    static final class PooledContainer {
+
+        /** The key of the container. */
+        private final String key;
+
+        /** The application context containing the container utility. */
+        private final ConfigurableApplicationContext context;
+
+        /** The container utility. */
+        private final ContainerUtil containerUtil;
+
+        /** The number of active leases. */
+        private int references;
+
+        /** Increases every time the container is leased. */
+        private long generation;
+
+        /**
+         * Constructor taking all final fields.
+         *
+         * @param key
+         *            The key of the container.
+         * @param context
+         *            The application context containing the container
+         *            utility.
+         * @param containerUtil
+         *            The container utility.
+         */
+        private PooledContainer(final String key, final ConfigurableApplicationContext context,
+                final ContainerUtil containerUtil) {
+            this.key = key;
+            this.context = context;
+            this.containerUtil = containerUtil;
+        }
+
+        /**
+         * @return the context
+         */
+        ConfigurableApplicationContext getContext() {
+            return context;
+        }
+
+        /**
+         * @return the containerUtil
+         */
+        ContainerUtil getContainerUtil() {
+            return containerUtil;
+        }
+
+    }
+
+}
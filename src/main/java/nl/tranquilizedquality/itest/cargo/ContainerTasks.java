@@ -0,0 +1,130 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Starts and stops container utilities in the background on a shared pool of
+ * daemon threads.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+final class ContainerTasks {
+
+    /** Logger for this class */
+    private static final Log LOGGER = LogFactory.getLog(ContainerTasks.class);
+
+    /** Starts and stops containers in the background. */
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "cargo-itest-async-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Hidden constructor.
+     */
+    private ContainerTasks() {
+    }
+
+    /**
+     * Starts a container in the background. Cancelling the returned future
+     * stops the container once it is started.
+     *
+     * @param containerUtil
+     *            The container utility to start.
+     * @param containerName
+     *            The name of the container used for logging.
+     * @return Returns a {@link Future} that completes when the container is
+     *         started.
+     */
+    static Future<Void> startAsync(final ContainerUtil containerUtil, final String containerName) {
+        final FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+            @Override
+            public Void call() {
+                containerUtil.start();
+                return null;
+            }
+        }) {
+            @Override
+            public boolean cancel(final boolean mayInterruptIfRunning) {
+                final boolean cancelled = super.cancel(mayInterruptIfRunning);
+
+                /*
+                 * The start can't be aborted halfway so the container is
+                 * stopped as soon as the start has finished.
+                 */
+                if (cancelled) {
+                    if (LOGGER.isInfoEnabled()) {
+                        LOGGER.info("Start of " + containerName + " was cancelled, stopping it...");
+                    }
+                    stopAsync(containerUtil);
+                }
+                return cancelled;
+            }
+        };
+
+        EXECUTOR.execute(task);
+        return task;
+    }
+
+    /**
+     * Runs a task in the background.
+     *
+     * @param task
+     *            The task to run.
+     * @return Returns a {@link Future} that completes when the task is done.
+     */
+    static Future<?> submit(final Runnable task) {
+        return EXECUTOR.submit(task);
+    }
+
+    /**
+     * Stops a container in the background.
+     *
+     * @param containerUtil
+     *            The container utility to stop.
+     * @return Returns a {@link Future} that completes when the container is
+     *         stopped.
+     */
+    static Future<Void> stopAsync(final ContainerUtil containerUtil) {
+        return EXECUTOR.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                containerUtil.stop();
+                return null;
+            }
+        });
+    }
+
+}
@@ -16,6 +16,12 @@
 
 package nl.tranquilizedquality.itest.cargo;
 
+import java.util.concurrent.Future;
+
+import nl.tranquilizedquality.itest.cargo.metrics.StartupMetrics;
+
+import nl.tranquilizedquality.itest.domain.DeployableLocationConfiguration;
+
 /**
  * Interface for a container utility. It can configure, start and stop a
  * specific container.
@@ -25,6 +31,13 @@ package nl.tranquilizedquality.itest.cargo;
  */
 public interface ContainerUtil {
 
+    /**
+     * Installs and configures the container without starting it so a
+     * subsequent {@link #start()} only needs to deploy and boot it. Calling
+     * it more than once has no effect.
+     */
+    void prepare();
+
     /**
      * Starts up the installedLocalContainer and its deployed applications
      */
@@ -35,6 +48,24 @@ public interface ContainerUtil {
      */
     void stop();
 
+    /**
+     * Starts up the container in the background so multiple containers, or a
+     * container and other fixtures, can be started at the same time.
+     * Cancelling the returned future stops the container once it is started.
+     *
+     * @return Returns a {@link Future} that completes when the container is
+     *         started or fails with the exception thrown by {@link #start()}.
+     */
+    Future<Void> startAsync();
+
+    /**
+     * Stops the container in the background.
+     *
+     * @return Returns a {@link Future} that completes when the container is
+     *         stopped.
+     */
+    Future<Void> stopAsync();
+
     /**
      * Adds a location of a deployable with the according type.
      *
@@ -51,6 +82,26 @@ public interface ContainerUtil {
      */
     void addDeployableLocation(String location, String type);
 
+    /**
+     * Deploys a deployable into the running container or replaces it when it
+     * was deployed already. It waits until the deployable is reachable again.
+     *
+     * @param configuration
+     *            The location, type and optional context name of the
+     *            deployable.
+     */
+    void redeploy(DeployableLocationConfiguration configuration);
+
+    /**
+     * Removes a deployable from the running container. It waits until the
+     * deployable isn't reachable anymore.
+     *
+     * @param configuration
+     *            The location, type and optional context name of the
+     *            deployable.
+     */
+    void undeploy(DeployableLocationConfiguration configuration);
+
     /**
      * Retrieves the port where the container is running on.
      *
@@ -59,6 +110,23 @@ public interface ContainerUtil {
      */
     Integer getContainerPort();
 
+    /**
+     * Retrieves the URL where the container can be reached i.e.
+     * http://localhost:8890/. It contains the allocated port when the port of
+     * the container is allocated dynamically.
+     *
+     * @return Returns a String representation of the URL ending with a slash.
+     */
+    String getBaseUrl();
+
+    /**
+     * Retrieves the time spent in the phases of the last startup.
+     *
+     * @return Returns the {@link StartupMetrics} or null if the container
+     *         wasn't prepared yet.
+     */
+    StartupMetrics getStartupMetrics();
+
     /**
      * Retrieves the directory where shared libraries can be copied to.
      *
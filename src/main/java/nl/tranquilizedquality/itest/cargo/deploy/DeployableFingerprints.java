@@ -0,0 +1,261 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.deploy;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+
+import nl.tranquilizedquality.itest.cargo.install.ArtifactCache;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Index of the fingerprints of deployables so unchanged deployables don't
+ * need to be deployed again. A fingerprint consists of the size, the
+ * modification time and the SHA-256 of a deployable. The SHA-256 is only
+ * calculated when a deployable changed, and it is only compared when the size
+ * is the same but the modification time isn't, i.e. when a deployable was
+ * rebuilt without changes.
+ *
+ * The index is kept in memory and, when an index file is specified, stored
+ * in that file so it survives the JVM.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class DeployableFingerprints {
+
+    /** The file the index is stored in or null if it is kept in memory. */
+    private final File indexFile;
+
+    /** The fingerprints by the absolute path of the deployable. */
+    private final Map<String, Fingerprint> fingerprints = new HashMap<String, Fingerprint>();
+
+    /**
+     * Creates an index that is kept in memory.
+     */
+    public DeployableFingerprints() {
+        this.indexFile = null;
+    }
+
+    /**
+     * Creates an index that is stored in a file. The fingerprints that are
+     * already stored in the file are loaded.
+     *
+     * @param indexFile
+     *            The file the index is stored in.
+     * @throws IOException
+     *             Is thrown when the index file couldn't be read.
+     */
+    public DeployableFingerprints(final File indexFile) throws IOException {
+        this.indexFile = indexFile;
+
+        if (indexFile.isFile()) {
+            final Properties properties = new Properties();
+            final InputStream input = new FileInputStream(indexFile);
+            try {
+                properties.load(input);
+            } finally {
+                input.close();
+            }
+
+            for (final String path : properties.stringPropertyNames()) {
+                final Fingerprint fingerprint = Fingerprint.parse(properties.getProperty(path));
+                if (fingerprint != null) {
+                    fingerprints.put(path, fingerprint);
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines if a deployable is unchanged since it was recorded.
+     *
+     * @param deployable
+     *            The deployable.
+     * @return Returns true if the deployable is unchanged.
+     * @throws IOException
+     *             Is thrown when the deployable couldn't be hashed.
+     */
+    public synchronized boolean isUnchanged(final File deployable) throws IOException {
+        final Fingerprint recorded = fingerprints.get(deployable.getAbsolutePath());
+        if (recorded == null || !deployable.isFile() || deployable.length() != recorded.size) {
+            return false;
+        }
+
+        if (deployable.lastModified() == recorded.lastModified) {
+            return true;
+        }
+
+        /*
+         * Rebuilt with the same size so only the content can tell.
+         */
+        if (!ArtifactCache.digest(deployable).equals(recorded.sha)) {
+            return false;
+        }
+
+        fingerprints.put(deployable.getAbsolutePath(), new Fingerprint(recorded.size, deployable.lastModified(),
+                recorded.sha));
+        store();
+        return true;
+    }
+
+    /**
+     * Records the fingerprint of a deployable.
+     *
+     * @param deployable
+     *            The deployable.
+     * @throws IOException
+     *             Is thrown when the deployable couldn't be hashed or the
+     *             index couldn't be stored.
+     */
+    public synchronized void record(final File deployable) throws IOException {
+        final String path = deployable.getAbsolutePath();
+        final Fingerprint recorded = fingerprints.get(path);
+        if (recorded != null && recorded.size == deployable.length()
+                && recorded.lastModified == deployable.lastModified()) {
+            return;
+        }
+
+        fingerprints.put(path, new Fingerprint(deployable.length(), deployable.lastModified(), ArtifactCache
+                .digest(deployable)));
+        store();
+    }
+
+    /**
+     * Removes the fingerprint of a deployable.
+     *
+     * @param deployable
+     *            The deployable.
+     * @throws IOException
+     *             Is thrown when the index couldn't be stored.
+     */
+    public synchronized void remove(final File deployable) throws IOException {
+        if (fingerprints.remove(deployable.getAbsolutePath()) != null) {
+            store();
+        }
+    }
+
+    /**
+     * Removes all fingerprints.
+     *
+     * @throws IOException
+     *             Is thrown when the index couldn't be stored.
+     */
+    public synchronized void clear() throws IOException {
+        fingerprints.clear();
+        store();
+    }
+
+    /**
+     * Stores the index in the index file when there is one.
+     *
+     * @throws IOException
+     *             Is thrown when the index couldn't be stored.
+     */
+    private void store() throws IOException {
+        if (indexFile == null) {
+            return;
+        }
+
+        final Properties properties = new Properties();
+        for (final Entry<String, Fingerprint> entry : fingerprints.entrySet()) {
+            properties.setProperty(entry.getKey(), entry.getValue().toString());
+        }
+
+        FileUtils.forceMkdir(indexFile.getAbsoluteFile().getParentFile());
+        final File part = new File(indexFile.getPath() + ".part");
+        final OutputStream output = new FileOutputStream(part);
+        try {
+            properties.store(output, "Size, modification time and SHA-256 of the deployables");
+        } finally {
+            output.close();
+        }
+
+        Files.move(part.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * The fingerprint of a deployable.
+     */
+    private static final class Fingerprint {
+
+        /** The size in bytes. */
+        private final long size;
+
+        /** The modification time. */
+        private final long lastModified;
+
+        /** The SHA-256. */
+        private final String sha;
+
+        /**
+         * Constructor taking the parts of the fingerprint.
+         *
+         * @param size
+         *            The size in bytes.
+         * @param lastModified
+         *            The modification time.
+         * @param sha
+         *            The SHA-256.
+         */
+        Fingerprint(final long size, final long lastModified, final String sha) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.sha = sha;
+        }
+
+        /**
+         * Parses a stored fingerprint.
+         *
+         * @param value
+         *            The stored fingerprint.
+         * @return Returns the fingerprint or null if it is invalid.
+         */
+        static Fingerprint parse(final String value) {
+            final String[] parts = StringUtils.split(value, ':');
+            if (parts == null || parts.length != 3) {
+                return null;
+            }
+
+            try {
+                return new Fingerprint(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2]);
+            } catch (final NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return size + ":" + lastModified + ":" + sha;
+        }
+
+    }
+
+}
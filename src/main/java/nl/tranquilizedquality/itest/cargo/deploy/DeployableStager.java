@@ -0,0 +1,158 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.deploy;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Stages a deployable under another name without copying its content when
+ * possible. The staged file is a hard link to the deployable, or a symbolic
+ * link when hard links aren't possible i.e. across file systems. Only when
+ * both fail the deployable is copied. A staged file that is already identical
+ * to the deployable is left alone.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public final class DeployableStager {
+
+    /** Logger for this class */
+    private static final Log LOGGER = LogFactory.getLog(DeployableStager.class);
+
+    /**
+     * The ways a deployable can be staged.
+     */
+    public enum Staging {
+        /** The staged file was already identical to the deployable. */
+        UNCHANGED,
+        /** The staged file is a hard link to the deployable. */
+        HARD_LINK,
+        /** The staged file is a symbolic link to the deployable. */
+        SYMBOLIC_LINK,
+        /** The staged file is a copy of the deployable. */
+        COPY
+    }
+
+    /**
+     * Hidden constructor.
+     */
+    private DeployableStager() {
+    }
+
+    /**
+     * Stages a deployable.
+     *
+     * @param source
+     *            The deployable to stage.
+     * @param target
+     *            The file the deployable should be available as.
+     * @return Returns how the deployable was staged.
+     * @throws IOException
+     *             Is thrown when the deployable doesn't exist or couldn't be
+     *             staged.
+     */
+    public static Staging stage(final File source, final File target) throws IOException {
+        if (!source.isFile()) {
+            throw new FileNotFoundException("Deployable does not exist: " + source.getAbsolutePath());
+        }
+
+        final Path sourcePath = source.getAbsoluteFile().toPath();
+        final Path targetPath = target.getAbsoluteFile().toPath();
+
+        if (isIdentical(source, target)) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Staged deployable is up to date: " + target.getPath());
+            }
+            return Staging.UNCHANGED;
+        }
+
+        Files.createDirectories(targetPath.getParent());
+        Files.deleteIfExists(targetPath);
+
+        Staging staging;
+        try {
+            Files.createLink(targetPath, sourcePath);
+            staging = Staging.HARD_LINK;
+        } catch (final IOException e) {
+            staging = null;
+        } catch (final UnsupportedOperationException e) {
+            staging = null;
+        }
+
+        if (staging == null) {
+            try {
+                Files.createSymbolicLink(targetPath, sourcePath);
+                staging = Staging.SYMBOLIC_LINK;
+            } catch (final IOException e) {
+                staging = null;
+            } catch (final UnsupportedOperationException e) {
+                staging = null;
+            }
+        }
+
+        /*
+         * Copy to a temporary file first so an interrupted copy never leaves
+         * a partial deployable behind.
+         */
+        if (staging == null) {
+            final Path part = targetPath.resolveSibling(targetPath.getFileName() + ".part");
+            Files.copy(sourcePath, part, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            Files.move(part, targetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            staging = Staging.COPY;
+        }
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Staged " + source.getPath() + " as " + target.getPath() + " (" + staging + ")");
+        }
+        return staging;
+    }
+
+    /**
+     * Determines if a staged file is identical to the deployable. This is the
+     * case when it is a link to the deployable or a copy with the same size
+     * and modification time.
+     *
+     * @param source
+     *            The deployable.
+     * @param target
+     *            The staged file.
+     * @return Returns true if the staged file is identical.
+     * @throws IOException
+     *             Is thrown when the files couldn't be compared.
+     */
+    static boolean isIdentical(final File source, final File target) throws IOException {
+        if (!target.isFile()) {
+            return false;
+        }
+
+        if (Files.isSameFile(source.toPath(), target.toPath())) {
+            return true;
+        }
+
+        return !Files.isSymbolicLink(target.toPath()) && source.length() == target.length()
+                && source.lastModified() == target.lastModified();
+    }
+
+}
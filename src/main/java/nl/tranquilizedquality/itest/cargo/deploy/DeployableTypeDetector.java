@@ -0,0 +1,302 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.deploy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.codehaus.cargo.container.deployable.DeployableType;
+
+/**
+ * Detects the type of a deployable from its deployment descriptors. Only the
+ * central directory at the end of an archive is read, which is mapped in
+ * memory, so detecting the type of a large EAR takes milliseconds. The
+ * detected types are cached by path, size and modification time.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public final class DeployableTypeDetector {
+
+    /** The signature of the end of central directory record. */
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+
+    /** The signature of a central directory file header. */
+    private static final int CENTRAL_DIRECTORY_HEADER = 0x02014b50;
+
+    /** The size of the end of central directory record without comment. */
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+
+    /** The maximum size of the archive comment. */
+    private static final int MAXIMUM_COMMENT_SIZE = 0xffff;
+
+    /** The size of a central directory file header without its variable fields. */
+    private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+
+    /** The value of a field that is stored in the ZIP64 record instead. */
+    private static final long ZIP64_MARKER = 0xffffffffL;
+
+    /** The character set of the entry names. */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /** The deployment descriptor of an enterprise application. */
+    private static final String APPLICATION_XML = "META-INF/application.xml";
+
+    /** The deployment descriptor of an EJB module. */
+    private static final String EJB_JAR_XML = "META-INF/ejb-jar.xml";
+
+    /** The directory containing the classes and descriptors of a web application. */
+    private static final String WEB_INF = "WEB-INF/";
+
+    /** The detected types by the fingerprint of the deployable. */
+    private static final Map<String, DeployableType> CACHE = Collections
+            .synchronizedMap(new HashMap<String, DeployableType>());
+
+    /**
+     * Hidden constructor.
+     */
+    private DeployableTypeDetector() {
+    }
+
+    /**
+     * Detects the type of a deployable.
+     *
+     * @param deployable
+     *            The archive or exploded directory of the deployable.
+     * @return Returns the {@link DeployableType} or null if it can't be
+     *         determined from the deployment descriptors.
+     * @throws IOException
+     *             Is thrown when the deployable doesn't exist or isn't an
+     *             archive.
+     */
+    public static DeployableType detect(final File deployable) throws IOException {
+        if (deployable.isDirectory()) {
+            return detectDirectory(deployable);
+        }
+
+        if (!deployable.isFile()) {
+            throw new IOException("Deployable does not exist: " + deployable.getAbsolutePath());
+        }
+
+        final String fingerprint = deployable.getAbsolutePath() + ":" + deployable.length() + ":"
+                + deployable.lastModified();
+        synchronized (CACHE) {
+            if (CACHE.containsKey(fingerprint)) {
+                return CACHE.get(fingerprint);
+            }
+        }
+
+        final DeployableType deployableType = detectArchive(deployable);
+        CACHE.put(fingerprint, deployableType);
+        return deployableType;
+    }
+
+    /**
+     * Detects the type of an exploded deployable.
+     *
+     * @param directory
+     *            The exploded directory.
+     * @return Returns the {@link DeployableType} or null if it is unknown.
+     */
+    private static DeployableType detectDirectory(final File directory) {
+        if (new File(directory, APPLICATION_XML).isFile()) {
+            return DeployableType.EAR;
+        } else if (new File(directory, WEB_INF).isDirectory()) {
+            return DeployableType.WAR;
+        } else if (new File(directory, EJB_JAR_XML).isFile()) {
+            return DeployableType.EJB;
+        }
+
+        return null;
+    }
+
+    /**
+     * Detects the type of an archive from the entry names in its central
+     * directory.
+     *
+     * @param archive
+     *            The archive.
+     * @return Returns the {@link DeployableType} or null if it is unknown.
+     * @throws IOException
+     *             Is thrown when the file isn't an archive.
+     */
+    private static DeployableType detectArchive(final File archive) throws IOException {
+        final EntryNames names = new EntryNames();
+
+        final RandomAccessFile file = new RandomAccessFile(archive, "r");
+        try {
+            final FileChannel channel = file.getChannel();
+            final long size = channel.size();
+            if (size < END_OF_CENTRAL_DIRECTORY_SIZE) {
+                throw new IOException("Deployable is not an archive: " + archive.getAbsolutePath());
+            }
+
+            /*
+             * The end of central directory record is followed by a comment
+             * of at most 64 KB so search backwards for its signature.
+             */
+            final long tailSize = Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE + MAXIMUM_COMMENT_SIZE);
+            final ByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, size - tailSize, tailSize).order(
+                    ByteOrder.LITTLE_ENDIAN);
+
+            int end = (int) tailSize - END_OF_CENTRAL_DIRECTORY_SIZE;
+            while (end >= 0 && tail.getInt(end) != END_OF_CENTRAL_DIRECTORY) {
+                end--;
+            }
+            if (end < 0) {
+                throw new IOException("Deployable is not an archive: " + archive.getAbsolutePath());
+            }
+
+            final long directorySize = tail.getInt(end + 12) & ZIP64_MARKER;
+            final long directoryOffset = tail.getInt(end + 16) & ZIP64_MARKER;
+            if (directoryOffset == ZIP64_MARKER || directoryOffset + directorySize > size
+                    || !readCentralDirectory(channel, directoryOffset, directorySize, names)) {
+                readEntries(archive, names);
+            }
+        } finally {
+            file.close();
+        }
+
+        return names.getDeployableType();
+    }
+
+    /**
+     * Reads the entry names from the central directory.
+     *
+     * @param channel
+     *            The channel of the archive.
+     * @param offset
+     *            The offset of the central directory.
+     * @param size
+     *            The size of the central directory.
+     * @param names
+     *            The entry names that were found.
+     * @return Returns false if the central directory isn't where the end of
+     *         central directory record says it is, i.e. when data was
+     *         prepended to the archive.
+     * @throws IOException
+     *             Is thrown when the archive couldn't be read.
+     */
+    private static boolean readCentralDirectory(final FileChannel channel, final long offset, final long size,
+            final EntryNames names) throws IOException {
+        final ByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, offset, size).order(
+                ByteOrder.LITTLE_ENDIAN);
+
+        int position = 0;
+        while (position + CENTRAL_DIRECTORY_HEADER_SIZE <= size) {
+            if (directory.getInt(position) != CENTRAL_DIRECTORY_HEADER) {
+                return position > 0;
+            }
+
+            final int nameLength = directory.getShort(position + 28) & 0xffff;
+            final int extraLength = directory.getShort(position + 30) & 0xffff;
+            final int commentLength = directory.getShort(position + 32) & 0xffff;
+
+            final byte[] name = new byte[nameLength];
+            for (int i = 0; i < nameLength; i++) {
+                name[i] = directory.get(position + CENTRAL_DIRECTORY_HEADER_SIZE + i);
+            }
+            names.add(new String(name, CHARSET));
+
+            position += CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads the entry names with a {@link ZipFile} for archives the central
+     * directory can't be read from directly, i.e. ZIP64 archives.
+     *
+     * @param archive
+     *            The archive.
+     * @param names
+     *            The entry names that were found.
+     * @throws IOException
+     *             Is thrown when the archive couldn't be read.
+     */
+    private static void readEntries(final File archive, final EntryNames names) throws IOException {
+        final ZipFile zip = new ZipFile(archive);
+        try {
+            final Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                names.add(entries.nextElement().getName());
+            }
+        } finally {
+            zip.close();
+        }
+    }
+
+    /**
+     * Keeps track of the entry names that identify the type of a deployable.
+     */
+    private static final class EntryNames {
+
+        /** Determines if an application descriptor was found. */
+        private boolean application;
+
+        /** Determines if web application content was found. */
+        private boolean web;
+
+        /** Determines if an EJB descriptor was found. */
+        private boolean ejb;
+
+        /**
+         * Adds an entry name.
+         *
+         * @param name
+         *            The entry name.
+         */
+        void add(final String name) {
+            if (APPLICATION_XML.equals(name)) {
+                application = true;
+            } else if (name.startsWith(WEB_INF)) {
+                web = true;
+            } else if (EJB_JAR_XML.equals(name)) {
+                ejb = true;
+            }
+        }
+
+        /**
+         * @return the type of the deployable or null if it is unknown
+         */
+        DeployableType getDeployableType() {
+            if (application) {
+                return DeployableType.EAR;
+            } else if (web) {
+                return DeployableType.WAR;
+            } else if (ejb) {
+                return DeployableType.EJB;
+            }
+
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.deploy;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.Properties;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Keeps an exploded directory in sync with a deployable archive. The size and
+ * CRC of every extracted entry are kept in an index in the directory, so a
+ * later sync only extracts the entries that changed and removes the ones that
+ * are no longer in the archive. The CRCs are read from the central directory
+ * of the archive so unchanged entries aren't read at all.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class ExplodedDeployableSync {
+
+    /** Logger for this class */
+    private static final Log LOGGER = LogFactory.getLog(ExplodedDeployableSync.class);
+
+    /** The name of the index file in the exploded directory. */
+    public static final String INDEX_FILE = ".cargo-itest-sync";
+
+    /** The archive to explode. */
+    private final File archive;
+
+    /** The directory the archive is exploded in. */
+    private final File directory;
+
+    /** The number of entries that were extracted by the last sync. */
+    private int extracted;
+
+    /** The number of entries that were unchanged during the last sync. */
+    private int unchanged;
+
+    /** The number of files that were removed by the last sync. */
+    private int removed;
+
+    /**
+     * Constructor taking the archive and the directory it is exploded in.
+     *
+     * @param archive
+     *            The archive to explode.
+     * @param directory
+     *            The directory the archive is exploded in.
+     */
+    public ExplodedDeployableSync(final File archive, final File directory) {
+        this.archive = archive;
+        this.directory = directory;
+    }
+
+    /**
+     * Brings the exploded directory in sync with the archive.
+     *
+     * @throws IOException
+     *             Is thrown when the archive couldn't be read or an entry
+     *             couldn't be written.
+     */
+    public void sync() throws IOException {
+        final long start = System.currentTimeMillis();
+        extracted = 0;
+        unchanged = 0;
+        removed = 0;
+
+        FileUtils.forceMkdir(directory);
+        final String root = directory.getCanonicalPath() + File.separator;
+        final File indexFile = new File(directory, INDEX_FILE);
+        final Properties index = loadIndex(indexFile);
+        final Properties synced = new Properties();
+
+        final ZipFile zip = new ZipFile(archive);
+        try {
+            final Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                final ZipEntry entry = entries.nextElement();
+                final File target = new File(directory, entry.getName());
+
+                /*
+                 * Never write outside of the exploded directory.
+                 */
+                if (!target.getCanonicalPath().startsWith(root)) {
+                    throw new IOException("Entry is outside of the exploded directory: " + entry.getName());
+                }
+
+                if (entry.isDirectory()) {
+                    FileUtils.forceMkdir(target);
+                    continue;
+                }
+
+                final String signature = entry.getSize() + ":" + entry.getCrc();
+                if (signature.equals(index.getProperty(entry.getName())) && target.isFile()
+                        && target.length() == entry.getSize()) {
+                    unchanged++;
+                } else {
+                    extract(zip, entry, target);
+                    extracted++;
+                }
+                synced.setProperty(entry.getName(), signature);
+            }
+        } finally {
+            zip.close();
+        }
+
+        /*
+         * Remove the files of entries that are no longer in the archive.
+         */
+        for (final String name : index.stringPropertyNames()) {
+            if (!synced.containsKey(name)) {
+                final File file = new File(directory, name);
+                if (file.getCanonicalPath().startsWith(root) && file.delete()) {
+                    removed++;
+                }
+            }
+        }
+
+        storeIndex(indexFile, synced);
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Synced " + archive.getPath() + " to " + directory.getPath() + " in "
+                    + (System.currentTimeMillis() - start) + " ms: " + extracted + " extracted, " + unchanged
+                    + " unchanged, " + removed + " removed");
+        }
+    }
+
+    /**
+     * Extracts an entry of the archive.
+     *
+     * @param zip
+     *            The archive.
+     * @param entry
+     *            The entry to extract.
+     * @param target
+     *            The file to extract the entry to.
+     * @throws IOException
+     *             Is thrown when the entry couldn't be extracted.
+     */
+    private static void extract(final ZipFile zip, final ZipEntry entry, final File target) throws IOException {
+        FileUtils.forceMkdir(target.getParentFile());
+
+        final InputStream input = zip.getInputStream(entry);
+        try {
+            final OutputStream output = new FileOutputStream(target);
+            try {
+                IOUtils.copy(input, output);
+            } finally {
+                output.close();
+            }
+        } finally {
+            input.close();
+        }
+
+        if (entry.getTime() != -1) {
+            target.setLastModified(entry.getTime());
+        }
+    }
+
+    /**
+     * Loads the index of the last sync.
+     *
+     * @param indexFile
+     *            The index file.
+     * @return Returns the index, which is empty when there was no sync yet.
+     * @throws IOException
+     *             Is thrown when the index couldn't be read.
+     */
+    private static Properties loadIndex(final File indexFile) throws IOException {
+        final Properties index = new Properties();
+        if (indexFile.isFile()) {
+            final InputStream input = new FileInputStream(indexFile);
+            try {
+                index.load(input);
+            } finally {
+                input.close();
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Stores the index of the sync. It is written to a temporary file first
+     * so an interrupted sync doesn't leave a corrupt index behind.
+     *
+     * @param indexFile
+     *            The index file.
+     * @param index
+     *            The index.
+     * @throws IOException
+     *             Is thrown when the index couldn't be written.
+     */
+    private static void storeIndex(final File indexFile, final Properties index) throws IOException {
+        final File part = new File(indexFile.getPath() + ".part");
+        final OutputStream output = new FileOutputStream(part);
+        try {
+            index.store(output, "Size and CRC of the extracted entries");
+        } finally {
+            output.close();
+        }
+
+        Files.move(part.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the number of entries that were extracted by the last sync
+     */
+    public int getExtracted() {
+        return extracted;
+    }
+
+    /**
+     * @return the number of entries that were unchanged during the last sync
+     */
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * @return the number of files that were removed by the last sync
+     */
+    public int getRemoved() {
+        return removed;
+    }
+
+}
@@ -0,0 +1,623 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.install;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Persistent local cache for downloaded container archives. Every archive is
+ * stored in a directory named after the SHA-256 of its URL together with a
+ * checksum file that contains the SHA-256 and the size of the archive. A
+ * cached archive is only used when the checksum file is present, so partially
+ * downloaded archives are never picked up. Downloads are written to a
+ * temporary file first and are published with an atomic rename so concurrent
+ * builds can share the same cache. When the cache grows beyond its maximum
+ * size the least recently used archives are evicted.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class ArtifactCache {
+
+    /** Logger for this class */
+    private static final Log LOGGER = LogFactory.getLog(ArtifactCache.class);
+
+    /** The algorithm used for the checksums of the cached archives. */
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    /** The suffix of the file containing the checksum of an archive. */
+    private static final String CHECKSUM_SUFFIX = ".sha256";
+
+    /** The suffix of archives that are still being downloaded. */
+    private static final String DOWNLOAD_SUFFIX = ".part";
+
+    /** The name of the lock file that guards publishing and eviction. */
+    private static final String LOCK_FILE_NAME = ".lock";
+
+    /** The buffer size used when downloading an archive. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The number of bytes of a file that are mapped in memory at once. */
+    private static final long MAPPED_REGION_SIZE = 64L * 1024L * 1024L;
+
+    /** The names of the entry directories, which are SHA-256 digests. */
+    private static final Pattern ENTRY_NAME = Pattern.compile("[0-9a-f]{64}");
+
+    /** The character set used for the checksum files. */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * The locks of the cache directories by their canonical path. A file lock
+     * is held by the whole JVM, so threads of the same JVM take this lock
+     * first.
+     */
+    private static final ConcurrentMap<String, ReentrantLock> DIRECTORY_LOCKS = new ConcurrentHashMap<String, ReentrantLock>();
+
+    /** The directory where the archives are cached. */
+    private final File cacheDirectory;
+
+    /** Serializes the threads of this JVM that publish into the cache directory. */
+    private final ReentrantLock directoryLock;
+
+    /** The maximum size in bytes of all cached archives together. */
+    private final long maxSize;
+
+    /**
+     * Constructor taking the cache directory and its maximum size.
+     *
+     * @param cacheDirectory
+     *            The directory where the archives will be cached.
+     * @param maxSize
+     *            The maximum size in bytes the cache may grow to.
+     */
+    public ArtifactCache(final File cacheDirectory, final long maxSize) {
+        this.cacheDirectory = cacheDirectory;
+        this.maxSize = maxSize;
+        this.directoryLock = getDirectoryLock(cacheDirectory);
+    }
+
+    /**
+     * Looks up a cached archive without doing any network I/O.
+     *
+     * @param url
+     *            The URL the archive was downloaded from.
+     * @param expectedChecksum
+     *            The SHA-256 the archive should have or null if any checksum
+     *            is accepted.
+     * @return Returns the cached archive or null if it isn't cached or the
+     *         cached archive doesn't match the expected checksum.
+     */
+    public File lookup(final URL url, final String expectedChecksum) {
+        final File entryDirectory = getEntryDirectory(url);
+        final File archive = new File(entryDirectory, getFileName(url));
+        final File checksumFile = new File(entryDirectory, archive.getName() + CHECKSUM_SUFFIX);
+
+        if (!archive.isFile() || !checksumFile.isFile()) {
+            return null;
+        }
+
+        final String[] recorded;
+        try {
+            recorded = StringUtils.split(FileUtils.readFileToString(checksumFile, CHARSET.name()).trim(), ' ');
+        } catch (final IOException e) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Failed to read checksum file: " + checksumFile.getPath(), e);
+            }
+            return null;
+        }
+
+        if (recorded.length != 2 || !recorded[1].equals(String.valueOf(archive.length()))) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Ignoring corrupt cache entry: " + archive.getPath());
+            }
+            return null;
+        }
+
+        if (expectedChecksum != null && !expectedChecksum.equalsIgnoreCase(recorded[0])) {
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info("Cached archive " + archive.getPath() + " doesn't match checksum " + expectedChecksum);
+            }
+            return null;
+        }
+
+        /*
+         * Touch the checksum file so the eviction knows this entry was used
+         * recently.
+         */
+        checksumFile.setLastModified(System.currentTimeMillis());
+
+        return archive;
+    }
+
+    /**
+     * Retrieves an archive from the cache or downloads it when it isn't
+     * cached yet.
+     *
+     * @param url
+     *            The URL where the archive can be downloaded from.
+     * @param expectedChecksum
+     *            The SHA-256 the archive should have or null if the checksum
+     *            shouldn't be verified.
+     * @return Returns the cached archive.
+     * @throws IOException
+     *             Is thrown when the download fails or the downloaded archive
+     *             doesn't match the expected checksum.
+     */
+    public File retrieve(final URL url, final String expectedChecksum) throws IOException {
+        final File cached = lookup(url, expectedChecksum);
+        if (cached != null) {
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info("Using cached archive: " + cached.getPath());
+            }
+            return cached;
+        }
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Downloading " + url + " into the artifact cache...");
+        }
+
+        final File download = createDownloadFile(url);
+        try {
+            final String checksum = download(url, download);
+            return publish(url, download, checksum, expectedChecksum);
+        } finally {
+            download.delete();
+        }
+    }
+
+    /**
+     * Creates a temporary file in the cache directory where an archive can be
+     * downloaded to. The file is on the same file system as the cache so it can
+     * be published with an atomic rename.
+     *
+     * @param url
+     *            The URL of the archive that will be downloaded.
+     * @return Returns the temporary file.
+     * @throws IOException
+     *             Is thrown when the file couldn't be created.
+     */
+    public File createDownloadFile(final URL url) throws IOException {
+        FileUtils.forceMkdir(cacheDirectory);
+        return File.createTempFile(digest(url.toExternalForm()), DOWNLOAD_SUFFIX, cacheDirectory);
+    }
+
+    /**
+     * Publishes a downloaded archive in the cache. The archive is moved into
+     * place with an atomic rename after which the checksum file is written so
+     * other builds will only see complete archives.
+     *
+     * @param url
+     *            The URL the archive was downloaded from.
+     * @param download
+     *            The downloaded archive which should be located in the cache
+     *            directory.
+     * @param checksum
+     *            The SHA-256 of the downloaded archive.
+     * @param expectedChecksum
+     *            The SHA-256 the archive should have or null if the checksum
+     *            shouldn't be verified.
+     * @return Returns the published archive.
+     * @throws IOException
+     *             Is thrown when the archive couldn't be published or doesn't
+     *             match the expected checksum.
+     */
+    public File publish(final URL url, final File download, final String checksum, final String expectedChecksum)
+            throws IOException {
+        if (expectedChecksum != null && !expectedChecksum.equalsIgnoreCase(checksum)) {
+            throw new IOException("Checksum mismatch for " + url + ": expected " + expectedChecksum + " but was " + checksum);
+        }
+
+        final File entryDirectory = getEntryDirectory(url);
+        final File archive = new File(entryDirectory, getFileName(url));
+        final File checksumFile = new File(entryDirectory, archive.getName() + CHECKSUM_SUFFIX);
+        final long size = download.length();
+
+        final FileLock lock = acquireLock();
+        try {
+            FileUtils.forceMkdir(entryDirectory);
+
+            /*
+             * Remove the checksum file first so nobody will use the archive
+             * while it is being replaced.
+             */
+            checksumFile.delete();
+            move(download, archive);
+
+            final File checksumDownload = File.createTempFile(archive.getName(), DOWNLOAD_SUFFIX, entryDirectory);
+            FileUtils.writeStringToFile(checksumDownload, checksum + " " + size, CHARSET.name());
+            move(checksumDownload, checksumFile);
+
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info("Cached " + url + " as " + archive.getPath() + " [" + checksum + "]");
+            }
+
+            evict(entryDirectory);
+        } finally {
+            release(lock);
+        }
+
+        return archive;
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache fits within its
+     * maximum size again.
+     *
+     * @param keep
+     *            The entry directory that shouldn't be evicted.
+     */
+    private void evict(final File keep) {
+        final File[] entries = cacheDirectory.listFiles();
+        if (entries == null) {
+            return;
+        }
+
+        final List<File> candidates = new ArrayList<File>();
+        long totalSize = 0;
+        for (final File entry : entries) {
+            if (isEntry(entry)) {
+                totalSize += FileUtils.sizeOfDirectory(entry);
+                if (!entry.equals(keep)) {
+                    candidates.add(entry);
+                }
+            }
+        }
+
+        Collections.sort(candidates, new Comparator<File>() {
+            @Override
+            public int compare(final File first, final File second) {
+                final long firstUsed = getLastUsed(first);
+                final long secondUsed = getLastUsed(second);
+                if (firstUsed < secondUsed) {
+                    return -1;
+                } else if (firstUsed > secondUsed) {
+                    return 1;
+                }
+                return 0;
+            }
+        });
+
+        for (final File entry : candidates) {
+            if (totalSize <= maxSize) {
+                break;
+            }
+
+            final long size = FileUtils.sizeOfDirectory(entry);
+            try {
+                FileUtils.deleteDirectory(entry);
+                totalSize -= size;
+
+                if (LOGGER.isInfoEnabled()) {
+                    LOGGER.info("Evicted cache entry: " + entry.getPath());
+                }
+            } catch (final IOException e) {
+                if (LOGGER.isWarnEnabled()) {
+                    LOGGER.warn("Failed to evict cache entry: " + entry.getPath(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Determines if a file is an entry of this cache. Entries are the
+     * directories named after the SHA-256 of a URL, other directories in the
+     * cache directory are left alone.
+     *
+     * @param entry
+     *            The file in the cache directory.
+     * @return Returns true if the file is a cache entry.
+     */
+    private static boolean isEntry(final File entry) {
+        return entry.isDirectory() && ENTRY_NAME.matcher(entry.getName()).matches();
+    }
+
+    /**
+     * Determines when a cache entry was used for the last time.
+     *
+     * @param entry
+     *            The entry directory.
+     * @return Returns the time in millis the entry was used for the last time.
+     */
+    private static long getLastUsed(final File entry) {
+        long lastUsed = entry.lastModified();
+
+        final File[] files = entry.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                if (file.getName().endsWith(CHECKSUM_SUFFIX)) {
+                    lastUsed = Math.max(lastUsed, file.lastModified());
+                }
+            }
+        }
+
+        return lastUsed;
+    }
+
+    /**
+     * Downloads the archive from the specified URL while calculating its
+     * checksum.
+     *
+     * @param url
+     *            The URL of the archive.
+     * @param destination
+     *            The file where the archive will be written to.
+     * @return Returns the SHA-256 of the downloaded archive.
+     * @throws IOException
+     *             Is thrown when the download fails.
+     */
+    private static String download(final URL url, final File destination) throws IOException {
+        final MessageDigest messageDigest = createMessageDigest();
+
+        final InputStream input = new DigestInputStream(url.openStream(), messageDigest);
+        try {
+            final OutputStream output = new FileOutputStream(destination);
+            try {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                int read = input.read(buffer);
+                while (read != -1) {
+                    output.write(buffer, 0, read);
+                    read = input.read(buffer);
+                }
+            } finally {
+                output.close();
+            }
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+
+        return toHex(messageDigest.digest());
+    }
+
+    /**
+     * Moves a file into place using an atomic rename when the file system
+     * supports it.
+     *
+     * @param source
+     *            The file to move.
+     * @param target
+     *            The location where the file should be moved to.
+     * @throws IOException
+     *             Is thrown when the file couldn't be moved.
+     */
+    private static void move(final File source, final File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Acquires the lock that guards publishing and eviction so concurrent
+     * builds don't evict each others archives while they are being published.
+     * Threads of this JVM are serialized before the lock file is opened.
+     *
+     * @return Returns the acquired lock.
+     * @throws IOException
+     *             Is thrown when the lock couldn't be acquired.
+     */
+    private FileLock acquireLock() throws IOException {
+        FileUtils.forceMkdir(cacheDirectory);
+
+        directoryLock.lock();
+        try {
+            final RandomAccessFile lockFile = new RandomAccessFile(new File(cacheDirectory, LOCK_FILE_NAME), "rw");
+            try {
+                return lockFile.getChannel().lock();
+            } catch (final IOException e) {
+                lockFile.close();
+                throw e;
+            }
+        } catch (final IOException e) {
+            directoryLock.unlock();
+            throw e;
+        } catch (final RuntimeException e) {
+            directoryLock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Retrieves the lock that serializes the threads of this JVM that publish
+     * into a cache directory.
+     *
+     * @param cacheDirectory
+     *            The cache directory.
+     * @return Returns the lock of the cache directory.
+     */
+    private static ReentrantLock getDirectoryLock(final File cacheDirectory) {
+        String key;
+        try {
+            key = cacheDirectory.getCanonicalPath();
+        } catch (final IOException e) {
+            key = cacheDirectory.getAbsolutePath();
+        }
+
+        final ReentrantLock created = new ReentrantLock();
+        final ReentrantLock existing = DIRECTORY_LOCKS.putIfAbsent(key, created);
+        if (existing == null) {
+            return created;
+        }
+        return existing;
+    }
+
+    /**
+     * Releases the lock, closes the underlying lock file and lets the next
+     * thread of this JVM in.
+     *
+     * @param lock
+     *            The lock to release.
+     */
+    private void release(final FileLock lock) {
+        final FileChannel channel = lock.channel();
+        try {
+            lock.release();
+        } catch (final IOException e) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Failed to release the artifact cache lock.", e);
+            }
+        } finally {
+            try {
+                channel.close();
+            } catch (final IOException e) {
+                if (LOGGER.isWarnEnabled()) {
+                    LOGGER.warn("Failed to close the artifact cache lock file.", e);
+                }
+            } finally {
+                directoryLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Constructs the directory of the cache entry for the specified URL.
+     *
+     * @param url
+     *            The URL of the archive.
+     * @return Returns the directory where the archive will be cached.
+     */
+    private File getEntryDirectory(final URL url) {
+        return new File(cacheDirectory, digest(url.toExternalForm()));
+    }
+
+    /**
+     * Determines the file name of the archive from its URL.
+     *
+     * @param url
+     *            The URL of the archive.
+     * @return Returns the file name.
+     */
+    private static String getFileName(final URL url) {
+        final String path = StringUtils.chomp(url.getPath(), "/");
+        final String fileName = StringUtils.substringAfterLast(path, "/");
+
+        if (StringUtils.isBlank(fileName)) {
+            return "archive.zip";
+        }
+
+        return fileName;
+    }
+
+    /**
+     * Calculates the SHA-256 of the specified file. The file is mapped in
+     * memory region by region so large archives are hashed without copying
+     * them through a buffer.
+     *
+     * @param file
+     *            The file to calculate the checksum for.
+     * @return Returns the hexadecimal representation of the checksum.
+     * @throws IOException
+     *             Is thrown when the file couldn't be read.
+     */
+    public static String digest(final File file) throws IOException {
+        final MessageDigest messageDigest = createMessageDigest();
+
+        final FileInputStream input = new FileInputStream(file);
+        try {
+            final FileChannel channel = input.getChannel();
+            final long size = channel.size();
+            long position = 0L;
+            while (position < size) {
+                final long length = Math.min(MAPPED_REGION_SIZE, size - position);
+                messageDigest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+                position += length;
+            }
+        } finally {
+            input.close();
+        }
+
+        return toHex(messageDigest.digest());
+    }
+
+    /**
+     * Calculates the SHA-256 of the specified text.
+     *
+     * @param text
+     *            The text to calculate the checksum for.
+     * @return Returns the hexadecimal representation of the checksum.
+     */
+    public static String digest(final String text) {
+        return toHex(createMessageDigest().digest(text.getBytes(CHARSET)));
+    }
+
+    /**
+     * Creates a new message digest for the checksum algorithm.
+     *
+     * @return Returns a {@link MessageDigest}.
+     */
+    private static MessageDigest createMessageDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " is not supported by this JVM!", e);
+        }
+    }
+
+    /**
+     * Converts a byte array into its hexadecimal representation.
+     *
+     * @param bytes
+     *            The bytes to convert.
+     * @return Returns a lower case hexadecimal String.
+     */
+    public static String toHex(final byte[] bytes) {
+        final StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (final byte value : bytes) {
+            builder.append(Character.forDigit((value >> 4) & 0xF, 16));
+            builder.append(Character.forDigit(value & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return the cacheDirectory
+     */
+    public File getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.install;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.io.FileFilter;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Cache of dynamic class data sharing (AppCDS) archives of container JVMs. The
+ * first run of a container records the loaded classes in an archive with
+ * -XX:ArchiveClassesAtExit, and later runs map that archive with
+ * -XX:SharedArchiveFile so the classes don't need to be loaded and verified
+ * again. An archive is only valid for the same JVM, container and deployables,
+ * so all of them are part of its key.
+ *
+ * The launch times with and without the archive are kept next to the archive
+ * so the gain can be reported. When the archives grow beyond the maximum size
+ * the least recently used ones are evicted.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class ClassDataSharingCache {
+
+    /** Logger for this class */
+    private static final Log LOGGER = LogFactory.getLog(ClassDataSharingCache.class);
+
+    /** The first Java version that supports dynamic archives. */
+    private static final int MINIMUM_JAVA_VERSION = 13;
+
+    /** The suffix of the archives. */
+    private static final String ARCHIVE_SUFFIX = ".jsa";
+
+    /** The suffix of the files containing the launch times. */
+    private static final String TIMINGS_SUFFIX = ".properties";
+
+    /** The property containing the launch time without the archive. */
+    private static final String WITHOUT_ARCHIVE = "launch.withoutArchive";
+
+    /** The property containing the launch time with the archive. */
+    private static final String WITH_ARCHIVE = "launch.withArchive";
+
+    /** The directory where the archives are stored. */
+    private final File cacheDirectory;
+
+    /** The maximum size in bytes of all archives together. */
+    private final long maxSize;
+
+    /**
+     * Constructor taking the directory where the archives are stored. The
+     * archives are never evicted.
+     *
+     * @param cacheDirectory
+     *            The directory.
+     */
+    public ClassDataSharingCache(final File cacheDirectory) {
+        this(cacheDirectory, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructor taking the directory where the archives are stored and
+     * their maximum size.
+     *
+     * @param cacheDirectory
+     *            The directory.
+     * @param maxSize
+     *            The maximum size in bytes the archives may grow to.
+     */
+    public ClassDataSharingCache(final File cacheDirectory, final long maxSize) {
+        this.cacheDirectory = cacheDirectory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Determines if the JVM supports dynamic archives. The container is
+     * launched with the same Java installation as the tests.
+     *
+     * @return Returns true if dynamic archives are supported.
+     */
+    public static boolean isSupported() {
+        return getJavaVersion(System.getProperty("java.specification.version")) >= MINIMUM_JAVA_VERSION;
+    }
+
+    /**
+     * Determines the major version of Java from the specification version.
+     *
+     * @param specificationVersion
+     *            The specification version i.e. 1.7 or 17.
+     * @return Returns the major version or 0 if it is unknown.
+     */
+    static int getJavaVersion(final String specificationVersion) {
+        if (StringUtils.isBlank(specificationVersion)) {
+            return 0;
+        }
+
+        String version = specificationVersion.trim();
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+
+        try {
+            return Integer.parseInt(StringUtils.substringBefore(version, "."));
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Creates the key of an archive from everything the archive depends on.
+     *
+     * @param containerVersion
+     *            Identifies the container distribution i.e. its file name and
+     *            checksum.
+     * @param deployables
+     *            The deployed files.
+     * @return Returns the key.
+     */
+    public static String createKey(final String containerVersion, final Collection<File> deployables) {
+        final StringBuilder fingerprint = new StringBuilder();
+        fingerprint.append(System.getProperty("java.home")).append('|');
+        fingerprint.append(System.getProperty("java.vm.version")).append('|');
+        fingerprint.append(containerVersion);
+
+        for (final File deployable : deployables) {
+            fingerprint.append('|').append(deployable.getAbsolutePath());
+            fingerprint.append(':').append(deployable.length());
+            fingerprint.append(':').append(deployable.lastModified());
+        }
+
+        return StringUtils.left(ArtifactCache.digest(fingerprint.toString()), 32);
+    }
+
+    /**
+     * Looks up the archive of a key.
+     *
+     * @param key
+     *            The key of the archive.
+     * @return Returns the archive or null if it wasn't recorded yet.
+     */
+    public File lookup(final String key) {
+        final File archive = new File(cacheDirectory, key + ARCHIVE_SUFFIX);
+        if (archive.isFile() && archive.length() > 0) {
+            /*
+             * Mark the archive as recently used so it is evicted last.
+             */
+            archive.setLastModified(System.currentTimeMillis());
+            return archive;
+        }
+
+        return null;
+    }
+
+    /**
+     * Creates a unique file the container JVM can record its archive in. It
+     * is published with {@link #publish(String, File)} after the JVM exited.
+     *
+     * @param key
+     *            The key of the archive.
+     * @return Returns the file to record the archive in.
+     * @throws IOException
+     *             Is thrown when the cache directory couldn't be created.
+     */
+    public File createRecordingFile(final String key) throws IOException {
+        FileUtils.forceMkdir(cacheDirectory);
+        return new File(cacheDirectory, key + "-" + System.nanoTime() + ARCHIVE_SUFFIX + ".part");
+    }
+
+    /**
+     * Publishes a recorded archive so later runs use it.
+     *
+     * @param key
+     *            The key of the archive.
+     * @param recording
+     *            The file the container JVM recorded the archive in.
+     * @return Returns the published archive or null if nothing was recorded.
+     */
+    public File publish(final String key, final File recording) {
+        if (!recording.isFile() || recording.length() == 0) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("No class data sharing archive was recorded in " + recording.getPath());
+            }
+            recording.delete();
+            return null;
+        }
+
+        final File archive = new File(cacheDirectory, key + ARCHIVE_SUFFIX);
+        try {
+            Files.move(recording.toPath(), archive.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (final IOException e) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Failed to publish the class data sharing archive " + archive.getPath(), e);
+            }
+            recording.delete();
+            return null;
+        }
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Recorded class data sharing archive " + archive.getPath() + " (" + archive.length() / 1024L
+                    + " KB)");
+        }
+
+        evict(archive);
+        return archive;
+    }
+
+    /**
+     * Evicts the least recently used archives until they fit within the
+     * maximum size again.
+     *
+     * @param keep
+     *            The archive that shouldn't be evicted.
+     */
+    private void evict(final File keep) {
+        final File[] archives = cacheDirectory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(final File file) {
+                return file.isFile() && file.getName().endsWith(ARCHIVE_SUFFIX);
+            }
+        });
+        if (archives == null) {
+            return;
+        }
+
+        long totalSize = 0L;
+        for (final File archive : archives) {
+            totalSize += archive.length();
+        }
+
+        Arrays.sort(archives, new Comparator<File>() {
+            @Override
+            public int compare(final File first, final File second) {
+                return Long.valueOf(first.lastModified()).compareTo(Long.valueOf(second.lastModified()));
+            }
+        });
+
+        for (final File archive : archives) {
+            if (totalSize <= maxSize) {
+                break;
+            }
+            if (archive.equals(keep)) {
+                continue;
+            }
+
+            final long size = archive.length();
+            if (archive.delete()) {
+                totalSize -= size;
+                new File(cacheDirectory, StringUtils.removeEnd(archive.getName(), ARCHIVE_SUFFIX) + TIMINGS_SUFFIX)
+                        .delete();
+
+                if (LOGGER.isInfoEnabled()) {
+                    LOGGER.info("Evicted class data sharing archive: " + archive.getPath());
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the launch time of a container and reports the difference
+     * between launching with and without the archive.
+     *
+     * @param key
+     *            The key of the archive.
+     * @param withArchive
+     *            Determines if the container was launched with the archive.
+     * @param millis
+     *            The launch time in milliseconds.
+     */
+    public void recordLaunch(final String key, final boolean withArchive, final long millis) {
+        final File timings = new File(cacheDirectory, key + TIMINGS_SUFFIX);
+        final Properties properties = new Properties();
+
+        try {
+            if (timings.isFile()) {
+                final InputStream input = new FileInputStream(timings);
+                try {
+                    properties.load(input);
+                } finally {
+                    IOUtils.closeQuietly(input);
+                }
+            }
+
+            if (withArchive) {
+                properties.setProperty(WITH_ARCHIVE, String.valueOf(millis));
+            } else {
+                properties.setProperty(WITHOUT_ARCHIVE, String.valueOf(millis));
+            }
+
+            FileUtils.forceMkdir(cacheDirectory);
+            final OutputStream output = new FileOutputStream(timings);
+            try {
+                properties.store(output, "Launch times in milliseconds");
+            } finally {
+                IOUtils.closeQuietly(output);
+            }
+        } catch (final IOException e) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Failed to record the launch time in " + timings.getPath(), e);
+            }
+            return;
+        }
+
+        if (LOGGER.isInfoEnabled()) {
+            final String without = properties.getProperty(WITHOUT_ARCHIVE);
+            if (withArchive && without != null) {
+                LOGGER.info("Fast boot: launched in " + millis + " ms with the class data sharing archive versus "
+                        + without + " ms without it");
+            } else if (withArchive) {
+                LOGGER.info("Fast boot: launched in " + millis + " ms with the class data sharing archive");
+            } else {
+                LOGGER.info("Fast boot: launched in " + millis + " ms while recording the class data sharing archive");
+            }
+        }
+    }
+
+    /**
+     * Retrieves the recorded launch time.
+     *
+     * @param key
+     *            The key of the archive.
+     * @param withArchive
+     *            Determines if the launch time with or without the archive is
+     *            retrieved.
+     * @return Returns the launch time in milliseconds or null if it wasn't
+     *         recorded.
+     */
+    public Long getLaunchTime(final String key, final boolean withArchive) {
+        final File timings = new File(cacheDirectory, key + TIMINGS_SUFFIX);
+        if (!timings.isFile()) {
+            return null;
+        }
+
+        final Properties properties = new Properties();
+        try {
+            final InputStream input = new FileInputStream(timings);
+            try {
+                properties.load(input);
+            } finally {
+                IOUtils.closeQuietly(input);
+            }
+        } catch (final IOException e) {
+            return null;
+        }
+
+        final String value;
+        if (withArchive) {
+            value = properties.getProperty(WITH_ARCHIVE);
+        } else {
+            value = properties.getProperty(WITHOUT_ARCHIVE);
+        }
+
+        if (value == null) {
+            return null;
+        }
+        return Long.valueOf(value);
+    }
+
+}
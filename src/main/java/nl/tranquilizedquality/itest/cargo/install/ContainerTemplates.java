@@ -0,0 +1,474 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.install;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Manages pre-extracted container distributions. Every distribution is
+ * extracted once into a versioned template directory. A container home is
+ * then created by hard linking the immutable files of the template and only
+ * copying the files that live in one of the mutable directories like conf/ or
+ * work/. The template files are made read-only so a container can't modify
+ * the template through a hard link by accident.
+ *
+ * The templates directory should be on the same file system as the container
+ * homes otherwise hard links can't be created and all files will be copied.
+ *
+ * The templates are kept within a maximum size. When a template is published
+ * the least recently used templates are evicted, except the ones that were
+ * used within the last minutes since they may still be being cloned.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class ContainerTemplates {
+
+    /** Logger for this class */
+    private static final Log LOGGER = LogFactory.getLog(ContainerTemplates.class);
+
+    /** The prefix of template directories that are still being extracted. */
+    private static final String STAGING_PREFIX = ".staging-";
+
+    /** The prefix of template directories that are being evicted. */
+    private static final String EVICTING_PREFIX = ".evicting-";
+
+    /** The time in millis a template is protected from eviction after use. */
+    private static final long MINIMUM_IDLE_TIME = 10L * 60L * 1000L;
+
+    /** The time in millis after which a staging directory is abandoned. */
+    private static final long ABANDONED_STAGING_TIME = 24L * 60L * 60L * 1000L;
+
+    /** The directory where the templates are stored. */
+    private final File templatesDirectory;
+
+    /** The names of the directories whose files need to be copied. */
+    private final Set<String> mutableDirectories;
+
+    /** The maximum size in bytes of all templates together. */
+    private final long maxSize;
+
+    /**
+     * Constructor taking the templates directory and the names of the
+     * directories which content will be modified by a container.
+     *
+     * @param templatesDirectory
+     *            The directory where the templates will be stored.
+     * @param mutableDirectories
+     *            The names of the directories that will be copied instead of
+     *            linked. A directory matches when any of the path elements has
+     *            this name.
+     */
+    public ContainerTemplates(final File templatesDirectory, final Collection<String> mutableDirectories) {
+        this(templatesDirectory, mutableDirectories, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructor taking the templates directory, the names of the directories
+     * which content will be modified by a container and the maximum size of
+     * all templates together.
+     *
+     * @param templatesDirectory
+     *            The directory where the templates will be stored.
+     * @param mutableDirectories
+     *            The names of the directories that will be copied instead of
+     *            linked. A directory matches when any of the path elements has
+     *            this name.
+     * @param maxSize
+     *            The maximum size in bytes of all templates together.
+     */
+    public ContainerTemplates(final File templatesDirectory, final Collection<String> mutableDirectories,
+            final long maxSize) {
+        this.templatesDirectory = templatesDirectory;
+        this.mutableDirectories = new HashSet<String>(mutableDirectories);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Looks up an already extracted template.
+     *
+     * @param key
+     *            The versioned key of the template.
+     * @return Returns the template directory or null if there is no template
+     *         for this key yet.
+     */
+    public File lookup(final String key) {
+        final File template = new File(templatesDirectory, key);
+        if (template.isDirectory()) {
+            /*
+             * Touch the template so the eviction knows it was used recently.
+             */
+            template.setLastModified(System.currentTimeMillis());
+            return template;
+        }
+
+        return null;
+    }
+
+    /**
+     * Creates an empty staging directory where a distribution can be extracted
+     * to before it is published as template.
+     *
+     * @param key
+     *            The versioned key of the template.
+     * @return Returns the staging directory.
+     * @throws IOException
+     *             Is thrown when the directory couldn't be created.
+     */
+    public File createStagingDirectory(final String key) throws IOException {
+        FileUtils.forceMkdir(templatesDirectory);
+
+        final Path staging = Files.createTempDirectory(templatesDirectory.toPath(), STAGING_PREFIX + key);
+        return staging.toFile();
+    }
+
+    /**
+     * Publishes an extracted distribution as template. The staging directory is
+     * renamed atomically so other builds will only see complete templates. If
+     * another build published the same template first the staging directory
+     * is discarded.
+     *
+     * @param key
+     *            The versioned key of the template.
+     * @param staging
+     *            The staging directory containing the extracted distribution.
+     * @return Returns the template directory.
+     * @throws IOException
+     *             Is thrown when the template couldn't be published.
+     */
+    public File publish(final String key, final File staging) throws IOException {
+        if (!isWindows()) {
+            makeReadOnly(staging.toPath());
+        }
+
+        final File template = new File(templatesDirectory, key);
+        try {
+            Files.move(staging.toPath(), template.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info("Published container template: " + template.getPath());
+            }
+        } catch (final FileSystemException e) {
+            if (!template.isDirectory()) {
+                throw e;
+            }
+
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info("Container template was published concurrently: " + template.getPath());
+            }
+            FileUtils.deleteDirectory(staging);
+        }
+
+        template.setLastModified(System.currentTimeMillis());
+        evict(template);
+
+        return template;
+    }
+
+    /**
+     * Evicts the least recently used templates until all templates fit within
+     * the maximum size again. Templates that were used recently are kept, as
+     * well as abandoned staging directories that are younger than a day.
+     *
+     * @param keep
+     *            The template that shouldn't be evicted.
+     */
+    private void evict(final File keep) {
+        final File[] entries = templatesDirectory.listFiles();
+        if (entries == null) {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        final List<File> candidates = new ArrayList<File>();
+        long totalSize = 0;
+        for (final File entry : entries) {
+            if (!entry.isDirectory()) {
+                continue;
+            }
+
+            final String name = entry.getName();
+            if (name.startsWith(EVICTING_PREFIX)) {
+                delete(entry);
+            } else if (name.startsWith(STAGING_PREFIX)) {
+                if (now - entry.lastModified() > ABANDONED_STAGING_TIME) {
+                    delete(entry);
+                }
+            } else {
+                totalSize += FileUtils.sizeOfDirectory(entry);
+                if (!entry.equals(keep) && now - entry.lastModified() > MINIMUM_IDLE_TIME) {
+                    candidates.add(entry);
+                }
+            }
+        }
+
+        Collections.sort(candidates, new Comparator<File>() {
+            @Override
+            public int compare(final File first, final File second) {
+                final long firstUsed = first.lastModified();
+                final long secondUsed = second.lastModified();
+                if (firstUsed < secondUsed) {
+                    return -1;
+                } else if (firstUsed > secondUsed) {
+                    return 1;
+                }
+                return 0;
+            }
+        });
+
+        for (final File template : candidates) {
+            if (totalSize <= maxSize) {
+                break;
+            }
+
+            /*
+             * Rename the template aside first so nobody looks it up while it
+             * is being deleted.
+             */
+            final long size = FileUtils.sizeOfDirectory(template);
+            final File evicting = new File(templatesDirectory, EVICTING_PREFIX + template.getName() + "-" + System.nanoTime());
+            try {
+                Files.move(template.toPath(), evicting.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (final IOException e) {
+                if (LOGGER.isWarnEnabled()) {
+                    LOGGER.warn("Failed to evict container template: " + template.getPath(), e);
+                }
+                continue;
+            }
+
+            totalSize -= size;
+            delete(evicting);
+
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info("Evicted container template: " + template.getPath());
+            }
+        }
+    }
+
+    /**
+     * Deletes a template directory.
+     *
+     * @param directory
+     *            The directory to delete.
+     */
+    private static void delete(final File directory) {
+        try {
+            FileUtils.deleteDirectory(directory);
+        } catch (final IOException e) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Failed to delete container template directory: " + directory.getPath(), e);
+            }
+        }
+    }
+
+    /**
+     * Creates a container home from a template. Immutable files are hard
+     * linked and files in mutable directories are copied.
+     *
+     * @param template
+     *            The template directory.
+     * @param destination
+     *            The container home that will be created.
+     * @throws IOException
+     *             Is thrown when the container home couldn't be created.
+     */
+    public void cloneTo(final File template, final File destination) throws IOException {
+        final Path source = template.toPath();
+        final Path target = destination.toPath();
+        final CloneVisitor visitor = new CloneVisitor(source, target);
+
+        final long start = System.currentTimeMillis();
+        Files.walkFileTree(source, visitor);
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Cloned template " + template.getPath() + " in " + (System.currentTimeMillis() - start) + " ms ["
+                    + visitor.linked + " linked, " + visitor.copied + " copied]");
+        }
+    }
+
+    /**
+     * Determines if the specified relative path is located in a mutable
+     * directory.
+     *
+     * @param relativePath
+     *            The path relative to the template directory.
+     * @return Returns true if one of the parent directories is a mutable
+     *         directory.
+     */
+    private boolean isMutable(final Path relativePath) {
+        final Path parent = relativePath.getParent();
+        if (parent == null) {
+            return false;
+        }
+
+        for (final Path element : parent) {
+            if (mutableDirectories.contains(element.toString())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Makes all files in the specified directory read-only.
+     *
+     * @param directory
+     *            The directory to process.
+     * @throws IOException
+     *             Is thrown when the directory couldn't be walked.
+     */
+    private static void makeReadOnly(final Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) {
+                if (attributes.isRegularFile()) {
+                    file.toFile().setWritable(false, false);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Determines if this JVM runs on Windows.
+     *
+     * @return Returns true when running on Windows.
+     */
+    private static boolean isWindows() {
+        final String operatingSystem = System.getProperty("os.name");
+        return operatingSystem != null && operatingSystem.startsWith("Windows");
+    }
+
+    /**
+     * Visitor that recreates the template tree in the container home.
+     */
+    private final class CloneVisitor extends SimpleFileVisitor<Path> {
+
+        /** The template directory. */
+        private final Path source;
+
+        /** The container home. */
+        private final Path target;
+
+        /** Determines if hard links can be created. */
+        private boolean linksSupported = true;
+
+        /** The number of linked files. */
+        private int linked;
+
+        /** The number of copied files. */
+        private int copied;
+
+        /**
+         * Constructor taking the template and the container home.
+         *
+         * @param source
+         *            The template directory.
+         * @param target
+         *            The container home.
+         */
+        private CloneVisitor(final Path source, final Path target) {
+            this.source = source;
+            this.target = target;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(final Path directory, final BasicFileAttributes attributes) throws IOException {
+            Files.createDirectories(target.resolve(source.relativize(directory).toString()));
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) throws IOException {
+            final Path relativePath = source.relativize(file);
+            final Path destination = target.resolve(relativePath.toString());
+
+            if (attributes.isSymbolicLink()) {
+                Files.copy(file, destination, LinkOption.NOFOLLOW_LINKS);
+                copied++;
+            } else if (linksSupported && !isMutable(relativePath)) {
+                try {
+                    Files.createLink(destination, file);
+                    linked++;
+                } catch (final UnsupportedOperationException e) {
+                    disableLinks(e);
+                    copy(file, destination);
+                } catch (final FileSystemException e) {
+                    disableLinks(e);
+                    copy(file, destination);
+                }
+            } else {
+                copy(file, destination);
+            }
+
+            return FileVisitResult.CONTINUE;
+        }
+
+        /**
+         * Copies a file and makes the copy writable.
+         *
+         * @param file
+         *            The file to copy.
+         * @param destination
+         *            The location of the copy.
+         * @throws IOException
+         *             Is thrown when the file couldn't be copied.
+         */
+        private void copy(final Path file, final Path destination) throws IOException {
+            Files.copy(file, destination, StandardCopyOption.REPLACE_EXISTING);
+            destination.toFile().setWritable(true, true);
+            copied++;
+        }
+
+        /**
+         * Falls back to copying all files when links can't be created.
+         *
+         * @param cause
+         *            The reason why the link couldn't be created.
+         */
+        private void disableLinks(final Exception cause) {
+            linksSupported = false;
+
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Hard links are not supported between " + source + " and " + target
+                        + ", falling back to copying the template.", cause);
+            }
+        }
+    }
+
+}
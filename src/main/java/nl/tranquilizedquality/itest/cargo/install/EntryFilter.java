@@ -0,0 +1,189 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.install;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which entries of a container archive will be extracted based on
+ * include and exclude glob patterns. The patterns use the same syntax as Ant:
+ * <code>*</code> matches any characters within a path element,
+ * <code>?</code> matches a single character and <code>**</code> matches any
+ * number of path elements. So <code>docs/**</code> matches the docs directory
+ * and everything below it.
+ *
+ * An entry is accepted when it matches at least one include pattern, or when
+ * there are no include patterns at all, and it doesn't match any of the
+ * exclude patterns.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class EntryFilter {
+
+    /** The compiled include patterns. */
+    private final List<Pattern> includes;
+
+    /** The compiled exclude patterns. */
+    private final List<Pattern> excludes;
+
+    /** A textual representation of the patterns. */
+    private final String description;
+
+    /**
+     * Constructor taking the include and exclude patterns.
+     *
+     * @param includes
+     *            The glob patterns of the entries that should be extracted.
+     *            When it is empty all entries are included.
+     * @param excludes
+     *            The glob patterns of the entries that should be skipped.
+     */
+    public EntryFilter(final Collection<String> includes, final Collection<String> excludes) {
+        this.includes = compile(includes);
+        this.excludes = compile(excludes);
+        this.description = "includes=" + includes + ", excludes=" + excludes;
+    }
+
+    /**
+     * Determines if the entry with the specified name should be extracted.
+     *
+     * @param name
+     *            The name of the entry as stored in the archive.
+     * @return Returns true if the entry should be extracted.
+     */
+    public boolean accept(final String name) {
+        final String path = normalize(name);
+
+        if (!includes.isEmpty() && !matches(includes, path)) {
+            return false;
+        }
+
+        return !matches(excludes, path);
+    }
+
+    /**
+     * Checks if the path matches one of the patterns.
+     *
+     * @param patterns
+     *            The patterns to check.
+     * @param path
+     *            The normalized path of the entry.
+     * @return Returns true if at least one pattern matches.
+     */
+    private static boolean matches(final List<Pattern> patterns, final String path) {
+        for (final Pattern pattern : patterns) {
+            if (pattern.matcher(path).matches()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Normalizes an entry name so it uses forward slashes and has no leading
+     * or trailing slash.
+     *
+     * @param name
+     *            The name of the entry.
+     * @return Returns the normalized name.
+     */
+    private static String normalize(final String name) {
+        String path = name.replace('\\', '/');
+
+        while (path.startsWith("./")) {
+            path = path.substring(2);
+        }
+        while (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+
+        return path;
+    }
+
+    /**
+     * Compiles the glob patterns into regular expressions.
+     *
+     * @param globs
+     *            The glob patterns to compile.
+     * @return Returns a list of compiled patterns.
+     */
+    private static List<Pattern> compile(final Collection<String> globs) {
+        final List<Pattern> patterns = new ArrayList<Pattern>();
+        if (globs == null) {
+            return patterns;
+        }
+
+        for (final String glob : globs) {
+            patterns.add(Pattern.compile(toRegex(normalize(glob))));
+        }
+
+        return patterns;
+    }
+
+    /**
+     * Translates a glob pattern into a regular expression.
+     *
+     * @param glob
+     *            The normalized glob pattern.
+     * @return Returns the regular expression.
+     */
+    static String toRegex(final String glob) {
+        final StringBuilder regex = new StringBuilder();
+
+        int index = 0;
+        while (index < glob.length()) {
+            if (glob.startsWith("**/", index)) {
+                regex.append("(?:.*/)?");
+                index += 3;
+            } else if (glob.startsWith("/**", index) && index + 3 == glob.length()) {
+                regex.append("(?:/.*)?");
+                index += 3;
+            } else if (glob.startsWith("**", index)) {
+                regex.append(".*");
+                index += 2;
+            } else {
+                final char character = glob.charAt(index);
+                if (character == '*') {
+                    regex.append("[^/]*");
+                } else if (character == '?') {
+                    regex.append("[^/]");
+                } else if (Character.isLetterOrDigit(character) || character == '/') {
+                    regex.append(character);
+                } else {
+                    regex.append('\\').append(character);
+                }
+                index++;
+            }
+        }
+
+        return regex.toString();
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.install;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Extracts ZIP archives using multiple threads. The central directory of the
+ * archive is read once after which all directories are created up front and
+ * the entries are inflated in parallel on a bounded pool of worker threads.
+ * The largest entries are scheduled first so the work is spread evenly over
+ * the workers. An optional {@link EntryFilter} is applied while the central
+ * directory is read so skipped entries are never inflated.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class ParallelZipExtractor {
+
+    /** Logger for this class */
+    private static final Log LOGGER = LogFactory.getLog(ParallelZipExtractor.class);
+
+    /** The size of the buffer used to write the extracted entries. */
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /** The maximum number of worker threads used by default. */
+    private static final int DEFAULT_MAX_THREADS = 8;
+
+    /** Counter used to give the worker threads a unique name. */
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    /** The write buffer of every worker thread. */
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    /** The number of worker threads to use. */
+    private final int threads;
+
+    /** The filter that decides which entries will be extracted. */
+    private EntryFilter entryFilter;
+
+    /**
+     * Default constructor that uses one worker thread per available processor
+     * with a maximum of eight.
+     */
+    public ParallelZipExtractor() {
+        this(Math.min(Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_THREADS));
+    }
+
+    /**
+     * Constructor taking the number of worker threads.
+     *
+     * @param threads
+     *            The number of worker threads to use.
+     */
+    public ParallelZipExtractor(final int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Extracts the specified archive.
+     *
+     * @param archive
+     *            The ZIP archive to extract.
+     * @param destination
+     *            The directory where the archive will be extracted to.
+     * @throws IOException
+     *             Is thrown when the archive couldn't be read or an entry
+     *             couldn't be written.
+     */
+    public void extract(final File archive, final File destination) throws IOException {
+        final long start = System.currentTimeMillis();
+        final File root = destination.getCanonicalFile();
+
+        final ZipFile zipFile = new ZipFile(archive);
+        try {
+            /*
+             * Read the central directory once and determine which directories
+             * need to be created.
+             */
+            final List<ZipEntry> files = new ArrayList<ZipEntry>();
+            final TreeSet<File> directories = new TreeSet<File>();
+            directories.add(root);
+            int skipped = 0;
+
+            final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                final ZipEntry entry = entries.nextElement();
+                if (entryFilter != null && !entryFilter.accept(entry.getName())) {
+                    skipped++;
+                    continue;
+                }
+
+                final File target = resolve(root, entry.getName());
+
+                if (entry.isDirectory()) {
+                    directories.add(target);
+                } else {
+                    directories.add(target.getParentFile());
+                    files.add(entry);
+                }
+            }
+
+            for (final File directory : directories) {
+                if (!directory.isDirectory() && !directory.mkdirs()) {
+                    throw new IOException("Failed to create directory: " + directory.getPath());
+                }
+            }
+
+            Collections.sort(files, new Comparator<ZipEntry>() {
+                @Override
+                public int compare(final ZipEntry first, final ZipEntry second) {
+                    return Long.valueOf(second.getSize()).compareTo(Long.valueOf(first.getSize()));
+                }
+            });
+
+            /*
+             * Inflate the entries in parallel.
+             */
+            extractEntries(zipFile, files, root);
+
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info("Extracted " + files.size() + " files from " + archive.getName() + " in "
+                        + (System.currentTimeMillis() - start) + " ms using " + threads + " threads");
+            }
+            if (skipped > 0 && LOGGER.isInfoEnabled()) {
+                LOGGER.info("Skipped " + skipped + " entries of " + archive.getName() + " using filter " + entryFilter);
+            }
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    /**
+     * Extracts the file entries on the worker threads and waits until all of
+     * them are written.
+     *
+     * @param zipFile
+     *            The archive to read the entries from.
+     * @param files
+     *            The file entries to extract.
+     * @param root
+     *            The directory where the entries will be extracted to.
+     * @throws IOException
+     *             Is thrown when one of the entries couldn't be extracted.
+     */
+    private void extractEntries(final ZipFile zipFile, final List<ZipEntry> files, final File root) throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "cargo-itest-unzip-" + THREAD_COUNTER.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>(files.size());
+            for (final ZipEntry entry : files) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        extractEntry(zipFile, entry, resolve(root, entry.getName()));
+                        return null;
+                    }
+                }));
+            }
+
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while extracting " + zipFile.getName(), e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to extract " + zipFile.getName(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Extracts a single entry.
+     *
+     * @param zipFile
+     *            The archive containing the entry.
+     * @param entry
+     *            The entry to extract.
+     * @param target
+     *            The file the entry will be written to.
+     * @throws IOException
+     *             Is thrown when the entry couldn't be extracted.
+     */
+    private static void extractEntry(final ZipFile zipFile, final ZipEntry entry, final File target) throws IOException {
+        /*
+         * The target may be a hard link to a read-only template file, so it
+         * is replaced instead of written through.
+         */
+        Files.deleteIfExists(target.toPath());
+
+        final InputStream input = zipFile.getInputStream(entry);
+        try {
+            final OutputStream output = new FileOutputStream(target);
+            try {
+                final byte[] buffer = BUFFERS.get();
+                int read = input.read(buffer);
+                while (read != -1) {
+                    output.write(buffer, 0, read);
+                    read = input.read(buffer);
+                }
+            } finally {
+                output.close();
+            }
+        } finally {
+            input.close();
+        }
+
+        if (entry.getTime() != -1) {
+            target.setLastModified(entry.getTime());
+        }
+    }
+
+    /**
+     * Resolves the location of an entry and makes sure it is located within
+     * the destination directory.
+     *
+     * @param root
+     *            The canonical destination directory.
+     * @param name
+     *            The name of the entry.
+     * @return Returns the file the entry should be written to.
+     * @throws IOException
+     *             Is thrown when the entry would be written outside the
+     *             destination directory.
+     */
+    static File resolve(final File root, final String name) throws IOException {
+        final Path rootPath = root.toPath();
+        final Path target = rootPath.resolve(name).normalize();
+
+        if (!target.startsWith(rootPath)) {
+            throw new IOException("Entry " + name + " is outside of the destination directory!");
+        }
+
+        return target.toFile();
+    }
+
+    /**
+     * @param entryFilter
+     *            the filter that decides which entries will be extracted
+     */
+    public void setEntryFilter(final EntryFilter entryFilter) {
+        this.entryFilter = entryFilter;
+    }
+
+}
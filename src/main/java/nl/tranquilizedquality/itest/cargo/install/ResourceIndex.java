@@ -0,0 +1,352 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.install;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Index of the configuration resources in a directory. The directory is read
+ * once and every file is routed to a target directory by the first glob rule
+ * that matches its name, so <code>*-ds.xml</code> can go to the deploy
+ * directory and <code>*.properties</code> to the conf directory. The names are
+ * matched case insensitive.
+ *
+ * Indexes are cached for the lifetime of the JVM and are only scanned again
+ * when the directory itself was modified, i.e. when files were added or
+ * removed. The contents of the files are always copied fresh. Text files can
+ * be rendered with a {@link TemplateRenderer} while they are copied.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class ResourceIndex {
+
+    /** Logger for this class */
+    private static final Log LOGGER = LogFactory.getLog(ResourceIndex.class);
+
+    /** The indexes that were scanned before by their directory and rules. */
+    private static final ConcurrentMap<String, ResourceIndex> CACHE = new ConcurrentHashMap<String, ResourceIndex>();
+
+    /** The maximum number of files that are copied at the same time. */
+    private static final int MAXIMUM_COPY_THREADS = 8;
+
+    /** The scanned directory. */
+    private final File directory;
+
+    /** The modification time of the directory when it was scanned. */
+    private final long lastModified;
+
+    /** The names of all files in the directory. */
+    private final List<String> fileNames;
+
+    /** The names of the routed files by their target. */
+    private final Map<String, List<String>> resources;
+
+    /**
+     * Constructor taking the scan results.
+     *
+     * @param directory
+     *            The scanned directory.
+     * @param lastModified
+     *            The modification time of the directory when it was scanned.
+     * @param fileNames
+     *            The names of all files in the directory.
+     * @param resources
+     *            The names of the routed files by their target.
+     */
+    private ResourceIndex(final File directory, final long lastModified, final List<String> fileNames,
+            final Map<String, List<String>> resources) {
+        this.directory = directory;
+        this.lastModified = lastModified;
+        this.fileNames = fileNames;
+        this.resources = resources;
+    }
+
+    /**
+     * Retrieves the index of a directory. It is scanned when it wasn't indexed
+     * before or when it was modified since.
+     *
+     * @param directory
+     *            The directory containing the resources.
+     * @param rules
+     *            The glob patterns of the file names and the targets they are
+     *            routed to, in the order they are applied.
+     * @return Returns the index, which is empty when the directory doesn't
+     *         exist.
+     */
+    public static ResourceIndex scan(final File directory, final Map<String, String> rules) {
+        final File absoluteDirectory = directory.getAbsoluteFile();
+        final String key = absoluteDirectory.getPath() + "|" + rules;
+        final long lastModified = absoluteDirectory.lastModified();
+
+        final ResourceIndex cached = CACHE.get(key);
+        if (cached != null && cached.lastModified == lastModified) {
+            return cached;
+        }
+
+        final ResourceIndex index = scan(absoluteDirectory, lastModified, rules);
+        CACHE.put(key, index);
+        return index;
+    }
+
+    /**
+     * Reads the directory in a single pass and routes the files.
+     *
+     * @param directory
+     *            The directory containing the resources.
+     * @param lastModified
+     *            The modification time of the directory.
+     * @param rules
+     *            The glob patterns and their targets.
+     * @return Returns the index.
+     */
+    private static ResourceIndex scan(final File directory, final long lastModified, final Map<String, String> rules) {
+        final Map<String, EntryFilter> filters = new LinkedHashMap<String, EntryFilter>();
+        final Map<String, List<String>> resources = new LinkedHashMap<String, List<String>>();
+        for (final Entry<String, String> rule : rules.entrySet()) {
+            filters.put(rule.getKey(), new EntryFilter(Collections.singletonList(rule.getKey().toLowerCase(Locale.ENGLISH)),
+                    null));
+            resources.put(rule.getValue(), new ArrayList<String>());
+        }
+
+        if (!directory.isDirectory()) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("No configuration resources in " + directory.getPath());
+            }
+            return new ResourceIndex(directory, lastModified, Collections.<String> emptyList(), resources);
+        }
+
+        final List<String> fileNames = new ArrayList<String>();
+        try {
+            final DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath());
+            try {
+                for (final Path path : stream) {
+                    if (Files.isRegularFile(path)) {
+                        fileNames.add(path.getFileName().toString());
+                    }
+                }
+            } finally {
+                stream.close();
+            }
+        } catch (final IOException e) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Failed to read the configuration resources in " + directory.getPath(), e);
+            }
+        }
+        Collections.sort(fileNames);
+
+        for (final String fileName : fileNames) {
+            final String name = fileName.toLowerCase(Locale.ENGLISH);
+            for (final Entry<String, EntryFilter> filter : filters.entrySet()) {
+                if (filter.getValue().accept(name)) {
+                    resources.get(rules.get(filter.getKey())).add(fileName);
+                    break;
+                }
+            }
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Indexed " + fileNames.size() + " configuration resources in " + directory.getPath() + ": "
+                    + resources);
+        }
+        return new ResourceIndex(directory, lastModified, Collections.unmodifiableList(fileNames), resources);
+    }
+
+    /**
+     * Retrieves the names of the files that are routed to a target.
+     *
+     * @param target
+     *            The target of the rules.
+     * @return Returns the file names or an empty list if there are none.
+     */
+    public List<String> getResources(final String target) {
+        final List<String> names = resources.get(target);
+        if (names == null) {
+            return Collections.emptyList();
+        }
+
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Retrieves the names of the files that end with a suffix, ignoring case.
+     *
+     * @param suffix
+     *            The file suffix.
+     * @return Returns the file names.
+     */
+    public List<String> findBySuffix(final String suffix) {
+        final String lowerCaseSuffix = suffix.toLowerCase(Locale.ENGLISH);
+        final List<String> names = new ArrayList<String>();
+        for (final String fileName : fileNames) {
+            if (fileName.toLowerCase(Locale.ENGLISH).endsWith(lowerCaseSuffix)) {
+                names.add(fileName);
+            }
+        }
+
+        return names;
+    }
+
+    /**
+     * Copies the routed files to the directories of their targets as a single
+     * batch. The files are copied in parallel and a file that can't be copied
+     * is logged and skipped.
+     *
+     * @param destinations
+     *            The directories by target. Targets without a directory aren't
+     *            copied.
+     * @return Returns the number of copied files.
+     */
+    public int copy(final Map<String, File> destinations) {
+        return copy(destinations, null);
+    }
+
+    /**
+     * Copies the routed files to the directories of their targets as a single
+     * batch and renders the placeholders in the text files while they are
+     * copied.
+     *
+     * @param destinations
+     *            The directories by target. Targets without a directory aren't
+     *            copied.
+     * @param renderer
+     *            The renderer of the text files or null if all files are
+     *            copied as they are.
+     * @return Returns the number of copied files.
+     */
+    public int copy(final Map<String, File> destinations, final TemplateRenderer renderer) {
+        final List<Callable<Boolean>> copies = new ArrayList<Callable<Boolean>>();
+        for (final Entry<String, List<String>> target : resources.entrySet()) {
+            final File destination = destinations.get(target.getKey());
+            if (destination == null) {
+                continue;
+            }
+
+            for (final String fileName : target.getValue()) {
+                copies.add(createCopy(fileName, destination, renderer));
+            }
+        }
+
+        if (copies.isEmpty()) {
+            return 0;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(copies.size(), MAXIMUM_COPY_THREADS),
+                new ThreadFactory() {
+                    private final AtomicInteger counter = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "cargo-itest-resource-copy-" + counter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        int copied = 0;
+        try {
+            for (final Future<Boolean> copy : executor.invokeAll(copies)) {
+                if (copy.get()) {
+                    copied++;
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Failed to copy configuration resources from " + directory.getPath(), e.getCause());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return copied;
+    }
+
+    /**
+     * Creates the task that copies a single file.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @param destination
+     *            The directory to copy to.
+     * @param renderer
+     *            The renderer of the text files or null if the file is copied
+     *            as it is.
+     * @return Returns the task that returns true when the file was copied.
+     */
+    private Callable<Boolean> createCopy(final String fileName, final File destination, final TemplateRenderer renderer) {
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                final Path target = new File(destination, fileName).toPath();
+                try {
+                    final File source = new File(directory, fileName);
+                    if (renderer != null && TemplateRenderer.isTemplate(fileName)) {
+                        renderer.render(source, target.toFile());
+                    } else {
+                        Files.createDirectories(target.getParent());
+                        Files.copy(source.toPath(), target, StandardCopyOption.REPLACE_EXISTING,
+                                StandardCopyOption.COPY_ATTRIBUTES);
+                    }
+                } catch (final IOException e) {
+                    if (LOGGER.isWarnEnabled()) {
+                        LOGGER.warn("Failed to copy resource file: " + fileName, e);
+                    }
+                    return false;
+                }
+
+                if (LOGGER.isInfoEnabled()) {
+                    LOGGER.info("Copied file " + fileName + " to " + target.toAbsolutePath());
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return the names of all files in the directory
+     */
+    public List<String> getFileNames() {
+        return fileNames;
+    }
+
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.install;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Installs a ZIP archive straight from a URL into its destination directory.
+ * A download thread reads the archive from the network into a pipe while the
+ * calling thread inflates the entries from that pipe and writes them into the
+ * destination. This way network and disk I/O overlap and no temporary ZIP
+ * file or rename of the extracted directory is needed. Optionally the raw
+ * bytes are spooled to a file so the archive can be published in the
+ * {@link ArtifactCache} afterwards. Entries rejected by the optional
+ * {@link EntryFilter} are read past without being written to disk.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class StreamingZipInstaller {
+
+    /** Logger for this class */
+    private static final Log LOGGER = LogFactory.getLog(StreamingZipInstaller.class);
+
+    /** The size of the pipe between the download and extraction thread. */
+    private static final int PIPE_SIZE = 1024 * 1024;
+
+    /** The size of the buffers used for reading and writing. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Counter used to give the download threads a unique name. */
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    /** The URL of the archive to install. */
+    private final URL url;
+
+    /** The file where the downloaded bytes will be spooled to. */
+    private File spoolFile;
+
+    /** The filter that decides which entries will be extracted. */
+    private EntryFilter entryFilter;
+
+    /**
+     * Constructor taking the URL of the archive.
+     *
+     * @param url
+     *            The URL where the archive can be downloaded from.
+     */
+    public StreamingZipInstaller(final URL url) {
+        this.url = url;
+    }
+
+    /**
+     * Downloads and extracts the archive into the destination directory.
+     *
+     * @param destination
+     *            The directory where the archive will be extracted to.
+     * @return Returns the SHA-256 of the downloaded archive.
+     * @throws IOException
+     *             Is thrown when the download or extraction fails.
+     */
+    public String install(final File destination) throws IOException {
+        final long start = System.currentTimeMillis();
+        final File root = destination.getCanonicalFile();
+
+        final PipedInputStream pipe = new PipedInputStream(PIPE_SIZE);
+        final Downloader downloader = new Downloader(new PipedOutputStream(pipe));
+        final Thread downloadThread = new Thread(downloader, "cargo-itest-download-" + THREAD_COUNTER.incrementAndGet());
+        downloadThread.setDaemon(true);
+        downloadThread.start();
+
+        int files = 0;
+        IOException extractionFailure = null;
+        try {
+            final ZipInputStream zip = new ZipInputStream(pipe);
+            final byte[] buffer = new byte[BUFFER_SIZE];
+
+            ZipEntry entry = zip.getNextEntry();
+            while (entry != null) {
+                if (entryFilter != null && !entryFilter.accept(entry.getName())) {
+                    entry = zip.getNextEntry();
+                    continue;
+                }
+
+                final File target = ParallelZipExtractor.resolve(root, entry.getName());
+
+                if (entry.isDirectory()) {
+                    mkdirs(target);
+                } else {
+                    mkdirs(target.getParentFile());
+                    write(zip, target, buffer);
+                    if (entry.getTime() != -1) {
+                        target.setLastModified(entry.getTime());
+                    }
+                    files++;
+                }
+
+                entry = zip.getNextEntry();
+            }
+
+            /*
+             * Drain the central directory so the download completes and the
+             * checksum covers the complete archive.
+             */
+            int read = pipe.read(buffer);
+            while (read != -1) {
+                read = pipe.read(buffer);
+            }
+        } catch (final IOException e) {
+            extractionFailure = e;
+        } finally {
+            IOUtils.closeQuietly(pipe);
+            join(downloadThread);
+        }
+
+        /*
+         * A failing download also breaks the extraction so in that case the
+         * download failure is the root cause.
+         */
+        if (downloader.failure != null) {
+            throw downloader.failure;
+        } else if (extractionFailure != null) {
+            throw extractionFailure;
+        }
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Streamed " + files + " files from " + url + " into " + root.getPath() + " in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        }
+
+        return ArtifactCache.toHex(downloader.messageDigest.digest());
+    }
+
+    /**
+     * Writes the current ZIP entry to the target file.
+     *
+     * @param zip
+     *            The ZIP stream positioned at the entry.
+     * @param target
+     *            The file to write to.
+     * @param buffer
+     *            The buffer to use.
+     * @throws IOException
+     *             Is thrown when the entry couldn't be written.
+     */
+    private static void write(final ZipInputStream zip, final File target, final byte[] buffer) throws IOException {
+        // Replace a hard link to a template file instead of writing through it.
+        Files.deleteIfExists(target.toPath());
+
+        final OutputStream output = new FileOutputStream(target);
+        try {
+            int read = zip.read(buffer);
+            while (read != -1) {
+                output.write(buffer, 0, read);
+                read = zip.read(buffer);
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Creates the specified directory including its parents.
+     *
+     * @param directory
+     *            The directory to create.
+     * @throws IOException
+     *             Is thrown when the directory couldn't be created.
+     */
+    private static void mkdirs(final File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create directory: " + directory.getPath());
+        }
+    }
+
+    /**
+     * Waits until the download thread is finished.
+     *
+     * @param thread
+     *            The download thread.
+     */
+    private static void join(final Thread thread) {
+        try {
+            thread.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param spoolFile
+     *            the file where the downloaded archive will be written to
+     */
+    public void setSpoolFile(final File spoolFile) {
+        this.spoolFile = spoolFile;
+    }
+
+    /**
+     * @param entryFilter
+     *            the filter that decides which entries will be extracted
+     */
+    public void setEntryFilter(final EntryFilter entryFilter) {
+        this.entryFilter = entryFilter;
+    }
+
+    /**
+     * Reads the archive from the network and writes it into the pipe and the
+     * optional spool file.
+     */
+    private final class Downloader implements Runnable {
+
+        /** The pipe to the extraction thread. */
+        private final OutputStream pipe;
+
+        /** The digest that calculates the checksum of the archive. */
+        private final MessageDigest messageDigest;
+
+        /**
+         * The exception that made the download fail. A pipe that was closed by
+         * a failing extraction is not considered a download failure.
+         */
+        private volatile IOException failure;
+
+        /**
+         * Constructor taking the pipe to write to.
+         *
+         * @param pipe
+         *            The pipe to the extraction thread.
+         */
+        private Downloader(final OutputStream pipe) {
+            this.pipe = pipe;
+
+            try {
+                this.messageDigest = MessageDigest.getInstance("SHA-256");
+            } catch (final NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not supported by this JVM!", e);
+            }
+        }
+
+        @Override
+        public void run() {
+            OutputStream spool = null;
+            InputStream input = null;
+            try {
+                if (spoolFile != null) {
+                    spool = new DigestOutputStream(new FileOutputStream(spoolFile), messageDigest);
+                }
+
+                input = url.openStream();
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                int read = input.read(buffer);
+                while (read != -1) {
+                    if (spool == null) {
+                        messageDigest.update(buffer, 0, read);
+                    } else {
+                        spool.write(buffer, 0, read);
+                    }
+                    if (!writeToPipe(buffer, read)) {
+                        return;
+                    }
+                    read = input.read(buffer);
+                }
+            } catch (final IOException e) {
+                failure = e;
+            } finally {
+                IOUtils.closeQuietly(input);
+                IOUtils.closeQuietly(spool);
+                IOUtils.closeQuietly(pipe);
+            }
+        }
+
+        /**
+         * Writes the downloaded bytes into the pipe.
+         *
+         * @param buffer
+         *            The buffer containing the bytes.
+         * @param length
+         *            The number of bytes to write.
+         * @return Returns false if the extraction thread closed the pipe.
+         */
+        private boolean writeToPipe(final byte[] buffer, final int length) {
+            try {
+                pipe.write(buffer, 0, length);
+                return true;
+            } catch (final IOException e) {
+                return false;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.install;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Renders configuration templates while they are copied. Placeholders like
+ * <code>${cargo.server.port}</code> are replaced by their values in a single
+ * buffered pass, so only the placeholder that is being read is kept in memory
+ * and files of any size can be rendered.
+ *
+ * Placeholders without a value are written as they are, so the container can
+ * still resolve its own placeholders like
+ * <code>${jboss.bind.address:localhost}</code>. A placeholder with a default
+ * value after a colon is replaced by the value of its name when there is one.
+ * An unterminated or unreasonably long placeholder is written as it is too.
+ *
+ * The template is rendered byte by byte, because <code>${</code> and
+ * <code>}</code> are the same single bytes in ASCII, UTF-8 and the ISO-8859
+ * character sets. All other bytes are written as they are, so a template in
+ * any of these encodings keeps its encoding and a template without
+ * placeholders is copied byte for byte. Only the values are encoded, in
+ * ISO-8859-1 for Java properties files and UTF-8 for all other templates.
+ * Values in Java properties files are escaped as well, so a value like a
+ * Windows path is loaded as it was given.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class TemplateRenderer {
+
+    /** Logger for this class */
+    private static final Log LOGGER = LogFactory.getLog(TemplateRenderer.class);
+
+    /** The maximum length of a placeholder name. */
+    private static final int MAXIMUM_PLACEHOLDER_LENGTH = 256;
+
+    /** The size of the read and write buffers. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The extensions of the files that are rendered instead of copied. */
+    private static final Set<String> TEMPLATE_EXTENSIONS = new HashSet<String>(Arrays.asList("xml", "properties",
+            "conf", "cfg", "txt", "policy", "bat", "sh"));
+
+    /** The character set of the values in Java properties files. */
+    private static final Charset PROPERTIES_CHARSET = Charset.forName("ISO-8859-1");
+
+    /** The character set of the values in all other templates. */
+    private static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+
+    /** The values of the placeholders by their names. */
+    private final Map<String, String> values;
+
+    /**
+     * Constructor taking the values of the placeholders.
+     *
+     * @param values
+     *            The values by placeholder name i.e. the system properties of
+     *            the container.
+     */
+    public TemplateRenderer(final Map<String, String> values) {
+        this.values = new HashMap<String, String>(values);
+    }
+
+    /**
+     * Determines if a file is a text file that should be rendered. Other files
+     * like libraries are copied as they are.
+     *
+     * @param fileName
+     *            The name of the file.
+     * @return Returns true if the file should be rendered.
+     */
+    public static boolean isTemplate(final String fileName) {
+        return TEMPLATE_EXTENSIONS.contains(FilenameUtils.getExtension(fileName).toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Renders a template file. The source and destination may be the same
+     * file, the result is written to a temporary file next to the destination
+     * which replaces the destination when the rendering is finished.
+     *
+     * @param source
+     *            The template.
+     * @param destination
+     *            The file to write the result to.
+     * @return Returns the number of replaced placeholders.
+     * @throws IOException
+     *             Is thrown when the template couldn't be read or the result
+     *             couldn't be written.
+     */
+    public int render(final File source, final File destination) throws IOException {
+        final boolean properties = "properties".equalsIgnoreCase(FilenameUtils.getExtension(source.getName()));
+
+        final File parent = destination.getAbsoluteFile().getParentFile();
+        FileUtils.forceMkdir(parent);
+        final File rendering = File.createTempFile("." + destination.getName() + "-", ".part", parent);
+
+        final int replaced;
+        try {
+            final InputStream input = new BufferedInputStream(new FileInputStream(source), BUFFER_SIZE);
+            try {
+                final OutputStream output = new BufferedOutputStream(new FileOutputStream(rendering), BUFFER_SIZE);
+                try {
+                    if (properties) {
+                        replaced = render(input, output, PROPERTIES_CHARSET, true);
+                    } else {
+                        replaced = render(input, output, DEFAULT_CHARSET, false);
+                    }
+                } finally {
+                    output.close();
+                }
+            } finally {
+                IOUtils.closeQuietly(input);
+            }
+
+            Files.move(rendering.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            rendering.delete();
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Rendered " + source.getPath() + " to " + destination.getPath() + " replacing " + replaced
+                    + " placeholders");
+        }
+        return replaced;
+    }
+
+    /**
+     * Renders a template from an input stream to an output stream. Neither of
+     * them is closed and the values are written as they are.
+     *
+     * @param input
+     *            The template, which should be buffered.
+     * @param output
+     *            The stream where the result is written to, which should be
+     *            buffered.
+     * @param charset
+     *            The character set the values are written in.
+     * @return Returns the number of replaced placeholders.
+     * @throws IOException
+     *             Is thrown when reading or writing fails.
+     */
+    public int render(final InputStream input, final OutputStream output, final Charset charset) throws IOException {
+        return render(input, output, charset, false);
+    }
+
+    /**
+     * Renders a template from an input stream to an output stream.
+     *
+     * @param input
+     *            The template.
+     * @param output
+     *            The stream where the result is written to.
+     * @param charset
+     *            The character set the values are written in.
+     * @param escape
+     *            True if the values should be escaped for a Java properties
+     *            file.
+     * @return Returns the number of replaced placeholders.
+     * @throws IOException
+     *             Is thrown when reading or writing fails.
+     */
+    private int render(final InputStream input, final OutputStream output, final Charset charset,
+            final boolean escape) throws IOException {
+        final ByteArrayOutputStream placeholder = new ByteArrayOutputStream();
+        boolean dollar = false;
+        boolean open = false;
+        int replaced = 0;
+
+        int character = input.read();
+        while (character != -1) {
+            if (open) {
+                if (character == '}') {
+                    final String value = resolve(placeholder.toString(PROPERTIES_CHARSET.name()));
+                    if (value == null) {
+                        output.write('$');
+                        output.write('{');
+                        placeholder.writeTo(output);
+                        output.write('}');
+                    } else {
+                        if (escape) {
+                            output.write(escapeProperty(value).getBytes(charset));
+                        } else {
+                            output.write(value.getBytes(charset));
+                        }
+                        replaced++;
+                    }
+                    placeholder.reset();
+                    open = false;
+                } else if (character == '\n' || placeholder.size() == MAXIMUM_PLACEHOLDER_LENGTH) {
+                    /*
+                     * This isn't a placeholder so everything that was read is
+                     * written as it is.
+                     */
+                    output.write('$');
+                    output.write('{');
+                    placeholder.writeTo(output);
+                    output.write(character);
+                    placeholder.reset();
+                    open = false;
+                } else {
+                    placeholder.write(character);
+                }
+            } else if (dollar) {
+                dollar = false;
+                if (character == '{') {
+                    open = true;
+                } else {
+                    output.write('$');
+                    continue;
+                }
+            } else if (character == '$') {
+                dollar = true;
+            } else {
+                output.write(character);
+            }
+
+            character = input.read();
+        }
+
+        /*
+         * Write what was left of an unterminated placeholder.
+         */
+        if (dollar) {
+            output.write('$');
+        } else if (open) {
+            output.write('$');
+            output.write('{');
+            placeholder.writeTo(output);
+        }
+
+        return replaced;
+    }
+
+    /**
+     * Escapes a value for a Java properties file the way
+     * {@link java.util.Properties#store(OutputStream, String)} does, so it is
+     * loaded as it is. Characters outside ISO-8859-1 are written as unicode
+     * escapes.
+     *
+     * @param value
+     *            The value to escape.
+     * @return Returns the escaped value.
+     */
+    private static String escapeProperty(final String value) {
+        final StringBuilder escaped = new StringBuilder(value.length() + 16);
+        for (int i = 0; i < value.length(); i++) {
+            final char character = value.charAt(i);
+            switch (character) {
+            case '\\':
+            case '=':
+            case ':':
+            case '#':
+            case '!':
+                escaped.append('\\').append(character);
+                break;
+            case ' ':
+                /*
+                 * Only a leading space would be skipped on load.
+                 */
+                if (i == 0) {
+                    escaped.append('\\');
+                }
+                escaped.append(character);
+                break;
+            case '\t':
+                escaped.append("\\t");
+                break;
+            case '\n':
+                escaped.append("\\n");
+                break;
+            case '\r':
+                escaped.append("\\r");
+                break;
+            case '\f':
+                escaped.append("\\f");
+                break;
+            default:
+                if (character > 0xff) {
+                    escaped.append(String.format("\\u%04x", Integer.valueOf(character)));
+                } else {
+                    escaped.append(character);
+                }
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Resolves the value of a placeholder.
+     *
+     * @param placeholder
+     *            The contents of the placeholder, optionally followed by a
+     *            colon and a default value.
+     * @return Returns the value or null if there is none.
+     */
+    private String resolve(final String placeholder) {
+        final String value = values.get(placeholder);
+        if (value != null) {
+            return value;
+        }
+
+        final int colon = placeholder.indexOf(':');
+        if (colon > 0) {
+            return values.get(placeholder.substring(0, colon));
+        }
+
+        return null;
+    }
+
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.jvm;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import nl.tranquilizedquality.itest.cargo.exception.ConfigurationException;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Named sets of JVM arguments for container JVMs. The heap of a profile is
+ * sized from the available memory and the number of containers that run at
+ * the same time. The JVM arguments of the user are merged with the profile
+ * and take precedence over it.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public enum JvmProfile {
+
+    /**
+     * Boots as fast as possible by only using the client compiler with a
+     * single compiler thread, the serial garbage collector and a small heap.
+     */
+    FAST_BOOT("fast-boot", 25, 128L, 512L, true, "-XX:TieredStopAtLevel=1", "-XX:CICompilerCount=1",
+            "-XX:+UseSerialGC"),
+
+    /**
+     * Runs the tests as fast as possible by using the parallel garbage
+     * collector and a larger heap.
+     */
+    THROUGHPUT("throughput", 50, 256L, 4096L, true, "-XX:+UseParallelGC"),
+
+    /**
+     * Uses as little memory as possible so many containers can run on one
+     * machine.
+     */
+    LOW_MEMORY("low-memory", 12, 64L, 256L, false, "-XX:TieredStopAtLevel=1", "-XX:CICompilerCount=1",
+            "-XX:+UseSerialGC", "-XX:ReservedCodeCacheSize=32m", "-Xss256k");
+
+    /** The system property containing the number of containers that run at the same time. */
+    public static final String PARALLEL_CONTAINERS_PROPERTY = "cargo.itest.parallelContainers";
+
+    /** The number of bytes in a megabyte. */
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    /** The options that select a garbage collector. */
+    private static final Set<String> GARBAGE_COLLECTORS = new HashSet<String>(Arrays.asList("UseSerialGC",
+            "UseParallelGC", "UseParallelOldGC", "UseConcMarkSweepGC", "UseG1GC", "UseShenandoahGC", "UseZGC",
+            "UseEpsilonGC"));
+
+    /** The name of the profile. */
+    private final String profileName;
+
+    /** The percentage of the memory per container used for the heap. */
+    private final int heapPercentage;
+
+    /** The minimum heap size in megabytes. */
+    private final long minimumHeap;
+
+    /** The maximum heap size in megabytes. */
+    private final long maximumHeap;
+
+    /** Determines if the whole heap is committed at startup. */
+    private final boolean fixedHeap;
+
+    /** The JVM arguments apart from the heap size. */
+    private final List<String> arguments;
+
+    /**
+     * Constructor taking the settings of the profile.
+     *
+     * @param profileName
+     *            The name of the profile.
+     * @param heapPercentage
+     *            The percentage of the memory per container used for the heap.
+     * @param minimumHeap
+     *            The minimum heap size in megabytes.
+     * @param maximumHeap
+     *            The maximum heap size in megabytes.
+     * @param fixedHeap
+     *            Determines if the whole heap is committed at startup.
+     * @param arguments
+     *            The JVM arguments apart from the heap size.
+     */
+    private JvmProfile(final String profileName, final int heapPercentage, final long minimumHeap,
+            final long maximumHeap, final boolean fixedHeap, final String... arguments) {
+        this.profileName = profileName;
+        this.heapPercentage = heapPercentage;
+        this.minimumHeap = minimumHeap;
+        this.maximumHeap = maximumHeap;
+        this.fixedHeap = fixedHeap;
+        this.arguments = Collections.unmodifiableList(Arrays.asList(arguments));
+    }
+
+    /**
+     * Looks up a profile by its name.
+     *
+     * @param name
+     *            The name of the profile i.e. fast-boot or FAST_BOOT.
+     * @return Returns the {@link JvmProfile}.
+     */
+    public static JvmProfile fromName(final String name) {
+        for (final JvmProfile profile : values()) {
+            if (profile.profileName.equalsIgnoreCase(StringUtils.trim(name))
+                    || profile.name().equalsIgnoreCase(StringUtils.trim(name))) {
+                return profile;
+            }
+        }
+
+        throw new ConfigurationException("Unknown JVM profile: " + name);
+    }
+
+    /**
+     * Calculates the heap size of a container JVM.
+     *
+     * @param availableMemory
+     *            The memory in bytes that is available for containers.
+     * @param containers
+     *            The number of containers that run at the same time.
+     * @return Returns the heap size in megabytes.
+     */
+    public long getHeapSize(final long availableMemory, final int containers) {
+        final long perContainer = availableMemory / Math.max(1, containers) / MEGABYTE;
+        final long heap = perContainer * heapPercentage / 100L;
+        return Math.min(maximumHeap, Math.max(minimumHeap, heap));
+    }
+
+    /**
+     * Creates the JVM arguments of the profile.
+     *
+     * @param heapSize
+     *            The heap size in megabytes.
+     * @return Returns a list containing the JVM arguments.
+     */
+    public List<String> getArguments(final long heapSize) {
+        final List<String> result = new ArrayList<String>();
+        if (fixedHeap) {
+            result.add("-Xms" + heapSize + "m");
+        }
+        result.add("-Xmx" + heapSize + "m");
+        result.addAll(arguments);
+        return result;
+    }
+
+    /**
+     * Merges the JVM arguments of a profile with the ones of the user. The
+     * arguments of the profile that set the same option as an argument of the
+     * user are left out.
+     *
+     * @param profileArguments
+     *            The JVM arguments of the profile.
+     * @param userArguments
+     *            The JVM arguments of the user.
+     * @return Returns a list containing the merged JVM arguments.
+     */
+    public static List<String> merge(final List<String> profileArguments, final List<String> userArguments) {
+        final Set<String> userOptions = new HashSet<String>();
+        for (final String argument : userArguments) {
+            userOptions.add(getOption(argument));
+        }
+
+        final List<String> result = new ArrayList<String>();
+        for (final String argument : profileArguments) {
+            if (!userOptions.contains(getOption(argument))) {
+                result.add(argument);
+            }
+        }
+        result.addAll(userArguments);
+        return result;
+    }
+
+    /**
+     * Determines the memory that is available for containers. This is the
+     * physical memory of the machine minus the heap of the running JVM.
+     *
+     * @return Returns the available memory in bytes.
+     */
+    public static long getAvailableMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+        final OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+
+        /*
+         * The physical memory is only known on JVMs that have the extended
+         * bean, otherwise guess it from the heap of the running JVM.
+         */
+        long physicalMemory = getPhysicalMemory(bean);
+        if (physicalMemory <= 0L) {
+            physicalMemory = runtime.maxMemory() * 4L;
+        }
+
+        return Math.max(0L, physicalMemory - runtime.maxMemory());
+    }
+
+    /**
+     * Determines the physical memory through the extended operating system
+     * bean. It is called reflectively since getTotalPhysicalMemorySize is
+     * deprecated in favour of getTotalMemorySize on newer JVMs, which doesn't
+     * exist on older ones.
+     *
+     * @param bean
+     *            The operating system bean.
+     * @return Returns the physical memory in bytes or 0 if it isn't known.
+     */
+    private static long getPhysicalMemory(final OperatingSystemMXBean bean) {
+        final Class<?> extendedBean;
+        try {
+            extendedBean = Class.forName("com.sun.management.OperatingSystemMXBean");
+        } catch (final ClassNotFoundException e) {
+            return 0L;
+        }
+
+        if (!extendedBean.isInstance(bean)) {
+            return 0L;
+        }
+
+        for (final String methodName : new String[] {"getTotalMemorySize", "getTotalPhysicalMemorySize" }) {
+            try {
+                return ((Number) extendedBean.getMethod(methodName).invoke(bean)).longValue();
+            } catch (final NoSuchMethodException e) {
+                continue;
+            } catch (final Exception e) {
+                return 0L;
+            }
+        }
+
+        return 0L;
+    }
+
+    /**
+     * Determines the option a JVM argument sets so arguments setting the same
+     * option can be recognized.
+     *
+     * @param argument
+     *            The JVM argument.
+     * @return Returns the option.
+     */
+    static String getOption(final String argument) {
+        final String trimmed = StringUtils.trim(argument);
+
+        for (final String prefix : new String[] {"-Xmx", "-Xms", "-Xss", "-Xmn" }) {
+            if (trimmed.startsWith(prefix)) {
+                return prefix;
+            }
+        }
+
+        if (trimmed.startsWith("-XX:")) {
+            final String option = StringUtils.substringBefore(StringUtils.stripStart(trimmed.substring(4), "+-"), "=");
+            if (GARBAGE_COLLECTORS.contains(option)) {
+                return "garbage-collector";
+            }
+            return "-XX:" + option;
+        }
+
+        if (trimmed.startsWith("-D")) {
+            return StringUtils.substringBefore(trimmed, "=");
+        }
+
+        return trimmed;
+    }
+
+    /**
+     * @return the name of the profile
+     */
+    public String getProfileName() {
+        return profileName;
+    }
+
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Keeps track of the time spent in the phases of a container startup like
+ * downloading, extracting and launching the container. The durations are
+ * measured with {@link System#nanoTime()} so they aren't affected by changes
+ * of the wall clock. Time spent in the same phase more than once is added up.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public final class StartupMetrics {
+
+    /** Downloading the container archive. */
+    public static final String DOWNLOAD = "download";
+
+    /** Downloading and extracting the container archive in a single pass. */
+    public static final String STREAMING_INSTALL = "streaming-install";
+
+    /** Extracting the container archive or cloning its template. */
+    public static final String EXTRACT = "extract";
+
+    /** Renaming the extracted container to the container home. */
+    public static final String RENAME = "rename";
+
+    /** Installing the container specific configuration archive. */
+    public static final String CONFIGURATION_INSTALL = "configuration-install";
+
+    /** Copying the configuration files of the application. */
+    public static final String CONFIGURATION = "configuration";
+
+    /** Creating the Cargo configuration and the deployables. */
+    public static final String CARGO_CONFIGURATION = "cargo-configuration";
+
+    /**
+     * Launching the container JVM and waiting until Cargo reports it and its
+     * deployables as started.
+     */
+    public static final String LAUNCH = "launch";
+
+    /** Waiting until the deployed applications answer HTTP requests. */
+    public static final String READINESS = "readiness";
+
+    /** The name of the container. */
+    private final String containerName;
+
+    /** The time the measurement started. */
+    private final long created;
+
+    /** The accumulated durations in nanoseconds by phase. */
+    private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+
+    /**
+     * Constructor taking the name of the container.
+     *
+     * @param containerName
+     *            The name of the container.
+     */
+    public StartupMetrics(final String containerName) {
+        this.containerName = containerName;
+        this.created = System.currentTimeMillis();
+    }
+
+    /**
+     * Records the time spent in a phase up to now.
+     *
+     * @param phase
+     *            The name of the phase.
+     * @param start
+     *            The value of {@link System#nanoTime()} when the phase
+     *            started.
+     */
+    public void record(final String phase, final long start) {
+        add(phase, System.nanoTime() - start);
+    }
+
+    /**
+     * Adds a duration to a phase.
+     *
+     * @param phase
+     *            The name of the phase.
+     * @param nanos
+     *            The duration in nanoseconds.
+     */
+    public synchronized void add(final String phase, final long nanos) {
+        final Long current = phases.get(phase);
+        if (current == null) {
+            phases.put(phase, nanos);
+        } else {
+            phases.put(phase, current + nanos);
+        }
+    }
+
+    /**
+     * Retrieves the durations of the phases in the order they were first
+     * recorded.
+     *
+     * @return Returns an unmodifiable map containing the duration in
+     *         nanoseconds by phase.
+     */
+    public synchronized Map<String, Long> getPhases() {
+        return Collections.unmodifiableMap(new LinkedHashMap<String, Long>(phases));
+    }
+
+    /**
+     * Retrieves the duration of a phase.
+     *
+     * @param phase
+     *            The name of the phase.
+     * @param unit
+     *            The unit to convert the duration to.
+     * @return Returns the duration or 0 if the phase wasn't recorded.
+     */
+    public synchronized long getDuration(final String phase, final TimeUnit unit) {
+        final Long nanos = phases.get(phase);
+        if (nanos == null) {
+            return 0L;
+        }
+
+        return unit.convert(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Retrieves the sum of the durations of all phases.
+     *
+     * @param unit
+     *            The unit to convert the duration to.
+     * @return Returns the total duration.
+     */
+    public synchronized long getTotal(final TimeUnit unit) {
+        long total = 0L;
+        for (final Long nanos : phases.values()) {
+            total += nanos;
+        }
+
+        return unit.convert(total, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the containerName
+     */
+    public String getContainerName() {
+        return containerName;
+    }
+
+    /**
+     * Creates a JSON representation of the metrics.
+     *
+     * @return Returns the JSON document.
+     */
+    public synchronized String toJson() {
+        final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ", Locale.ENGLISH);
+
+        final StringBuilder builder = new StringBuilder();
+        builder.append("{\n");
+        builder.append("  \"container\" : \"").append(escape(containerName)).append("\",\n");
+        builder.append("  \"started\" : \"").append(format.format(new Date(created))).append("\",\n");
+        builder.append("  \"totalMillis\" : ").append(toMillis(getTotal(TimeUnit.NANOSECONDS))).append(",\n");
+        builder.append("  \"phases\" : [");
+
+        boolean first = true;
+        for (final Entry<String, Long> phase : phases.entrySet()) {
+            if (!first) {
+                builder.append(",");
+            }
+            first = false;
+
+            builder.append("\n    { \"name\" : \"").append(escape(phase.getKey())).append("\", \"millis\" : ")
+                    .append(toMillis(phase.getValue())).append(" }");
+        }
+
+        builder.append("\n  ]\n");
+        builder.append("}\n");
+        return builder.toString();
+    }
+
+    /**
+     * Writes the metrics as JSON to a file.
+     *
+     * @param file
+     *            The file to write to.
+     * @throws IOException
+     *             Is thrown when the file couldn't be written.
+     */
+    public void writeReport(final File file) throws IOException {
+        FileUtils.writeStringToFile(file, toJson(), "UTF-8");
+    }
+
+    /**
+     * Converts nanoseconds to milliseconds with a precision of a microsecond.
+     *
+     * @param nanos
+     *            The duration in nanoseconds.
+     * @return Returns the duration in milliseconds.
+     */
+    private static String toMillis(final long nanos) {
+        return String.format(Locale.ENGLISH, "%.3f", nanos / 1000000.0d);
+    }
+
+    /**
+     * Escapes a value so it can be used as a JSON string.
+     *
+     * @param value
+     *            The value to escape.
+     * @return Returns the escaped value.
+     */
+    private static String escape(final String value) {
+        if (value == null) {
+            return "";
+        }
+
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+}
@@ -0,0 +1,423 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.readiness;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.tools.ant.types.Commandline;
+import org.codehaus.cargo.container.spi.jvm.JvmLauncher;
+import org.codehaus.cargo.container.spi.jvm.JvmLauncherException;
+
+/**
+ * Launches the JVM of a container with a {@link ProcessBuilder}. Unlike the
+ * default Cargo launcher it keeps hold of the started process, so it can be
+ * checked whether the container JVM is still alive and what its exit value
+ * was.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class ProcessJvmLauncher implements JvmLauncher {
+
+    /** Logger for this class */
+    private static final Log LOGGER = LogFactory.getLog(ProcessJvmLauncher.class);
+
+    /** The number of milliseconds between checks if an executed process is finished. */
+    private static final long EXECUTE_POLL_INTERVAL = 50L;
+
+    /** Determines if the launcher starts the container itself. */
+    private final boolean server;
+
+    /** The java executable. */
+    private String jvm = "java";
+
+    /** The working directory of the process. */
+    private File workingDirectory;
+
+    /** The JVM arguments. */
+    private final List<String> jvmArguments = new ArrayList<String>();
+
+    /** The system properties. */
+    private final Map<String, String> systemProperties = new LinkedHashMap<String, String>();
+
+    /** The class path entries. */
+    private final List<String> classpath = new ArrayList<String>();
+
+    /** The JAR file to run. */
+    private File jarFile;
+
+    /** The main class to run. */
+    private String mainClass;
+
+    /** The application arguments. */
+    private final List<String> appArguments = new ArrayList<String>();
+
+    /** The file the output of the process is written to. */
+    private File outputFile;
+
+    /** Determines if the output is appended to the output file. */
+    private boolean appendOutput;
+
+    /** The maximum number of milliseconds an executed process may take. */
+    private long timeout;
+
+    /** The started process. */
+    private Process process;
+
+    /**
+     * Constructor taking the kind of process.
+     *
+     * @param server
+     *            Determines if the launcher starts the container itself.
+     */
+    public ProcessJvmLauncher(final boolean server) {
+        this.server = server;
+    }
+
+    @Override
+    public void setWorkingDirectory(final File workingDirectory) {
+        this.workingDirectory = workingDirectory;
+    }
+
+    @Override
+    public void setJvm(final String jvm) {
+        this.jvm = jvm;
+    }
+
+    @Override
+    public void addJvmArgument(final File file) {
+        jvmArguments.add(file.getAbsolutePath());
+    }
+
+    @Override
+    public void addJvmArguments(final String... values) {
+        jvmArguments.addAll(Arrays.asList(values));
+    }
+
+    @Override
+    public void addJvmArgumentLine(final String line) {
+        if (StringUtils.isNotBlank(line)) {
+            jvmArguments.addAll(Arrays.asList(Commandline.translateCommandline(line)));
+        }
+    }
+
+    @Override
+    public void addClasspathEntries(final String... paths) {
+        classpath.addAll(Arrays.asList(paths));
+    }
+
+    @Override
+    public void addClasspathEntries(final File... paths) {
+        for (final File path : paths) {
+            classpath.add(path.getAbsolutePath());
+        }
+    }
+
+    @Override
+    public String getClasspath() {
+        return StringUtils.join(classpath, File.pathSeparator);
+    }
+
+    @Override
+    public void setSystemProperty(final String name, final String value) {
+        systemProperties.put(name, value);
+    }
+
+    @Override
+    public void setJarFile(final File jarFile) {
+        this.jarFile = jarFile;
+    }
+
+    @Override
+    public void setMainClass(final String mainClass) {
+        this.mainClass = mainClass;
+    }
+
+    @Override
+    public void addAppArgument(final File file) {
+        appArguments.add(file.getAbsolutePath());
+    }
+
+    @Override
+    public void addAppArguments(final String... values) {
+        appArguments.addAll(Arrays.asList(values));
+    }
+
+    @Override
+    public void addAppArgumentLine(final String line) {
+        if (StringUtils.isNotBlank(line)) {
+            appArguments.addAll(Arrays.asList(Commandline.translateCommandline(line)));
+        }
+    }
+
+    @Override
+    public void setOutputFile(final File outputFile) {
+        this.outputFile = outputFile;
+    }
+
+    @Override
+    public void setAppendOutput(final boolean appendOutput) {
+        this.appendOutput = appendOutput;
+    }
+
+    @Override
+    public String getCommandLine() {
+        return StringUtils.join(createCommand(), " ");
+    }
+
+    @Override
+    public synchronized void kill() {
+        if (process != null) {
+            process.destroy();
+        }
+    }
+
+    @Override
+    public void setTimeout(final long timeout) {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void setSpawn(final boolean spawn) {
+        /*
+         * The process is always started in the background and outlives the
+         * launcher when it isn't killed.
+         */
+    }
+
+    @Override
+    public synchronized void start() throws JvmLauncherException {
+        process = launch();
+    }
+
+    @Override
+    public int execute() throws JvmLauncherException {
+        final Process executed = launch();
+        synchronized (this) {
+            process = executed;
+        }
+
+        final long deadline = System.currentTimeMillis() + timeout;
+        try {
+            while (true) {
+                final Integer exitValue = getExitValue(executed);
+                if (exitValue != null) {
+                    return exitValue;
+                }
+
+                if (timeout > 0L && System.currentTimeMillis() > deadline) {
+                    executed.destroy();
+                    throw new JvmLauncherException("Process did not finish within " + timeout + " ms: " + getCommandLine());
+                }
+
+                Thread.sleep(EXECUTE_POLL_INTERVAL);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executed.destroy();
+            throw new JvmLauncherException("Interrupted while waiting for: " + getCommandLine(), e);
+        }
+    }
+
+    /**
+     * Determines if the started process is still running.
+     *
+     * @return Returns true if the process is running or false if it was never
+     *         started or has ended.
+     */
+    public synchronized boolean isAlive() {
+        return process != null && getExitValue(process) == null;
+    }
+
+    /**
+     * Retrieves the exit value of the started process.
+     *
+     * @return Returns the exit value or null if the process was never started
+     *         or is still running.
+     */
+    public synchronized Integer getExitValue() {
+        if (process == null) {
+            return null;
+        }
+
+        return getExitValue(process);
+    }
+
+    /**
+     * Forcibly destroys the started process and the processes it started.
+     * The process tree is only known on Java 9 and newer, older JVMs only
+     * destroy the process itself.
+     */
+    public synchronized void destroyTree() {
+        if (process == null) {
+            return;
+        }
+
+        try {
+            final Class<?> handleClass = Class.forName("java.lang.ProcessHandle");
+            final Object handle = Process.class.getMethod("toHandle").invoke(process);
+            final Object descendants = handleClass.getMethod("descendants").invoke(handle);
+            final Object[] children = (Object[]) Class.forName("java.util.stream.Stream").getMethod("toArray")
+                    .invoke(descendants);
+
+            /*
+             * Destroy the children first so they can't be taken over by
+             * another parent.
+             */
+            for (final Object child : children) {
+                handleClass.getMethod("destroyForcibly").invoke(child);
+            }
+            Process.class.getMethod("destroyForcibly").invoke(process);
+
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Destroyed process and " + children.length + " descendants: " + getCommandLine());
+            }
+        } catch (final ReflectiveOperationException e) {
+            process.destroy();
+        }
+    }
+
+    /**
+     * Waits for the started process to end.
+     *
+     * @param timeout
+     *            The maximum number of milliseconds to wait.
+     * @return Returns true if the process has ended or was never started.
+     */
+    public boolean waitFor(final long timeout) {
+        final long deadline = System.currentTimeMillis() + timeout;
+        try {
+            while (isAlive()) {
+                if (System.currentTimeMillis() > deadline) {
+                    return false;
+                }
+
+                Thread.sleep(EXECUTE_POLL_INTERVAL);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return !isAlive();
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true if the launcher starts the container itself
+     */
+    public boolean isServer() {
+        return server;
+    }
+
+    /**
+     * @return the outputFile
+     */
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+    /**
+     * Creates the command that starts the JVM.
+     *
+     * @return Returns the command and its arguments.
+     */
+    List<String> createCommand() {
+        final List<String> command = new ArrayList<String>();
+        command.add(jvm);
+        command.addAll(jvmArguments);
+
+        for (final Entry<String, String> property : systemProperties.entrySet()) {
+            command.add("-D" + property.getKey() + "=" + property.getValue());
+        }
+
+        if (!classpath.isEmpty()) {
+            command.add("-classpath");
+            command.add(getClasspath());
+        }
+
+        if (jarFile != null) {
+            command.add("-jar");
+            command.add(jarFile.getAbsolutePath());
+        } else if (mainClass != null) {
+            command.add(mainClass);
+        }
+
+        command.addAll(appArguments);
+        return command;
+    }
+
+    /**
+     * Starts the process.
+     *
+     * @return Returns the started {@link Process}.
+     * @throws JvmLauncherException
+     *             Is thrown when the process couldn't be started.
+     */
+    private Process launch() throws JvmLauncherException {
+        final ProcessBuilder builder = new ProcessBuilder(createCommand());
+        builder.redirectErrorStream(true);
+
+        if (workingDirectory != null) {
+            builder.directory(workingDirectory);
+        }
+
+        if (outputFile == null) {
+            builder.redirectOutput(Redirect.INHERIT);
+        } else if (appendOutput) {
+            builder.redirectOutput(Redirect.appendTo(outputFile));
+        } else {
+            builder.redirectOutput(Redirect.to(outputFile));
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Launching: " + getCommandLine());
+        }
+
+        try {
+            return builder.start();
+        } catch (final IOException e) {
+            throw new JvmLauncherException("Failed to launch: " + getCommandLine(), e);
+        }
+    }
+
+    /**
+     * Retrieves the exit value of a process without waiting for it.
+     *
+     * @param process
+     *            The process.
+     * @return Returns the exit value or null if the process is still running.
+     */
+    private static Integer getExitValue(final Process process) {
+        try {
+            return process.exitValue();
+        } catch (final IllegalThreadStateException e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.readiness;
+
+import org.codehaus.cargo.container.spi.jvm.JvmLauncher;
+import org.codehaus.cargo.container.spi.jvm.JvmLauncherFactory;
+import org.codehaus.cargo.container.spi.jvm.JvmLauncherRequest;
+
+/**
+ * Creates {@link ProcessJvmLauncher}s for a Cargo container and remembers the
+ * one that launches the container itself so its process can be monitored.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class ProcessJvmLauncherFactory implements JvmLauncherFactory {
+
+    /** The launcher of the container process. */
+    private ProcessJvmLauncher serverLauncher;
+
+    @Override
+    public synchronized JvmLauncher createJvmLauncher(final JvmLauncherRequest request) {
+        final ProcessJvmLauncher launcher = new ProcessJvmLauncher(request.isServer());
+        if (request.isServer()) {
+            serverLauncher = launcher;
+        }
+
+        return launcher;
+    }
+
+    /**
+     * @return the launcher of the container process or null if it wasn't
+     *         created yet
+     */
+    public synchronized ProcessJvmLauncher getServerLauncher() {
+        return serverLauncher;
+    }
+
+}
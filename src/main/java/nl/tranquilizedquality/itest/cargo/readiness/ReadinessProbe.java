@@ -0,0 +1,456 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.readiness;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import nl.tranquilizedquality.itest.cargo.exception.DeployException;
+import nl.tranquilizedquality.itest.domain.DeployableLocationConfiguration;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Waits until the deployed applications actually answer HTTP requests. Every
+ * URL is polled with an exponential backoff that starts over as soon as the
+ * container shows progress, like answering with an error instead of refusing
+ * the connection. When the process of the container is known the probe fails
+ * right away when it dies instead of waiting for the timeout.
+ *
+ * A web application without a welcome page answers the root of its context
+ * with a 404, so for those URLs a 404 can be accepted as an answer as well. A
+ * deployable can configure a readiness path to have a URL probed that really
+ * needs to answer.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class ReadinessProbe {
+
+    /** Logger for this class */
+    private static final Log LOGGER = LogFactory.getLog(ReadinessProbe.class);
+
+    /** The status used for a URL that refused the connection. */
+    private static final int NO_RESPONSE = -1;
+
+    /** The number of bytes of the container output added to a failure. */
+    private static final int OUTPUT_TAIL_SIZE = 4096;
+
+    /** The URLs that need to answer. */
+    private final List<URL> urls;
+
+    /** The maximum number of milliseconds to wait. */
+    private final long timeout;
+
+    /** The URLs where a 404 is accepted as an answer. */
+    private final Set<URL> notFoundAccepted = new HashSet<URL>();
+
+    /** The launcher of the container process or null if it isn't known. */
+    private ProcessJvmLauncher process;
+
+    /** The first delay in milliseconds between two polls. */
+    private long initialDelay = 50L;
+
+    /** The maximum delay in milliseconds between two polls. */
+    private long maxDelay = 2000L;
+
+    /** The connect and read timeout in milliseconds of a single request. */
+    private int requestTimeout = 2000;
+
+    /**
+     * Constructor taking the URLs and the timeout.
+     *
+     * @param urls
+     *            The URLs that need to answer.
+     * @param timeout
+     *            The maximum number of milliseconds to wait.
+     */
+    public ReadinessProbe(final List<URL> urls, final long timeout) {
+        this.urls = new ArrayList<URL>(urls);
+        this.timeout = timeout;
+    }
+
+    /**
+     * Waits until all URLs answer.
+     *
+     * @throws DeployException
+     *             Is thrown when the container process died or the URLs didn't
+     *             answer in time.
+     */
+    public void await() {
+        final long start = System.currentTimeMillis();
+        final Map<URL, Integer> pending = new LinkedHashMap<URL, Integer>();
+        for (final URL url : urls) {
+            pending.put(url, NO_RESPONSE);
+        }
+
+        long delay = initialDelay;
+        int polls = 0;
+        while (!pending.isEmpty()) {
+            boolean progress = false;
+
+            for (final Entry<URL, Integer> entry : new ArrayList<Entry<URL, Integer>>(pending.entrySet())) {
+                final int status = poll(entry.getKey());
+                if (isReady(status) || status == HttpURLConnection.HTTP_NOT_FOUND
+                        && notFoundAccepted.contains(entry.getKey())) {
+                    pending.remove(entry.getKey());
+                    progress = true;
+
+                    if (LOGGER.isInfoEnabled()) {
+                        LOGGER.info(entry.getKey() + " is ready after " + (System.currentTimeMillis() - start) + " ms");
+                    }
+                } else if (status != entry.getValue()) {
+                    entry.setValue(status);
+                    progress = true;
+                }
+            }
+            polls++;
+
+            if (pending.isEmpty()) {
+                break;
+            }
+
+            if (process != null && !process.isAlive()) {
+                throw new DeployException("The container process died with exit value " + process.getExitValue()
+                        + " before " + describe(pending) + " answered." + readOutputTail());
+            }
+
+            final long elapsed = System.currentTimeMillis() - start;
+            if (elapsed >= timeout) {
+                throw new DeployException("Timed out after " + elapsed + " ms and " + polls + " polls waiting for "
+                        + describe(pending) + "." + readOutputTail());
+            }
+
+            /*
+             * Poll quickly again when the container shows progress and back off
+             * while nothing changes.
+             */
+            if (progress) {
+                delay = initialDelay;
+            } else {
+                delay = Math.min(delay * 2L, maxDelay);
+            }
+
+            try {
+                Thread.sleep(Math.min(delay, timeout - elapsed));
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DeployException("Interrupted while waiting for " + describe(pending) + ".", e);
+            }
+        }
+    }
+
+    /**
+     * Creates the URLs of the contexts of the deployed web applications. The
+     * context of a WAR is its context name or otherwise the name of the file
+     * without the extension. The URL is the root of the context unless a
+     * readiness path is configured for the deployable.
+     *
+     * @param baseUrl
+     *            The URL of the container ending with a slash.
+     * @param deployableLocations
+     *            The types of the deployables by location.
+     * @param deployableLocationConfigurations
+     *            The deployable location configurations.
+     * @return Returns a list containing the URLs.
+     */
+    public static List<URL> createContextUrls(final String baseUrl, final Map<String, String> deployableLocations,
+            final List<DeployableLocationConfiguration> deployableLocationConfigurations) {
+        final Map<String, String> contexts = findContexts(deployableLocations, deployableLocationConfigurations);
+
+        final List<URL> urls = new ArrayList<URL>();
+        for (final Entry<String, String> context : contexts.entrySet()) {
+            urls.add(createUrl(baseUrl, context.getKey(), context.getValue()));
+        }
+
+        return urls;
+    }
+
+    /**
+     * Creates the URLs of the contexts that are probed at their root because
+     * no readiness path is configured. An application without a welcome page
+     * answers those with a 404, so it can be accepted with
+     * {@link #setNotFoundAccepted(Collection)}.
+     *
+     * @param baseUrl
+     *            The URL of the container ending with a slash.
+     * @param deployableLocations
+     *            The types of the deployables by location.
+     * @param deployableLocationConfigurations
+     *            The deployable location configurations.
+     * @return Returns a list containing the URLs.
+     */
+    public static List<URL> createContextRootUrls(final String baseUrl, final Map<String, String> deployableLocations,
+            final List<DeployableLocationConfiguration> deployableLocationConfigurations) {
+        final Map<String, String> contexts = findContexts(deployableLocations, deployableLocationConfigurations);
+
+        final List<URL> urls = new ArrayList<URL>();
+        for (final Entry<String, String> context : contexts.entrySet()) {
+            if (StringUtils.isEmpty(context.getValue())) {
+                urls.add(createUrl(baseUrl, context.getKey(), null));
+            }
+        }
+
+        return urls;
+    }
+
+    /**
+     * Finds the contexts of the deployed web applications.
+     *
+     * @param deployableLocations
+     *            The types of the deployables by location.
+     * @param deployableLocationConfigurations
+     *            The deployable location configurations.
+     * @return Returns the readiness paths by context, a context without a
+     *         readiness path has a null value.
+     */
+    private static Map<String, String> findContexts(final Map<String, String> deployableLocations,
+            final List<DeployableLocationConfiguration> deployableLocationConfigurations) {
+        final Map<String, String> contexts = new LinkedHashMap<String, String>();
+
+        for (final Entry<String, String> entry : deployableLocations.entrySet()) {
+            if ("WAR".equals(entry.getValue())) {
+                contexts.put(StringUtils.substringBeforeLast(new File(entry.getKey()).getName(), "."), null);
+            }
+        }
+
+        for (final DeployableLocationConfiguration configuration : deployableLocationConfigurations) {
+            if (!"WAR".equals(configuration.getType())) {
+                continue;
+            }
+
+            final String context;
+            if (StringUtils.isNotEmpty(configuration.getContextName())) {
+                context = configuration.getContextName();
+            } else {
+                context = StringUtils.substringBeforeLast(new File(configuration.getPath()).getName(), ".");
+            }
+
+            if (!contexts.containsKey(context) || StringUtils.isNotEmpty(configuration.getReadinessPath())) {
+                contexts.put(context, configuration.getReadinessPath());
+            }
+        }
+
+        return contexts;
+    }
+
+    /**
+     * Creates the URL to probe of a context.
+     *
+     * @param baseUrl
+     *            The URL of the container ending with a slash.
+     * @param context
+     *            The context of the application.
+     * @param readinessPath
+     *            The path within the context or null to probe the root.
+     * @return Returns the URL.
+     */
+    private static URL createUrl(final String baseUrl, final String context, final String readinessPath) {
+        try {
+            return new URL(baseUrl + context + "/" + StringUtils.stripStart(StringUtils.defaultString(readinessPath), "/"));
+        } catch (final MalformedURLException e) {
+            throw new DeployException("Failed to create the URL of context " + context + "!", e);
+        }
+    }
+
+    /**
+     * Determines if a status means the application is ready. Authentication
+     * and authorization errors are answered by the application itself so they
+     * count as ready as well.
+     *
+     * @param status
+     *            The HTTP status or {@link #NO_RESPONSE}.
+     * @return Returns true if the application is ready.
+     */
+    static boolean isReady(final int status) {
+        return status >= 200 && status < 400 || status == HttpURLConnection.HTTP_UNAUTHORIZED
+                || status == HttpURLConnection.HTTP_FORBIDDEN;
+    }
+
+    /**
+     * @param urls
+     *            the URLs where a 404 is accepted as an answer because they
+     *            are the roots of contexts that may not have a welcome page
+     */
+    public void setNotFoundAccepted(final Collection<URL> urls) {
+        notFoundAccepted.clear();
+        notFoundAccepted.addAll(urls);
+    }
+
+    /**
+     * Requests a URL once.
+     *
+     * @param url
+     *            The URL to request.
+     * @return Returns the HTTP status or {@link #NO_RESPONSE} when the request
+     *         failed.
+     */
+    private int poll(final URL url) {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(requestTimeout);
+            connection.setReadTimeout(requestTimeout);
+            connection.setInstanceFollowRedirects(false);
+            connection.setUseCaches(false);
+
+            final int status = connection.getResponseCode();
+            drain(connection);
+            return status;
+        } catch (final IOException e) {
+            return NO_RESPONSE;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Reads the rest of the response so the connection is cleaned up.
+     *
+     * @param connection
+     *            The connection.
+     */
+    private static void drain(final HttpURLConnection connection) {
+        InputStream input = connection.getErrorStream();
+        try {
+            if (input == null) {
+                input = connection.getInputStream();
+            }
+            IOUtils.copy(input, new NullOutputStream());
+        } catch (final IOException e) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Failed to read the response of " + connection.getURL(), e);
+            }
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Describes the URLs that didn't answer yet with their last status.
+     *
+     * @param pending
+     *            The last status by URL.
+     * @return Returns the description.
+     */
+    private static String describe(final Map<URL, Integer> pending) {
+        final StringBuilder builder = new StringBuilder();
+        for (final Entry<URL, Integer> entry : pending.entrySet()) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(entry.getKey());
+
+            if (entry.getValue() == NO_RESPONSE) {
+                builder.append(" (no response)");
+            } else {
+                builder.append(" (HTTP ").append(entry.getValue()).append(")");
+            }
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Reads the end of the output of the container process so a failure shows
+     * why the container didn't come up.
+     *
+     * @return Returns the end of the output or an empty string if there is no
+     *         output.
+     */
+    private String readOutputTail() {
+        if (process == null || process.getOutputFile() == null || !process.getOutputFile().isFile()) {
+            return "";
+        }
+
+        final File output = process.getOutputFile();
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(output, "r");
+            final long length = file.length();
+            final byte[] tail = new byte[(int) Math.min(length, OUTPUT_TAIL_SIZE)];
+            file.seek(length - tail.length);
+            file.readFully(tail);
+
+            return " Last output of " + output.getPath() + ":\n" + new String(tail, "UTF-8");
+        } catch (final IOException e) {
+            return " Failed to read " + output.getPath() + ": " + e.getMessage();
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (final IOException e) {
+                    if (LOGGER.isDebugEnabled()) {
+                        LOGGER.debug("Failed to close " + output.getPath(), e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param process
+     *            the process to set
+     */
+    public void setProcess(final ProcessJvmLauncher process) {
+        this.process = process;
+    }
+
+    /**
+     * @param initialDelay
+     *            the initialDelay to set
+     */
+    public void setInitialDelay(final long initialDelay) {
+        this.initialDelay = initialDelay;
+    }
+
+    /**
+     * @param maxDelay
+     *            the maxDelay to set
+     */
+    public void setMaxDelay(final long maxDelay) {
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * @param requestTimeout
+     *            the requestTimeout to set
+     */
+    public void setRequestTimeout(final int requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.workspace;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Deletes container directories in the background so a test doesn't have to
+ * wait for the removal of a complete container installation before the next
+ * container can be started. A directory is first renamed aside atomically so
+ * its original location can be reused immediately. The renamed directory is
+ * then deleted on a pool of low priority threads where every top level sub
+ * directory is deleted in parallel.
+ *
+ * Pending deletions are drained when the JVM shuts down. A directory that is
+ * reaped after the reaper was drained, like one of a container that is stopped
+ * by another shutdown hook, is deleted right away on the calling thread.
+ * Directories that are left behind when the JVM is killed keep the
+ * {@link #REAPING_PREFIX} so they can be recognized and removed later on.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public final class DirectoryReaper {
+
+    /** Logger for this class */
+    private static final Log LOGGER = LogFactory.getLog(DirectoryReaper.class);
+
+    /** The prefix of directories that were renamed aside to be deleted. */
+    public static final String REAPING_PREFIX = ".cargo-itest-reaping-";
+
+    /** The maximum number of threads used to delete a directory. */
+    private static final int MAX_DELETE_THREADS = 4;
+
+    /** The number of seconds the shutdown hook waits for pending deletions. */
+    private static final long SHUTDOWN_TIMEOUT = 60L;
+
+    /** The shared instance. */
+    private static DirectoryReaper instance;
+
+    /** Counter used to give the reaper threads a unique name. */
+    private final AtomicInteger threadCounter = new AtomicInteger();
+
+    /** Processes the directories one by one. */
+    private final ExecutorService coordinator;
+
+    /** Deletes the sub directories in parallel. */
+    private final ExecutorService deleters;
+
+    /**
+     * Constructor taking the number of threads used to delete a directory.
+     *
+     * @param threads
+     *            The number of threads.
+     */
+    DirectoryReaper(final int threads) {
+        coordinator = Executors.newSingleThreadExecutor(new ReaperThreadFactory());
+        deleters = Executors.newFixedThreadPool(Math.max(1, threads), new ReaperThreadFactory());
+    }
+
+    /**
+     * Retrieves the shared reaper. It is created on first use and registers a
+     * shutdown hook that drains the pending deletions.
+     *
+     * @return Returns the {@link DirectoryReaper}.
+     */
+    public static synchronized DirectoryReaper getInstance() {
+        if (instance == null) {
+            final DirectoryReaper reaper = new DirectoryReaper(Math.min(Runtime.getRuntime().availableProcessors(),
+                    MAX_DELETE_THREADS));
+            Runtime.getRuntime().addShutdownHook(new Thread("cargo-itest-reaper-drain") {
+                @Override
+                public void run() {
+                    reaper.drain(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+                }
+            });
+            instance = reaper;
+        }
+
+        return instance;
+    }
+
+    /**
+     * Schedules the deletion of a directory. The directory is renamed aside
+     * before this method returns.
+     *
+     * @param directory
+     *            The directory to delete.
+     * @return Returns a {@link Future} that completes when the directory is
+     *         deleted.
+     */
+    public Future<?> reap(final File directory) {
+        return reap(directory, null);
+    }
+
+    /**
+     * Schedules the deletion of a directory and runs the callback once the
+     * directory is deleted. The directory is renamed aside before this method
+     * returns. When the reaper is drained already the directory is deleted
+     * and the callback is run before this method returns.
+     *
+     * @param directory
+     *            The directory to delete.
+     * @param callback
+     *            The callback that is run after the deletion, even when it
+     *            failed, or null if there is none.
+     * @return Returns a {@link Future} that completes when the directory is
+     *         deleted and the callback has run.
+     */
+    public Future<?> reap(final File directory, final Runnable callback) {
+        final File target = renameAside(directory);
+
+        final FutureTask<Void> deletion = new FutureTask<Void>(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    delete(target);
+                } finally {
+                    if (callback != null) {
+                        callback.run();
+                    }
+                }
+            }
+        }, null);
+
+        try {
+            coordinator.execute(deletion);
+        } catch (final RejectedExecutionException e) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Reaper is drained, deleting " + target.getPath() + " right away.");
+            }
+            deletion.run();
+        }
+
+        return deletion;
+    }
+
+    /**
+     * Waits until all scheduled deletions are finished and stops the reaper
+     * threads.
+     *
+     * @param timeout
+     *            The maximum time to wait.
+     * @param unit
+     *            The unit of the timeout.
+     * @return Returns true if all deletions finished in time.
+     */
+    public boolean drain(final long timeout, final TimeUnit unit) {
+        coordinator.shutdown();
+        try {
+            final boolean drained = coordinator.awaitTermination(timeout, unit);
+            if (!drained && LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Not all container directories were deleted within " + timeout + " " + unit);
+            }
+            return drained;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            deleters.shutdown();
+        }
+    }
+
+    /**
+     * Renames the directory to a sibling with the {@link #REAPING_PREFIX}.
+     * When the directory can't be renamed it is deleted in place.
+     *
+     * @param directory
+     *            The directory to rename.
+     * @return Returns the directory that needs to be deleted.
+     */
+    private static File renameAside(final File directory) {
+        final File absolute = directory.getAbsoluteFile();
+        final File target = new File(absolute.getParentFile(), REAPING_PREFIX + absolute.getName() + "-" + System.nanoTime());
+
+        try {
+            Files.move(absolute.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            return target;
+        } catch (final IOException e) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Failed to rename " + absolute.getPath() + " aside, deleting it in place.", e);
+            }
+            return absolute;
+        }
+    }
+
+    /**
+     * Deletes the directory by deleting all top level entries in parallel.
+     *
+     * @param directory
+     *            The directory to delete.
+     */
+    private void delete(final File directory) {
+        final long start = System.currentTimeMillis();
+        final AtomicLong files = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+
+        final File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>(children.length);
+            try {
+                for (final File child : children) {
+                    futures.add(deleters.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                            deleteTree(child.toPath(), files, bytes);
+                            return null;
+                        }
+                    }));
+                }
+            } catch (final RejectedExecutionException e) {
+                /*
+                 * The deleters are stopped during shutdown so whatever is left
+                 * is deleted on this thread below.
+                 */
+            }
+
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+
+            deleteTree(directory.toPath(), files, bytes);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (final ExecutionException e) {
+            if (LOGGER.isErrorEnabled()) {
+                LOGGER.error("Failed to delete the directory: " + directory.getPath() + ".", e.getCause());
+            }
+            return;
+        } catch (final IOException e) {
+            if (LOGGER.isErrorEnabled()) {
+                LOGGER.error("Failed to delete the directory: " + directory.getPath() + ".", e);
+            }
+            return;
+        }
+
+        if (LOGGER.isInfoEnabled()) {
+            final long duration = Math.max(1L, System.currentTimeMillis() - start);
+            LOGGER.info("Deleted " + files.get() + " files (" + bytes.get() / 1024L + " KB) from " + directory.getPath()
+                    + " in " + duration + " ms (" + files.get() * 1000L / duration + " files/s)");
+        }
+    }
+
+    /**
+     * Deletes a file or directory including all its content.
+     *
+     * @param root
+     *            The file or directory to delete.
+     * @param files
+     *            Counts the number of deleted files.
+     * @param bytes
+     *            Counts the number of deleted bytes.
+     * @throws IOException
+     *             Is thrown when a file couldn't be deleted.
+     */
+    static void deleteTree(final Path root, final AtomicLong files, final AtomicLong bytes) throws IOException {
+        if (!Files.exists(root, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) throws IOException {
+                forceDelete(file);
+                files.incrementAndGet();
+                bytes.addAndGet(attributes.size());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path directory, final IOException exception) throws IOException {
+                if (exception != null) {
+                    throw exception;
+                }
+                forceDelete(directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Deletes a single file. Read-only files, like the ones cloned from a
+     * container template on Windows, are made writable first when needed.
+     *
+     * @param path
+     *            The file to delete.
+     * @throws IOException
+     *             Is thrown when the file couldn't be deleted.
+     */
+    private static void forceDelete(final Path path) throws IOException {
+        try {
+            Files.delete(path);
+        } catch (final AccessDeniedException e) {
+            path.toFile().setWritable(true);
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Creates the low priority daemon threads of the reaper.
+     */
+    private final class ReaperThreadFactory implements ThreadFactory {
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "cargo-itest-reaper-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+
+    }
+
+}
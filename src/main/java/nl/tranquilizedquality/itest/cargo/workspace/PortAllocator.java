@@ -0,0 +1,337 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.workspace;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Reserves free TCP ports for containers so multiple containers, and multiple
+ * builds or surefire forks on the same machine, can run at the same time
+ * without clashing. Every reserved port is backed by a lock file in the ports
+ * directory of the workspace. The reserving JVM holds a file lock on it until
+ * the port is released, so other processes skip the port and the operating
+ * system releases the reservation when the JVM dies.
+ *
+ * A port is only reserved when it can be bound as well, so ports used by other
+ * applications are skipped too.
+ *
+ * Closing any descriptor of a lock file releases all locks of the process on
+ * it, so the lock files held by this JVM are never opened a second time, not
+ * even by another instance for the same directory.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public final class PortAllocator {
+
+    /** Logger for this class */
+    private static final Log LOGGER = LogFactory.getLog(PortAllocator.class);
+
+    /** The name of the directory containing the port lock files. */
+    public static final String PORTS_DIRECTORY = "cargo-itest-ports";
+
+    /** The first port of the default range. */
+    private static final int DEFAULT_FIRST_PORT = 20000;
+
+    /** The last port of the default range. */
+    private static final int DEFAULT_LAST_PORT = 29999;
+
+    /** The shared instances per ports directory. */
+    private static final Map<File, PortAllocator> INSTANCES = new HashMap<File, PortAllocator>();
+
+    /** The canonical paths of the lock files that are opened by this JVM. */
+    private static final Set<String> OPENED_LOCK_FILES = new HashSet<String>();
+
+    /** The directory containing the port lock files. */
+    private final File portsDirectory;
+
+    /** The first port that may be reserved. */
+    private final int firstPort;
+
+    /** The last port that may be reserved. */
+    private final int lastPort;
+
+    /** The reservations of this JVM by port. */
+    private final Map<Integer, Reservation> reservations = new HashMap<Integer, Reservation>();
+
+    /** Used to start searching at a random port in the range. */
+    private final Random random = new Random();
+
+    /**
+     * Constructor taking the directory and the range of ports.
+     *
+     * @param portsDirectory
+     *            The directory containing the port lock files.
+     * @param firstPort
+     *            The first port that may be reserved.
+     * @param lastPort
+     *            The last port that may be reserved.
+     */
+    PortAllocator(final File portsDirectory, final int firstPort, final int lastPort) {
+        this.portsDirectory = portsDirectory;
+        this.firstPort = firstPort;
+        this.lastPort = lastPort;
+    }
+
+    /**
+     * Retrieves the port allocator of the specified workspace directory.
+     *
+     * @param workspaceDirectory
+     *            The directory where the container roots are created.
+     * @return Returns the {@link PortAllocator}.
+     */
+    public static synchronized PortAllocator getInstance(final File workspaceDirectory) {
+        File portsDirectory = new File(workspaceDirectory.getAbsoluteFile(), PORTS_DIRECTORY);
+        try {
+            portsDirectory = portsDirectory.getCanonicalFile();
+        } catch (final IOException e) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Failed to determine the canonical path of " + portsDirectory.getPath(), e);
+            }
+        }
+
+        PortAllocator allocator = INSTANCES.get(portsDirectory);
+        if (allocator == null) {
+            allocator = new PortAllocator(portsDirectory, DEFAULT_FIRST_PORT, DEFAULT_LAST_PORT);
+            INSTANCES.put(portsDirectory, allocator);
+        }
+
+        return allocator;
+    }
+
+    /**
+     * Reserves a free port.
+     *
+     * @return Returns the reserved port.
+     * @throws IOException
+     *             Is thrown when there is no free port left in the range.
+     */
+    public synchronized int allocate() throws IOException {
+        FileUtils.forceMkdir(portsDirectory);
+
+        final int range = lastPort - firstPort + 1;
+        final int offset = random.nextInt(range);
+
+        for (int i = 0; i < range; i++) {
+            final int port = firstPort + (offset + i) % range;
+            if (reservations.containsKey(port)) {
+                continue;
+            }
+
+            final Reservation reservation = reserve(port);
+            if (reservation != null) {
+                reservations.put(port, reservation);
+
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Reserved port " + port);
+                }
+                return port;
+            }
+        }
+
+        throw new IOException("No free port left between " + firstPort + " and " + lastPort + "!");
+    }
+
+    /**
+     * Releases a reserved port so it can be used by others again. Releasing a
+     * port that isn't reserved by this JVM has no effect.
+     *
+     * @param port
+     *            The port to release.
+     */
+    public synchronized void release(final int port) {
+        final Reservation reservation = reservations.remove(port);
+        if (reservation != null) {
+            reservation.close();
+        }
+    }
+
+    /**
+     * Determines if a port is reserved by this allocator.
+     *
+     * @param port
+     *            The port to check.
+     * @return Returns true if the port is reserved and not released yet.
+     */
+    public synchronized boolean isReserved(final int port) {
+        return reservations.containsKey(port);
+    }
+
+    /**
+     * Tries to reserve a port by locking its lock file and checking if it can
+     * be bound.
+     *
+     * @param port
+     *            The port to reserve.
+     * @return Returns the reservation or null if the port is in use.
+     * @throws IOException
+     *             Is thrown when the lock file couldn't be created.
+     */
+    private Reservation reserve(final int port) throws IOException {
+        final File lockFile = new File(portsDirectory, port + ".lock");
+        final String key = lockFile.getCanonicalPath();
+        if (!claim(key)) {
+            return null;
+        }
+
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(lockFile, "rw");
+
+            FileLock lock = null;
+            try {
+                lock = file.getChannel().tryLock();
+            } catch (final OverlappingFileLockException e) {
+                lock = null;
+            }
+
+            if (lock != null && isBindable(port)) {
+                final Reservation reservation = new Reservation(key, file, lock);
+                file = null;
+                return reservation;
+            }
+
+            if (lock != null) {
+                lock.release();
+            }
+            return null;
+        } finally {
+            if (file != null) {
+                file.close();
+                unclaim(key);
+            }
+        }
+    }
+
+    /**
+     * Registers a lock file that is about to be opened by this JVM.
+     *
+     * @param key
+     *            The canonical path of the lock file.
+     * @return Returns false if the lock file is opened by this JVM already.
+     */
+    private static boolean claim(final String key) {
+        synchronized (OPENED_LOCK_FILES) {
+            return OPENED_LOCK_FILES.add(key);
+        }
+    }
+
+    /**
+     * Removes a lock file from the registry once it is closed.
+     *
+     * @param key
+     *            The canonical path of the lock file.
+     */
+    private static void unclaim(final String key) {
+        synchronized (OPENED_LOCK_FILES) {
+            OPENED_LOCK_FILES.remove(key);
+        }
+    }
+
+    /**
+     * Checks if a port can be bound.
+     *
+     * @param port
+     *            The port to check.
+     * @return Returns true if nothing is listening on the port.
+     */
+    private static boolean isBindable(final int port) {
+        ServerSocket socket = null;
+        try {
+            socket = new ServerSocket();
+            socket.setReuseAddress(true);
+            socket.bind(new InetSocketAddress(port));
+            return true;
+        } catch (final IOException e) {
+            return false;
+        } finally {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (final IOException e) {
+                    if (LOGGER.isDebugEnabled()) {
+                        LOGGER.debug("Failed to close the socket of port " + port, e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A port that is reserved by this JVM.
+     */
+    private static final class Reservation {
+
+        /** The canonical path of the lock file. */
+        private final String key;
+
+        /** The opened lock file. */
+        private final RandomAccessFile file;
+
+        /** The lock on the lock file. */
+        private final FileLock lock;
+
+        /**
+         * Constructor taking all fields.
+         *
+         * @param key
+         *            The canonical path of the lock file.
+         * @param file
+         *            The opened lock file.
+         * @param lock
+         *            The lock on the lock file.
+         */
+        private Reservation(final String key, final RandomAccessFile file, final FileLock lock) {
+            this.key = key;
+            this.file = file;
+            this.lock = lock;
+        }
+
+        /**
+         * Releases the lock.
+         */
+        private void close() {
+            try {
+                lock.release();
+                file.close();
+            } catch (final IOException e) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Failed to release a port reservation.", e);
+                }
+            } finally {
+                unclaim(key);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,730 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.workspace;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Keeps track of the root directories where containers are installed and
+ * removes the ones that are left behind by crashed or killed builds.
+ *
+ * Every root gets a lock marker next to it that contains the PID of the owning
+ * JVM. The owner holds a file lock on the marker as long as the root is in use
+ * or being deleted, so the operating system releases the lock when the owning
+ * process dies. A background sweep deletes the roots whose marker isn't locked
+ * anymore. Roots that were retained on purpose are kept as long as their total
+ * size fits in the disk quota, after which the oldest ones are evicted first.
+ * Roots with a locked marker are never touched.
+ *
+ * File locks are held by the process, and closing any descriptor of a marker
+ * releases all locks of the process on it. So this JVM never opens a second
+ * descriptor on a marker it has opened already, which is tracked in a JVM wide
+ * registry.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public final class WorkspaceManager {
+
+    /** Logger for this class */
+    private static final Log LOGGER = LogFactory.getLog(WorkspaceManager.class);
+
+    /** The suffix of the lock marker that is created next to every root. */
+    public static final String MARKER_SUFFIX = ".cargo-itest.lock";
+
+    /** The property in the marker containing the PID of the owner. */
+    private static final String PID_PROPERTY = "pid";
+
+    /** The property in the marker that is set when the root is retained. */
+    private static final String RETAIN_PROPERTY = "retain";
+
+    /**
+     * The time in milliseconds an empty marker is considered to be still in
+     * creation by its owner.
+     */
+    private static final long CREATION_GRACE_PERIOD = 60000L;
+
+    /** The shared instances per base directory. */
+    private static final Map<File, WorkspaceManager> INSTANCES = new HashMap<File, WorkspaceManager>();
+
+    /**
+     * The markers that are opened by this JVM by their canonical path. The
+     * value is true when the marker belongs to an acquired workspace and false
+     * when it is being swept.
+     */
+    private static final Map<String, Boolean> OPENED_MARKERS = new HashMap<String, Boolean>();
+
+    /** The PID of this JVM. */
+    private static final String PID = StringUtils.substringBefore(ManagementFactory.getRuntimeMXBean().getName(), "@");
+
+    /** The directory where the roots are created. */
+    private final File baseDirectory;
+
+    /** The maximum size in bytes of the retained roots. */
+    private final AtomicLong quota;
+
+    /** Runs the sweeps in the background. */
+    private final ExecutorService sweeper;
+
+    /** Determines if a sweep is scheduled but not started yet. */
+    private final AtomicBoolean sweepPending = new AtomicBoolean();
+
+    /**
+     * Constructor taking the base directory and the disk quota.
+     *
+     * @param baseDirectory
+     *            The directory where the roots are created.
+     * @param quota
+     *            The maximum size in bytes of the retained roots.
+     */
+    WorkspaceManager(final File baseDirectory, final long quota) {
+        this.baseDirectory = baseDirectory.getAbsoluteFile();
+        this.quota = new AtomicLong(quota);
+        this.sweeper = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "cargo-itest-workspace-sweeper");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Retrieves the workspace manager of the specified base directory. A
+     * background sweep is scheduled when it is created.
+     *
+     * @param baseDirectory
+     *            The directory where the roots are created.
+     * @param quota
+     *            The maximum size in bytes of the retained roots.
+     * @return Returns the {@link WorkspaceManager}.
+     */
+    public static synchronized WorkspaceManager getInstance(final File baseDirectory, final long quota) {
+        final File key = baseDirectory.getAbsoluteFile();
+
+        WorkspaceManager manager = INSTANCES.get(key);
+        if (manager == null) {
+            manager = new WorkspaceManager(key, quota);
+            INSTANCES.put(key, manager);
+            manager.scheduleSweep();
+        } else {
+            manager.quota.set(quota);
+        }
+
+        return manager;
+    }
+
+    /**
+     * Creates a root directory and locks it for this JVM.
+     *
+     * @param root
+     *            The root directory, which should be located in the base
+     *            directory.
+     * @return Returns the {@link Workspace} that needs to be released when the
+     *         root isn't used anymore.
+     * @throws IOException
+     *             Is thrown when the root or its marker couldn't be created.
+     */
+    public Workspace acquire(final File root) throws IOException {
+        FileUtils.forceMkdir(baseDirectory);
+
+        final File marker = getMarker(root);
+        final String key = marker.getCanonicalPath();
+        claimForWorkspace(key);
+
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(marker, "rw");
+            final FileChannel channel = file.getChannel();
+            final FileLock lock = channel.lock();
+
+            final Properties properties = new Properties();
+            properties.setProperty(PID_PROPERTY, PID);
+            writeMarker(channel, properties);
+
+            FileUtils.forceMkdir(root);
+
+            return new Workspace(root.getAbsoluteFile(), marker, key, file, lock);
+        } catch (final IOException e) {
+            if (file != null) {
+                file.close();
+            }
+            release(key);
+            throw e;
+        }
+    }
+
+    /**
+     * Registers a marker for a workspace of this JVM. A sweep of the marker in
+     * progress is waited for.
+     *
+     * @param key
+     *            The canonical path of the marker.
+     * @throws IOException
+     *             Is thrown when the marker belongs to a workspace of this JVM
+     *             already or the thread was interrupted.
+     */
+    private static void claimForWorkspace(final String key) throws IOException {
+        synchronized (OPENED_MARKERS) {
+            while (OPENED_MARKERS.containsKey(key)) {
+                if (OPENED_MARKERS.get(key)) {
+                    throw new IOException("Container root is in use by this JVM already: " + key);
+                }
+
+                try {
+                    OPENED_MARKERS.wait();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the sweep of " + key);
+                }
+            }
+
+            OPENED_MARKERS.put(key, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Registers a marker for a sweep unless it is opened by this JVM already.
+     *
+     * @param key
+     *            The canonical path of the marker.
+     * @return Returns true if the marker may be opened by the sweep.
+     */
+    private static boolean claimForSweep(final String key) {
+        synchronized (OPENED_MARKERS) {
+            if (OPENED_MARKERS.containsKey(key)) {
+                return false;
+            }
+
+            OPENED_MARKERS.put(key, Boolean.FALSE);
+            return true;
+        }
+    }
+
+    /**
+     * Removes a marker from the registry once its descriptor is closed.
+     *
+     * @param key
+     *            The canonical path of the marker.
+     */
+    private static void release(final String key) {
+        synchronized (OPENED_MARKERS) {
+            OPENED_MARKERS.remove(key);
+            OPENED_MARKERS.notifyAll();
+        }
+    }
+
+    /**
+     * Releases a root that should be kept on disk. It will be removed later on
+     * when the retained roots exceed the disk quota.
+     *
+     * @param workspace
+     *            The workspace to release.
+     */
+    public void retain(final Workspace workspace) {
+        try {
+            final Properties properties = new Properties();
+            properties.setProperty(PID_PROPERTY, PID);
+            properties.setProperty(RETAIN_PROPERTY, Boolean.TRUE.toString());
+            writeMarker(workspace.file.getChannel(), properties);
+        } catch (final IOException e) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Failed to mark " + workspace.root.getPath() + " as retained.", e);
+            }
+        } finally {
+            workspace.close();
+        }
+
+        scheduleSweep();
+    }
+
+    /**
+     * Deletes a root in the background using the {@link DirectoryReaper}. The
+     * root stays locked until it is deleted completely.
+     *
+     * @param workspace
+     *            The workspace to delete.
+     * @param reaper
+     *            The reaper that will delete the root.
+     * @return Returns a {@link Future} that completes when the root is
+     *         deleted.
+     */
+    public Future<?> discard(final Workspace workspace, final DirectoryReaper reaper) {
+        return reaper.reap(workspace.root, new Runnable() {
+            @Override
+            public void run() {
+                workspace.close();
+                workspace.marker.delete();
+            }
+        });
+    }
+
+    /**
+     * Deletes a root and releases it.
+     *
+     * @param workspace
+     *            The workspace to delete.
+     * @throws IOException
+     *             Is thrown when the root couldn't be deleted.
+     */
+    public void delete(final Workspace workspace) throws IOException {
+        try {
+            FileUtils.deleteDirectory(workspace.root);
+        } finally {
+            workspace.close();
+            workspace.marker.delete();
+        }
+    }
+
+    /**
+     * Schedules a sweep in the background unless one is pending already.
+     */
+    public void scheduleSweep() {
+        if (sweepPending.compareAndSet(false, true)) {
+            sweeper.submit(new Runnable() {
+                @Override
+                public void run() {
+                    sweepPending.set(false);
+                    sweep();
+                }
+            });
+        }
+    }
+
+    /**
+     * Deletes the orphaned roots and evicts the oldest retained roots until
+     * they fit in the disk quota. Sweeps are serialized so a background sweep
+     * never deletes the same root as an explicit one.
+     */
+    synchronized void sweep() {
+        final File[] markers = baseDirectory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(final File file) {
+                return file.isFile() && file.getName().endsWith(MARKER_SUFFIX);
+            }
+        });
+        if (markers == null) {
+            return;
+        }
+
+        final List<RetainedRoot> retained = new ArrayList<RetainedRoot>();
+        long retainedSize = 0L;
+
+        for (final File marker : markers) {
+            final RetainedRoot candidate = sweep(marker);
+            if (candidate != null) {
+                retained.add(candidate);
+                retainedSize += candidate.size;
+            }
+        }
+
+        /*
+         * Evict the oldest retained roots first.
+         */
+        Collections.sort(retained, new Comparator<RetainedRoot>() {
+            @Override
+            public int compare(final RetainedRoot first, final RetainedRoot second) {
+                return Long.valueOf(first.lastModified).compareTo(Long.valueOf(second.lastModified));
+            }
+        });
+
+        for (final RetainedRoot candidate : retained) {
+            if (retainedSize <= quota.get()) {
+                break;
+            }
+
+            if (evict(candidate.marker)) {
+                retainedSize -= candidate.size;
+
+                if (LOGGER.isInfoEnabled()) {
+                    LOGGER.info("Evicted retained container root " + getRoot(candidate.marker).getPath() + " ("
+                            + candidate.size / 1024L + " KB) to stay within the quota of " + quota.get() / 1024L + " KB");
+                }
+            }
+        }
+    }
+
+    /**
+     * Inspects a single marker. The root is deleted when it is orphaned.
+     *
+     * @param marker
+     *            The marker of the root.
+     * @return Returns the retained root or null if the root is in use or was
+     *         deleted.
+     */
+    private RetainedRoot sweep(final File marker) {
+        final File root = getRoot(marker);
+
+        try {
+            /*
+             * Markers opened by this JVM are in use, and opening them again
+             * would release their locks when the descriptor is closed.
+             */
+            final String key = marker.getCanonicalPath();
+            if (!claimForSweep(key)) {
+                return null;
+            }
+
+            try {
+                final RandomAccessFile file = new RandomAccessFile(marker, "rw");
+                try {
+                    final FileLock lock = tryLock(file.getChannel());
+                    if (lock == null) {
+                        return null;
+                    }
+
+                    final Properties properties = readMarker(file.getChannel());
+                    if (properties.isEmpty()
+                            && System.currentTimeMillis() - marker.lastModified() < CREATION_GRACE_PERIOD) {
+                        return null;
+                    }
+
+                    if (Boolean.parseBoolean(properties.getProperty(RETAIN_PROPERTY))) {
+                        return new RetainedRoot(marker, marker.lastModified(), sizeOf(root));
+                    }
+
+                    if (LOGGER.isInfoEnabled()) {
+                        LOGGER.info("Deleting orphaned container root " + root.getPath() + " of process "
+                                + properties.getProperty(PID_PROPERTY));
+                    }
+                    deleteRoot(root);
+                } finally {
+                    file.close();
+                }
+
+                marker.delete();
+            } finally {
+                release(key);
+            }
+        } catch (final IOException e) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Failed to sweep container root " + root.getPath(), e);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Deletes a retained root when it isn't in use again.
+     *
+     * @param marker
+     *            The marker of the root.
+     * @return Returns true if the root was deleted.
+     */
+    private boolean evict(final File marker) {
+        try {
+            final String key = marker.getCanonicalPath();
+            if (!claimForSweep(key)) {
+                return false;
+            }
+
+            try {
+                final RandomAccessFile file = new RandomAccessFile(marker, "rw");
+                try {
+                    if (tryLock(file.getChannel()) == null) {
+                        return false;
+                    }
+
+                    deleteRoot(getRoot(marker));
+                } finally {
+                    file.close();
+                }
+
+                marker.delete();
+                return true;
+            } finally {
+                release(key);
+            }
+        } catch (final IOException e) {
+            if (LOGGER.isWarnEnabled()) {
+                LOGGER.warn("Failed to evict container root " + getRoot(marker).getPath(), e);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Deletes a root together with the directories that were renamed aside
+     * by a {@link DirectoryReaper} but never deleted completely.
+     *
+     * @param root
+     *            The root to delete.
+     * @throws IOException
+     *             Is thrown when the root couldn't be deleted.
+     */
+    private void deleteRoot(final File root) throws IOException {
+        final AtomicLong files = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+
+        DirectoryReaper.deleteTree(root.toPath(), files, bytes);
+
+        final File[] leftovers = baseDirectory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(final File file) {
+                return file.getName().startsWith(DirectoryReaper.REAPING_PREFIX + root.getName() + "-");
+            }
+        });
+        if (leftovers != null) {
+            for (final File leftover : leftovers) {
+                DirectoryReaper.deleteTree(leftover.toPath(), files, bytes);
+            }
+        }
+    }
+
+    /**
+     * Tries to lock a marker.
+     *
+     * @param channel
+     *            The channel of the marker.
+     * @return Returns the lock or null if the marker is locked by another
+     *         process or by this JVM.
+     * @throws IOException
+     *             Is thrown when the marker couldn't be locked.
+     */
+    private static FileLock tryLock(final FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (final OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Calculates the size of a root.
+     *
+     * @param root
+     *            The root directory.
+     * @return Returns the size in bytes.
+     */
+    private static long sizeOf(final File root) {
+        if (!root.isDirectory()) {
+            return 0L;
+        }
+
+        return FileUtils.sizeOfDirectory(root);
+    }
+
+    /**
+     * Writes the properties into the marker.
+     *
+     * @param channel
+     *            The locked channel of the marker.
+     * @param properties
+     *            The properties to write.
+     * @throws IOException
+     *             Is thrown when the marker couldn't be written.
+     */
+    private static void writeMarker(final FileChannel channel, final Properties properties) throws IOException {
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        properties.store(content, "cargo-itest container root");
+
+        channel.truncate(0L);
+        channel.write(ByteBuffer.wrap(content.toByteArray()), 0L);
+        channel.force(true);
+    }
+
+    /**
+     * Reads the properties from the marker.
+     *
+     * @param channel
+     *            The locked channel of the marker.
+     * @return Returns the properties.
+     * @throws IOException
+     *             Is thrown when the marker couldn't be read.
+     */
+    private static Properties readMarker(final FileChannel channel) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        int read = 0;
+        while (buffer.hasRemaining() && read != -1) {
+            read = channel.read(buffer, buffer.position());
+        }
+
+        final Properties properties = new Properties();
+        properties.load(new ByteArrayInputStream(buffer.array(), 0, buffer.position()));
+        return properties;
+    }
+
+    /**
+     * Determines the marker of a root.
+     *
+     * @param root
+     *            The root directory.
+     * @return Returns the marker file.
+     */
+    private File getMarker(final File root) {
+        return new File(baseDirectory, root.getName() + MARKER_SUFFIX);
+    }
+
+    /**
+     * Determines the root of a marker.
+     *
+     * @param marker
+     *            The marker file.
+     * @return Returns the root directory.
+     */
+    private File getRoot(final File marker) {
+        return new File(baseDirectory, StringUtils.removeEnd(marker.getName(), MARKER_SUFFIX));
+    }
+
+    /**
+     * @param quota
+     *            the maximum size in bytes of the retained roots
+     */
+    public void setQuota(final long quota) {
+        this.quota.set(quota);
+    }
+
+    /**
+     * A root that is locked by this JVM.
+     */
+    public static final class Workspace {
+
+        /** The root directory. */
+        private final File root;
+
+        /** The lock marker of the root. */
+        private final File marker;
+
+        /** The canonical path of the marker. */
+        private final String key;
+
+        /** The opened marker. */
+        private final RandomAccessFile file;
+
+        /** The lock on the marker. */
+        private final FileLock lock;
+
+        /**
+         * Constructor taking the root and its locked marker.
+         *
+         * @param root
+         *            The root directory.
+         * @param marker
+         *            The lock marker.
+         * @param key
+         *            The canonical path of the marker.
+         * @param file
+         *            The opened marker.
+         * @param lock
+         *            The lock on the marker.
+         */
+        private Workspace(final File root, final File marker, final String key, final RandomAccessFile file,
+                final FileLock lock) {
+            this.root = root;
+            this.marker = marker;
+            this.key = key;
+            this.file = file;
+            this.lock = lock;
+        }
+
+        /**
+         * Releases the lock on the root.
+         */
+        private void close() {
+            try {
+                lock.release();
+            } catch (final IOException e) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Failed to release the lock of " + root.getPath(), e);
+                }
+            }
+
+            try {
+                file.close();
+            } catch (final IOException e) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Failed to close the marker of " + root.getPath(), e);
+                }
+            } finally {
+                release(key);
+            }
+        }
+
+        /**
+         * @return the root directory
+         */
+        public File getRoot() {
+            return root;
+        }
+
+    }
+
+    /**
+     * A root that was retained and may be evicted.
+     */
+    private static final class RetainedRoot {
+
+        /** The lock marker of the root. */
+        private final File marker;
+
+        /** The time the root was retained. */
+        private final long lastModified;
+
+        /** The size in bytes of the root. */
+        private final long size;
+
+        /**
+         * Constructor taking all fields.
+         *
+         * @param marker
+         *            The lock marker of the root.
+         * @param lastModified
+         *            The time the root was retained.
+         * @param size
+         *            The size in bytes of the root.
+         */
+        private RetainedRoot(final File marker, final long lastModified, final long size) {
+            this.marker = marker;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+
+    }
+
+}
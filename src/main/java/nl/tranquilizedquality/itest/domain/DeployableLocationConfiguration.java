@@ -36,6 +36,13 @@ public class DeployableLocationConfiguration {
     /** The context name of the application. NOTE: IS ONLY APPLICABLE FOR WAR. */
     private String contextName;
 
+    /**
+     * The path within the context that answers once the application is ready.
+     * NOTE: IS ONLY APPLICABLE FOR WAR. When it isn't set the root of the
+     * context is probed.
+     */
+    private String readinessPath;
+
     /**
      * @return the path
      */
@@ -83,4 +90,19 @@ public class DeployableLocationConfiguration {
         this.contextName = contextName;
     }
 
+    /**
+     * @return the readinessPath
+     */
+    public String getReadinessPath() {
+        return readinessPath;
+    }
+
+    /**
+     * @param readinessPath
+     *            the readinessPath to set
+     */
+    public void setReadinessPath(String readinessPath) {
+        this.readinessPath = readinessPath;
+    }
+
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+
+import nl.tranquilizedquality.itest.cargo.metrics.StartupMetrics;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link AbstractEmbeddedContainerUtil}.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class AbstractEmbeddedContainerUtilTest {
+
+    @Test
+    public void testPrepareAndStop() throws Exception {
+        final EmbeddedJettyContainerUtil util = new EmbeddedJettyContainerUtil();
+        util.setContainerPort(0);
+        util.setSystemProperties(Collections.singletonMap("cargo.itest.embedded", "true"));
+
+        util.prepare();
+
+        /*
+         * Nothing is installed, only a free port is allocated and the
+         * configuration directory is created.
+         */
+        assertTrue(util.getContainerPort() > 0);
+        assertEquals("http://localhost:" + util.getContainerPort() + "/", util.getBaseUrl());
+        final File confDirectory = new File(util.getConfDirectory());
+        assertTrue(confDirectory.isDirectory());
+        assertTrue(util.configured);
+        assertEquals(Collections.singleton(StartupMetrics.CONFIGURATION), util.getStartupMetrics().getPhases().keySet());
+
+        util.stop();
+
+        assertFalse(confDirectory.exists());
+        assertNull(util.getConfDirectory());
+        assertNull(System.getProperty("cargo.itest.embedded"));
+    }
+
+    /**
+     * Embedded Jetty utility that only records if it was configured.
+     */
+    private static class EmbeddedJettyContainerUtil extends AbstractEmbeddedJettyContainerUtil {
+
+        /** Determines if the configuration was set up. */
+        private boolean configured;
+
+        @Override
+        protected void setupConfiguration() {
+            configured = true;
+        }
+
+    }
+
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import nl.tranquilizedquality.itest.cargo.exception.DeployException;
+import nl.tranquilizedquality.itest.cargo.workspace.PortAllocator;
+
+import org.codehaus.cargo.container.InstalledLocalContainer;
+import org.codehaus.cargo.container.deployable.DeployableType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the asynchronous start and stop of the
+ * {@link AbstractInstalledContainerUtil}.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class AbstractInstalledContainerUtilTest {
+
+    /** The folder where the containers write their logs and reports. */
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testStartAsync() throws Exception {
+        final StubContainerUtil first = new StubContainerUtil(null, temporaryFolder.getRoot());
+        final StubContainerUtil second = new StubContainerUtil(null, temporaryFolder.getRoot());
+
+        final Future<Void> firstStart = first.startAsync();
+        final Future<Void> secondStart = second.startAsync();
+
+        /*
+         * Both containers are starting at the same time.
+         */
+        assertTrue(first.deploying.await(10, TimeUnit.SECONDS));
+        assertTrue(second.deploying.await(10, TimeUnit.SECONDS));
+        first.proceed.countDown();
+        second.proceed.countDown();
+
+        firstStart.get(10, TimeUnit.SECONDS);
+        secondStart.get(10, TimeUnit.SECONDS);
+        assertEquals(1, first.deployed.get());
+        assertEquals(1, second.deployed.get());
+        assertTrue(first.getStartupMetrics().getPhases().isEmpty());
+
+        first.stopAsync().get(10, TimeUnit.SECONDS);
+        assertEquals(1, first.stopped.get());
+    }
+
+    @Test
+    public void testStartAsyncFailure() throws Exception {
+        final DeployException failure = new DeployException("Failed to deploy!");
+        final StubContainerUtil util = new StubContainerUtil(failure, temporaryFolder.getRoot());
+        util.proceed.countDown();
+
+        try {
+            util.startAsync().get(10, TimeUnit.SECONDS);
+            fail("The start should have failed!");
+        } catch (final ExecutionException e) {
+            assertSame(failure, e.getCause());
+        }
+    }
+
+    @Test
+    public void testCancelStopsContainer() throws Exception {
+        final StubContainerUtil util = new StubContainerUtil(null, temporaryFolder.getRoot());
+
+        final Future<Void> start = util.startAsync();
+        assertTrue(util.deploying.await(10, TimeUnit.SECONDS));
+
+        assertTrue(start.cancel(false));
+        util.proceed.countDown();
+
+        /*
+         * The container is stopped as soon as the start has finished.
+         */
+        assertTrue(util.stopping.await(10, TimeUnit.SECONDS));
+        assertEquals(1, util.deployed.get());
+        assertEquals(1, util.stopped.get());
+    }
+
+    @Test
+    public void testStopIsBounded() throws Exception {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final StubContainerUtil util = new StubContainerUtil(null, temporaryFolder.getRoot());
+        util.setShutdownTimeOut(200L);
+
+        /*
+         * A container whose stop hangs until it is interrupted.
+         */
+        util.installedLocalContainer = (InstalledLocalContainer) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {InstalledLocalContainer.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                        if ("stop".equals(method.getName())) {
+                            try {
+                                Thread.sleep(60000L);
+                            } catch (final InterruptedException e) {
+                                interrupted.countDown();
+                            }
+                        }
+                        return null;
+                    }
+                });
+
+        final long start = System.currentTimeMillis();
+        util.stop();
+
+        assertTrue(System.currentTimeMillis() - start < 10000L);
+        assertEquals(1, util.stopped.get());
+        assertNotNull(util.getShutdownDuration());
+        assertTrue(util.getShutdownDuration() >= 200L);
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testPortsAreReservedOnEveryPrepare() throws Exception {
+        final PortAllocator allocator = PortAllocator.getInstance(new File(
+                AbstractInstalledContainerUtil.getTemporaryDirectory()));
+        final StubContainerUtil util = new StubContainerUtil(null, temporaryFolder.getRoot());
+        util.setContainerPort(0);
+
+        util.allocatePorts();
+        final Integer port = util.getContainerPort();
+        assertTrue(allocator.isReserved(port));
+
+        util.stop();
+        assertFalse(allocator.isReserved(port));
+
+        /*
+         * The next run allocates a port again instead of reusing the released
+         * one.
+         */
+        util.allocatePorts();
+        assertTrue(allocator.isReserved(util.getContainerPort()));
+        util.stop();
+    }
+
+    @Test
+    public void testDetermineDeployableType() throws Exception {
+        final File war = new File(temporaryFolder.getRoot(), "app.war");
+        final ZipOutputStream output = new ZipOutputStream(new FileOutputStream(war));
+        try {
+            output.putNextEntry(new ZipEntry("WEB-INF/web.xml"));
+            output.closeEntry();
+        } finally {
+            output.close();
+        }
+
+        final StubContainerUtil util = new StubContainerUtil(null, temporaryFolder.getRoot());
+        assertEquals(DeployableType.WAR, util.determineDeployableType(war.getPath(), null));
+        assertEquals(DeployableType.WAR, util.determineDeployableType(war.getPath(), "war"));
+        assertDeployFailure(util, war.getPath(), "EAR");
+        assertDeployFailure(util, war.getPath(), "JAR");
+        assertDeployFailure(util, new File(temporaryFolder.getRoot(), "missing.war").getPath(), "WAR");
+
+        /*
+         * The deployables are checked before the container is set up.
+         */
+        util.addDeployableLocation(war.getPath(), "EAR");
+        try {
+            util.prepare();
+            fail("The mistyped deployable should have been rejected!");
+        } catch (final DeployException e) {
+            assertTrue(e.getMessage().contains("is configured as EAR but is a WAR file"));
+            assertEquals(0, util.setupCount.get());
+        }
+    }
+
+    /**
+     * Asserts that the type of a deployable is rejected.
+     *
+     * @param util
+     *            The container utility.
+     * @param path
+     *            The path of the deployable.
+     * @param type
+     *            The configured type.
+     */
+    private static void assertDeployFailure(final StubContainerUtil util, final String path, final String type) {
+        try {
+            util.determineDeployableType(path, type);
+            fail(path + " should not be accepted as " + type + "!");
+        } catch (final DeployException e) {
+            assertNotNull(e.getMessage());
+        }
+    }
+
+    /**
+     * Container utility that doesn't install anything and blocks the deploy
+     * until it is allowed to proceed.
+     */
+    private static class StubContainerUtil extends AbstractInstalledContainerUtil {
+
+        /** Counted down when the deploy has started. */
+        private final CountDownLatch deploying = new CountDownLatch(1);
+
+        /** Counted down to let the deploy finish. */
+        private final CountDownLatch proceed = new CountDownLatch(1);
+
+        /** Counted down when the container is stopped. */
+        private final CountDownLatch stopping = new CountDownLatch(1);
+
+        /** The number of deploys. */
+        private final AtomicInteger deployed = new AtomicInteger();
+
+        /** The number of container setups. */
+        private final AtomicInteger setupCount = new AtomicInteger();
+
+        /** The number of stops. */
+        private final AtomicInteger stopped = new AtomicInteger();
+
+        /** The exception thrown by the deploy or null if it succeeds. */
+        private final RuntimeException failure;
+
+        /**
+         * Constructor taking the exception to throw during the deploy.
+         *
+         * @param failure
+         *            The exception or null if the deploy succeeds.
+         * @param logDirectory
+         *            The directory where the logs and reports are written.
+         */
+        StubContainerUtil(final RuntimeException failure, final File logDirectory) {
+            this.failure = failure;
+            setCleanUpAfterContainerStopped(false);
+            setCargoLogFilePath(logDirectory.getPath() + "/");
+        }
+
+        @Override
+        protected void setupContainer() {
+            setupCount.incrementAndGet();
+        }
+
+        @Override
+        protected void setupConfiguration() {
+        }
+
+        @Override
+        protected void deploy() {
+            deploying.countDown();
+            try {
+                proceed.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+            deployed.incrementAndGet();
+        }
+
+        @Override
+        public synchronized void stop() {
+            super.stop();
+            stopped.incrementAndGet();
+            stopping.countDown();
+        }
+
+        @Override
+        public String getSharedLibDirectory() {
+            return null;
+        }
+
+        @Override
+        public String getConfDirectory() {
+            return null;
+        }
+
+    }
+
+}
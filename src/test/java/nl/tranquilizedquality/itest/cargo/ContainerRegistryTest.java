@@ -0,0 +1,340 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.tranquilizedquality.itest.cargo.metrics.StartupMetrics;
+import nl.tranquilizedquality.itest.domain.DeployableLocationConfiguration;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Tests the {@link ContainerRegistry}.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class ContainerRegistryTest {
+
+    /** The number of container utilities that were created. */
+    private static final AtomicInteger CREATED = new AtomicInteger();
+
+    /** Is counted down when the slow container has begun to start. */
+    private static volatile CountDownLatch slowStarting;
+
+    /** Blocks the start of the slow container until it is counted down. */
+    private static volatile CountDownLatch slowStart;
+
+    /** The number of containers that were prepared. */
+    private static final AtomicInteger PREPARED = new AtomicInteger();
+
+    /** The number of containers that were started. */
+    private static final AtomicInteger STARTED = new AtomicInteger();
+
+    /** The number of containers that were stopped. */
+    private static final AtomicInteger STOPPED = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        CREATED.set(0);
+        PREPARED.set(0);
+        STARTED.set(0);
+        STOPPED.set(0);
+    }
+
+    @Test
+    public void testLeaseSharesRunningContainer() throws Exception {
+        final ContainerRegistry registry = new ContainerRegistry(true, 60000L);
+
+        final ContainerLease first = registry.lease(FirstConfiguration.class);
+        first.release();
+        final ContainerLease second = registry.lease(FirstConfiguration.class);
+
+        assertSame(first.getContainerUtil(), second.getContainerUtil());
+        assertEquals(1, CREATED.get());
+        assertEquals(1, STARTED.get());
+        assertEquals(0, STOPPED.get());
+
+        /*
+         * A different configuration evicts the idle container first.
+         */
+        second.release();
+        final ContainerLease third = registry.lease(SecondConfiguration.class);
+
+        assertNotSame(first.getContainerUtil(), third.getContainerUtil());
+        assertEquals(2, STARTED.get());
+        assertEquals(1, STOPPED.get());
+
+        registry.shutdown();
+        assertEquals(2, STOPPED.get());
+    }
+
+    @Test
+    public void testStartDoesNotBlockRegistry() throws Exception {
+        final ContainerRegistry registry = new ContainerRegistry(true, 60000L);
+        final ContainerLease first = registry.lease(FirstConfiguration.class);
+
+        slowStarting = new CountDownLatch(1);
+        slowStart = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<ContainerLease> slow = executor.submit(new Callable<ContainerLease>() {
+                @Override
+                public ContainerLease call() {
+                    return registry.lease(SlowConfiguration.class);
+                }
+            });
+            assertTrue(slowStarting.await(10, TimeUnit.SECONDS));
+
+            /*
+             * The running container can be released and leased again while
+             * the slow container is starting.
+             */
+            final Future<ContainerLease> second = executor.submit(new Callable<ContainerLease>() {
+                @Override
+                public ContainerLease call() {
+                    first.release();
+                    return registry.lease(FirstConfiguration.class);
+                }
+            });
+            assertSame(first.getContainerUtil(), second.get(10, TimeUnit.SECONDS).getContainerUtil());
+
+            slowStart.countDown();
+            slow.get(10, TimeUnit.SECONDS).release();
+            assertEquals(2, STARTED.get());
+        } finally {
+            slowStart.countDown();
+            executor.shutdownNow();
+            registry.shutdown();
+        }
+    }
+
+    @Test
+    public void testIdleTimeout() throws Exception {
+        final ContainerRegistry registry = new ContainerRegistry(true, 50L);
+
+        registry.lease(FirstConfiguration.class).release();
+        Thread.sleep(500L);
+
+        assertEquals(1, STARTED.get());
+        assertEquals(1, STOPPED.get());
+        registry.shutdown();
+    }
+
+    @Test
+    public void testStandbyFromPlan() throws Exception {
+        final ContainerRegistry registry = new ContainerRegistry(true, 60000L);
+        registry.setPlan(FirstConfiguration.class.getName() + "," + SecondConfiguration.class.getName());
+
+        final ContainerLease first = registry.lease(FirstConfiguration.class);
+
+        /*
+         * Leasing the first configuration prepares the second one in the
+         * background.
+         */
+        registry.prepare(SecondConfiguration.class).get(10, TimeUnit.SECONDS);
+        assertEquals(2, PREPARED.get());
+        assertEquals(1, STARTED.get());
+
+        first.release();
+        final ContainerLease second = registry.lease(SecondConfiguration.class);
+
+        assertTrue(((CountingContainerUtil) second.getContainerUtil()).prepared);
+        assertEquals(2, PREPARED.get());
+        assertEquals(2, STARTED.get());
+        assertEquals(1, STOPPED.get());
+
+        registry.shutdown();
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        final ContainerRegistry registry = new ContainerRegistry(false, 60000L);
+
+        registry.lease(FirstConfiguration.class).release();
+        registry.lease(FirstConfiguration.class).release();
+
+        assertEquals(2, STARTED.get());
+        assertEquals(2, STOPPED.get());
+        registry.shutdown();
+    }
+
+    /**
+     * Configuration of the first container.
+     */
+    @Configuration
+    public static class FirstConfiguration {
+
+        @Bean
+        public ContainerUtil containerUtil() {
+            return new CountingContainerUtil();
+        }
+
+    }
+
+    /**
+     * Configuration of the second container.
+     */
+    @Configuration
+    public static class SecondConfiguration {
+
+        @Bean
+        public ContainerUtil containerUtil() {
+            return new CountingContainerUtil();
+        }
+
+    }
+
+    /**
+     * Configuration of a container that starts until it is allowed to.
+     */
+    @Configuration
+    public static class SlowConfiguration {
+
+        @Bean
+        public ContainerUtil containerUtil() {
+            return new CountingContainerUtil() {
+                @Override
+                public void start() {
+                    slowStarting.countDown();
+                    try {
+                        slowStart.await(10, TimeUnit.SECONDS);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    super.start();
+                }
+            };
+        }
+
+    }
+
+    /**
+     * Container utility that only counts how often it was started and
+     * stopped.
+     */
+    private static class CountingContainerUtil implements ContainerUtil {
+
+        /** Determines if the container was prepared. */
+        private boolean prepared;
+
+        /**
+         * Default constructor.
+         */
+        CountingContainerUtil() {
+            CREATED.incrementAndGet();
+        }
+
+        @Override
+        public void prepare() {
+            if (!prepared) {
+                prepared = true;
+                PREPARED.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void start() {
+            prepare();
+            STARTED.incrementAndGet();
+        }
+
+        @Override
+        public void stop() {
+            STOPPED.incrementAndGet();
+        }
+
+        @Override
+        public Future<Void> startAsync() {
+            final FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+                @Override
+                public void run() {
+                    start();
+                }
+            }, null);
+            task.run();
+            return task;
+        }
+
+        @Override
+        public Future<Void> stopAsync() {
+            final FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+                @Override
+                public void run() {
+                    stop();
+                }
+            }, null);
+            task.run();
+            return task;
+        }
+
+        @Override
+        public void addDeployableLocation(final String location, final String type) {
+        }
+
+        @Override
+        public void redeploy(final DeployableLocationConfiguration configuration) {
+        }
+
+        @Override
+        public void undeploy(final DeployableLocationConfiguration configuration) {
+        }
+
+        @Override
+        public Integer getContainerPort() {
+            return 8890;
+        }
+
+        @Override
+        public StartupMetrics getStartupMetrics() {
+            return null;
+        }
+
+        @Override
+        public String getBaseUrl() {
+            return "http://localhost:8890/";
+        }
+
+        @Override
+        public String getSharedLibDirectory() {
+            return null;
+        }
+
+        @Override
+        public String getConfDirectory() {
+            return null;
+        }
+
+    }
+
+}
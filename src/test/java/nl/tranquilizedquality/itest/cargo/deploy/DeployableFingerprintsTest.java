@@ -0,0 +1,107 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.deploy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import nl.tranquilizedquality.itest.cargo.install.ArtifactCache;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link DeployableFingerprints}.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class DeployableFingerprintsTest {
+
+    /** The directory where the test files are created. */
+    private File workDirectory;
+
+    /** The deployable. */
+    private File deployable;
+
+    @Before
+    public void setUp() throws Exception {
+        workDirectory = new File("target/deployable-fingerprints-test/");
+        FileUtils.deleteDirectory(workDirectory);
+        deployable = new File(workDirectory, "app.ear");
+        FileUtils.writeStringToFile(deployable, "abc");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(workDirectory);
+    }
+
+    @Test
+    public void testMappedDigest() throws Exception {
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", ArtifactCache.digest(deployable));
+    }
+
+    @Test
+    public void testUnchangedAfterRebuild() throws Exception {
+        final DeployableFingerprints fingerprints = new DeployableFingerprints();
+        assertFalse(fingerprints.isUnchanged(deployable));
+
+        fingerprints.record(deployable);
+        assertTrue(fingerprints.isUnchanged(deployable));
+
+        /*
+         * Rebuilt with the same content.
+         */
+        assertTrue(deployable.setLastModified(deployable.lastModified() - 60000L));
+        assertTrue(fingerprints.isUnchanged(deployable));
+
+        /*
+         * Rebuilt with other content of the same size.
+         */
+        FileUtils.writeStringToFile(deployable, "xyz");
+        assertTrue(deployable.setLastModified(deployable.lastModified() - 120000L));
+        assertFalse(fingerprints.isUnchanged(deployable));
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        final DeployableFingerprints fingerprints = new DeployableFingerprints();
+        fingerprints.record(deployable);
+        fingerprints.remove(deployable);
+
+        assertFalse(fingerprints.isUnchanged(deployable));
+    }
+
+    @Test
+    public void testStoredIndex() throws Exception {
+        final File indexFile = new File(workDirectory, "index/fingerprints.properties");
+        new DeployableFingerprints(indexFile).record(deployable);
+        assertTrue(indexFile.isFile());
+
+        assertTrue(new DeployableFingerprints(indexFile).isUnchanged(deployable));
+
+        FileUtils.writeStringToFile(deployable, "changed");
+        assertFalse(new DeployableFingerprints(indexFile).isUnchanged(deployable));
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.deploy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+import nl.tranquilizedquality.itest.cargo.deploy.DeployableStager.Staging;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link DeployableStager}.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class DeployableStagerTest {
+
+    /** The directory where the test files are created. */
+    private File workDirectory;
+
+    /** The deployable to stage. */
+    private File source;
+
+    @Before
+    public void setUp() throws Exception {
+        workDirectory = new File("target/deployable-stager-test/");
+        FileUtils.deleteDirectory(workDirectory);
+        source = new File(workDirectory, "build/app-1.0.war");
+        FileUtils.writeStringToFile(source, "war content");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(workDirectory);
+    }
+
+    @Test
+    public void testStageWithoutCopy() throws Exception {
+        final File target = new File(workDirectory, "staged/app.war");
+
+        final Staging staging = DeployableStager.stage(source, target);
+        assertTrue(staging == Staging.HARD_LINK || staging == Staging.SYMBOLIC_LINK);
+        assertEquals("war content", FileUtils.readFileToString(target));
+
+        /*
+         * The second run finds the staged file up to date.
+         */
+        assertEquals(Staging.UNCHANGED, DeployableStager.stage(source, target));
+    }
+
+    @Test
+    public void testStageReplacesOutdatedFile() throws Exception {
+        final File target = new File(workDirectory, "staged/app.war");
+        FileUtils.writeStringToFile(target, "old war");
+        assertFalse(DeployableStager.isIdentical(source, target));
+
+        assertFalse(Staging.UNCHANGED.equals(DeployableStager.stage(source, target)));
+        assertEquals("war content", FileUtils.readFileToString(target));
+    }
+
+    @Test
+    public void testIdenticalCopy() throws Exception {
+        final File target = new File(workDirectory, "staged/app.war");
+        FileUtils.copyFile(source, target);
+
+        assertTrue(DeployableStager.isIdentical(source, target));
+        assertEquals(Staging.UNCHANGED, DeployableStager.stage(source, target));
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testStageMissingDeployable() throws Exception {
+        DeployableStager.stage(new File(workDirectory, "missing.war"), new File(workDirectory, "staged/app.war"));
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.deploy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.codehaus.cargo.container.deployable.DeployableType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link DeployableTypeDetector}.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class DeployableTypeDetectorTest {
+
+    /** The directory where the test files are created. */
+    private File workDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        workDirectory = new File("target/deployable-type-detector-test/");
+        FileUtils.deleteDirectory(workDirectory);
+        FileUtils.forceMkdir(workDirectory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(workDirectory);
+    }
+
+    @Test
+    public void testDetectArchives() throws Exception {
+        assertEquals(DeployableType.EAR, DeployableTypeDetector.detect(createArchive("app.ear", null,
+                "META-INF/application.xml", "app.war")));
+        assertEquals(DeployableType.WAR, DeployableTypeDetector.detect(createArchive("app.war", null, "index.jsp",
+                "WEB-INF/web.xml")));
+        assertEquals(DeployableType.WAR, DeployableTypeDetector.detect(createArchive("servlet3.war", null,
+                "WEB-INF/classes/App.class")));
+        assertEquals(DeployableType.EJB, DeployableTypeDetector.detect(createArchive("app.jar", null,
+                "META-INF/ejb-jar.xml")));
+        assertNull(DeployableTypeDetector.detect(createArchive("lib.jar", null, "META-INF/MANIFEST.MF")));
+    }
+
+    @Test
+    public void testDetectArchiveWithComment() throws Exception {
+        assertEquals(DeployableType.WAR, DeployableTypeDetector.detect(createArchive("commented.war",
+                "a comment at the end of the archive", "WEB-INF/web.xml")));
+    }
+
+    @Test
+    public void testDetectDirectory() throws Exception {
+        final File directory = new File(workDirectory, "exploded.war");
+        FileUtils.forceMkdir(new File(directory, "WEB-INF"));
+
+        assertEquals(DeployableType.WAR, DeployableTypeDetector.detect(directory));
+    }
+
+    @Test(expected = IOException.class)
+    public void testDetectNoArchive() throws Exception {
+        final File file = new File(workDirectory, "text.war");
+        FileUtils.writeStringToFile(file, "This is not an archive but a text file.");
+
+        DeployableTypeDetector.detect(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testDetectMissingFile() throws Exception {
+        DeployableTypeDetector.detect(new File(workDirectory, "missing.war"));
+    }
+
+    /**
+     * Creates an archive with empty entries.
+     *
+     * @param name
+     *            The name of the archive.
+     * @param comment
+     *            The comment of the archive or null if it has none.
+     * @param entries
+     *            The names of the entries.
+     * @return Returns the archive.
+     * @throws IOException
+     *             Is thrown when the archive couldn't be written.
+     */
+    private File createArchive(final String name, final String comment, final String... entries) throws IOException {
+        final File archive = new File(workDirectory, name);
+        final ZipOutputStream output = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            for (final String entry : entries) {
+                output.putNextEntry(new ZipEntry(entry));
+                output.closeEntry();
+            }
+            if (comment != null) {
+                output.setComment(comment);
+            }
+        } finally {
+            output.close();
+        }
+
+        return archive;
+    }
+
+}
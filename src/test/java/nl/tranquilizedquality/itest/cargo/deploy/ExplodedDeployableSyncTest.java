@@ -0,0 +1,142 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.deploy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ExplodedDeployableSync}.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class ExplodedDeployableSyncTest {
+
+    /** The directory where the test files are created. */
+    private File workDirectory;
+
+    /** The archive to explode. */
+    private File archive;
+
+    /** The exploded directory. */
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        workDirectory = new File("target/exploded-deployable-sync-test/");
+        FileUtils.deleteDirectory(workDirectory);
+        FileUtils.forceMkdir(workDirectory);
+        archive = new File(workDirectory, "app.war");
+        directory = new File(workDirectory, "exploded/app.war");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(workDirectory);
+    }
+
+    @Test
+    public void testSyncOnlyExtractsChanges() throws Exception {
+        createArchive("index.jsp", "index", "WEB-INF/classes/App.class", "version 1", "WEB-INF/lib/lib.jar", "library");
+
+        final ExplodedDeployableSync sync = new ExplodedDeployableSync(archive, directory);
+        sync.sync();
+        assertEquals(3, sync.getExtracted());
+        assertEquals("version 1", FileUtils.readFileToString(new File(directory, "WEB-INF/classes/App.class")));
+
+        /*
+         * Nothing changed so nothing is extracted.
+         */
+        sync.sync();
+        assertEquals(0, sync.getExtracted());
+        assertEquals(3, sync.getUnchanged());
+
+        /*
+         * Only the changed class is extracted and the removed library is
+         * deleted.
+         */
+        createArchive("index.jsp", "index", "WEB-INF/classes/App.class", "version 2");
+        sync.sync();
+        assertEquals(1, sync.getExtracted());
+        assertEquals(1, sync.getUnchanged());
+        assertEquals(1, sync.getRemoved());
+        assertEquals("version 2", FileUtils.readFileToString(new File(directory, "WEB-INF/classes/App.class")));
+        assertFalse(new File(directory, "WEB-INF/lib/lib.jar").exists());
+    }
+
+    @Test
+    public void testSyncRestoresModifiedFile() throws Exception {
+        createArchive("index.jsp", "index");
+
+        final ExplodedDeployableSync sync = new ExplodedDeployableSync(archive, directory);
+        sync.sync();
+        FileUtils.writeStringToFile(new File(directory, "index.jsp"), "changed by the container");
+
+        sync.sync();
+        assertEquals(1, sync.getExtracted());
+        assertEquals("index", FileUtils.readFileToString(new File(directory, "index.jsp")));
+    }
+
+    @Test
+    public void testSyncRejectsEntriesOutsideDirectory() throws Exception {
+        createArchive("../escaped.txt", "escaped");
+
+        try {
+            new ExplodedDeployableSync(archive, directory).sync();
+            fail("The entry should have been rejected!");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage().contains("escaped.txt"));
+        }
+        assertFalse(new File(workDirectory, "exploded/escaped.txt").exists());
+    }
+
+    /**
+     * Creates the archive.
+     *
+     * @param namesAndContents
+     *            The names of the entries each followed by their content.
+     * @throws IOException
+     *             Is thrown when the archive couldn't be written.
+     */
+    private void createArchive(final String... namesAndContents) throws IOException {
+        final ZipOutputStream output = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                output.putNextEntry(new ZipEntry(namesAndContents[i]));
+                output.write(namesAndContents[i + 1].getBytes("UTF-8"));
+                output.closeEntry();
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+}
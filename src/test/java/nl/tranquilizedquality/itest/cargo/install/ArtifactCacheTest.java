@@ -0,0 +1,187 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.install;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ArtifactCache}.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class ArtifactCacheTest {
+
+    /** The directory where the test files are created. */
+    private File workDirectory;
+
+    /** The directory of the cache under test. */
+    private File cacheDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        workDirectory = new File("target/artifact-cache-test/");
+        FileUtils.deleteDirectory(workDirectory);
+        cacheDirectory = new File(workDirectory, "cache");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(workDirectory);
+    }
+
+    @Test
+    public void testRetrieveUsesCacheOnSecondRun() throws Exception {
+        final File source = createSource("container.zip", "container content");
+        final URL url = source.toURI().toURL();
+
+        final ArtifactCache cache = new ArtifactCache(cacheDirectory, Long.MAX_VALUE);
+        final File first = cache.retrieve(url, null);
+        assertEquals("container content", FileUtils.readFileToString(first));
+
+        /*
+         * Remove the source so a second download would fail.
+         */
+        assertTrue(source.delete());
+
+        final File second = cache.retrieve(url, null);
+        assertEquals(first, second);
+        assertEquals("container content", FileUtils.readFileToString(second));
+    }
+
+    @Test
+    public void testRetrieveVerifiesChecksum() throws Exception {
+        final File source = createSource("container.zip", "container content");
+        final URL url = source.toURI().toURL();
+        final String checksum = ArtifactCache.digest(source);
+
+        final ArtifactCache cache = new ArtifactCache(cacheDirectory, Long.MAX_VALUE);
+        assertNotNull(cache.retrieve(url, checksum.toUpperCase()));
+
+        try {
+            new ArtifactCache(new File(workDirectory, "other"), Long.MAX_VALUE).retrieve(url, "abcdef");
+            fail("Checksum mismatch should be detected.");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage().contains("Checksum mismatch"));
+        }
+
+        assertNull(cache.lookup(url, "abcdef"));
+        assertNotNull(cache.lookup(url, checksum));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        final URL first = createSource("first.zip", "0123456789").toURI().toURL();
+        final URL second = createSource("second.zip", "0123456789").toURI().toURL();
+        final URL third = createSource("third.zip", "0123456789").toURI().toURL();
+
+        final ArtifactCache cache = new ArtifactCache(cacheDirectory, 160L);
+        cache.retrieve(first, null);
+        cache.retrieve(second, null);
+        Thread.sleep(1000L);
+
+        /*
+         * Use the first entry again so the second one is the least recently
+         * used.
+         */
+        assertNotNull(cache.lookup(first, null));
+        cache.retrieve(third, null);
+
+        assertNotNull(cache.lookup(first, null));
+        assertNull(cache.lookup(second, null));
+        assertNotNull(cache.lookup(third, null));
+        assertFalse(new File(cacheDirectory, ArtifactCache.digest(second.toExternalForm())).exists());
+    }
+
+    @Test
+    public void testConcurrentPublish() throws Exception {
+        final ArtifactCache cache = new ArtifactCache(cacheDirectory, Long.MAX_VALUE);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final CountDownLatch ready = new CountDownLatch(2);
+
+        try {
+            /*
+             * Two threads of the same JVM publish at the same time like the
+             * container and configuration downloads do.
+             */
+            final List<Future<File>> published = new ArrayList<Future<File>>();
+            for (final String name : new String[] { "container.zip", "configuration.zip" }) {
+                final URL url = createSource(name, name).toURI().toURL();
+
+                published.add(executor.submit(new Callable<File>() {
+                    @Override
+                    public File call() throws Exception {
+                        ready.countDown();
+                        ready.await();
+
+                        File archive = null;
+                        for (int i = 0; i < 50; i++) {
+                            final File download = cache.createDownloadFile(url);
+                            FileUtils.writeStringToFile(download, name);
+                            archive = cache.publish(url, download, ArtifactCache.digest(download), null);
+                        }
+                        return archive;
+                    }
+                }));
+            }
+
+            assertEquals("container.zip", FileUtils.readFileToString(published.get(0).get()));
+            assertEquals("configuration.zip", FileUtils.readFileToString(published.get(1).get()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates a source file that will be "downloaded".
+     *
+     * @param name
+     *            The name of the file.
+     * @param content
+     *            The content of the file.
+     * @return Returns the created file.
+     * @throws IOException
+     *             Is thrown when the file couldn't be written.
+     */
+    private File createSource(final String name, final String content) throws IOException {
+        final File source = new File(workDirectory, "remote/" + name);
+        FileUtils.writeStringToFile(source, content);
+        return source;
+    }
+
+}
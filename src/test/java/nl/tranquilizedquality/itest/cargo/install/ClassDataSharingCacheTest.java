@@ -0,0 +1,170 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.install;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ClassDataSharingCache}.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class ClassDataSharingCacheTest {
+
+    /** The directory where the test files are created. */
+    private File workDirectory;
+
+    /** The cache under test. */
+    private ClassDataSharingCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        workDirectory = new File("target/class-data-sharing-cache-test/");
+        FileUtils.deleteDirectory(workDirectory);
+        cache = new ClassDataSharingCache(new File(workDirectory, "cds"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(workDirectory);
+    }
+
+    @Test
+    public void testGetJavaVersion() {
+        assertEquals(7, ClassDataSharingCache.getJavaVersion("1.7"));
+        assertEquals(17, ClassDataSharingCache.getJavaVersion("17"));
+        assertEquals(21, ClassDataSharingCache.getJavaVersion("21.0"));
+        assertEquals(0, ClassDataSharingCache.getJavaVersion(null));
+        assertEquals(0, ClassDataSharingCache.getJavaVersion("unknown"));
+    }
+
+    @Test
+    public void testCreateKeyChangesWithDeployables() throws Exception {
+        final File war = new File(workDirectory, "app.war");
+        FileUtils.writeStringToFile(war, "first");
+
+        final String key = ClassDataSharingCache.createKey("tomcat-7.0.zip", Arrays.asList(war));
+        assertEquals(key, ClassDataSharingCache.createKey("tomcat-7.0.zip", Arrays.asList(war)));
+        assertFalse(key.equals(ClassDataSharingCache.createKey("tomcat-8.0.zip", Arrays.asList(war))));
+
+        FileUtils.writeStringToFile(war, "second version");
+        assertFalse(key.equals(ClassDataSharingCache.createKey("tomcat-7.0.zip", Arrays.asList(war))));
+    }
+
+    @Test
+    public void testPublishRecordedArchive() throws Exception {
+        final String key = ClassDataSharingCache.createKey("jetty-9.zip", Collections.<File> emptyList());
+        assertNull(cache.lookup(key));
+
+        final File recording = cache.createRecordingFile(key);
+        FileUtils.writeStringToFile(recording, "archive");
+
+        final File archive = cache.publish(key, recording);
+        assertNotNull(archive);
+        assertFalse(recording.exists());
+        assertEquals(archive, cache.lookup(key));
+    }
+
+    @Test
+    public void testPublishWithoutRecording() throws Exception {
+        final String key = ClassDataSharingCache.createKey("jetty-9.zip", Collections.<File> emptyList());
+        final File recording = cache.createRecordingFile(key);
+
+        assertNull(cache.publish(key, recording));
+        assertNull(cache.lookup(key));
+    }
+
+    @Test
+    public void testRecordLaunch() throws Exception {
+        final String key = ClassDataSharingCache.createKey("jetty-9.zip", Collections.<File> emptyList());
+        assertNull(cache.getLaunchTime(key, false));
+
+        cache.recordLaunch(key, false, 4000L);
+        cache.recordLaunch(key, true, 2500L);
+
+        assertEquals(Long.valueOf(4000L), cache.getLaunchTime(key, false));
+        assertEquals(Long.valueOf(2500L), cache.getLaunchTime(key, true));
+        assertTrue(new File(workDirectory, "cds/" + key + ".properties").isFile());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        final ClassDataSharingCache bounded = new ClassDataSharingCache(new File(workDirectory, "bounded"), 16L);
+
+        final String first = ClassDataSharingCache.createKey("jetty-9.zip", Collections.<File> emptyList());
+        final String second = ClassDataSharingCache.createKey("tomcat-7.zip", Collections.<File> emptyList());
+        publish(bounded, first, "0123456789");
+        bounded.recordLaunch(first, false, 4000L);
+        assertTrue(bounded.lookup(first).setLastModified(System.currentTimeMillis() - 60000L));
+
+        publish(bounded, second, "0123456789");
+
+        assertNull(bounded.lookup(first));
+        assertNull(bounded.getLaunchTime(first, false));
+        assertNotNull(bounded.lookup(second));
+    }
+
+    @Test
+    public void testArtifactCacheLeavesArchivesAlone() throws Exception {
+        final String key = ClassDataSharingCache.createKey("jetty-9.zip", Collections.<File> emptyList());
+        publish(cache, key, "archive");
+
+        /*
+         * Publishing a download that exceeds the quota of an artifact cache
+         * in the same directory doesn't evict the archives.
+         */
+        final File source = new File(workDirectory, "remote/container.zip");
+        FileUtils.writeStringToFile(source, "container content");
+        new ArtifactCache(workDirectory, 1L).retrieve(source.toURI().toURL(), null);
+
+        assertNotNull(cache.lookup(key));
+    }
+
+    /**
+     * Publishes an archive.
+     *
+     * @param target
+     *            The cache to publish in.
+     * @param key
+     *            The key of the archive.
+     * @param content
+     *            The content of the archive.
+     * @throws Exception
+     *             Is thrown when the archive couldn't be written.
+     */
+    private static void publish(final ClassDataSharingCache target, final String key, final String content)
+            throws Exception {
+        final File recording = target.createRecordingFile(key);
+        FileUtils.writeStringToFile(recording, content);
+        assertNotNull(target.publish(key, recording));
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.install;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ContainerTemplates}.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class ContainerTemplatesTest {
+
+    /** The directory where the test files are created. */
+    private File workDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        workDirectory = new File("target/container-templates-test/");
+        FileUtils.deleteDirectory(workDirectory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(workDirectory);
+    }
+
+    @Test
+    public void testCloneLinksImmutableAndCopiesMutableFiles() throws Exception {
+        final ContainerTemplates templates = new ContainerTemplates(new File(workDirectory, "templates"), Arrays.asList("conf"));
+        assertNull(templates.lookup("tomcat-1"));
+
+        final File staging = templates.createStagingDirectory("tomcat-1");
+        FileUtils.writeStringToFile(new File(staging, "lib/catalina.jar"), "jar");
+        FileUtils.writeStringToFile(new File(staging, "conf/server.xml"), "<Server/>");
+        templates.publish("tomcat-1", staging);
+
+        final File template = templates.lookup("tomcat-1");
+        assertFalse(staging.exists());
+
+        final File home = new File(workDirectory, "run/Tomcat");
+        templates.cloneTo(template, home);
+
+        final File linked = new File(home, "lib/catalina.jar");
+        final File copied = new File(home, "conf/server.xml");
+        assertEquals("jar", FileUtils.readFileToString(linked));
+        assertEquals("<Server/>", FileUtils.readFileToString(copied));
+
+        assertTrue(Files.isSameFile(linked.toPath(), new File(template, "lib/catalina.jar").toPath()));
+        assertFalse(Files.isSameFile(copied.toPath(), new File(template, "conf/server.xml").toPath()));
+        assertTrue(copied.canWrite());
+
+        /*
+         * Changing the copy must leave the template untouched.
+         */
+        FileUtils.writeStringToFile(copied, "<Server port=\"8005\"/>");
+        assertEquals("<Server/>", FileUtils.readFileToString(new File(template, "conf/server.xml")));
+    }
+
+    @Test
+    public void testExtractOverCloneLeavesTemplateAlone() throws Exception {
+        final ContainerTemplates templates = new ContainerTemplates(new File(workDirectory, "templates"), Arrays.asList("conf"));
+        final File staging = templates.createStagingDirectory("jboss-1");
+        FileUtils.writeStringToFile(new File(staging, "server/default/lib/jboss.jar"), "jar");
+        final File template = templates.publish("jboss-1", staging);
+
+        final File home = new File(workDirectory, "run/JBoss");
+        templates.cloneTo(template, home);
+
+        /*
+         * A configuration archive that overwrites a linked file replaces the
+         * link instead of writing through it.
+         */
+        final File archive = new File(workDirectory, "configuration.zip");
+        final ZipOutputStream output = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            output.putNextEntry(new ZipEntry("server/default/lib/jboss.jar"));
+            output.write("patched".getBytes("UTF-8"));
+            output.closeEntry();
+        } finally {
+            output.close();
+        }
+        new ParallelZipExtractor(2).extract(archive, home);
+
+        assertEquals("patched", FileUtils.readFileToString(new File(home, "server/default/lib/jboss.jar")));
+        assertEquals("jar", FileUtils.readFileToString(new File(template, "server/default/lib/jboss.jar")));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        final ContainerTemplates templates = new ContainerTemplates(new File(workDirectory, "templates"),
+                Arrays.asList("conf"), 16L);
+
+        publish(templates, "tomcat-1");
+        assertTrue(templates.lookup("tomcat-1").setLastModified(System.currentTimeMillis() - 3600000L));
+        publish(templates, "tomcat-2");
+
+        assertNull(templates.lookup("tomcat-1"));
+        assertNotNull(templates.lookup("tomcat-2"));
+
+        /*
+         * A template that was used recently may still be being cloned so it
+         * is kept even though the templates exceed the maximum size.
+         */
+        publish(templates, "tomcat-3");
+
+        assertNotNull(templates.lookup("tomcat-2"));
+        assertNotNull(templates.lookup("tomcat-3"));
+        assertEquals(2, new File(workDirectory, "templates").list().length);
+    }
+
+    /**
+     * Publishes a template of ten bytes.
+     *
+     * @param templates
+     *            The templates to publish in.
+     * @param key
+     *            The key of the template.
+     * @throws Exception
+     *             Is thrown when the template couldn't be published.
+     */
+    private static void publish(final ContainerTemplates templates, final String key) throws Exception {
+        final File staging = templates.createStagingDirectory(key);
+        FileUtils.writeStringToFile(new File(staging, "lib/catalina.jar"), "0123456789");
+        templates.publish(key, staging);
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.install;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link EntryFilter}.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class EntryFilterTest {
+
+    @Test
+    public void testExcludes() {
+        final EntryFilter filter = new EntryFilter(Collections.<String> emptyList(), Arrays.asList("docs/**",
+                "webapps/examples/**", "**/*.txt"));
+
+        assertFalse(filter.accept("docs/"));
+        assertFalse(filter.accept("docs/index.html"));
+        assertFalse(filter.accept("webapps/examples/jsp/index.jsp"));
+        assertFalse(filter.accept("README.txt"));
+        assertFalse(filter.accept("lib/LICENSE.txt"));
+
+        assertTrue(filter.accept("docsets/index.html"));
+        assertTrue(filter.accept("webapps/ROOT/index.jsp"));
+        assertTrue(filter.accept("lib/catalina.jar"));
+    }
+
+    @Test
+    public void testIncludes() {
+        final EntryFilter filter = new EntryFilter(Arrays.asList("bin/*", "lib/**", "server/default/**"),
+                Arrays.asList("lib/*-sources.jar"));
+
+        assertTrue(filter.accept("bin/run.sh"));
+        assertTrue(filter.accept("lib/endorsed/xercesImpl.jar"));
+        assertTrue(filter.accept("server/default/conf/jboss-service.xml"));
+
+        assertFalse(filter.accept("bin/native/libjbossnative.so"));
+        assertFalse(filter.accept("lib/jboss-common-sources.jar"));
+        assertFalse(filter.accept("server/all/conf/jboss-service.xml"));
+        assertFalse(filter.accept("docs/dtd/jboss.dtd"));
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.install;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ParallelZipExtractor}.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class ParallelZipExtractorTest {
+
+    /** The directory where the test files are created. */
+    private File workDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        workDirectory = new File("target/parallel-zip-extractor-test/");
+        FileUtils.deleteDirectory(workDirectory);
+        workDirectory.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(workDirectory);
+    }
+
+    @Test
+    public void testExtract() throws Exception {
+        final File archive = new File(workDirectory, "container.zip");
+        final ZipOutputStream output = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            output.putNextEntry(new ZipEntry("bin/"));
+            output.closeEntry();
+            for (int i = 0; i < 50; i++) {
+                output.putNextEntry(new ZipEntry("lib/module" + i + "/library.jar"));
+                output.write(("library " + i).getBytes("UTF-8"));
+                output.closeEntry();
+            }
+            output.putNextEntry(new ZipEntry("conf/server.xml"));
+            output.write(new byte[1024 * 1024]);
+            output.closeEntry();
+        } finally {
+            output.close();
+        }
+
+        final File destination = new File(workDirectory, "home");
+        new ParallelZipExtractor(4).extract(archive, destination);
+
+        assertTrue(new File(destination, "bin").isDirectory());
+        assertEquals(1024 * 1024, new File(destination, "conf/server.xml").length());
+        for (int i = 0; i < 50; i++) {
+            assertEquals("library " + i, FileUtils.readFileToString(new File(destination, "lib/module" + i + "/library.jar")));
+        }
+    }
+
+    @Test
+    public void testExtractWithFilter() throws Exception {
+        final File archive = new File(workDirectory, "container.zip");
+        final ZipOutputStream output = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            output.putNextEntry(new ZipEntry("docs/"));
+            output.closeEntry();
+            output.putNextEntry(new ZipEntry("docs/manual.html"));
+            output.write(new byte[1024]);
+            output.closeEntry();
+            output.putNextEntry(new ZipEntry("lib/container.jar"));
+            output.write(new byte[1024]);
+            output.closeEntry();
+        } finally {
+            output.close();
+        }
+
+        final File destination = new File(workDirectory, "home");
+        final ParallelZipExtractor extractor = new ParallelZipExtractor(2);
+        extractor.setEntryFilter(new EntryFilter(Arrays.<String> asList(), Arrays.asList("docs/**")));
+        extractor.extract(archive, destination);
+
+        assertTrue(new File(destination, "lib/container.jar").isFile());
+        assertFalse(new File(destination, "docs").exists());
+    }
+
+    @Test
+    public void testRejectsEntriesOutsideDestination() throws Exception {
+        final File archive = new File(workDirectory, "evil.zip");
+        final ZipOutputStream output = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            output.putNextEntry(new ZipEntry("../evil.txt"));
+            output.write(1);
+            output.closeEntry();
+        } finally {
+            output.close();
+        }
+
+        try {
+            new ParallelZipExtractor().extract(archive, new File(workDirectory, "home"));
+            fail("Entries outside the destination directory should be rejected.");
+        } catch (final IOException e) {
+            assertFalse(new File(workDirectory, "evil.txt").exists());
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.install;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ResourceIndex}.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class ResourceIndexTest {
+
+    /** The directory where the test files are created. */
+    private File workDirectory;
+
+    /** The directory containing the resources. */
+    private File resourceDirectory;
+
+    /** The routing rules. */
+    private Map<String, String> rules;
+
+    @Before
+    public void setUp() throws Exception {
+        workDirectory = new File("target/resource-index-test/");
+        FileUtils.deleteDirectory(workDirectory);
+
+        resourceDirectory = new File(workDirectory, "resources");
+        FileUtils.writeStringToFile(new File(resourceDirectory, "log4j.xml"), "<log4j/>");
+        FileUtils.writeStringToFile(new File(resourceDirectory, "app-ds.xml"), "<datasources/>");
+        FileUtils.writeStringToFile(new File(resourceDirectory, "jndi.PROPERTIES"), "a=b");
+        FileUtils.writeStringToFile(new File(resourceDirectory, "other.xml"), "<other/>");
+        FileUtils.forceMkdir(new File(resourceDirectory, "nested-ds.xml"));
+
+        rules = new LinkedHashMap<String, String>();
+        rules.put("log4j.xml", "conf/");
+        rules.put("*-ds.xml", "deploy/");
+        rules.put("*.properties", "conf/");
+        rules.put("*.jar", "lib/");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(workDirectory);
+    }
+
+    @Test
+    public void testRouting() throws Exception {
+        final ResourceIndex index = ResourceIndex.scan(resourceDirectory, rules);
+
+        assertEquals(Arrays.asList("app-ds.xml", "jndi.PROPERTIES", "log4j.xml", "other.xml"), index.getFileNames());
+        assertEquals(Arrays.asList("app-ds.xml"), index.getResources("deploy/"));
+        assertEquals(Arrays.asList("jndi.PROPERTIES", "log4j.xml"), index.getResources("conf/"));
+        assertTrue(index.getResources("lib/").isEmpty());
+        assertTrue(index.getResources("unknown/").isEmpty());
+        assertEquals(Arrays.asList("jndi.PROPERTIES"), index.findBySuffix(".properties"));
+    }
+
+    @Test
+    public void testMissingDirectory() throws Exception {
+        final ResourceIndex index = ResourceIndex.scan(new File(workDirectory, "missing"), rules);
+
+        assertTrue(index.getFileNames().isEmpty());
+        assertTrue(index.findBySuffix(".properties").isEmpty());
+        assertEquals(0, index.copy(Collections.singletonMap("conf/", new File(workDirectory, "conf"))));
+    }
+
+    @Test
+    public void testCachedUntilModified() throws Exception {
+        final ResourceIndex index = ResourceIndex.scan(resourceDirectory, rules);
+        assertSame(index, ResourceIndex.scan(resourceDirectory, rules));
+
+        FileUtils.writeStringToFile(new File(resourceDirectory, "driver.jar"), "jar");
+        assertTrue(resourceDirectory.setLastModified(resourceDirectory.lastModified() + 2000L));
+
+        final ResourceIndex rescanned = ResourceIndex.scan(resourceDirectory, rules);
+        assertNotSame(index, rescanned);
+        assertEquals(Arrays.asList("driver.jar"), rescanned.getResources("lib/"));
+    }
+
+    @Test
+    public void testCopy() throws Exception {
+        final File conf = new File(workDirectory, "server/conf");
+        final File deploy = new File(workDirectory, "server/deploy");
+        final Map<String, File> destinations = new HashMap<String, File>();
+        destinations.put("conf/", conf);
+        destinations.put("deploy/", deploy);
+
+        assertEquals(3, ResourceIndex.scan(resourceDirectory, rules).copy(destinations));
+        assertEquals("<log4j/>", FileUtils.readFileToString(new File(conf, "log4j.xml")));
+        assertEquals("a=b", FileUtils.readFileToString(new File(conf, "jndi.PROPERTIES")));
+        assertEquals("<datasources/>", FileUtils.readFileToString(new File(deploy, "app-ds.xml")));
+        assertFalse(new File(conf, "other.xml").exists());
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.install;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the {@link StreamingZipInstaller} against a local stand-in HTTP
+ * server.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class StreamingZipInstallerTest {
+
+    /** The directory where the test files are created. */
+    private File workDirectory;
+
+    /** The archive served by the HTTP server. */
+    private File archive;
+
+    /** The stand-in HTTP server. */
+    private HttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        workDirectory = new File("target/streaming-zip-installer-test/");
+        FileUtils.deleteDirectory(workDirectory);
+        workDirectory.mkdirs();
+
+        archive = new File(workDirectory, "container.zip");
+        final ZipOutputStream output = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            for (int i = 0; i < 20; i++) {
+                output.putNextEntry(new ZipEntry("lib/library" + i + ".jar"));
+                output.write(new byte[256 * 1024]);
+                output.closeEntry();
+            }
+            output.putNextEntry(new ZipEntry("conf/server.xml"));
+            output.write("<Server/>".getBytes("UTF-8"));
+            output.closeEntry();
+        } finally {
+            output.close();
+        }
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, archive.length());
+                final OutputStream body = exchange.getResponseBody();
+                try {
+                    body.write(FileUtils.readFileToByteArray(archive));
+                } finally {
+                    body.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+        FileUtils.deleteDirectory(workDirectory);
+    }
+
+    @Test
+    public void testInstall() throws Exception {
+        final URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/container.zip");
+        final File spoolFile = new File(workDirectory, "spool.part");
+        final File destination = new File(workDirectory, "home");
+
+        final StreamingZipInstaller installer = new StreamingZipInstaller(url);
+        installer.setSpoolFile(spoolFile);
+        final String checksum = installer.install(destination);
+
+        assertEquals(ArtifactCache.digest(archive), checksum);
+        assertEquals(archive.length(), spoolFile.length());
+        assertEquals("<Server/>", FileUtils.readFileToString(new File(destination, "conf/server.xml")));
+        for (int i = 0; i < 20; i++) {
+            assertTrue(new File(destination, "lib/library" + i + ".jar").isFile());
+        }
+    }
+
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.install;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link TemplateRenderer}.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class TemplateRendererTest {
+
+    /** The directory where the test files are created. */
+    private File workDirectory;
+
+    /** The renderer. */
+    private TemplateRenderer renderer;
+
+    @Before
+    public void setUp() throws Exception {
+        workDirectory = new File("target/template-renderer-test/");
+        FileUtils.deleteDirectory(workDirectory);
+
+        final Map<String, String> values = new HashMap<String, String>();
+        values.put("cargo.server.port", "18080");
+        values.put("cargo.jnp.port", "11099");
+        values.put("itest.path", " C:\\temp\\a=b:c #!\t\u20ac\n");
+        renderer = new TemplateRenderer(values);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(workDirectory);
+    }
+
+    @Test
+    public void testRender() throws Exception {
+        assertEquals("http://localhost:18080/app", render("http://localhost:${cargo.server.port}/app"));
+        assertEquals("18080 11099", render("${cargo.server.port} ${cargo.jnp.port}"));
+        assertEquals("11099", render("${cargo.jnp.port:1099}"));
+    }
+
+    @Test
+    public void testUnresolvedPlaceholders() throws Exception {
+        assertEquals("${jboss.bind.address:localhost}", render("${jboss.bind.address:localhost}"));
+        assertEquals("${unknown}", render("${unknown}"));
+        assertEquals("costs $5 and $$ {}", render("costs $5 and $$ {}"));
+        assertEquals("trailing $", render("trailing $"));
+        assertEquals("open ${cargo.server.port", render("open ${cargo.server.port"));
+        assertEquals("${a\nb}", render("${a\nb}"));
+        assertEquals("$18080", render("$${cargo.server.port}"));
+    }
+
+    @Test
+    public void testLongPlaceholder() throws Exception {
+        final StringBuilder template = new StringBuilder("${");
+        for (int i = 0; i < 1000; i++) {
+            template.append('x');
+        }
+        template.append('}');
+
+        assertEquals(template.toString(), render(template.toString()));
+    }
+
+    @Test
+    public void testRenderLargeFile() throws Exception {
+        final File template = new File(workDirectory, "itest-ds.xml");
+        FileUtils.forceMkdir(workDirectory);
+        final BufferedWriter writer = new BufferedWriter(new FileWriter(template));
+        try {
+            for (int i = 0; i < 100000; i++) {
+                writer.write("<port>${cargo.server.port}</port>\n");
+            }
+        } finally {
+            writer.close();
+        }
+
+        final File rendered = new File(workDirectory, "deploy/itest-ds.xml");
+        assertEquals(100000, renderer.render(template, rendered));
+        assertEquals(100000L * "<port>18080</port>\n".length(), rendered.length());
+    }
+
+    @Test
+    public void testRenderInPlace() throws Exception {
+        final File file = new File(workDirectory, "jndi.properties");
+        FileUtils.writeStringToFile(file, "java.naming.provider.url=jnp://localhost:${cargo.jnp.port}\n", "ISO-8859-1");
+
+        assertEquals(1, renderer.render(file, file));
+        assertEquals("java.naming.provider.url=jnp://localhost:11099\n", FileUtils.readFileToString(file, "ISO-8859-1"));
+        assertEquals(1, workDirectory.list().length);
+    }
+
+    @Test
+    public void testRenderEscapesProperties() throws Exception {
+        final File template = new File(workDirectory, "itest.properties");
+        FileUtils.writeStringToFile(template, "path=${itest.path}\nport=${cargo.server.port}\n", "ISO-8859-1");
+
+        final File rendered = new File(workDirectory, "conf/itest.properties");
+        assertEquals(2, renderer.render(template, rendered));
+
+        final Properties properties = new Properties();
+        final FileInputStream input = new FileInputStream(rendered);
+        try {
+            properties.load(input);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+        assertEquals(" C:\\temp\\a=b:c #!\t\u20ac\n", properties.getProperty("path"));
+        assertEquals("18080", properties.getProperty("port"));
+        assertEquals(2, properties.size());
+
+        final File xml = new File(workDirectory, "itest-ds.xml");
+        FileUtils.writeStringToFile(xml, "<path>${itest.path}</path>", "UTF-8");
+        renderer.render(xml, xml);
+        assertEquals("<path> C:\\temp\\a=b:c #!\t\u20ac\n</path>", FileUtils.readFileToString(xml, "UTF-8"));
+    }
+
+    @Test
+    public void testRenderKeepsEncoding() throws Exception {
+        final File template = new File(workDirectory, "login.conf");
+        FileUtils.writeStringToFile(template, "realm=Caf\u00e9 \u20ac ${cargo.server.port}\n", "windows-1252");
+
+        final File rendered = new File(workDirectory, "conf/login.conf");
+        assertEquals(1, renderer.render(template, rendered));
+        assertEquals("realm=Caf\u00e9 \u20ac 18080\n", FileUtils.readFileToString(rendered, "windows-1252"));
+    }
+
+    @Test
+    public void testRenderWithoutPlaceholdersCopies() throws Exception {
+        final byte[] bytes = new byte[256];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        final File template = new File(workDirectory, "policy.txt");
+        FileUtils.writeByteArrayToFile(template, bytes);
+
+        final File rendered = new File(workDirectory, "conf/policy.txt");
+        assertEquals(0, renderer.render(template, rendered));
+        assertArrayEquals(bytes, FileUtils.readFileToByteArray(rendered));
+    }
+
+    @Test
+    public void testIsTemplate() throws Exception {
+        assertTrue(TemplateRenderer.isTemplate("itest-ds.xml"));
+        assertTrue(TemplateRenderer.isTemplate("jndi.PROPERTIES"));
+        assertFalse(TemplateRenderer.isTemplate("driver.jar"));
+    }
+
+    @Test
+    public void testCopyRendersTextFiles() throws Exception {
+        final File resources = new File(workDirectory, "resources");
+        FileUtils.writeStringToFile(new File(resources, "app-ds.xml"), "<port>${cargo.server.port}</port>");
+        FileUtils.writeStringToFile(new File(resources, "driver.jar"), "${cargo.server.port}");
+
+        final Map<String, String> rules = new LinkedHashMap<String, String>();
+        rules.put("*-ds.xml", "deploy/");
+        rules.put("*.jar", "lib/");
+        final Map<String, File> destinations = new HashMap<String, File>();
+        destinations.put("deploy/", new File(workDirectory, "deploy"));
+        destinations.put("lib/", new File(workDirectory, "lib"));
+
+        assertEquals(2, ResourceIndex.scan(resources, rules).copy(destinations, renderer));
+        assertEquals("<port>18080</port>", FileUtils.readFileToString(new File(workDirectory, "deploy/app-ds.xml")));
+        assertEquals("${cargo.server.port}", FileUtils.readFileToString(new File(workDirectory, "lib/driver.jar")));
+    }
+
+    /**
+     * Renders a template in memory.
+     *
+     * @param template
+     *            The template.
+     * @return Returns the result.
+     * @throws Exception
+     *             Is thrown when rendering fails.
+     */
+    private String render(final String template) throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        renderer.render(new ByteArrayInputStream(template.getBytes("UTF-8")), output, Charset.forName("UTF-8"));
+        return output.toString("UTF-8");
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.jvm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import nl.tranquilizedquality.itest.cargo.exception.ConfigurationException;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link JvmProfile}.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class JvmProfileTest {
+
+    /** The number of bytes in a gigabyte. */
+    private static final long GIGABYTE = 1024L * 1024L * 1024L;
+
+    @Test
+    public void testFromName() {
+        assertEquals(JvmProfile.FAST_BOOT, JvmProfile.fromName("fast-boot"));
+        assertEquals(JvmProfile.LOW_MEMORY, JvmProfile.fromName("LOW_MEMORY"));
+        assertEquals(JvmProfile.THROUGHPUT, JvmProfile.fromName(" Throughput "));
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testFromUnknownName() {
+        JvmProfile.fromName("turbo");
+    }
+
+    @Test
+    public void testHeapSizeDependsOnParallelContainers() {
+        assertEquals(512L, JvmProfile.FAST_BOOT.getHeapSize(16L * GIGABYTE, 1));
+        assertEquals(256L, JvmProfile.FAST_BOOT.getHeapSize(16L * GIGABYTE, 16));
+        assertEquals(128L, JvmProfile.FAST_BOOT.getHeapSize(GIGABYTE, 8));
+        assertEquals(4096L, JvmProfile.THROUGHPUT.getHeapSize(64L * GIGABYTE, 2));
+    }
+
+    @Test
+    public void testArguments() {
+        final List<String> arguments = JvmProfile.FAST_BOOT.getArguments(256L);
+        assertEquals(Arrays.asList("-Xms256m", "-Xmx256m", "-XX:TieredStopAtLevel=1", "-XX:CICompilerCount=1",
+                "-XX:+UseSerialGC"), arguments);
+
+        assertEquals("-Xmx64m", JvmProfile.LOW_MEMORY.getArguments(64L).get(0));
+    }
+
+    @Test
+    public void testMergeUserArgumentsTakePrecedence() {
+        final List<String> merged = JvmProfile.merge(JvmProfile.FAST_BOOT.getArguments(256L),
+                Arrays.asList("-Xmx1024m", "-XX:+UseG1GC", "-Dfoo=bar"));
+
+        assertEquals(Arrays.asList("-Xms256m", "-XX:TieredStopAtLevel=1", "-XX:CICompilerCount=1", "-Xmx1024m",
+                "-XX:+UseG1GC", "-Dfoo=bar"), merged);
+    }
+
+    @Test
+    public void testGetOption() {
+        assertEquals("-Xmx", JvmProfile.getOption("-Xmx512m"));
+        assertEquals("-XX:PermSize", JvmProfile.getOption("-XX:PermSize=128m"));
+        assertEquals("-XX:TieredCompilation", JvmProfile.getOption("-XX:-TieredCompilation"));
+        assertEquals(JvmProfile.getOption("-XX:+UseSerialGC"), JvmProfile.getOption("-XX:+UseParallelGC"));
+        assertEquals("-Dfoo", JvmProfile.getOption("-Dfoo=bar"));
+    }
+
+    @Test
+    public void testAvailableMemory() {
+        assertTrue(JvmProfile.getAvailableMemory() >= 0L);
+    }
+
+}
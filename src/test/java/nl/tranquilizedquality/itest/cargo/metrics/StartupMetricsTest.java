@@ -0,0 +1,82 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.metrics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link StartupMetrics}.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class StartupMetricsTest {
+
+    /** The directory where the report is written. */
+    private File workDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        workDirectory = new File("target/startup-metrics-test/");
+        FileUtils.deleteDirectory(workDirectory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(workDirectory);
+    }
+
+    @Test
+    public void testReport() throws Exception {
+        final StartupMetrics metrics = new StartupMetrics("Tomcat");
+        metrics.add(StartupMetrics.DOWNLOAD, TimeUnit.MILLISECONDS.toNanos(1500));
+        metrics.add(StartupMetrics.EXTRACT, TimeUnit.MILLISECONDS.toNanos(250));
+        metrics.add(StartupMetrics.DOWNLOAD, TimeUnit.MILLISECONDS.toNanos(500));
+
+        final long start = System.nanoTime();
+        metrics.record(StartupMetrics.LAUNCH, start);
+
+        /*
+         * Phases keep the order they were first recorded in and repeated
+         * phases are added up.
+         */
+        assertArrayEquals(new String[] { StartupMetrics.DOWNLOAD, StartupMetrics.EXTRACT, StartupMetrics.LAUNCH }, metrics
+                .getPhases().keySet().toArray());
+        assertEquals(2000L, metrics.getDuration(StartupMetrics.DOWNLOAD, TimeUnit.MILLISECONDS));
+        assertEquals(0L, metrics.getDuration(StartupMetrics.RENAME, TimeUnit.MILLISECONDS));
+        assertTrue(metrics.getTotal(TimeUnit.MILLISECONDS) >= 2250L);
+
+        final File report = new File(workDirectory, "startup-metrics.json");
+        metrics.writeReport(report);
+
+        final String json = FileUtils.readFileToString(report, "UTF-8");
+        assertTrue(json.contains("\"container\" : \"Tomcat\""));
+        assertTrue(json.contains("{ \"name\" : \"download\", \"millis\" : 2000.000 }"));
+        assertTrue(json.contains("{ \"name\" : \"extract\", \"millis\" : 250.000 }"));
+    }
+
+}
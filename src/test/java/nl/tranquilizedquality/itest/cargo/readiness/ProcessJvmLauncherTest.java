@@ -0,0 +1,85 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.readiness;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the {@link ProcessJvmLauncher}.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class ProcessJvmLauncherTest {
+
+    /** The folder where the output of the launched JVMs is written. */
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testCreateCommand() {
+        final ProcessJvmLauncher launcher = new ProcessJvmLauncher(true);
+        launcher.setJvm("java");
+        launcher.addJvmArgumentLine("-Xmx256m \"-Dname=with space\"");
+        launcher.setSystemProperty("cargo.server.port", "8890");
+        launcher.addClasspathEntries("a.jar", "b.jar");
+        launcher.setMainClass("org.apache.catalina.startup.Bootstrap");
+        launcher.addAppArgumentLine("start");
+
+        assertEquals(Arrays.asList("java", "-Xmx256m", "-Dname=with space", "-Dcargo.server.port=8890", "-classpath", "a.jar"
+                + File.pathSeparator + "b.jar", "org.apache.catalina.startup.Bootstrap", "start"), launcher.createCommand());
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        final ProcessJvmLauncher launcher = new ProcessJvmLauncher(false);
+        assertNull(launcher.getExitValue());
+
+        launcher.setJvm(System.getProperty("java.home") + "/bin/java");
+        launcher.addJvmArguments("-version");
+        launcher.setOutputFile(temporaryFolder.newFile("output.log"));
+        launcher.setTimeout(60000L);
+
+        assertEquals(0, launcher.execute());
+        assertFalse(launcher.isAlive());
+        assertEquals(Integer.valueOf(0), launcher.getExitValue());
+    }
+
+    @Test
+    public void testDestroyTree() throws Exception {
+        final ProcessJvmLauncher launcher = new ProcessJvmLauncher(true);
+        launcher.setJvm("sleep");
+        launcher.addAppArguments("60");
+        launcher.start();
+        assertTrue(launcher.isAlive());
+
+        launcher.destroyTree();
+        assertTrue(launcher.waitFor(10000L));
+        assertFalse(launcher.isAlive());
+    }
+
+}
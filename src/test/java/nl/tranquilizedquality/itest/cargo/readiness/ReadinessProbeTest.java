@@ -0,0 +1,201 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.readiness;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.tranquilizedquality.itest.cargo.exception.DeployException;
+import nl.tranquilizedquality.itest.domain.DeployableLocationConfiguration;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the {@link ReadinessProbe}.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class ReadinessProbeTest {
+
+    /** The directory where the output of the container process is written. */
+    private File workDirectory;
+
+    /** The server that plays the deployed application. */
+    private HttpServer server;
+
+    /** The number of requests the application received. */
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        workDirectory = new File("target/readiness-probe-test/");
+        FileUtils.deleteDirectory(workDirectory);
+        workDirectory.mkdirs();
+
+        /*
+         * The application answers with 404 and 503 while it is being
+         * deployed.
+         */
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final int request = requests.incrementAndGet();
+                if (request == 1) {
+                    exchange.sendResponseHeaders(404, -1);
+                } else if (request < 4) {
+                    exchange.sendResponseHeaders(503, -1);
+                } else {
+                    exchange.sendResponseHeaders(200, -1);
+                }
+                exchange.close();
+            }
+        });
+
+        /*
+         * An application without a welcome page.
+         */
+        server.createContext("/no-welcome/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+        FileUtils.deleteDirectory(workDirectory);
+    }
+
+    @Test
+    public void testAwait() throws Exception {
+        final URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/test-app/");
+
+        final ReadinessProbe probe = new ReadinessProbe(Arrays.asList(url), 10000L);
+        probe.setInitialDelay(10L);
+        probe.await();
+
+        assertEquals(4, requests.get());
+    }
+
+    @Test
+    public void testAwaitTimeout() throws Exception {
+        final URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/test-app/");
+        server.stop(0);
+
+        final ReadinessProbe probe = new ReadinessProbe(Arrays.asList(url), 200L);
+        probe.setInitialDelay(10L);
+        try {
+            probe.await();
+            fail("The application never answers!");
+        } catch (final DeployException e) {
+            assertTrue(e.getMessage().contains("(no response)"));
+        }
+    }
+
+    @Test
+    public void testAwaitDeadProcess() throws Exception {
+        final URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/test-app/");
+        server.stop(0);
+
+        /*
+         * A container JVM that exits right away.
+         */
+        final ProcessJvmLauncher launcher = new ProcessJvmLauncher(true);
+        launcher.setJvm(System.getProperty("java.home") + "/bin/java");
+        launcher.addJvmArguments("-version");
+        launcher.setOutputFile(new File(workDirectory, "output.log"));
+        launcher.start();
+
+        final ReadinessProbe probe = new ReadinessProbe(Collections.singletonList(url), 60000L);
+        probe.setProcess(launcher);
+
+        final long start = System.currentTimeMillis();
+        try {
+            probe.await();
+            fail("The container process died!");
+        } catch (final DeployException e) {
+            assertTrue(e.getMessage().contains("died with exit value 0"));
+            assertTrue(e.getMessage().contains("version"));
+        }
+        assertTrue(System.currentTimeMillis() - start < 30000L);
+    }
+
+    @Test
+    public void testAwaitNotFoundAccepted() throws Exception {
+        final String baseUrl = "http://localhost:" + server.getAddress().getPort() + "/";
+        final DeployableLocationConfiguration configuration = new DeployableLocationConfiguration();
+        configuration.setPath("target/no-welcome.war");
+        configuration.setType("WAR");
+        final List<DeployableLocationConfiguration> configurations = Collections.singletonList(configuration);
+        final List<URL> urls = ReadinessProbe.createContextUrls(baseUrl, new HashMap<String, String>(),
+                configurations);
+
+        /*
+         * The root of the context answers with a 404 so the application is
+         * ready when that is accepted.
+         */
+        final ReadinessProbe probe = new ReadinessProbe(urls, 10000L);
+        probe.setInitialDelay(10L);
+        probe.setNotFoundAccepted(ReadinessProbe.createContextRootUrls(baseUrl, new HashMap<String, String>(),
+                configurations));
+        probe.await();
+
+        /*
+         * A configured readiness path needs to answer.
+         */
+        configuration.setReadinessPath("/health");
+        final List<URL> healthUrls = ReadinessProbe.createContextUrls(baseUrl, new HashMap<String, String>(),
+                configurations);
+        assertEquals(Arrays.asList(new URL(baseUrl + "no-welcome/health")), healthUrls);
+
+        final ReadinessProbe healthProbe = new ReadinessProbe(healthUrls, 200L);
+        healthProbe.setInitialDelay(10L);
+        healthProbe.setNotFoundAccepted(ReadinessProbe.createContextRootUrls(baseUrl,
+                new HashMap<String, String>(), configurations));
+        try {
+            healthProbe.await();
+            fail("The readiness path never answers!");
+        } catch (final DeployException e) {
+            assertTrue(e.getMessage().contains("404"));
+        }
+    }
+
+}
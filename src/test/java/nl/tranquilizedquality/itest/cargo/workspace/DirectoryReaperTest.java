@@ -0,0 +1,105 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.workspace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link DirectoryReaper}.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class DirectoryReaperTest {
+
+    /** The directory where the test files are created. */
+    private File workDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        workDirectory = new File("target/directory-reaper-test/");
+        FileUtils.deleteDirectory(workDirectory);
+        workDirectory.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(workDirectory);
+    }
+
+    @Test
+    public void testReap() throws Exception {
+        final File root = new File(workDirectory, "1234567890");
+        for (int i = 0; i < 10; i++) {
+            FileUtils.writeStringToFile(new File(root, "Tomcat/lib/module" + i + "/library.jar"), "library " + i);
+        }
+        FileUtils.writeStringToFile(new File(root, "Tomcat/conf/server.xml"), "<Server/>");
+        new File(root, "Tomcat/conf/server.xml").setReadOnly();
+
+        final DirectoryReaper reaper = new DirectoryReaper(2);
+        final Future<?> deletion = reaper.reap(root);
+
+        /*
+         * The original location is available right away.
+         */
+        assertFalse(root.exists());
+
+        deletion.get(10, TimeUnit.SECONDS);
+        assertTrue(reaper.drain(10, TimeUnit.SECONDS));
+        assertEquals(0, workDirectory.list().length);
+    }
+
+    @Test
+    public void testReapAfterDrain() throws Exception {
+        final File root = new File(workDirectory, "1234567891");
+        for (int i = 0; i < 10; i++) {
+            FileUtils.writeStringToFile(new File(root, "Tomcat/lib/module" + i + "/library.jar"), "library " + i);
+        }
+
+        /*
+         * A container stopped by another shutdown hook after the reaper was
+         * drained is deleted right away.
+         */
+        final DirectoryReaper reaper = new DirectoryReaper(2);
+        assertTrue(reaper.drain(10, TimeUnit.SECONDS));
+
+        final AtomicBoolean called = new AtomicBoolean();
+        final Future<?> deletion = reaper.reap(root, new Runnable() {
+            @Override
+            public void run() {
+                called.set(true);
+            }
+        });
+
+        assertTrue(deletion.isDone());
+        assertTrue(called.get());
+        assertEquals(0, workDirectory.list().length);
+    }
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.workspace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the {@link PortAllocator}.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class PortAllocatorTest {
+
+    /** The first port of the range used in the test. */
+    private static final int FIRST_PORT = 41230;
+
+    /** The folder where the output of the other JVMs is written. */
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /** The directory where the port lock files are created. */
+    private File workDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        workDirectory = new File("target/port-allocator-test/");
+        FileUtils.deleteDirectory(workDirectory);
+        workDirectory.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(workDirectory);
+    }
+
+    @Test
+    public void testAllocate() throws Exception {
+        final ServerSocket occupied = new ServerSocket();
+        occupied.setReuseAddress(true);
+        occupied.bind(new InetSocketAddress(FIRST_PORT));
+
+        try {
+            /*
+             * Two allocators on the same directory behave like two builds
+             * running at the same time.
+             */
+            final PortAllocator first = new PortAllocator(workDirectory, FIRST_PORT, FIRST_PORT + 2);
+            final PortAllocator second = new PortAllocator(workDirectory, FIRST_PORT, FIRST_PORT + 2);
+
+            final int port = first.allocate();
+            final int otherPort = first.allocate();
+            assertFalse(port == otherPort);
+            assertFalse(port == FIRST_PORT);
+            assertFalse(otherPort == FIRST_PORT);
+
+            try {
+                second.allocate();
+                fail("All free ports are reserved already!");
+            } catch (final IOException e) {
+                // expected
+            }
+
+            first.release(port);
+            assertEquals(port, second.allocate());
+        } finally {
+            occupied.close();
+        }
+    }
+
+    @Test
+    public void testSecondInstanceKeepsLock() throws Exception {
+        final PortAllocator first = new PortAllocator(workDirectory, FIRST_PORT + 5, FIRST_PORT + 5);
+        final PortAllocator second = new PortAllocator(new File(workDirectory, "../port-allocator-test"), FIRST_PORT + 5,
+                FIRST_PORT + 5);
+
+        final int port = first.allocate();
+        try {
+            second.allocate();
+            fail("The only port is reserved already!");
+        } catch (final IOException e) {
+            // expected
+        }
+
+        /*
+         * The failed attempt of the second instance must not release the
+         * reservation of the first one for other processes.
+         */
+        assertEquals(1, allocateInOtherProcess(FIRST_PORT + 5));
+
+        first.release(port);
+        assertEquals(0, allocateInOtherProcess(FIRST_PORT + 5));
+    }
+
+    @Test
+    public void testGetInstanceIsCanonical() throws Exception {
+        assertSame(PortAllocator.getInstance(workDirectory),
+                PortAllocator.getInstance(new File(workDirectory, "../port-allocator-test")));
+    }
+
+    /**
+     * Tries to reserve a port in another JVM.
+     *
+     * @param port
+     *            The port to reserve.
+     * @return Returns 0 if the other JVM reserved the port or 1 if it didn't.
+     * @throws Exception
+     *             Is thrown when the other JVM couldn't be run.
+     */
+    private int allocateInOtherProcess(final int port) throws Exception {
+        final ProcessBuilder builder = new ProcessBuilder(System.getProperty("java.home") + "/bin/java", "-cp",
+                System.getProperty("java.class.path"), PortAllocatorTest.class.getName(),
+                workDirectory.getAbsolutePath(), String.valueOf(port));
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(new File(temporaryFolder.getRoot(), "process-" + port + ".log"));
+
+        final Process process = builder.start();
+        final long deadline = System.currentTimeMillis() + 60000L;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                return process.exitValue();
+            } catch (final IllegalThreadStateException e) {
+                TimeUnit.MILLISECONDS.sleep(50L);
+            }
+        }
+
+        process.destroy();
+        throw new IllegalStateException("Port allocation in other process did not finish");
+    }
+
+    /**
+     * Reserves the port passed as argument in the directory passed as
+     * argument and exits with 0 when it succeeds or 1 when it fails.
+     *
+     * @param args
+     *            The directory and the port.
+     */
+    public static void main(final String[] args) {
+        final int port = Integer.parseInt(args[1]);
+        try {
+            new PortAllocator(new File(args[0]), port, port).allocate();
+        } catch (final IOException e) {
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+}
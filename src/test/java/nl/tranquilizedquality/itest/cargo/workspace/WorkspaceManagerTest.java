@@ -0,0 +1,195 @@
+/*
+ * Copyright 2009 Salomo Petrus
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package nl.tranquilizedquality.itest.cargo.workspace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import nl.tranquilizedquality.itest.cargo.workspace.WorkspaceManager.Workspace;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the {@link WorkspaceManager}.
+ *
+ * @author Salomo Petrus (sape)
+ * @since 18 oct 2026
+ *
+ */
+public class WorkspaceManagerTest {
+
+    /** The folder where the output of the other JVMs is written. */
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /** The directory where the test files are created. */
+    private File workDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        workDirectory = new File("target/workspace-manager-test/");
+        FileUtils.deleteDirectory(workDirectory);
+        workDirectory.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(workDirectory);
+    }
+
+    @Test
+    public void testSweep() throws Exception {
+        final WorkspaceManager manager = new WorkspaceManager(workDirectory, Long.MAX_VALUE);
+
+        /*
+         * A root that is in use by this JVM.
+         */
+        final Workspace running = manager.acquire(new File(workDirectory, "1000"));
+        FileUtils.writeStringToFile(new File(running.getRoot(), "Tomcat/conf/server.xml"), "<Server/>");
+
+        /*
+         * A root left behind by a killed build including a directory that was
+         * being deleted.
+         */
+        final File orphan = new File(workDirectory, "2000");
+        FileUtils.writeStringToFile(new File(orphan, "JBoss/bin/run.sh"), "run");
+        FileUtils.writeStringToFile(new File(workDirectory, "2000" + WorkspaceManager.MARKER_SUFFIX), "pid=-1\n");
+        final File leftover = new File(workDirectory, DirectoryReaper.REAPING_PREFIX + "2000-1");
+        FileUtils.writeStringToFile(new File(leftover, "JBoss/lib/jboss.jar"), "jar");
+
+        /*
+         * A root that was retained after its container stopped.
+         */
+        final Workspace stopped = manager.acquire(new File(workDirectory, "3000"));
+        FileUtils.writeStringToFile(new File(stopped.getRoot(), "Jetty/start.jar"), "jar");
+        manager.retain(stopped);
+
+        /*
+         * A directory that isn't managed at all.
+         */
+        final File unmanaged = new File(workDirectory, "4000");
+        FileUtils.writeStringToFile(new File(unmanaged, "data.txt"), "data");
+
+        manager.sweep();
+
+        assertTrue(running.getRoot().isDirectory());
+        assertFalse(orphan.exists());
+        assertFalse(leftover.exists());
+        assertFalse(new File(workDirectory, "2000" + WorkspaceManager.MARKER_SUFFIX).exists());
+        assertTrue(stopped.getRoot().isDirectory());
+        assertTrue(unmanaged.isDirectory());
+
+        /*
+         * Exceeding the quota evicts the retained root but never the one in
+         * use.
+         */
+        manager.setQuota(0L);
+        manager.sweep();
+
+        assertTrue(running.getRoot().isDirectory());
+        assertFalse(stopped.getRoot().exists());
+        assertTrue(unmanaged.isDirectory());
+
+        manager.delete(running);
+        assertFalse(running.getRoot().exists());
+        assertFalse(new File(workDirectory, "1000" + WorkspaceManager.MARKER_SUFFIX).exists());
+    }
+
+    @Test
+    public void testOwnSweepKeepsLock() throws Exception {
+        final WorkspaceManager manager = new WorkspaceManager(workDirectory, Long.MAX_VALUE);
+        final Workspace running = manager.acquire(new File(workDirectory, "5000"));
+        FileUtils.writeStringToFile(new File(running.getRoot(), "Tomcat/conf/server.xml"), "<Server/>");
+
+        /*
+         * A sweep of the owner followed by a sweep of another process must
+         * leave the root alone.
+         */
+        manager.sweep();
+        assertEquals(0, sweepInOtherProcess());
+        assertTrue(running.getRoot().isDirectory());
+
+        manager.delete(running);
+        assertFalse(running.getRoot().exists());
+    }
+
+    /**
+     * Runs a sweep of the work directory in another JVM.
+     *
+     * @return Returns the exit value of the other JVM.
+     * @throws Exception
+     *             Is thrown when the other JVM couldn't be run.
+     */
+    private int sweepInOtherProcess() throws Exception {
+        final ProcessBuilder builder = new ProcessBuilder(System.getProperty("java.home") + "/bin/java", "-cp",
+                System.getProperty("java.class.path"), WorkspaceManagerTest.class.getName(),
+                workDirectory.getAbsolutePath());
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(new File(temporaryFolder.getRoot(), "sweep.log"));
+
+        final Process process = builder.start();
+        if (!waitFor(process, 60000L)) {
+            process.destroy();
+            throw new IllegalStateException("Sweep in other process did not finish");
+        }
+        return process.exitValue();
+    }
+
+    /**
+     * Waits for a process to end.
+     *
+     * @param process
+     *            The process.
+     * @param timeout
+     *            The maximum number of milliseconds to wait.
+     * @return Returns true if the process has ended.
+     * @throws InterruptedException
+     *             Is thrown when the thread was interrupted.
+     */
+    private static boolean waitFor(final Process process, final long timeout) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                process.exitValue();
+                return true;
+            } catch (final IllegalThreadStateException e) {
+                TimeUnit.MILLISECONDS.sleep(50L);
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Sweeps the base directory passed as argument.
+     *
+     * @param args
+     *            The base directory.
+     */
+    public static void main(final String[] args) {
+        new WorkspaceManager(new File(args[0]), Long.MAX_VALUE).sweep();
+    }
+
+}
@@ -19,15 +19,11 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import nl.tranquilizedquality.itest.AbstractDefaultDeploymentTest;
 import nl.tranquilizedquality.itest.AbstractDefaultHibernateDeploymentTest;
-import nl.tranquilizedquality.itest.cargo.ContainerUtil;
 import nl.tranquilizedquality.itest.tomcat.configuration.TomcatContainerUtilConfiguration;
 
 import org.apache.commons.lang.StringUtils;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
 import org.junit.BeforeClass;
 import org.junit.Test;
-import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 
 import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
@@ -43,23 +39,12 @@ import com.gargoylesoftware.htmlunit.html.HtmlPage;
  */
 public class TestAppTomcatDeploymentTest extends AbstractDefaultHibernateDeploymentTest {
 
-    /** Logger for this class */
-    private static final Log LOGGER = LogFactory.getLog(TestAppTomcatDeploymentTest.class);
-
     @BeforeClass
     public static void runOnce() throws Exception {
 
         // The application server need to be locally started only if the
         // host is localhost
-        if (isRunningOnLocalHost()) {
-            if (LOGGER.isInfoEnabled()) {
-                LOGGER.info("Starting up the container utility...");
-            }
-
-            CONTEXT = new AnnotationConfigApplicationContext(TomcatContainerUtilConfiguration.class);
-            CONTAINER_UTIL = (ContainerUtil) CONTEXT.getBean("containerUtil");
-            CONTAINER_UTIL.start();
-        }
+        startupContainer(TomcatContainerUtilConfiguration.class);
     }
 
     @Test